@@ -0,0 +1,315 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.mb.benchmarks;
+
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import com.lmax.disruptor.util.DaemonThreadFactory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures batching of message acknowledgements against an {@link EmbeddedMessageStore}. The broker
+ * publishes acknowledgements to a Disruptor ring buffer and acknowledgement handlers delete the
+ * acknowledged messages from the store in batches of up to ackHandlerBatchSize
+ * (performanceTuning/ackHandling in broker.xml).
+ * <p>
+ * Acknowledgements are striped by storage queue across ackHandlerCount ring buffers, each with its
+ * own {@link AcknowledgementHandler} and database connection. deleteMode selects how a handler
+ * deletes a batch: ID_LIST lists the message IDs, BATCH_RANGE deletes each run of adjacent message
+ * IDs of a queue in the batch with a BETWEEN range, and ACK_BITMAP keeps a bitmap of acknowledged
+ * messages per subscription and deletes the range its contiguously acknowledged prefix advanced over.
+ * <p>
+ * Each invocation stores ACKNOWLEDGEMENTS_PER_INVOCATION messages spread over queueCount queues,
+ * which is not measured, then publishes their acknowledgements round robin across the queues and
+ * waits until the handlers have deleted them. ackGapPercentage of the messages are acknowledged after
+ * all other messages of the invocation, as redelivered messages are, which breaks ranges. Throughput
+ * is reported per acknowledgement. Batches committed, ranges or listed message IDs deleted and rows
+ * deleted per second are reported as secondary results. The ring buffers have a single producer,
+ * hence the benchmark runs on one thread.
+ * <p>
+ * The default in-memory database serializes statements of all connections, so striping shows the
+ * cost of the extra handlers rather than parallel deletes. A database which runs statements of
+ * connections in parallel, such as an H2 server or jdbc:h2:mem:ack;MULTI_THREADED=1, shows both.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+@Threads(1)
+public class AckBatchingBenchmark {
+
+    /**
+     * The amount of messages stored and acknowledged per invocation.
+     */
+    private static final int ACKNOWLEDGEMENTS_PER_INVOCATION = 4096;
+
+    /**
+     * The size of the ring buffer.
+     */
+    private static final int RING_BUFFER_SIZE = 4096;
+
+    /**
+     * The maximum amount of acknowledgements processed in a batch. 100 is the broker default.
+     */
+    @Param({"1", "100", "1000"})
+    public int ackHandlerBatchSize;
+
+    /**
+     * The amount of acknowledgement handlers acknowledgements are striped across by storage queue.
+     * 1 is the broker default.
+     */
+    @Param({"1", "4"})
+    public int ackHandlerCount;
+
+    /**
+     * How handlers delete a batch. One of ID_LIST, BATCH_RANGE or ACK_BITMAP.
+     */
+    @Param({"ID_LIST", "BATCH_RANGE", "ACK_BITMAP"})
+    public String deleteMode;
+
+    /**
+     * The amount of storage queues acknowledgements are received for. Must divide
+     * ACKNOWLEDGEMENTS_PER_INVOCATION.
+     */
+    @Param({"16"})
+    public int queueCount;
+
+    /**
+     * The percentage of messages which are acknowledged after the other messages of an invocation.
+     */
+    @Param({"0", "10"})
+    public int ackGapPercentage;
+
+    /**
+     * The size of the content of a message.
+     */
+    @Param({"1024"})
+    public int contentSize;
+
+    /**
+     * The JDBC URL of the database.
+     */
+    @Param({"jdbc:h2:mem:ack"})
+    public String jdbcUrl;
+
+    /**
+     * The store the messages are inserted with. Also keeps an in-memory database open while handlers
+     * connect and disconnect.
+     */
+    private EmbeddedMessageStore store;
+
+    private Disruptor<BatchingEventHandler.Event>[] disruptors;
+
+    private RingBuffer<BatchingEventHandler.Event>[] ringBuffers;
+
+    private AcknowledgementHandler[] handlers;
+
+    private Random random;
+
+    /**
+     * The sequence of the last stored message of each queue.
+     */
+    private long[] queueSequences;
+
+    /**
+     * The message IDs of a queue stored by an invocation.
+     */
+    private long[] queueMessageIDs;
+
+    /**
+     * The message IDs in the order they are acknowledged by an invocation.
+     */
+    private long[] acknowledgements;
+
+    @Setup
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void setup() throws SQLException {
+        if (0 != ACKNOWLEDGEMENTS_PER_INVOCATION % queueCount) {
+            throw new IllegalArgumentException("Queue count " + queueCount + " does not divide "
+                                               + ACKNOWLEDGEMENTS_PER_INVOCATION);
+        }
+        store = new EmbeddedMessageStore(jdbcUrl, contentSize);
+        store.createTables("");
+        AcknowledgementHandler.DeleteMode mode = AcknowledgementHandler.DeleteMode.valueOf(deleteMode);
+        disruptors = new Disruptor[ackHandlerCount];
+        ringBuffers = new RingBuffer[ackHandlerCount];
+        handlers = new AcknowledgementHandler[ackHandlerCount];
+        for (int i = 0; i < ackHandlerCount; i++) {
+            handlers[i] = new AcknowledgementHandler(jdbcUrl, mode, ackHandlerBatchSize, queueCount);
+            disruptors[i] = new Disruptor<>(BatchingEventHandler.EVENT_FACTORY, RING_BUFFER_SIZE,
+                                            DaemonThreadFactory.INSTANCE, ProducerType.SINGLE,
+                                            new YieldingWaitStrategy());
+            disruptors[i].handleEventsWith(handlers[i]);
+            ringBuffers[i] = disruptors[i].start();
+        }
+        random = new Random(queueCount);
+        queueSequences = new long[queueCount];
+        queueMessageIDs = new long[ACKNOWLEDGEMENTS_PER_INVOCATION / queueCount];
+        acknowledgements = new long[ACKNOWLEDGEMENTS_PER_INVOCATION];
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        for (int i = 0; i < ackHandlerCount; i++) {
+            disruptors[i].shutdown();
+            handlers[i].close();
+        }
+        store.dropTables("");
+        store.close();
+    }
+
+    /**
+     * Stores the messages of an invocation and orders their acknowledgements round robin across the
+     * queues, with the acknowledgements of the gaps last.
+     *
+     * @throws SQLException Thrown when the messages cannot be stored.
+     */
+    @Setup(Level.Invocation)
+    public void storeMessages() throws SQLException {
+        int messagesPerQueue = queueMessageIDs.length;
+        for (int queueIndex = 0; queueIndex < queueCount; queueIndex++) {
+            long queueBits = (long) queueIndex << AcknowledgementHandler.QUEUE_INDEX_SHIFT;
+            for (int i = 0; i < messagesPerQueue; i++) {
+                queueMessageIDs[i] = queueBits | (queueSequences[queueIndex] + 1 + i);
+            }
+            store.insertMessages("", queueIndex, queueMessageIDs, 0, messagesPerQueue, 0L);
+        }
+        int acknowledgementCount = 0;
+        int lateAcknowledgementCount = 0;
+        for (int i = 0; i < messagesPerQueue; i++) {
+            for (int queueIndex = 0; queueIndex < queueCount; queueIndex++) {
+                long messageID = ((long) queueIndex << AcknowledgementHandler.QUEUE_INDEX_SHIFT)
+                                 | (queueSequences[queueIndex] + 1 + i);
+                if (ackGapPercentage > random.nextInt(100)) {
+                    lateAcknowledgementCount++;
+                    acknowledgements[ACKNOWLEDGEMENTS_PER_INVOCATION - lateAcknowledgementCount] = messageID;
+                } else {
+                    acknowledgements[acknowledgementCount++] = messageID;
+                }
+            }
+        }
+        for (int queueIndex = 0; queueIndex < queueCount; queueIndex++) {
+            queueSequences[queueIndex] = queueSequences[queueIndex] + messagesPerQueue;
+        }
+    }
+
+    /**
+     * Checks that the handlers deleted every message of the iteration.
+     *
+     * @throws SQLException Thrown when the messages cannot be counted.
+     */
+    @TearDown(Level.Iteration)
+    public void verifyDeleted() throws SQLException {
+        try (Statement statement = store.getConnection().createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM MB_METADATA")) {
+            resultSet.next();
+            if (0 != resultSet.getLong(1)) {
+                throw new IllegalStateException(resultSet.getLong(1) + " acknowledged messages were not deleted");
+            }
+        }
+        store.commit();
+    }
+
+    /**
+     * Publishes the acknowledgements of an invocation to the handlers of their queues and waits until
+     * the handlers have processed them.
+     *
+     * @param counters Counters of the batches, ranges and rows deleted by the handlers.
+     * @return The last acknowledged message ID.
+     * @throws SQLException Thrown when a handler failed to delete messages.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ACKNOWLEDGEMENTS_PER_INVOCATION)
+    public long acknowledgeMessages(HandlerCounters counters) throws SQLException {
+        for (long messageID : acknowledgements) {
+            int queueIndex = (int) (messageID >>> AcknowledgementHandler.QUEUE_INDEX_SHIFT);
+            RingBuffer<BatchingEventHandler.Event> ringBuffer = ringBuffers[queueIndex % ackHandlerCount];
+            long sequence = ringBuffer.next();
+            ringBuffer.get(sequence).value = messageID;
+            ringBuffer.publish(sequence);
+        }
+        for (int i = 0; i < ackHandlerCount; i++) {
+            // A handler commits the deletes of a batch before its sequence passes the batch
+            while (ringBuffers[i].getMinimumGatingSequence() < ringBuffers[i].getCursor()) {
+                if (null != handlers[i].getFailure()) {
+                    throw handlers[i].getFailure();
+                }
+                Thread.yield();
+            }
+            if (null != handlers[i].getFailure()) {
+                throw handlers[i].getFailure();
+            }
+        }
+        return acknowledgements[ACKNOWLEDGEMENTS_PER_INVOCATION - 1];
+    }
+
+    /**
+     * Batches, ranges and rows deleted by all handlers, reported per second by JMH.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class HandlerCounters {
+
+        public long batches;
+
+        public long ranges;
+
+        public long rowsDeleted;
+
+        /**
+         * Takes the handlers' counts of the iteration. Counts taken by other threads are reset, so
+         * the sum over threads is the total.
+         *
+         * @param benchmark The benchmark state.
+         */
+        @TearDown(Level.Iteration)
+        public void takeCounts(AckBatchingBenchmark benchmark) {
+            for (AcknowledgementHandler handler : benchmark.handlers) {
+                batches = batches + handler.takeBatchCount();
+                ranges = ranges + handler.takeRangeCount();
+                rowsDeleted = rowsDeleted + handler.takeRowCount();
+            }
+        }
+    }
+}
@@ -0,0 +1,331 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.benchmarks;
+
+import com.lmax.disruptor.EventHandler;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Disruptor event handler which deletes acknowledged messages from an {@link EmbeddedMessageStore}
+ * in batches, the way the broker's acknowledgement handlers do. A batch is flushed once it reaches the
+ * maximum batch size or when the Disruptor reports the end of the currently available events, and
+ * the deletes of a batch are committed together.
+ * <p>
+ * The value of an event is an acknowledged message ID, which carries the index of its queue in the
+ * bits above {@link #QUEUE_INDEX_SHIFT} and the sequence of the message in its queue below them. The
+ * queue index is also the queue ID the message is stored with. A batch is deleted in one of these
+ * modes:
+ * <ul>
+ * <li>ID_LIST lists the message IDs of the batch in a content and a metadata delete.</li>
+ * <li>BATCH_RANGE sorts the batch and deletes each run of consecutive message IDs with a content and
+ * a metadata range delete.</li>
+ * <li>ACK_BITMAP keeps a bitmap of acknowledged messages per subscription beyond the contiguously
+ * acknowledged prefix of its queue. A batch deletes the messages the prefix of each subscription
+ * advanced over with a single range, and messages acknowledged beyond a gap wait until the gap is
+ * acknowledged.</li>
+ * </ul>
+ * A handler uses its own connection. Failures are kept for the producer to rethrow, as a handler
+ * which throws stops processing events.
+ */
+class AcknowledgementHandler implements EventHandler<BatchingEventHandler.Event> {
+
+    /**
+     * The amount of bits the queue index is shifted by in an acknowledged message ID.
+     */
+    static final int QUEUE_INDEX_SHIFT = 40;
+
+    /**
+     * Selects the sequence of a message in its queue from an acknowledged message ID.
+     */
+    private static final long SEQUENCE_MASK = (1L << QUEUE_INDEX_SHIFT) - 1;
+
+    private static final String DELETE_CONTENT_RANGE = "DELETE FROM MB_CONTENT WHERE MESSAGE_ID BETWEEN ? AND ?";
+
+    private static final String DELETE_METADATA_RANGE
+            = "DELETE FROM MB_METADATA WHERE QUEUE_ID=? AND MESSAGE_ID BETWEEN ? AND ?";
+
+    /**
+     * How a batch of acknowledged messages is deleted.
+     */
+    enum DeleteMode {
+        ID_LIST, BATCH_RANGE, ACK_BITMAP
+    }
+
+    private final EmbeddedMessageStore store;
+
+    private final DeleteMode deleteMode;
+
+    /**
+     * The acknowledged message IDs of the current batch.
+     */
+    private final long[] batch;
+
+    /**
+     * The amount of acknowledgements in the current batch.
+     */
+    private int batchLength = 0;
+
+    /**
+     * The highest sequence of each queue up to which all messages are acknowledged.
+     */
+    private final long[] acknowledgedSequences;
+
+    /**
+     * The highest sequence of each queue up to which all messages are deleted.
+     */
+    private final long[] deletedSequences;
+
+    /**
+     * The messages of each queue acknowledged beyond the acknowledged prefix, by their distance from
+     * the first message after it.
+     */
+    private final BitSet[] acknowledgementBitmaps;
+
+    /**
+     * The amount of batches committed since last taken.
+     */
+    private final AtomicLong batchCount = new AtomicLong();
+
+    /**
+     * The amount of message IDs or ranges deleted since last taken.
+     */
+    private final AtomicLong rangeCount = new AtomicLong();
+
+    /**
+     * The amount of content and metadata rows deleted since last taken.
+     */
+    private final AtomicLong rowCount = new AtomicLong();
+
+    /**
+     * The first failure of a delete, after which the handler skips events.
+     */
+    private volatile SQLException failure;
+
+    /**
+     * Creates an acknowledgement handler.
+     *
+     * @param jdbcUrl          The JDBC URL of the database the messages are stored in.
+     * @param deleteMode       How a batch of acknowledged messages is deleted.
+     * @param maximumBatchSize The maximum amount of acknowledgements in a batch.
+     * @param queueCount       The amount of queues acknowledgements are received for.
+     * @throws SQLException Thrown when the database cannot be connected.
+     */
+    AcknowledgementHandler(String jdbcUrl, DeleteMode deleteMode, int maximumBatchSize, int queueCount)
+            throws SQLException {
+        this.store = new EmbeddedMessageStore(jdbcUrl, 0);
+        this.deleteMode = deleteMode;
+        this.batch = new long[maximumBatchSize];
+        this.acknowledgedSequences = new long[queueCount];
+        this.deletedSequences = new long[queueCount];
+        this.acknowledgementBitmaps = new BitSet[queueCount];
+        for (int i = 0; i < queueCount; i++) {
+            acknowledgementBitmaps[i] = new BitSet();
+        }
+    }
+
+    @Override
+    public void onEvent(BatchingEventHandler.Event event, long sequence, boolean endOfBatch) {
+        if (null != failure) {
+            return;
+        }
+        batch[batchLength++] = event.value;
+        if (DeleteMode.ACK_BITMAP == deleteMode) {
+            acknowledge(event.value);
+        }
+        if (batch.length == batchLength || endOfBatch) {
+            try {
+                flush();
+            } catch (SQLException e) {
+                failure = e;
+            }
+            batchLength = 0;
+        }
+    }
+
+    /**
+     * Marks a message acknowledged in the bitmap of its queue and advances the acknowledged prefix
+     * over the messages acknowledged after it.
+     *
+     * @param messageID The acknowledged message ID.
+     */
+    private void acknowledge(long messageID) {
+        int queueIndex = (int) (messageID >>> QUEUE_INDEX_SHIFT);
+        BitSet bitmap = acknowledgementBitmaps[queueIndex];
+        int distance = (int) ((messageID & SEQUENCE_MASK) - acknowledgedSequences[queueIndex] - 1);
+        bitmap.set(distance);
+        if (0 == distance) {
+            int prefixLength = bitmap.nextClearBit(0);
+            acknowledgedSequences[queueIndex] = acknowledgedSequences[queueIndex] + prefixLength;
+            if (prefixLength == bitmap.length()) {
+                bitmap.clear();
+            } else {
+                // Shifting allocates, but only while messages are acknowledged beyond a gap
+                acknowledgementBitmaps[queueIndex] = bitmap.get(prefixLength, bitmap.length());
+            }
+        }
+    }
+
+    /**
+     * Deletes the messages of the current batch and commits.
+     *
+     * @throws SQLException Thrown when a statement fails.
+     */
+    private void flush() throws SQLException {
+        int ranges;
+        switch (deleteMode) {
+            case ID_LIST:
+                ranges = batchLength;
+                rowCount.addAndGet(store.deleteByMessageIDs("MB_CONTENT", batch, 0, batchLength)
+                                   + store.deleteByMessageIDs("MB_METADATA", batch, 0, batchLength));
+                break;
+            case BATCH_RANGE:
+                ranges = deleteBatchRanges();
+                break;
+            default:
+                ranges = deleteAcknowledgedPrefixes();
+                break;
+        }
+        if (0 < ranges) {
+            store.commit();
+            rangeCount.addAndGet(ranges);
+            batchCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Sorts the current batch, which groups it by queue, and deletes each run of consecutive message
+     * IDs as a range.
+     *
+     * @return The amount of deleted ranges.
+     * @throws SQLException Thrown when a statement fails.
+     */
+    private int deleteBatchRanges() throws SQLException {
+        Arrays.sort(batch, 0, batchLength);
+        int ranges = 0;
+        int start = 0;
+        for (int i = 1; i <= batchLength; i++) {
+            if (batchLength == i || batch[i] != batch[i - 1] + 1) {
+                addRange(batch[start], batch[i - 1]);
+                ranges++;
+                start = i;
+            }
+        }
+        executeRanges();
+        return ranges;
+    }
+
+    /**
+     * Deletes the messages each queue's acknowledged prefix advanced over since the last batch.
+     *
+     * @return The amount of deleted ranges.
+     * @throws SQLException Thrown when a statement fails.
+     */
+    private int deleteAcknowledgedPrefixes() throws SQLException {
+        int ranges = 0;
+        for (int i = 0; i < acknowledgedSequences.length; i++) {
+            if (deletedSequences[i] < acknowledgedSequences[i]) {
+                long queueBits = (long) i << QUEUE_INDEX_SHIFT;
+                addRange(queueBits | (deletedSequences[i] + 1), queueBits | acknowledgedSequences[i]);
+                deletedSequences[i] = acknowledgedSequences[i];
+                ranges++;
+            }
+        }
+        if (0 < ranges) {
+            executeRanges();
+        }
+        return ranges;
+    }
+
+    /**
+     * Adds the deletes of a range of message IDs of one queue to the statement batches.
+     */
+    private void addRange(long firstMessageID, long lastMessageID) throws SQLException {
+        PreparedStatement deleteContent = store.prepare(DELETE_CONTENT_RANGE);
+        deleteContent.setLong(1, firstMessageID);
+        deleteContent.setLong(2, lastMessageID);
+        deleteContent.addBatch();
+        PreparedStatement deleteMetadata = store.prepare(DELETE_METADATA_RANGE);
+        deleteMetadata.setInt(1, (int) (firstMessageID >>> QUEUE_INDEX_SHIFT));
+        deleteMetadata.setLong(2, firstMessageID);
+        deleteMetadata.setLong(3, lastMessageID);
+        deleteMetadata.addBatch();
+    }
+
+    /**
+     * Executes the batched content deletes, then the batched metadata deletes.
+     */
+    private void executeRanges() throws SQLException {
+        for (String delete : new String[]{DELETE_CONTENT_RANGE, DELETE_METADATA_RANGE}) {
+            for (int deletedRows : store.prepare(delete).executeBatch()) {
+                rowCount.addAndGet(deletedRows);
+            }
+        }
+    }
+
+    /**
+     * Gets the first failure of a delete, if any.
+     *
+     * @return The failure, or null.
+     */
+    SQLException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Gets the amount of batches committed since the last call and resets it.
+     *
+     * @return The batch count.
+     */
+    long takeBatchCount() {
+        return batchCount.getAndSet(0L);
+    }
+
+    /**
+     * Gets the amount of listed message IDs or ranges deleted since the last call and resets it.
+     *
+     * @return The range count.
+     */
+    long takeRangeCount() {
+        return rangeCount.getAndSet(0L);
+    }
+
+    /**
+     * Gets the amount of content and metadata rows deleted since the last call and resets it.
+     *
+     * @return The row count.
+     */
+    long takeRowCount() {
+        return rowCount.getAndSet(0L);
+    }
+
+    /**
+     * Closes the connection of the handler.
+     *
+     * @throws SQLException Thrown when the connection cannot be closed.
+     */
+    void close() throws SQLException {
+        store.close();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.mb.benchmarks;
+
+import com.lmax.disruptor.EventFactory;
+import com.lmax.disruptor.EventHandler;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Disruptor event handler which groups events in to batches the way the broker's inbound message
+ * writers and acknowledgement handlers do. A batch is flushed once it reaches the maximum batch size
+ * or when the Disruptor reports the end of the currently available events, so batches are smaller
+ * than the maximum at low load. The cost of the store operation is simulated by consuming CPU per
+ * batch and per event.
+ */
+class BatchingEventHandler implements EventHandler<BatchingEventHandler.Event> {
+
+    /**
+     * Creates events to pre-fill the ring buffer.
+     */
+    static final EventFactory<Event> EVENT_FACTORY = new EventFactory<Event>() {
+        @Override
+        public Event newInstance() {
+            return new Event();
+        }
+    };
+
+    /**
+     * The values of the events in the current batch.
+     */
+    private final long[] batch;
+
+    /**
+     * The amount of events in the current batch.
+     */
+    private int batchLength = 0;
+
+    /**
+     * The simulated cost of storing a batch, such as a database round trip.
+     */
+    private final long batchCostTokens;
+
+    /**
+     * The simulated cost of adding an event to a batch.
+     */
+    private final long eventCostTokens;
+
+    /**
+     * The amount of batches flushed since last taken.
+     */
+    private final AtomicLong batchCount = new AtomicLong();
+
+    /**
+     * The amount of events flushed since last taken.
+     */
+    private final AtomicLong eventCount = new AtomicLong();
+
+    /**
+     * Creates a batching handler.
+     *
+     * @param maximumBatchSize The maximum amount of events in a batch.
+     * @param batchCostTokens  The simulated cost of storing a batch in JMH CPU tokens.
+     * @param eventCostTokens  The simulated cost of adding an event to a batch in JMH CPU tokens.
+     */
+    BatchingEventHandler(int maximumBatchSize, long batchCostTokens, long eventCostTokens) {
+        this.batch = new long[maximumBatchSize];
+        this.batchCostTokens = batchCostTokens;
+        this.eventCostTokens = eventCostTokens;
+    }
+
+    @Override
+    public void onEvent(Event event, long sequence, boolean endOfBatch) {
+        batch[batchLength++] = event.value;
+        Blackhole.consumeCPU(eventCostTokens);
+        if (batch.length == batchLength || endOfBatch) {
+            Blackhole.consumeCPU(batchCostTokens);
+            eventCount.addAndGet(batchLength);
+            batchCount.incrementAndGet();
+            batchLength = 0;
+        }
+    }
+
+    /**
+     * Gets the amount of batches flushed since the last call and resets it.
+     *
+     * @return The batch count.
+     */
+    long takeBatchCount() {
+        return batchCount.getAndSet(0L);
+    }
+
+    /**
+     * Gets the amount of events flushed since the last call and resets it.
+     *
+     * @return The event count.
+     */
+    long takeEventCount() {
+        return eventCount.getAndSet(0L);
+    }
+
+    /**
+     * An event carrying a message ID.
+     */
+    static class Event {
+        long value;
+    }
+}
@@ -0,0 +1,669 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the message content cache the broker reads through when delivering messages
+ * (delivery/contentCache in broker.xml). The cache is read with a topic fan-out trace, where each
+ * published message is read by many subscribers shortly after it is published and a slow
+ * subscriber scans older messages. A miss loads the content with a simulated database read.
+ * <p>
+ * COUNT_LRU bounds the cache by the amount of entries (maximumSize) the way the broker does today,
+ * so its memory use depends on message sizes. TINY_LFU bounds the cache by the content size in
+ * bytes and uses W-TinyLFU eviction, which admits an entry to the main cache only when it is
+ * read more often than the entry it would replace, so scans do not flush frequently read content.
+ * TIERED keeps entries evicted from a TINY_LFU heap cache in an off-heap buffer. Hits, misses and
+ * evictions per second are reported as secondary results, so the hit rate of each policy can be
+ * read next to the cost of its bookkeeping.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContentCacheBenchmark {
+
+    /**
+     * The eviction policy of the cache. One of COUNT_LRU, TINY_LFU or TIERED.
+     */
+    @Param({"COUNT_LRU", "TINY_LFU", "TIERED"})
+    public String policy;
+
+    /**
+     * The maximum amount of entries of the COUNT_LRU cache. 100 is the broker default.
+     */
+    @Param({"100"})
+    public int maximumSize;
+
+    /**
+     * The maximum content size held in heap by the TINY_LFU and TIERED caches in megabytes.
+     */
+    @Param({"64"})
+    public int heapCacheSizeInMB;
+
+    /**
+     * The maximum content size held off heap by the TIERED cache in megabytes.
+     */
+    @Param({"256"})
+    public int offHeapCacheSizeInMB;
+
+    /**
+     * The percentage of 1MB messages. Other messages are 1KB.
+     */
+    @Param({"1", "10"})
+    public int largeMessagePercentage;
+
+    /**
+     * The simulated cost of reading the content of a message from the database in JMH CPU tokens.
+     */
+    @Param({"20000"})
+    public long loadCostTokens;
+
+    /**
+     * The size of a large message in bytes.
+     */
+    private static final int LARGE_MESSAGE_SIZE = 1024 * 1024;
+
+    /**
+     * The size of a small message in bytes.
+     */
+    private static final int SMALL_MESSAGE_SIZE = 1024;
+
+    /**
+     * The amount of content reads in the trace. Must be a power of two.
+     */
+    private static final int TRACE_LENGTH = 1 << 20;
+
+    /**
+     * The amount of reads done for each published message.
+     */
+    private static final int FAN_OUT = 10;
+
+    /**
+     * The amount of recently published messages the fan-out reads are spread over.
+     */
+    private static final int RECENT_MESSAGE_WINDOW = 1000;
+
+    /**
+     * The percentage of reads done by the slow subscriber.
+     */
+    private static final int SLOW_SUBSCRIBER_READ_PERCENTAGE = 20;
+
+    /**
+     * How far behind the latest message the slow subscriber reads.
+     */
+    private static final int SLOW_SUBSCRIBER_LAG = 20000;
+
+    /**
+     * The message IDs read, in order.
+     */
+    private long[] trace;
+
+    private int tracePosition;
+
+    private ContentCache cache;
+
+    @Setup
+    public void setup() {
+        long heapCacheSize = heapCacheSizeInMB * 1024L * 1024L;
+        if ("TINY_LFU".equals(policy)) {
+            cache = new TinyLfuContentCache(heapCacheSize, null);
+        } else if ("TIERED".equals(policy)) {
+            cache = new TieredContentCache(heapCacheSize, offHeapCacheSizeInMB * 1024L * 1024L);
+        } else {
+            cache = new LruContentCache(maximumSize);
+        }
+
+        trace = new long[TRACE_LENGTH];
+        Random random = new Random(TRACE_LENGTH);
+        long latestMessageID = SLOW_SUBSCRIBER_LAG;
+        long slowSubscriberMessageID = 0L;
+        for (int i = 0; i < TRACE_LENGTH; i++) {
+            if (0 == i % FAN_OUT) {
+                latestMessageID++;
+            }
+            if (SLOW_SUBSCRIBER_READ_PERCENTAGE > random.nextInt(100)) {
+                slowSubscriberMessageID = Math.max(slowSubscriberMessageID + 1, latestMessageID - SLOW_SUBSCRIBER_LAG);
+                trace[i] = slowSubscriberMessageID;
+            } else {
+                // Skewed towards the latest messages
+                double distance = random.nextDouble();
+                trace[i] = latestMessageID - (long) (RECENT_MESSAGE_WINDOW * distance * distance);
+            }
+        }
+    }
+
+    /**
+     * Reads the content of the next message in the trace through the cache, loading it on a miss.
+     *
+     * @param counters Counters of hits, misses and evictions.
+     * @return The content length.
+     */
+    @Benchmark
+    public int readContent(CacheCounters counters) {
+        long messageID = trace[tracePosition++ & (TRACE_LENGTH - 1)];
+        byte[] content = cache.get(messageID);
+        if (null == content) {
+            counters.misses++;
+            Blackhole.consumeCPU(loadCostTokens);
+            content = new byte[getContentSize(messageID)];
+            long evictionCount = cache.getEvictionCount();
+            cache.put(messageID, content);
+            counters.evictions = counters.evictions + cache.getEvictionCount() - evictionCount;
+        } else {
+            counters.hits++;
+        }
+        return content.length;
+    }
+
+    /**
+     * Gets the content size of a message, spreading large messages evenly over message IDs.
+     *
+     * @param messageID The message ID.
+     * @return The content size in bytes.
+     */
+    private int getContentSize(long messageID) {
+        long hash = messageID * 0x9E3779B97F4A7C15L;
+        int bucket = (int) ((hash >>> 32) % 100);
+        return (largeMessagePercentage > Math.abs(bucket)) ? LARGE_MESSAGE_SIZE : SMALL_MESSAGE_SIZE;
+    }
+
+    /**
+     * A cache of message content keyed by message ID. Implementations are not thread safe.
+     */
+    interface ContentCache {
+
+        /**
+         * Gets the cached content of a message.
+         *
+         * @param messageID The message ID.
+         * @return The content, or null if not cached.
+         */
+        byte[] get(long messageID);
+
+        /**
+         * Caches the content of a message, evicting other content if needed.
+         *
+         * @param messageID The message ID.
+         * @param content   The content.
+         */
+        void put(long messageID, byte[] content);
+
+        /**
+         * Gets the amount of content evicted from the cache.
+         *
+         * @return The eviction count.
+         */
+        long getEvictionCount();
+    }
+
+    /**
+     * Evicts the least recently read content once the amount of entries exceeds the maximum.
+     */
+    private static class LruContentCache implements ContentCache {
+
+        private final LinkedHashMap<Long, byte[]> entries;
+
+        private long evictionCount;
+
+        private LruContentCache(final int maximumSize) {
+            entries = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                    if (size() > maximumSize) {
+                        evictionCount++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        @Override
+        public byte[] get(long messageID) {
+            return entries.get(messageID);
+        }
+
+        @Override
+        public void put(long messageID, byte[] content) {
+            entries.put(messageID, content);
+        }
+
+        @Override
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+    }
+
+    /**
+     * A W-TinyLFU cache bounded by content size. New content enters a small LRU window. Content
+     * leaving the window is admitted to the main cache only if its estimated read frequency is
+     * higher than that of the main cache's eviction victim. The main cache is a segmented LRU where
+     * content read again while on probation is moved to the protected segment.
+     * <p>
+     * Compared to a production W-TinyLFU cache, the window has a fixed size instead of one adapted
+     * to the workload, the sketch has no doorkeeper filtering one-time reads, and admission is not
+     * randomized against hash collisions crafted to keep a victim in the cache.
+     */
+    static class TinyLfuContentCache implements ContentCache {
+
+        /**
+         * The percentage of the maximum weight given to the window.
+         */
+        private static final int WINDOW_PERCENTAGE = 1;
+
+        /**
+         * The percentage of the main cache weight given to the protected segment.
+         */
+        private static final int PROTECTED_PERCENTAGE = 80;
+
+        private final LinkedHashMap<Long, byte[]> window = new LinkedHashMap<>(16, 0.75f, true);
+
+        private final LinkedHashMap<Long, byte[]> probation = new LinkedHashMap<>(16, 0.75f, true);
+
+        private final LinkedHashMap<Long, byte[]> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+        private final FrequencySketch sketch;
+
+        /**
+         * The cache evicted content is handed to. Null if evicted content is dropped.
+         */
+        private final ContentCache nextTier;
+
+        private final long maximumWeight;
+
+        private final long maximumWindowWeight;
+
+        private final long maximumMainWeight;
+
+        private final long maximumProtectedWeight;
+
+        private long windowWeight;
+
+        private long probationWeight;
+
+        private long protectedWeight;
+
+        private long evictionCount;
+
+        TinyLfuContentCache(long maximumWeight, ContentCache nextTier) {
+            this.maximumWeight = maximumWeight;
+            this.maximumWindowWeight = Math.max(1L, maximumWeight * WINDOW_PERCENTAGE / 100);
+            this.maximumMainWeight = maximumWeight - maximumWindowWeight;
+            this.maximumProtectedWeight = maximumMainWeight * PROTECTED_PERCENTAGE / 100;
+            this.nextTier = nextTier;
+            // Sized for the amount of small messages the cache can hold
+            this.sketch = new FrequencySketch((int) Math.min(maximumWeight / SMALL_MESSAGE_SIZE, 1 << 20));
+        }
+
+        @Override
+        public byte[] get(long messageID) {
+            // Aging relative to the amount of cached entries, which depends on content sizes
+            sketch.increment(messageID, 10 * (window.size() + probation.size() + protectedSegment.size()));
+            byte[] content = window.get(messageID);
+            if (null != content) {
+                return content;
+            }
+            content = probation.remove(messageID);
+            if (null != content) {
+                probationWeight = probationWeight - content.length;
+                protectedSegment.put(messageID, content);
+                protectedWeight = protectedWeight + content.length;
+                demoteProtected();
+                return content;
+            }
+            return protectedSegment.get(messageID);
+        }
+
+        @Override
+        public void put(long messageID, byte[] content) {
+            if (content.length > maximumWeight) {
+                evict(messageID, content);
+                return;
+            }
+            byte[] previousContent = window.put(messageID, content);
+            windowWeight = windowWeight + content.length - ((null != previousContent) ? previousContent.length : 0);
+            while (windowWeight > maximumWindowWeight) {
+                Map.Entry<Long, byte[]> candidate = eldest(window);
+                window.remove(candidate.getKey());
+                windowWeight = windowWeight - candidate.getValue().length;
+                admit(candidate.getKey(), candidate.getValue());
+            }
+        }
+
+        @Override
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * Gets the total content size held by the window and the main cache.
+         *
+         * @return The weight in bytes.
+         */
+        long getWeight() {
+            return windowWeight + probationWeight + protectedWeight;
+        }
+
+        /**
+         * Moves content leaving the window in to the main cache if it is read more often than each
+         * of the entries it would replace. Victims are taken from probation first, least recently
+         * read first, until their weight makes room for the candidate. If any of them is read at
+         * least as often as the candidate, the candidate is evicted and the victims are kept.
+         *
+         * @param messageID The message ID of the candidate.
+         * @param content   The content of the candidate.
+         */
+        private void admit(long messageID, byte[] content) {
+            if (content.length > maximumMainWeight) {
+                evict(messageID, content);
+                return;
+            }
+            long requiredWeight = probationWeight + protectedWeight + content.length - maximumMainWeight;
+            if (0 < requiredWeight) {
+                int candidateFrequency = sketch.frequency(messageID);
+                List<Long> victims = new ArrayList<>();
+                Iterator<Map.Entry<Long, byte[]>> probationVictims = probation.entrySet().iterator();
+                Iterator<Map.Entry<Long, byte[]>> protectedVictims = protectedSegment.entrySet().iterator();
+                long victimWeight = 0L;
+                // The main cache holds at least the required weight, as the candidate fits in it
+                while (victimWeight < requiredWeight) {
+                    Map.Entry<Long, byte[]> victim = probationVictims.hasNext()
+                                                     ? probationVictims.next() : protectedVictims.next();
+                    if (sketch.frequency(victim.getKey()) >= candidateFrequency) {
+                        evict(messageID, content);
+                        return;
+                    }
+                    victims.add(victim.getKey());
+                    victimWeight = victimWeight + victim.getValue().length;
+                }
+                for (Long victim : victims) {
+                    byte[] victimContent = probation.remove(victim);
+                    if (null != victimContent) {
+                        probationWeight = probationWeight - victimContent.length;
+                    } else {
+                        victimContent = protectedSegment.remove(victim);
+                        protectedWeight = protectedWeight - victimContent.length;
+                    }
+                    evict(victim, victimContent);
+                }
+            }
+            probation.put(messageID, content);
+            probationWeight = probationWeight + content.length;
+        }
+
+        /**
+         * Moves the least recently read protected content back to probation while the protected
+         * segment is over its size.
+         */
+        private void demoteProtected() {
+            while (protectedWeight > maximumProtectedWeight) {
+                Map.Entry<Long, byte[]> demoted = eldest(protectedSegment);
+                protectedSegment.remove(demoted.getKey());
+                protectedWeight = protectedWeight - demoted.getValue().length;
+                probation.put(demoted.getKey(), demoted.getValue());
+                probationWeight = probationWeight + demoted.getValue().length;
+            }
+        }
+
+        private void evict(long messageID, byte[] content) {
+            evictionCount++;
+            if (null != nextTier) {
+                nextTier.put(messageID, content);
+            }
+        }
+
+        private static Map.Entry<Long, byte[]> eldest(LinkedHashMap<Long, byte[]> segment) {
+            return segment.entrySet().iterator().next();
+        }
+    }
+
+    /**
+     * Estimates how often message IDs were read using a count-min sketch of four 4-bit counters per
+     * ID. All counters are halved once the amount of increments reaches the sample size so that old
+     * reads are forgotten.
+     */
+    static class FrequencySketch {
+
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+                                             0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+        private static final int MAXIMUM_COUNT = 15;
+
+        private final byte[][] counters = new byte[SEEDS.length][];
+
+        private final int mask;
+
+        private int incrementCount;
+
+        FrequencySketch(int expectedEntries) {
+            int width = Integer.highestOneBit(Math.max(64, expectedEntries - 1) << 1);
+            for (int i = 0; i < SEEDS.length; i++) {
+                counters[i] = new byte[width];
+            }
+            this.mask = width - 1;
+        }
+
+        /**
+         * Counts a read of a message ID.
+         *
+         * @param messageID  The message ID.
+         * @param sampleSize The amount of increments after which counters are halved.
+         */
+        void increment(long messageID, int sampleSize) {
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = index(messageID, i);
+                if (MAXIMUM_COUNT > counters[i][index]) {
+                    counters[i][index]++;
+                }
+            }
+            if (++incrementCount >= Math.max(sampleSize, counters[0].length)) {
+                for (byte[] row : counters) {
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = (byte) (row[i] >>> 1);
+                    }
+                }
+                incrementCount = incrementCount / 2;
+            }
+        }
+
+        /**
+         * Estimates how often a message ID was read, up to 15. Hash collisions with other message
+         * IDs can only raise the estimate.
+         *
+         * @param messageID The message ID.
+         * @return The estimated read count.
+         */
+        int frequency(long messageID) {
+            int frequency = MAXIMUM_COUNT;
+            for (int i = 0; i < SEEDS.length; i++) {
+                frequency = Math.min(frequency, counters[i][index(messageID, i)]);
+            }
+            return frequency;
+        }
+
+        private int index(long messageID, int row) {
+            long hash = (messageID + SEEDS[row]) * SEEDS[row];
+            return (int) (hash >>> 32) & mask;
+        }
+    }
+
+    /**
+     * Keeps content in a single off-heap buffer written as a ring. Content is appended at the
+     * write position and the oldest content is evicted when the ring wraps over it. Reads copy the
+     * content back to the heap.
+     */
+    static class OffHeapContentCache implements ContentCache {
+
+        private final ByteBuffer buffer;
+
+        /**
+         * The offset and length of cached content by message ID.
+         */
+        private final Map<Long, int[]> index = new HashMap<>();
+
+        /**
+         * Cached message IDs in the order they were written.
+         */
+        private final ArrayDeque<Long> writeOrder = new ArrayDeque<>();
+
+        private int writePosition;
+
+        private long evictionCount;
+
+        OffHeapContentCache(long capacity) {
+            buffer = ByteBuffer.allocateDirect((int) Math.min(capacity, Integer.MAX_VALUE));
+        }
+
+        @Override
+        public byte[] get(long messageID) {
+            int[] location = index.get(messageID);
+            if (null == location) {
+                return null;
+            }
+            byte[] content = new byte[location[1]];
+            ByteBuffer reader = buffer.duplicate();
+            reader.position(location[0]);
+            reader.get(content);
+            return content;
+        }
+
+        @Override
+        public void put(long messageID, byte[] content) {
+            if (content.length > buffer.capacity() || index.containsKey(messageID)) {
+                return;
+            }
+            if (writePosition + content.length > buffer.capacity()) {
+                writePosition = 0;
+            }
+            int writeEnd = writePosition + content.length;
+            // Evicting the oldest content overlapped by the new content
+            Iterator<Long> oldest = writeOrder.iterator();
+            while (oldest.hasNext()) {
+                int[] location = index.get(oldest.next());
+                if (location[0] >= writeEnd || location[0] + location[1] <= writePosition) {
+                    break;
+                }
+                index.remove(writeOrder.pollFirst());
+                oldest = writeOrder.iterator();
+                evictionCount++;
+            }
+            ByteBuffer writer = buffer.duplicate();
+            writer.position(writePosition);
+            writer.put(content);
+            index.put(messageID, new int[]{writePosition, content.length});
+            writeOrder.addLast(messageID);
+            writePosition = writeEnd;
+        }
+
+        @Override
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+    }
+
+    /**
+     * A heap TinyLFU cache backed by an off-heap cache holding the content evicted from the heap.
+     * Content read from the off-heap cache is offered to the heap cache again.
+     */
+    static class TieredContentCache implements ContentCache {
+
+        private final OffHeapContentCache offHeapCache;
+
+        private final TinyLfuContentCache heapCache;
+
+        TieredContentCache(long heapCacheSize, long offHeapCacheSize) {
+            offHeapCache = new OffHeapContentCache(offHeapCacheSize);
+            heapCache = new TinyLfuContentCache(heapCacheSize, offHeapCache);
+        }
+
+        @Override
+        public byte[] get(long messageID) {
+            byte[] content = heapCache.get(messageID);
+            if (null == content) {
+                content = offHeapCache.get(messageID);
+                if (null != content) {
+                    heapCache.put(messageID, content);
+                }
+            }
+            return content;
+        }
+
+        @Override
+        public void put(long messageID, byte[] content) {
+            heapCache.put(messageID, content);
+        }
+
+        @Override
+        public long getEvictionCount() {
+            return offHeapCache.getEvictionCount();
+        }
+    }
+
+    /**
+     * Cache hits, misses and evictions, reported per second by JMH.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class CacheCounters {
+
+        public long hits;
+
+        public long misses;
+
+        public long evictions;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hits = 0L;
+            misses = 0L;
+            evictions = 0L;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.mb.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures splitting message content in to chunks of the broker's maximum content chunk size
+ * (performanceTuning/contentHandling/maxContentChunkSize in broker.xml) and reassembling them.
+ * AMQP frames content in chunks of up to 65534 bytes and MQTT delivers a message as a single
+ * chunk, both of which the broker re-chunks before storing.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContentChunkingBenchmark {
+
+    /**
+     * The size of the message content in bytes.
+     */
+    @Param({"1024", "65536", "1048576"})
+    public int messageSize;
+
+    /**
+     * The maximum size of a stored content chunk in bytes. 65500 is the broker default.
+     */
+    @Param({"16384", "65500", "262144"})
+    public int maxContentChunkSize;
+
+    /**
+     * The message content to split.
+     */
+    private byte[] content;
+
+    /**
+     * The chunks of the message content to reassemble.
+     */
+    private List<byte[]> chunks;
+
+    @Setup
+    public void setup() {
+        content = new byte[messageSize];
+        new Random(messageSize).nextBytes(content);
+        chunks = splitContent(content, maxContentChunkSize);
+    }
+
+    @Benchmark
+    public List<byte[]> splitContent() {
+        return splitContent(content, maxContentChunkSize);
+    }
+
+    @Benchmark
+    public byte[] reassembleContent() {
+        byte[] reassembledContent = new byte[messageSize];
+        int offset = 0;
+        for (byte[] chunk : chunks) {
+            System.arraycopy(chunk, 0, reassembledContent, offset, chunk.length);
+            offset = offset + chunk.length;
+        }
+        return reassembledContent;
+    }
+
+    /**
+     * Splits content in to chunks, copying each chunk as it is stored separately.
+     *
+     * @param content      The content to split.
+     * @param maxChunkSize The maximum size of a chunk.
+     * @return The chunks in order.
+     */
+    private static List<byte[]> splitContent(byte[] content, int maxChunkSize) {
+        List<byte[]> chunks = new ArrayList<>((content.length / maxChunkSize) + 1);
+        for (int offset = 0; offset < content.length; offset = offset + maxChunkSize) {
+            int chunkSize = Math.min(maxChunkSize, content.length - offset);
+            byte[] chunk = new byte[chunkSize];
+            System.arraycopy(content, offset, chunk, 0, chunkSize);
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.mb.benchmarks;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures LZ4 compression of message content as done by the broker when allowCompression is
+ * enabled (performanceTuning/contentHandling in broker.xml). Content smaller than
+ * contentCompressionThreshold is stored as it is, hence sizes on both sides of the default
+ * threshold are measured. Text content compresses well while random content does not, which
+ * gives the best and worst case.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContentCompressionBenchmark {
+
+    /**
+     * The size of the message content in bytes.
+     */
+    @Param({"512", "4096", "65500"})
+    public int messageSize;
+
+    /**
+     * The content size in bytes below which content is not compressed. 1000 is the broker
+     * default.
+     */
+    @Param({"1000"})
+    public int contentCompressionThreshold;
+
+    /**
+     * The kind of content. Either TEXT or RANDOM.
+     */
+    @Param({"TEXT", "RANDOM"})
+    public String contentType;
+
+    private LZ4Compressor compressor;
+
+    private LZ4FastDecompressor decompressor;
+
+    /**
+     * The content to compress.
+     */
+    private byte[] content;
+
+    /**
+     * The compressed content to decompress.
+     */
+    private byte[] compressedContent;
+
+    @Setup
+    public void setup() {
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        compressor = factory.fastCompressor();
+        decompressor = factory.fastDecompressor();
+
+        content = new byte[messageSize];
+        if ("RANDOM".equals(contentType)) {
+            new Random(messageSize).nextBytes(content);
+        } else {
+            byte[] text = ("{\"sensor\":\"temperature\",\"unit\":\"celsius\",\"value\":23.5,"
+                           + "\"location\":\"building-1/floor-2\"}\n").getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < messageSize; i++) {
+                content[i] = text[i % text.length];
+            }
+        }
+        compressedContent = compressor.compress(content);
+    }
+
+    @Benchmark
+    public byte[] compressAboveThreshold() {
+        if (content.length < contentCompressionThreshold) {
+            return content;
+        }
+        return compressor.compress(content);
+    }
+
+    @Benchmark
+    public byte[] decompress() {
+        return decompressor.decompress(compressedContent, messageSize);
+    }
+}
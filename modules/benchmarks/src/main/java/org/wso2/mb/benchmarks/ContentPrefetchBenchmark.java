@@ -0,0 +1,292 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.mb.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading message content for delivery when many queues have a few messages each, as in
+ * ManySubscribersTestCase with a queue per subscriber, against an {@link EmbeddedMessageStore}.
+ * Each benchmark invocation is a delivery round over all queues. A share of the queues have
+ * messages waiting in a round, and the content of as many of them as the queue's consumer has
+ * credit for is read. The messages are stored once, so rounds read the same rows again.
+ * <p>
+ * PER_QUEUE reads the content of each queue with its own query listing the queue's message IDs, in
+ * batches of up to contentReadBatchSize messages (performanceTuning/delivery/contentReadBatchSize
+ * in broker.xml). IN_LIST coalesces the reads of all queues in to queries with up to inListSize
+ * message IDs in an IN (...) clause. TEMP_TABLE inserts the message IDs of up to
+ * contentReadBatchSize messages in to a temporary table with one batched insert, reads the content
+ * with a join and clears the table on commit. Database round trips and messages read per second
+ * are reported as secondary results.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContentPrefetchBenchmark {
+
+    /**
+     * How content reads are issued. One of PER_QUEUE, IN_LIST or TEMP_TABLE.
+     */
+    @Param({"PER_QUEUE", "IN_LIST", "TEMP_TABLE"})
+    public String readMode;
+
+    /**
+     * The amount of queues, each with its own consumer.
+     */
+    @Param({"100", "1000", "10000"})
+    public int queueCount;
+
+    /**
+     * The percentage of queues which have messages waiting in a delivery round.
+     */
+    @Param({"10", "100"})
+    public int activeQueuePercentage;
+
+    /**
+     * The amount of messages a consumer can receive in a delivery round.
+     */
+    @Param({"10"})
+    public int consumerCredit;
+
+    /**
+     * The maximum amount of messages read by a single content read. 65000 is the broker default.
+     */
+    @Param({"65000"})
+    public int contentReadBatchSize;
+
+    /**
+     * The maximum amount of message IDs in an IN (...) clause. Databases limit the size of the list.
+     */
+    @Param({"1000"})
+    public int inListSize;
+
+    /**
+     * The size of the content of a message.
+     */
+    @Param({"256"})
+    public int contentSize;
+
+    /**
+     * The JDBC URL of the database.
+     */
+    @Param({"jdbc:h2:mem:prefetch"})
+    public String jdbcUrl;
+
+    private static final String SELECT_CONTENT
+            = "SELECT MESSAGE_ID, CONTENT_OFFSET, MESSAGE_CONTENT FROM MB_CONTENT WHERE MESSAGE_ID IN (";
+
+    private static final String CREATE_READ_TABLE
+            = "CREATE LOCAL TEMPORARY TABLE MB_CONTENT_READ (MESSAGE_ID BIGINT PRIMARY KEY) ON COMMIT DELETE ROWS";
+
+    private static final String INSERT_READ_MESSAGE_ID = "INSERT INTO MB_CONTENT_READ (MESSAGE_ID) VALUES (?)";
+
+    private static final String SELECT_READ_CONTENT = "SELECT C.MESSAGE_ID, C.CONTENT_OFFSET, C.MESSAGE_CONTENT "
+            + "FROM MB_CONTENT_READ R JOIN MB_CONTENT C ON C.MESSAGE_ID=R.MESSAGE_ID";
+
+    private EmbeddedMessageStore store;
+
+    /**
+     * The IDs of the messages waiting in each queue. Messages of different queues are interleaved
+     * in ID order, as they are published at the same time.
+     */
+    private long[][] queueMessageIDs;
+
+    /**
+     * The message IDs collected for a coalesced read.
+     */
+    private long[] coalescedMessageIDs;
+
+    private int coalescedMessageCount;
+
+    private Random random;
+
+    @Setup
+    public void setup() throws SQLException {
+        store = new EmbeddedMessageStore(jdbcUrl, contentSize);
+        store.createTables("");
+        queueMessageIDs = new long[queueCount][consumerCredit];
+        for (int i = 0; i < queueCount; i++) {
+            for (int j = 0; j < consumerCredit; j++) {
+                queueMessageIDs[i][j] = (long) j * queueCount + i + 1;
+            }
+            store.insertMessages("", i, queueMessageIDs[i], 0, consumerCredit, 0L);
+        }
+        try (Statement statement = store.getConnection().createStatement()) {
+            statement.execute(CREATE_READ_TABLE);
+        }
+        store.commit();
+        int maximumCoalescedMessageCount = "IN_LIST".equals(readMode) ? inListSize : contentReadBatchSize;
+        coalescedMessageIDs = new long[maximumCoalescedMessageCount];
+        random = new Random(queueCount);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        store.close();
+    }
+
+    /**
+     * Reads the content of the messages which can be delivered to the consumers of the queues
+     * which have messages waiting.
+     *
+     * @param counters  Counters of round trips and messages read.
+     * @param blackhole Consumes the content read.
+     * @return The amount of messages whose content was read.
+     * @throws SQLException Thrown when a content read fails.
+     */
+    @Benchmark
+    public int deliveryRound(ReadCounters counters, Blackhole blackhole) throws SQLException {
+        int readMessageCount = 0;
+        for (int i = 0; i < queueCount; i++) {
+            if (activeQueuePercentage <= random.nextInt(100)) {
+                continue;
+            }
+            long[] messageIDs = queueMessageIDs[i];
+            readMessageCount = readMessageCount + messageIDs.length;
+            if ("PER_QUEUE".equals(readMode)) {
+                for (int offset = 0; offset < messageIDs.length; offset = offset + contentReadBatchSize) {
+                    readContent(messageIDs, offset, Math.min(contentReadBatchSize, messageIDs.length - offset),
+                                counters, blackhole);
+                }
+            } else {
+                // Messages of a queue may be split across coalesced reads
+                for (long messageID : messageIDs) {
+                    coalescedMessageIDs[coalescedMessageCount++] = messageID;
+                    if (coalescedMessageIDs.length == coalescedMessageCount) {
+                        readCoalescedContent(counters, blackhole);
+                    }
+                }
+            }
+        }
+        if (0 < coalescedMessageCount) {
+            readCoalescedContent(counters, blackhole);
+        }
+        counters.messagesRead = counters.messagesRead + readMessageCount;
+        return readMessageCount;
+    }
+
+    /**
+     * Reads the content of the collected message IDs.
+     *
+     * @param counters  Counters of round trips and messages read.
+     * @param blackhole Consumes the content read.
+     * @throws SQLException Thrown when the content read fails.
+     */
+    private void readCoalescedContent(ReadCounters counters, Blackhole blackhole) throws SQLException {
+        if ("TEMP_TABLE".equals(readMode)) {
+            readContentThroughTemporaryTable(counters, blackhole);
+        } else {
+            readContent(coalescedMessageIDs, 0, coalescedMessageCount, counters, blackhole);
+        }
+        coalescedMessageCount = 0;
+    }
+
+    /**
+     * Reads the content of messages with a query listing their IDs.
+     *
+     * @param messageIDs The message IDs.
+     * @param offset     The index of the first message ID to read.
+     * @param count      The amount of messages to read.
+     * @param counters   Counters of round trips and messages read.
+     * @param blackhole  Consumes the content read.
+     * @throws SQLException Thrown when the query fails.
+     */
+    private void readContent(long[] messageIDs, int offset, int count, ReadCounters counters, Blackhole blackhole)
+            throws SQLException {
+        PreparedStatement statement = store.prepareInList(SELECT_CONTENT, count);
+        for (int i = 0; i < count; i++) {
+            statement.setLong(i + 1, messageIDs[offset + i]);
+        }
+        consumeContent(statement, blackhole);
+        counters.roundTrips++;
+    }
+
+    /**
+     * Inserts the collected message IDs in to the temporary table, reads the content with a join
+     * and commits, which clears the temporary table.
+     *
+     * @param counters  Counters of round trips and messages read.
+     * @param blackhole Consumes the content read.
+     * @throws SQLException Thrown when a statement fails.
+     */
+    private void readContentThroughTemporaryTable(ReadCounters counters, Blackhole blackhole)
+            throws SQLException {
+        PreparedStatement insert = store.prepare(INSERT_READ_MESSAGE_ID);
+        for (int i = 0; i < coalescedMessageCount; i++) {
+            insert.setLong(1, coalescedMessageIDs[i]);
+            insert.addBatch();
+        }
+        insert.executeBatch();
+        consumeContent(store.prepare(SELECT_READ_CONTENT), blackhole);
+        store.commit();
+        counters.roundTrips = counters.roundTrips + 3;
+    }
+
+    private static void consumeContent(PreparedStatement statement, Blackhole blackhole) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                blackhole.consume(resultSet.getLong(1));
+                blackhole.consume(resultSet.getInt(2));
+                blackhole.consume(resultSet.getBytes(3));
+            }
+        }
+    }
+
+    /**
+     * Database round trips and messages read, reported per second by JMH.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ReadCounters {
+
+        public long roundTrips;
+
+        public long messagesRead;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            roundTrips = 0L;
+            messagesRead = 0L;
+        }
+    }
+}
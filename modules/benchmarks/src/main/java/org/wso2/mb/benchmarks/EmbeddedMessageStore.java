@@ -0,0 +1,358 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.benchmarks;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A message store in an embedded H2 database, with metadata, content and expiration tables laid
+ * out like the tables of the broker's RDBMS store. A message has a single content chunk.
+ * <p>
+ * Benchmarks use it to execute the statements they compare against real tables and indexes. The
+ * default in-memory database runs in the benchmark JVM, so a round trip only costs the statement
+ * overhead. A TCP URL of an H2 server, such as jdbc:h2:tcp://localhost/mem:benchmark, adds the
+ * network round trip between the broker and the database.
+ */
+final class EmbeddedMessageStore {
+
+    private static final String CREATE_METADATA_TABLE = "CREATE TABLE MB_METADATA%s (MESSAGE_ID BIGINT, "
+            + "QUEUE_ID INT, DLC_QUEUE_ID INT NOT NULL, MESSAGE_METADATA BINARY, PRIMARY KEY (MESSAGE_ID, QUEUE_ID))";
+
+    private static final String CREATE_METADATA_QUEUE_INDEX
+            = "CREATE INDEX MB_METADATA_QUEUE_INDEX%s ON MB_METADATA%1$s (QUEUE_ID, MESSAGE_ID)";
+
+    private static final String CREATE_CONTENT_TABLE = "CREATE TABLE MB_CONTENT%s (MESSAGE_ID BIGINT, "
+            + "CONTENT_OFFSET INT, MESSAGE_CONTENT BLOB NOT NULL, PRIMARY KEY (MESSAGE_ID, CONTENT_OFFSET))";
+
+    private static final String CREATE_EXPIRATION_TABLE = "CREATE TABLE MB_EXPIRATION_DATA%s (MESSAGE_ID BIGINT "
+            + "UNIQUE, EXPIRATION_TIME BIGINT, DLC_QUEUE_ID INT NOT NULL, MESSAGE_DESTINATION VARCHAR NOT NULL)";
+
+    private static final String CREATE_EXPIRATION_TIME_INDEX
+            = "CREATE INDEX MB_EXPIRATION_TIME_INDEX%s ON MB_EXPIRATION_DATA%1$s (EXPIRATION_TIME)";
+
+    private static final String INSERT_METADATA
+            = "INSERT INTO MB_METADATA%s (MESSAGE_ID, QUEUE_ID, DLC_QUEUE_ID, MESSAGE_METADATA) VALUES (?, ?, -1, ?)";
+
+    private static final String INSERT_CONTENT
+            = "INSERT INTO MB_CONTENT%s (MESSAGE_ID, CONTENT_OFFSET, MESSAGE_CONTENT) VALUES (?, 0, ?)";
+
+    private static final String INSERT_EXPIRATION = "INSERT INTO MB_EXPIRATION_DATA%s "
+            + "(MESSAGE_ID, EXPIRATION_TIME, DLC_QUEUE_ID, MESSAGE_DESTINATION) VALUES (?, ?, -1, ?)";
+
+    private static final String[] TABLES = {"MB_CONTENT", "MB_METADATA", "MB_EXPIRATION_DATA"};
+
+    /**
+     * The size of the serialized metadata of a message.
+     */
+    private static final int METADATA_SIZE = 200;
+
+    private final Connection connection;
+
+    private final byte[] metadata;
+
+    private final byte[] content;
+
+    /**
+     * Prepared statements by their SQL.
+     */
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    /**
+     * Connects to the database. Statements are committed explicitly.
+     *
+     * @param jdbcUrl     The JDBC URL of the database.
+     * @param contentSize The size of the content of a message.
+     * @throws SQLException Thrown when the database cannot be connected.
+     */
+    EmbeddedMessageStore(String jdbcUrl, int contentSize) throws SQLException {
+        connection = DriverManager.getConnection(jdbcUrl);
+        connection.setAutoCommit(false);
+        Random random = new Random(contentSize);
+        metadata = new byte[METADATA_SIZE];
+        random.nextBytes(metadata);
+        content = new byte[contentSize];
+        random.nextBytes(content);
+    }
+
+    /**
+     * Creates the metadata, content and expiration tables.
+     *
+     * @param tableSuffix The suffix of the table names, such as "" or the bucket of a partitioned layout.
+     * @throws SQLException Thrown when a table cannot be created.
+     */
+    void createTables(String tableSuffix) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(String.format(CREATE_METADATA_TABLE, tableSuffix));
+            statement.execute(String.format(CREATE_METADATA_QUEUE_INDEX, tableSuffix));
+            statement.execute(String.format(CREATE_CONTENT_TABLE, tableSuffix));
+            statement.execute(String.format(CREATE_EXPIRATION_TABLE, tableSuffix));
+            statement.execute(String.format(CREATE_EXPIRATION_TIME_INDEX, tableSuffix));
+        }
+        connection.commit();
+    }
+
+    /**
+     * Drops the metadata, content and expiration tables if they exist.
+     *
+     * @param tableSuffix The suffix of the table names.
+     * @return The amount of executed statements.
+     * @throws SQLException Thrown when a table cannot be dropped.
+     */
+    int dropTables(String tableSuffix) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String table : TABLES) {
+                statement.execute("DROP TABLE IF EXISTS " + table + tableSuffix);
+            }
+        }
+        connection.commit();
+        return TABLES.length;
+    }
+
+    /**
+     * Stores messages of a queue with batched inserts and commits them.
+     *
+     * @param tableSuffix    The suffix of the table names.
+     * @param queueID        The ID of the queue.
+     * @param messageIDs     The IDs of the messages.
+     * @param offset         The index of the first message ID to store.
+     * @param count          The amount of messages to store.
+     * @param expirationTime The expiration time of the messages, or 0 if they do not expire.
+     * @throws SQLException Thrown when the messages cannot be stored.
+     */
+    void insertMessages(String tableSuffix, int queueID, long[] messageIDs, int offset, int count,
+                        long expirationTime) throws SQLException {
+        PreparedStatement insertMetadata = prepare(String.format(INSERT_METADATA, tableSuffix));
+        PreparedStatement insertContent = prepare(String.format(INSERT_CONTENT, tableSuffix));
+        PreparedStatement insertExpiration = prepare(String.format(INSERT_EXPIRATION, tableSuffix));
+        for (int i = offset; i < offset + count; i++) {
+            insertMetadata.setLong(1, messageIDs[i]);
+            insertMetadata.setInt(2, queueID);
+            insertMetadata.setBytes(3, metadata);
+            insertMetadata.addBatch();
+            insertContent.setLong(1, messageIDs[i]);
+            insertContent.setBytes(2, content);
+            insertContent.addBatch();
+            if (0 < expirationTime) {
+                insertExpiration.setLong(1, messageIDs[i]);
+                insertExpiration.setLong(2, expirationTime);
+                insertExpiration.setString(3, "queue" + queueID);
+                insertExpiration.addBatch();
+            }
+        }
+        insertMetadata.executeBatch();
+        insertContent.executeBatch();
+        if (0 < expirationTime) {
+            insertExpiration.executeBatch();
+        }
+        connection.commit();
+    }
+
+    /**
+     * Writes the metadata and content rows of messages of a queue with multi-row inserts of up to
+     * rowsPerStatement rows. Full statements of a table are executed as a JDBC batch. The statements
+     * are not committed.
+     *
+     * @param tableSuffix      The suffix of the table names.
+     * @param queueID          The ID of the queue.
+     * @param messageIDs       The IDs of the messages, from the first index.
+     * @param count            The amount of messages to write.
+     * @param rowsPerStatement The maximum amount of rows inserted by a statement. 1 inserts a row per
+     *                         JDBC batch entry.
+     * @return The amount of statements executed.
+     * @throws SQLException Thrown when the rows cannot be inserted.
+     */
+    int insertMessageRows(String tableSuffix, int queueID, long[] messageIDs, int count, int rowsPerStatement)
+            throws SQLException {
+        String insertMetadata = String.format(INSERT_METADATA, tableSuffix);
+        String insertContent = String.format(INSERT_CONTENT, tableSuffix);
+        int fullStatements = count / rowsPerStatement;
+        int remainingRows = count % rowsPerStatement;
+        if (0 < fullStatements) {
+            PreparedStatement metadataStatement = prepareMultiRow(insertMetadata, rowsPerStatement);
+            PreparedStatement contentStatement = prepareMultiRow(insertContent, rowsPerStatement);
+            for (int i = 0; i < fullStatements; i++) {
+                setRows(metadataStatement, contentStatement, queueID, messageIDs, i * rowsPerStatement,
+                        rowsPerStatement);
+                metadataStatement.addBatch();
+                contentStatement.addBatch();
+            }
+            metadataStatement.executeBatch();
+            contentStatement.executeBatch();
+        }
+        if (0 < remainingRows) {
+            PreparedStatement metadataStatement = prepareMultiRow(insertMetadata, remainingRows);
+            PreparedStatement contentStatement = prepareMultiRow(insertContent, remainingRows);
+            setRows(metadataStatement, contentStatement, queueID, messageIDs, count - remainingRows,
+                    remainingRows);
+            metadataStatement.executeUpdate();
+            contentStatement.executeUpdate();
+        }
+        return 2 * (fullStatements + ((0 < remainingRows) ? 1 : 0));
+    }
+
+    /**
+     * Returns a prepared insert of the given amount of rows, made by repeating the values of a single
+     * row insert.
+     */
+    private PreparedStatement prepareMultiRow(String singleRowInsert, int rows) throws SQLException {
+        String rowValues = singleRowInsert.substring(singleRowInsert.lastIndexOf('('));
+        StringBuilder sql = new StringBuilder(singleRowInsert.length() + (rowValues.length() + 2) * rows);
+        sql.append(singleRowInsert);
+        for (int i = 1; i < rows; i++) {
+            sql.append(", ").append(rowValues);
+        }
+        return prepare(sql.toString());
+    }
+
+    /**
+     * Sets the parameters of multi-row metadata and content inserts.
+     */
+    private void setRows(PreparedStatement metadataStatement, PreparedStatement contentStatement, int queueID,
+                         long[] messageIDs, int offset, int rows) throws SQLException {
+        for (int i = 0; i < rows; i++) {
+            metadataStatement.setLong(3 * i + 1, messageIDs[offset + i]);
+            metadataStatement.setInt(3 * i + 2, queueID);
+            metadataStatement.setBytes(3 * i + 3, metadata);
+            contentStatement.setLong(2 * i + 1, messageIDs[offset + i]);
+            contentStatement.setBytes(2 * i + 2, content);
+        }
+    }
+
+    /**
+     * Reads message IDs with a query taking a single parameter.
+     *
+     * @param query      The query selecting message IDs.
+     * @param parameter  The value of the parameter.
+     * @param messageIDs The array the message IDs are read in to.
+     * @return The amount of message IDs read, at most the length of the array.
+     * @throws SQLException Thrown when the query fails.
+     */
+    int readMessageIDs(String query, long parameter, long[] messageIDs) throws SQLException {
+        PreparedStatement statement = prepare(query);
+        statement.setLong(1, parameter);
+        int count = 0;
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (count < messageIDs.length && resultSet.next()) {
+                messageIDs[count++] = resultSet.getLong(1);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Deletes rows of a table with a statement listing their message IDs. The statement is not
+     * committed.
+     *
+     * @param table      The table to delete from.
+     * @param messageIDs The message IDs.
+     * @param offset     The index of the first message ID to list.
+     * @param count      The amount of message IDs to list.
+     * @return The amount of deleted rows.
+     * @throws SQLException Thrown when the statement fails.
+     */
+    int deleteByMessageIDs(String table, long[] messageIDs, int offset, int count) throws SQLException {
+        PreparedStatement statement = prepareInList("DELETE FROM " + table + " WHERE MESSAGE_ID IN (", count);
+        for (int i = 0; i < count; i++) {
+            statement.setLong(i + 1, messageIDs[offset + i]);
+        }
+        return statement.executeUpdate();
+    }
+
+    /**
+     * Returns a prepared statement ending with an IN (...) clause of the given amount of parameters.
+     *
+     * @param sqlPrefix      The SQL up to and including "IN (".
+     * @param parameterCount The amount of parameters in the list.
+     * @return The prepared statement.
+     * @throws SQLException Thrown when the statement cannot be prepared.
+     */
+    PreparedStatement prepareInList(String sqlPrefix, int parameterCount) throws SQLException {
+        StringBuilder sql = new StringBuilder(sqlPrefix.length() + 2 * parameterCount);
+        sql.append(sqlPrefix);
+        for (int i = 0; i < parameterCount; i++) {
+            sql.append(0 == i ? "?" : ",?");
+        }
+        return prepare(sql.append(')').toString());
+    }
+
+    /**
+     * Returns a prepared statement, preparing it on first use.
+     *
+     * @param sql The SQL of the statement.
+     * @return The prepared statement.
+     * @throws SQLException Thrown when the statement cannot be prepared.
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (null == statement) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Closes the prepared statements of tables which are about to be dropped or recreated.
+     *
+     * @throws SQLException Thrown when a statement cannot be closed.
+     */
+    void closeStatements() throws SQLException {
+        for (PreparedStatement statement : statements.values()) {
+            statement.close();
+        }
+        statements.clear();
+    }
+
+    /**
+     * Returns the connection, for statements which are not prepared.
+     *
+     * @return The connection to the database.
+     */
+    Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Commits the statements executed since the last commit.
+     *
+     * @throws SQLException Thrown when the commit fails.
+     */
+    void commit() throws SQLException {
+        connection.commit();
+    }
+
+    /**
+     * Closes the connection. An in-memory database is discarded with its last connection.
+     *
+     * @throws SQLException Thrown when the connection cannot be closed.
+     */
+    void close() throws SQLException {
+        closeStatements();
+        connection.close();
+    }
+}
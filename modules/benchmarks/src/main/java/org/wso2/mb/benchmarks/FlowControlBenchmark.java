@@ -0,0 +1,474 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Compares watermark based flow control with credit based flow control while publishers overload
+ * the message store writer.
+ * <p>
+ * WATERMARK follows flowControl/global in broker.xml. Flow is stopped for all publishers once the
+ * buffered message count reaches highLimit and resumed once the writer drains it to lowLimit.
+ * CREDIT gives each publisher credits, where a credit allows publishing one message. The writer
+ * refills credits as it writes messages, so the refill rate follows the measured store write
+ * throughput. Credits are shared in proportion to publisher weights and are capped per publisher, so
+ * a publisher cannot hoard credits it does not use.
+ * <p>
+ * Each benchmark thread is a publisher. The first publisher has heavyPublisherWeight while the others
+ * have a weight of 1. Throughput is measured at the publishers. The messages published and the
+ * nanoseconds throttled per second by the first publisher and by the others are reported as
+ * secondary results, along with the coefficient of variation of the publish rate over 1ms windows,
+ * which shows the on and off oscillation.
+ * <p>
+ * The writer inserts each batch in to an {@link EmbeddedMessageStore} and commits it. To keep the
+ * tables at a steady size, it also deletes the messages written more than RETAINED_MESSAGE_COUNT
+ * messages earlier in the same transaction, as consumers acknowledging them would. An iteration has
+ * to be longer than the writer takes to drain highLimit - lowLimit messages, otherwise throttled
+ * publishes span iterations and the per iteration counts are skewed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+@Threads(4)
+public class FlowControlBenchmark {
+
+    /**
+     * The maximum amount of publishers. Matches the benchmark thread count.
+     */
+    private static final int MAXIMUM_PUBLISHERS = 4;
+
+    /**
+     * The amount of publish rate samples kept. Older samples are overwritten.
+     */
+    private static final int RATE_SAMPLE_COUNT = 4096;
+
+    private static final long RATE_SAMPLE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * The time a throttled publisher parks before checking again.
+     */
+    private static final long THROTTLED_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    /**
+     * The amount of most recently written messages the writer keeps in the store.
+     */
+    private static final int RETAINED_MESSAGE_COUNT = 10000;
+
+    /**
+     * The queue the messages are published to.
+     */
+    private static final int QUEUE_ID = 1;
+
+    private static final String DELETE_CONTENT_RANGE = "DELETE FROM MB_CONTENT WHERE MESSAGE_ID BETWEEN ? AND ?";
+
+    private static final String DELETE_METADATA_RANGE
+            = "DELETE FROM MB_METADATA WHERE QUEUE_ID=? AND MESSAGE_ID BETWEEN ? AND ?";
+
+    /**
+     * The flow control policy. One of WATERMARK or CREDIT.
+     */
+    @Param({"WATERMARK", "CREDIT"})
+    public String flowControlMode;
+
+    /**
+     * The buffered message count at which WATERMARK stops flow. 8000 is the broker default.
+     */
+    @Param({"8000"})
+    public int highLimit;
+
+    /**
+     * The buffered message count at which WATERMARK resumes flow. 800 is the broker default.
+     */
+    @Param({"800"})
+    public int lowLimit;
+
+    /**
+     * The weight of the first publisher relative to the others under CREDIT.
+     */
+    @Param({"1", "3"})
+    public int heavyPublisherWeight;
+
+    /**
+     * The maximum amount of messages the store writer writes at a time.
+     */
+    @Param({"100"})
+    public int writeBatchSize;
+
+    /**
+     * The size of the content of a message.
+     */
+    @Param({"1024"})
+    public int contentSize;
+
+    /**
+     * The JDBC URL of the database.
+     */
+    @Param({"jdbc:h2:mem:flowcontrol"})
+    public String jdbcUrl;
+
+    private EmbeddedMessageStore store;
+
+    /**
+     * Messages published and not yet written to the store.
+     */
+    private final AtomicLong bufferedMessages = new AtomicLong();
+
+    /**
+     * Whether publishers may publish under WATERMARK.
+     */
+    private volatile boolean flowEnabled = true;
+
+    /**
+     * The remaining credits of each publisher under CREDIT.
+     */
+    private final AtomicLongArray credits = new AtomicLongArray(MAXIMUM_PUBLISHERS);
+
+    private final AtomicLongArray publishedMessages = new AtomicLongArray(MAXIMUM_PUBLISHERS);
+
+    private final AtomicInteger publisherIndexes = new AtomicInteger();
+
+    private final long[] rateSamples = new long[RATE_SAMPLE_COUNT];
+
+    /**
+     * The amount of publish rate samples taken by the writer.
+     */
+    private volatile long rateSampleCount;
+
+    /**
+     * The amount of publish rate samples already reported.
+     */
+    private final AtomicLong reportedRateSampleCount = new AtomicLong();
+
+    private int[] weights;
+
+    private int totalWeight;
+
+    private volatile boolean running;
+
+    private Thread writer;
+
+    /**
+     * The failure which stopped the writer, if any.
+     */
+    private volatile SQLException writeFailure;
+
+    @Setup
+    public void setup() throws SQLException {
+        store = new EmbeddedMessageStore(jdbcUrl, contentSize);
+        store.createTables("");
+        weights = new int[MAXIMUM_PUBLISHERS];
+        totalWeight = 0;
+        for (int i = 0; i < MAXIMUM_PUBLISHERS; i++) {
+            weights[i] = (0 == i) ? heavyPublisherWeight : 1;
+            totalWeight = totalWeight + weights[i];
+        }
+        // The high limit is shared as the initial credits
+        for (int i = 0; i < MAXIMUM_PUBLISHERS; i++) {
+            credits.set(i, getCreditLimit(i));
+        }
+        running = true;
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeMessages();
+            }
+        }, "StoreWriter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException, SQLException {
+        running = false;
+        writer.join();
+        store.dropTables("");
+        store.close();
+    }
+
+    /**
+     * Publishes a message once flow control allows it.
+     *
+     * @param publisher The state and counters of the publishing thread.
+     * @param rate      The variation of the publish rate.
+     * @return The buffered message count.
+     * @throws SQLException Thrown when the writer stopped on a failed write.
+     */
+    @Benchmark
+    public long publishMessage(PublisherCounters publisher, RateCounters rate) throws SQLException {
+        if (publisher.index < 0) {
+            publisher.index = publisherIndexes.getAndIncrement() % MAXIMUM_PUBLISHERS;
+        }
+        int index = publisher.index;
+        long throttledNanos = 0L;
+        if ("CREDIT".equals(flowControlMode)) {
+            if (0L >= credits.get(index)) {
+                long throttleStartTime = System.nanoTime();
+                while (0L >= credits.get(index)) {
+                    checkWriter();
+                    LockSupport.parkNanos(THROTTLED_PARK_NANOS);
+                }
+                throttledNanos = System.nanoTime() - throttleStartTime;
+            }
+            credits.decrementAndGet(index);
+        } else if (!flowEnabled) {
+            long throttleStartTime = System.nanoTime();
+            while (!flowEnabled) {
+                checkWriter();
+                LockSupport.parkNanos(THROTTLED_PARK_NANOS);
+            }
+            throttledNanos = System.nanoTime() - throttleStartTime;
+        }
+        publisher.published(throttledNanos);
+        publishedMessages.incrementAndGet(index);
+        long buffered = bufferedMessages.incrementAndGet();
+        if (highLimit <= buffered && !"CREDIT".equals(flowControlMode)) {
+            flowEnabled = false;
+        }
+        return buffered;
+    }
+
+    /**
+     * Throws the failure which stopped the writer, if any, so that throttled publishers do not wait
+     * for credits or flow forever.
+     */
+    private void checkWriter() throws SQLException {
+        if (null != writeFailure) {
+            throw writeFailure;
+        }
+    }
+
+    /**
+     * Writes buffered messages to the store until the trial ends or a write fails, controlling flow
+     * as messages are written. Runs on the writer thread.
+     */
+    private void writeMessages() {
+        long nextSampleTime = System.nanoTime() + RATE_SAMPLE_INTERVAL_NANOS;
+        long sampledPublishCount = 0L;
+        long refillBudget = 0L;
+        long[] messageIDs = new long[writeBatchSize];
+        long lastMessageID = 0L;
+        while (running) {
+            int batchSize = (int) Math.min(writeBatchSize, bufferedMessages.get());
+            if (0 < batchSize) {
+                for (int i = 0; i < batchSize; i++) {
+                    messageIDs[i] = lastMessageID + 1 + i;
+                }
+                try {
+                    // Keeps the last RETAINED_MESSAGE_COUNT messages once this batch is written
+                    deleteMessages(lastMessageID - RETAINED_MESSAGE_COUNT + 1,
+                                   lastMessageID + batchSize - RETAINED_MESSAGE_COUNT);
+                    store.insertMessages("", QUEUE_ID, messageIDs, 0, batchSize, 0L);
+                } catch (SQLException e) {
+                    writeFailure = e;
+                    return;
+                }
+                lastMessageID = lastMessageID + batchSize;
+                long buffered = bufferedMessages.addAndGet(-batchSize);
+                if ("CREDIT".equals(flowControlMode)) {
+                    refillBudget = refillCredits(refillBudget + batchSize);
+                } else if (!flowEnabled && lowLimit >= buffered) {
+                    flowEnabled = true;
+                }
+            } else {
+                Thread.yield();
+            }
+
+            long now = System.nanoTime();
+            if (now >= nextSampleTime) {
+                long publishCount = getPublishedMessageCount();
+                rateSamples[(int) (rateSampleCount % RATE_SAMPLE_COUNT)] = publishCount - sampledPublishCount;
+                rateSampleCount = rateSampleCount + 1;
+                sampledPublishCount = publishCount;
+                nextSampleTime = now + RATE_SAMPLE_INTERVAL_NANOS;
+            }
+        }
+    }
+
+    /**
+     * Deletes messages written earlier. The deletes are committed with the next insert.
+     *
+     * @param firstMessageID The ID of the first message to delete.
+     * @param lastMessageID  The ID of the last message to delete. Nothing is deleted while it is not
+     *                       positive.
+     * @throws SQLException Thrown when a statement fails.
+     */
+    private void deleteMessages(long firstMessageID, long lastMessageID) throws SQLException {
+        if (0L >= lastMessageID) {
+            return;
+        }
+        PreparedStatement deleteContent = store.prepare(DELETE_CONTENT_RANGE);
+        deleteContent.setLong(1, firstMessageID);
+        deleteContent.setLong(2, lastMessageID);
+        deleteContent.executeUpdate();
+        PreparedStatement deleteMetadata = store.prepare(DELETE_METADATA_RANGE);
+        deleteMetadata.setInt(1, QUEUE_ID);
+        deleteMetadata.setLong(2, firstMessageID);
+        deleteMetadata.setLong(3, lastMessageID);
+        deleteMetadata.executeUpdate();
+    }
+
+    /**
+     * Shares credits for written messages among the publishers in proportion to their weights.
+     * Credits above a publisher's limit are dropped.
+     *
+     * @param budget The amount of credits to share.
+     * @return The credits left over, which are fewer than the total weight.
+     */
+    private long refillCredits(long budget) {
+        long remaining = budget;
+        while (remaining >= totalWeight) {
+            for (int i = 0; i < MAXIMUM_PUBLISHERS; i++) {
+                if (credits.get(i) < getCreditLimit(i)) {
+                    credits.addAndGet(i, weights[i]);
+                }
+            }
+            remaining = remaining - totalWeight;
+        }
+        return remaining;
+    }
+
+    /**
+     * Gets the maximum credits of a publisher, its weighted share of the high limit.
+     *
+     * @param index The publisher index.
+     * @return The credit limit.
+     */
+    private long getCreditLimit(int index) {
+        return (long) highLimit * weights[index] / totalWeight;
+    }
+
+    private long getPublishedMessageCount() {
+        long count = 0L;
+        for (int i = 0; i < MAXIMUM_PUBLISHERS; i++) {
+            count = count + publishedMessages.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the coefficient of variation of the publish rate samples taken since the last call. At
+     * most the last RATE_SAMPLE_COUNT samples are used.
+     *
+     * @return The standard deviation of the samples divided by their mean, or 0 without samples.
+     */
+    private double takeRateVariation() {
+        long end = rateSampleCount;
+        long start = Math.max(reportedRateSampleCount.getAndSet(end), end - RATE_SAMPLE_COUNT);
+        if (start >= end) {
+            return 0D;
+        }
+        long count = end - start;
+        double sum = 0D;
+        for (long i = start; i < end; i++) {
+            sum = sum + rateSamples[(int) (i % RATE_SAMPLE_COUNT)];
+        }
+        double mean = sum / count;
+        double squaredDeviations = 0D;
+        for (long i = start; i < end; i++) {
+            double deviation = rateSamples[(int) (i % RATE_SAMPLE_COUNT)] - mean;
+            squaredDeviations = squaredDeviations + deviation * deviation;
+        }
+        return (0D == mean) ? 0D : Math.sqrt(squaredDeviations / count) / mean;
+    }
+
+    /**
+     * The state of a publishing thread, with the messages it published and the time it was
+     * throttled, reported per second by JMH and summed over the first publisher or the others.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class PublisherCounters {
+
+        public long heavyPublisherMessages;
+
+        public long lightPublisherMessages;
+
+        public long heavyPublisherThrottledNanos;
+
+        public long lightPublisherThrottledNanos;
+
+        /**
+         * The index of the publisher. Assigned on the first publish.
+         */
+        int index = -1;
+
+        /**
+         * Counts a published message.
+         *
+         * @param throttledNanos The time the publisher was throttled before publishing it.
+         */
+        void published(long throttledNanos) {
+            if (0 == index) {
+                heavyPublisherMessages++;
+                heavyPublisherThrottledNanos = heavyPublisherThrottledNanos + throttledNanos;
+            } else {
+                lightPublisherMessages++;
+                lightPublisherThrottledNanos = lightPublisherThrottledNanos + throttledNanos;
+            }
+        }
+    }
+
+    /**
+     * The coefficient of variation of the publish rate over 1ms windows in an iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RateCounters {
+
+        public double publishRateVariation;
+
+        /**
+         * Takes the variation of the samples of the iteration. Samples taken by another publisher
+         * are not used again, so only the first publisher to tear down reports a variation.
+         *
+         * @param benchmark The benchmark state.
+         */
+        @TearDown(Level.Iteration)
+        public void takeVariation(FlowControlBenchmark benchmark) {
+            publishRateVariation = benchmark.takeRateVariation();
+        }
+    }
+}
@@ -0,0 +1,428 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.benchmarks;
+
+import com.lmax.disruptor.EventFactory;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.TimeoutBlockingWaitStrategy;
+import com.lmax.disruptor.TimeoutHandler;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import com.lmax.disruptor.util.DaemonThreadFactory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the fixed batch inbound message writer with a group commit writer. The broker's message
+ * writers (performanceTuning/inboundEvents) write metadata and content of up to
+ * messageWriterBatchSize messages per transaction, with a JDBC batch entry per row, and commit as soon
+ * as the ring buffer has no more events. At low load each message pays a full commit and at high load
+ * the batch size caps the rows per transaction.
+ * <p>
+ * The GROUP_COMMIT writer keeps adding messages to a transaction until a row, byte or delay budget is
+ * reached, and writes metadata and content with multi-row inserts of up to rowsPerInsert rows. When
+ * the ring buffer runs dry before a budget is reached, it waits for more messages until the delay
+ * budget of the oldest message runs out.
+ * <p>
+ * Throughput is measured at the producer. With publishIntervalTokens set the producer is throttled to
+ * model low load, where the commits, statements and messages written per second and the average and
+ * maximum write latency, reported as secondary results, are the interesting results. The writer
+ * inserts in to an {@link EmbeddedMessageStore} and commits, so the cost of a commit against the
+ * cost of a statement in the configured database decides how much grouping and multi-row inserts
+ * gain. After each iteration the producer waits for the writer to commit every published message and
+ * the tables are emptied. The ring buffer has a single producer, hence the benchmark runs on one
+ * thread.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+@Threads(1)
+public class GroupCommitBenchmark {
+
+    /**
+     * The size of the ring buffer. 65536 is the broker default.
+     */
+    private static final int RING_BUFFER_SIZE = 65536;
+
+    /**
+     * The writer policy, either FIXED_BATCH or GROUP_COMMIT.
+     */
+    @Param({"FIXED_BATCH", "GROUP_COMMIT"})
+    public String writerMode;
+
+    /**
+     * The maximum amount of messages written in a transaction by the fixed batch writer. 70 is the
+     * broker default.
+     */
+    @Param({"70"})
+    public int messageWriterBatchSize;
+
+    /**
+     * The maximum amount of messages written in a transaction by the group commit writer.
+     */
+    @Param({"2000"})
+    public int maximumBatchRows;
+
+    /**
+     * The maximum amount of content bytes written in a transaction by the group commit writer.
+     */
+    @Param({"4194304"})
+    public int maximumBatchBytes;
+
+    /**
+     * The maximum time the group commit writer delays the commit of a message to group it with
+     * others, in microseconds.
+     */
+    @Param({"2000"})
+    public long maximumBatchDelayMicros;
+
+    /**
+     * The maximum amount of rows written with a single multi-row insert by the group commit writer.
+     */
+    @Param({"100"})
+    public int rowsPerInsert;
+
+    /**
+     * The content size of a message in bytes.
+     */
+    @Param({"1024"})
+    public int messageSize;
+
+    /**
+     * The simulated work of the producer between messages in JMH CPU tokens. 0 saturates the writer.
+     */
+    @Param({"0", "50000"})
+    public long publishIntervalTokens;
+
+    /**
+     * The JDBC URL of the database.
+     */
+    @Param({"jdbc:h2:mem:groupcommit"})
+    public String jdbcUrl;
+
+    /**
+     * The queue the messages are published to.
+     */
+    private static final int QUEUE_ID = 1;
+
+    /**
+     * Creates the tables and empties them between iterations. Also keeps an in-memory database open
+     * while the writer connects and disconnects.
+     */
+    private EmbeddedMessageStore store;
+
+    private Disruptor<MessageEvent> disruptor;
+
+    private RingBuffer<MessageEvent> ringBuffer;
+
+    private MessageWriter writer;
+
+    /**
+     * The ID of the next message.
+     */
+    private long messageID = 0L;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws SQLException {
+        store = new EmbeddedMessageStore(jdbcUrl, messageSize);
+        store.createTables("");
+        EmbeddedMessageStore writerStore = new EmbeddedMessageStore(jdbcUrl, messageSize);
+        long maximumBatchDelayNanos = TimeUnit.MICROSECONDS.toNanos(maximumBatchDelayMicros);
+        if ("GROUP_COMMIT".equals(writerMode)) {
+            writer = new MessageWriter(writerStore, maximumBatchRows, maximumBatchBytes, maximumBatchDelayNanos,
+                                       rowsPerInsert);
+        } else {
+            // A JDBC batch entry per row and a commit whenever the ring buffer runs dry
+            writer = new MessageWriter(writerStore, messageWriterBatchSize, Integer.MAX_VALUE, 0L, 1);
+        }
+        // Both writers use the same wait strategy so that only the writer policy differs
+        disruptor = new Disruptor<>(MessageEvent.EVENT_FACTORY, RING_BUFFER_SIZE, DaemonThreadFactory.INSTANCE,
+                                    ProducerType.SINGLE,
+                                    new TimeoutBlockingWaitStrategy(maximumBatchDelayNanos, TimeUnit.NANOSECONDS));
+        disruptor.handleEventsWith(writer);
+        ringBuffer = disruptor.start();
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        disruptor.shutdown();
+        writer.store.close();
+        store.dropTables("");
+        store.close();
+    }
+
+    /**
+     * Waits until the writer has committed every published message and empties the tables, so that
+     * they do not grow across iterations.
+     *
+     * @throws SQLException Thrown when the writer failed or a table cannot be emptied.
+     */
+    @TearDown(Level.Iteration)
+    public void emptyTables() throws SQLException {
+        while (writer.lastWrittenMessageID != messageID - 1 && null == writer.failure) {
+            Thread.yield();
+        }
+        if (null != writer.failure) {
+            throw writer.failure;
+        }
+        try (Statement statement = store.getConnection().createStatement()) {
+            statement.execute("TRUNCATE TABLE MB_CONTENT");
+            statement.execute("TRUNCATE TABLE MB_METADATA");
+        }
+        store.commit();
+    }
+
+    /**
+     * Publishes a message to the ring buffer.
+     *
+     * @param latencyCounters The write latency of the messages written by the writer, which also
+     *                        fills the {@link WriterCounters}.
+     * @throws SQLException Thrown when the writer failed to write earlier messages.
+     */
+    @Benchmark
+    public void publishMessage(LatencyCounters latencyCounters) throws SQLException {
+        if (null != writer.failure) {
+            throw writer.failure;
+        }
+        if (0L < publishIntervalTokens) {
+            Blackhole.consumeCPU(publishIntervalTokens);
+        }
+        long sequence = ringBuffer.next();
+        MessageEvent event = ringBuffer.get(sequence);
+        event.messageID = messageID++;
+        event.contentLength = messageSize;
+        event.publishTime = System.nanoTime();
+        ringBuffer.publish(sequence);
+    }
+
+    /**
+     * A message writer which groups messages in to transactions within row, byte and delay budgets.
+     * A delay budget of 0 commits whenever the ring buffer runs dry, as the broker's writers do.
+     * Each message is written as a metadata row and a content row.
+     */
+    private static final class MessageWriter implements EventHandler<MessageEvent>, TimeoutHandler {
+
+        private final EmbeddedMessageStore store;
+
+        private final int maximumRows;
+
+        private final long maximumBytes;
+
+        private final long maximumDelayNanos;
+
+        private final int rowsPerStatement;
+
+        /**
+         * The publish times of the messages in the current transaction.
+         */
+        private final long[] publishTimes;
+
+        /**
+         * The IDs of the messages in the current transaction.
+         */
+        private final long[] messageIDs;
+
+        private int batchRows = 0;
+
+        private long batchBytes = 0L;
+
+        /**
+         * The statistics since they were last taken.
+         */
+        private final AtomicLong commitCount = new AtomicLong();
+
+        private final AtomicLong statementCount = new AtomicLong();
+
+        private final AtomicLong messageCount = new AtomicLong();
+
+        private final AtomicLong totalWriteLatencyNanos = new AtomicLong();
+
+        private final AtomicLong maximumWriteLatencyNanos = new AtomicLong();
+
+        /**
+         * The ID of the last committed message.
+         */
+        private volatile long lastWrittenMessageID = -1L;
+
+        /**
+         * The first failure of a write, after which the writer drops messages.
+         */
+        private volatile SQLException failure;
+
+        private MessageWriter(EmbeddedMessageStore store, int maximumRows, long maximumBytes, long maximumDelayNanos,
+                              int rowsPerStatement) {
+            this.store = store;
+            this.maximumRows = maximumRows;
+            this.maximumBytes = maximumBytes;
+            this.maximumDelayNanos = maximumDelayNanos;
+            this.rowsPerStatement = rowsPerStatement;
+            this.publishTimes = new long[maximumRows];
+            this.messageIDs = new long[maximumRows];
+        }
+
+        @Override
+        public void onEvent(MessageEvent event, long sequence, boolean endOfBatch) {
+            messageIDs[batchRows] = event.messageID;
+            publishTimes[batchRows++] = event.publishTime;
+            batchBytes = batchBytes + event.contentLength;
+            if (maximumRows == batchRows || maximumBytes <= batchBytes
+                || (endOfBatch && maximumDelayNanos <= System.nanoTime() - publishTimes[0])) {
+                commit();
+            }
+        }
+
+        /**
+         * Invoked when no messages arrived within the delay budget, so the waiting messages are
+         * committed.
+         *
+         * @param sequence The last processed sequence.
+         */
+        @Override
+        public void onTimeout(long sequence) {
+            if (0 < batchRows) {
+                commit();
+            }
+        }
+
+        /**
+         * Writes the metadata and content of the current transaction and commits it.
+         */
+        private void commit() {
+            if (null == failure) {
+                try {
+                    statementCount.addAndGet(store.insertMessageRows("", QUEUE_ID, messageIDs, batchRows,
+                                                                     rowsPerStatement));
+                    store.commit();
+                } catch (SQLException e) {
+                    failure = e;
+                }
+            }
+
+            long commitTime = System.nanoTime();
+            long totalLatency = 0L;
+            long maximumLatency = 0L;
+            for (int i = 0; i < batchRows; i++) {
+                long latency = commitTime - publishTimes[i];
+                totalLatency = totalLatency + latency;
+                maximumLatency = Math.max(maximumLatency, latency);
+            }
+            totalWriteLatencyNanos.addAndGet(totalLatency);
+            long currentMaximum = maximumWriteLatencyNanos.get();
+            while (maximumLatency > currentMaximum
+                   && !maximumWriteLatencyNanos.compareAndSet(currentMaximum, maximumLatency)) {
+                currentMaximum = maximumWriteLatencyNanos.get();
+            }
+            messageCount.addAndGet(batchRows);
+            commitCount.incrementAndGet();
+            lastWrittenMessageID = messageIDs[batchRows - 1];
+            batchRows = 0;
+            batchBytes = 0L;
+        }
+    }
+
+    /**
+     * Commits, statements and messages written by the writer, reported per second by JMH. Taken
+     * together with the {@link LatencyCounters}.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class WriterCounters {
+
+        public long commits;
+
+        public long statements;
+
+        public long messagesWritten;
+    }
+
+    /**
+     * The average and maximum time from publishing a message to committing it in an iteration, in
+     * microseconds.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class LatencyCounters {
+
+        public double averageWriteLatencyMicros;
+
+        public double maximumWriteLatencyMicros;
+
+        /**
+         * Takes the writer's statistics of the iteration and resets them.
+         *
+         * @param benchmark      The benchmark state.
+         * @param writerCounters The counters of the commits and messages written.
+         */
+        @TearDown(Level.Iteration)
+        public void takeStatistics(GroupCommitBenchmark benchmark, WriterCounters writerCounters) {
+            MessageWriter writer = benchmark.writer;
+            writerCounters.commits = writer.commitCount.getAndSet(0L);
+            writerCounters.statements = writer.statementCount.getAndSet(0L);
+            writerCounters.messagesWritten = writer.messageCount.getAndSet(0L);
+            long totalLatencyNanos = writer.totalWriteLatencyNanos.getAndSet(0L);
+            averageWriteLatencyMicros = (0L == writerCounters.messagesWritten)
+                                        ? 0D : totalLatencyNanos / (double) writerCounters.messagesWritten / 1000D;
+            maximumWriteLatencyMicros = writer.maximumWriteLatencyNanos.getAndSet(0L) / 1000D;
+        }
+    }
+
+    /**
+     * An inbound message with the time it got published to the ring buffer.
+     */
+    static class MessageEvent {
+
+        static final EventFactory<MessageEvent> EVENT_FACTORY = new EventFactory<MessageEvent>() {
+            @Override
+            public MessageEvent newInstance() {
+                return new MessageEvent();
+            }
+        };
+
+        long messageID;
+
+        int contentLength;
+
+        long publishTime;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.mb.benchmarks;
+
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import com.lmax.disruptor.util.DaemonThreadFactory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures batching of inbound messages before they are written to the message store. The broker
+ * publishes incoming messages to a Disruptor ring buffer (performanceTuning/inboundEvents/bufferSize)
+ * and message writers write them in batches of up to messageWriterBatchSize.
+ * <p>
+ * Throughput is measured at the producer, which is bound by the handler once the ring buffer is
+ * full. A batch costs batchCostTokens of CPU in place of a database round trip and each message
+ * adds eventCostTokens, so a batch size of 1 shows the per message round trip the batching saves.
+ * Batches and messages written per second are reported as secondary results, giving the average
+ * batch size reached. The ring buffer has a single producer, hence the benchmark runs on one thread.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+@Threads(1)
+public class InboundBatchingBenchmark {
+
+    /**
+     * The size of the ring buffer.
+     */
+    private static final int RING_BUFFER_SIZE = 65536;
+
+    /**
+     * The maximum amount of messages written in a batch. 70 is the broker default.
+     */
+    @Param({"1", "70", "500"})
+    public int messageWriterBatchSize;
+
+    /**
+     * The simulated cost of a store operation per batch in JMH CPU tokens.
+     */
+    @Param({"20000"})
+    public long batchCostTokens;
+
+    /**
+     * The simulated cost of a store operation per message in JMH CPU tokens.
+     */
+    @Param({"50"})
+    public long eventCostTokens;
+
+    private Disruptor<BatchingEventHandler.Event> disruptor;
+
+    private RingBuffer<BatchingEventHandler.Event> ringBuffer;
+
+    private BatchingEventHandler handler;
+
+    /**
+     * The ID of the next message.
+     */
+    private long messageID = 0L;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        handler = new BatchingEventHandler(messageWriterBatchSize, batchCostTokens, eventCostTokens);
+        disruptor = new Disruptor<>(BatchingEventHandler.EVENT_FACTORY, RING_BUFFER_SIZE,
+                                    DaemonThreadFactory.INSTANCE, ProducerType.SINGLE,
+                                    new YieldingWaitStrategy());
+        disruptor.handleEventsWith(handler);
+        ringBuffer = disruptor.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        disruptor.shutdown();
+    }
+
+    /**
+     * Publishes a message to the ring buffer.
+     *
+     * @param counters Counters of the batches and messages written by the handler.
+     */
+    @Benchmark
+    public void publishMessage(WriterCounters counters) {
+        long sequence = ringBuffer.next();
+        ringBuffer.get(sequence).value = messageID++;
+        ringBuffer.publish(sequence);
+    }
+
+    /**
+     * Batches and messages written by the handler, reported per second by JMH.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class WriterCounters {
+
+        public long batches;
+
+        public long messagesWritten;
+
+        /**
+         * Takes the handler's counts of the iteration. Counts taken by other threads are reset, so
+         * the sum over threads is the total.
+         *
+         * @param benchmark The benchmark state.
+         */
+        @TearDown(Level.Iteration)
+        public void takeCounts(InboundBatchingBenchmark benchmark) {
+            batches = benchmark.handler.takeBatchCount();
+            messagesWritten = benchmark.handler.takeEventCount();
+        }
+    }
+}
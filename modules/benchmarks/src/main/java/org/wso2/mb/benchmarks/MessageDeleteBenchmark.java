@@ -0,0 +1,307 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures deleting the acknowledged messages of a slot from an {@link EmbeddedMessageStore}.
+ * Message IDs are time ordered and messages of other queues are interleaved with the messages of a
+ * slot. The slot is stored before each invocation, and the rows left by the invocation are removed
+ * after it, which is not measured.
+ * <p>
+ * ID_LIST deletes acknowledged messages from the content and metadata tables with statements
+ * listing up to deleteBatchSize message IDs, which is how acknowledged messages are deleted today.
+ * SLOT_RANGE deletes a fully acknowledged slot with a range over its first and last message IDs.
+ * The content table has no queue column, so its rows are selected through the metadata range
+ * before the metadata range is deleted:
+ * <pre>
+ * DELETE FROM MB_CONTENT WHERE MESSAGE_ID IN
+ *     (SELECT MESSAGE_ID FROM MB_METADATA WHERE QUEUE_ID=? AND MESSAGE_ID BETWEEN ? AND ?)
+ * DELETE FROM MB_METADATA WHERE QUEUE_ID=? AND MESSAGE_ID BETWEEN ? AND ?
+ * </pre>
+ * Slots with messages which are not acknowledged fall back to ID lists. The statements of a slot
+ * are committed together. Rows deleted and statements executed per second are reported as secondary
+ * results.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageDeleteBenchmark {
+
+    /**
+     * How acknowledged messages are deleted. One of ID_LIST or SLOT_RANGE.
+     */
+    @Param({"ID_LIST", "SLOT_RANGE"})
+    public String deleteMode;
+
+    /**
+     * The amount of messages in a slot. 1000 is the broker default.
+     */
+    @Param({"1000"})
+    public int windowSize;
+
+    /**
+     * The percentage of slots which have messages that are not acknowledged when the slot is
+     * deleted, such as messages moved to the dead letter channel later.
+     */
+    @Param({"0", "10"})
+    public int partialSlotPercentage;
+
+    /**
+     * The maximum amount of message IDs listed in a delete statement.
+     */
+    @Param({"100"})
+    public int deleteBatchSize;
+
+    /**
+     * The size of the content of a message.
+     */
+    @Param({"1024"})
+    public int contentSize;
+
+    /**
+     * The JDBC URL of the database.
+     */
+    @Param({"jdbc:h2:mem:delete"})
+    public String jdbcUrl;
+
+    private static final String DELETE_CONTENT_RANGE = "DELETE FROM MB_CONTENT WHERE MESSAGE_ID IN "
+            + "(SELECT MESSAGE_ID FROM MB_METADATA WHERE QUEUE_ID=? AND MESSAGE_ID BETWEEN ? AND ?)";
+
+    private static final String DELETE_METADATA_RANGE
+            = "DELETE FROM MB_METADATA WHERE QUEUE_ID=? AND MESSAGE_ID BETWEEN ? AND ?";
+
+    private static final String DELETE_CONTENT_BETWEEN = "DELETE FROM MB_CONTENT WHERE MESSAGE_ID BETWEEN ? AND ?";
+
+    private static final String DELETE_METADATA_BETWEEN = "DELETE FROM MB_METADATA WHERE MESSAGE_ID BETWEEN ? AND ?";
+
+    /**
+     * The queue of the slot.
+     */
+    private static final int QUEUE_ID = 1;
+
+    /**
+     * The queue of the messages interleaved with the messages of the slot.
+     */
+    private static final int OTHER_QUEUE_ID = 2;
+
+    /**
+     * The maximum difference between consecutive message IDs of a queue, caused by messages of
+     * other queues getting IDs in between.
+     */
+    private static final int MAXIMUM_MESSAGE_ID_GAP = 16;
+
+    /**
+     * The percentage of messages of a partially acknowledged slot which are not acknowledged.
+     */
+    private static final int UNACKNOWLEDGED_PERCENTAGE = 1;
+
+    private EmbeddedMessageStore store;
+
+    private Random random;
+
+    private long nextMessageID;
+
+    /**
+     * The message IDs of the slot being deleted.
+     */
+    private long[] slotMessageIDs;
+
+    /**
+     * Whether each message of the slot being deleted is acknowledged.
+     */
+    private boolean[] acknowledged;
+
+    /**
+     * The acknowledged message IDs collected for an ID list delete.
+     */
+    private long[] listedMessageIDs;
+
+    /**
+     * The IDs of messages of another queue, stored between the messages of the slot.
+     */
+    private long[] otherMessageIDs;
+
+    private int otherMessageCount;
+
+    @Setup
+    public void setup() throws SQLException {
+        store = new EmbeddedMessageStore(jdbcUrl, contentSize);
+        store.createTables("");
+        random = new Random(windowSize);
+        slotMessageIDs = new long[windowSize];
+        acknowledged = new boolean[windowSize];
+        listedMessageIDs = new long[windowSize];
+        otherMessageIDs = new long[windowSize];
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        store.close();
+    }
+
+    /**
+     * Stores a slot of messages, with a message of another queue in each gap between its message
+     * IDs, and acknowledges the messages of the slot.
+     *
+     * @throws SQLException Thrown when the messages cannot be stored.
+     */
+    @Setup(Level.Invocation)
+    public void storeSlot() throws SQLException {
+        boolean partial = partialSlotPercentage > random.nextInt(100);
+        otherMessageCount = 0;
+        for (int i = 0; i < windowSize; i++) {
+            int gap = 1 + random.nextInt(MAXIMUM_MESSAGE_ID_GAP);
+            if (0 < i && 1 < gap) {
+                otherMessageIDs[otherMessageCount++] = nextMessageID + 1;
+            }
+            nextMessageID = nextMessageID + gap;
+            slotMessageIDs[i] = nextMessageID;
+            acknowledged[i] = !partial || UNACKNOWLEDGED_PERCENTAGE <= random.nextInt(100);
+        }
+        store.insertMessages("", QUEUE_ID, slotMessageIDs, 0, windowSize, 0L);
+        store.insertMessages("", OTHER_QUEUE_ID, otherMessageIDs, 0, otherMessageCount, 0L);
+    }
+
+    /**
+     * Removes the messages of the slot which were not acknowledged and the messages of the other
+     * queue, so that the tables do not grow across invocations.
+     *
+     * @throws SQLException Thrown when the messages cannot be removed.
+     */
+    @TearDown(Level.Invocation)
+    public void removeSlot() throws SQLException {
+        for (String delete : new String[]{DELETE_CONTENT_BETWEEN, DELETE_METADATA_BETWEEN}) {
+            PreparedStatement statement = store.prepare(delete);
+            statement.setLong(1, slotMessageIDs[0]);
+            statement.setLong(2, slotMessageIDs[windowSize - 1]);
+            statement.executeUpdate();
+        }
+        store.commit();
+    }
+
+    /**
+     * Deletes the acknowledged messages of a slot.
+     *
+     * @param counters Counters of deleted rows and executed statements.
+     * @return The last message ID of the slot.
+     * @throws SQLException Thrown when a delete statement fails.
+     */
+    @Benchmark
+    public long deleteSlot(DeleteCounters counters) throws SQLException {
+        if ("SLOT_RANGE".equals(deleteMode) && isFullyAcknowledged()) {
+            // Content through the metadata range, then the metadata range
+            deleteRange(DELETE_CONTENT_RANGE, counters);
+            deleteRange(DELETE_METADATA_RANGE, counters);
+        } else {
+            deleteByIDList(counters);
+        }
+        store.commit();
+        return slotMessageIDs[windowSize - 1];
+    }
+
+    /**
+     * Deletes rows of the slot's queue between the first and last message IDs of the slot.
+     *
+     * @param delete   The delete statement taking the queue ID and the first and last message IDs.
+     * @param counters Counters of deleted rows and executed statements.
+     * @throws SQLException Thrown when the statement fails.
+     */
+    private void deleteRange(String delete, DeleteCounters counters) throws SQLException {
+        PreparedStatement statement = store.prepare(delete);
+        statement.setInt(1, QUEUE_ID);
+        statement.setLong(2, slotMessageIDs[0]);
+        statement.setLong(3, slotMessageIDs[windowSize - 1]);
+        counters.rowsDeleted = counters.rowsDeleted + statement.executeUpdate();
+        counters.statements++;
+    }
+
+    /**
+     * Deletes the acknowledged messages of the slot from the content and metadata tables with
+     * statements listing their IDs.
+     *
+     * @param counters Counters of deleted rows and executed statements.
+     * @throws SQLException Thrown when a statement fails.
+     */
+    private void deleteByIDList(DeleteCounters counters) throws SQLException {
+        int listedCount = 0;
+        for (int i = 0; i < windowSize; i++) {
+            if (acknowledged[i]) {
+                listedMessageIDs[listedCount++] = slotMessageIDs[i];
+            }
+        }
+        for (int offset = 0; offset < listedCount; offset = offset + deleteBatchSize) {
+            int batchSize = Math.min(deleteBatchSize, listedCount - offset);
+            counters.rowsDeleted = counters.rowsDeleted
+                                   + store.deleteByMessageIDs("MB_CONTENT", listedMessageIDs, offset, batchSize)
+                                   + store.deleteByMessageIDs("MB_METADATA", listedMessageIDs, offset, batchSize);
+            counters.statements = counters.statements + 2;
+        }
+    }
+
+    private boolean isFullyAcknowledged() {
+        for (boolean messageAcknowledged : acknowledged) {
+            if (!messageAcknowledged) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rows deleted and statements executed, reported per second by JMH.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class DeleteCounters {
+
+        public long rowsDeleted;
+
+        public long statements;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rowsDeleted = 0L;
+            statements = 0L;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+
+package org.wso2.mb.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures purging a queue and deleting expired messages with the current table layout and with a
+ * layout where the messages of a queue are stored in buckets of windowSize messages, against an
+ * {@link EmbeddedMessageStore}. Each invocation removes the messageCount messages stored before it.
+ * Storing the messages and dropping the tables afterwards is not measured.
+ * <p>
+ * ROW_DELETE first reads the message IDs of the queue, or the IDs of the expired messages, and
+ * deletes the rows of the content, metadata and expiration tables with statements listing up to
+ * deleteBatchSize IDs, as the purge and the periodic message deletion task (messageExpiration in
+ * broker.xml) do today. BUCKETED stores each bucket in its own tables and drops the tables of a
+ * sealed bucket as a whole. H2 has no table partitions, so a table per bucket stands in for a
+ * partition per slot range. The newest bucket is still being filled by publishers and cannot be
+ * dropped, so its messages are deleted row by row. Expired buckets can only be dropped when all
+ * their messages expire, which holds for queues where all messages have the same time to live.
+ * Deleted rows and executed statements per second are reported as secondary results.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PurgeBenchmark {
+
+    /**
+     * The table layout. One of ROW_DELETE or BUCKETED.
+     */
+    @Param({"ROW_DELETE", "BUCKETED"})
+    public String layout;
+
+    /**
+     * The amount of messages purged or expired.
+     */
+    @Param({"10000", "100000"})
+    public int messageCount;
+
+    /**
+     * The amount of messages in a bucket. Buckets follow slots, of which 1000 is the broker default.
+     */
+    @Param({"1000"})
+    public int windowSize;
+
+    /**
+     * The maximum amount of message IDs listed in a delete statement.
+     */
+    @Param({"1000"})
+    public int deleteBatchSize;
+
+    /**
+     * The size of the content of a message.
+     */
+    @Param({"1024"})
+    public int contentSize;
+
+    /**
+     * The JDBC URL of the database.
+     */
+    @Param({"jdbc:h2:mem:purge"})
+    public String jdbcUrl;
+
+    private static final String SELECT_QUEUE_MESSAGE_IDS = "SELECT MESSAGE_ID FROM MB_METADATA%s WHERE QUEUE_ID=?";
+
+    private static final String SELECT_EXPIRED_MESSAGE_IDS
+            = "SELECT MESSAGE_ID FROM MB_EXPIRATION_DATA%s WHERE EXPIRATION_TIME<?";
+
+    private static final String[] TABLES = {"MB_CONTENT", "MB_METADATA", "MB_EXPIRATION_DATA"};
+
+    private static final int QUEUE_ID = 1;
+
+    /**
+     * The expiration time of all messages, which has passed when the benchmark runs.
+     */
+    private static final long EXPIRATION_TIME = 1L;
+
+    private EmbeddedMessageStore store;
+
+    private long[] messageIDs;
+
+    /**
+     * The message IDs read before deleting rows.
+     */
+    private long[] readMessageIDs;
+
+    private int bucketCount;
+
+    @Setup
+    public void setup() throws SQLException {
+        store = new EmbeddedMessageStore(jdbcUrl, contentSize);
+        messageIDs = new long[messageCount];
+        for (int i = 0; i < messageCount; i++) {
+            messageIDs[i] = i + 1;
+        }
+        readMessageIDs = new long[messageCount];
+        bucketCount = "BUCKETED".equals(layout) ? (messageCount + windowSize - 1) / windowSize : 1;
+    }
+
+    /**
+     * Stores the messages removed by the next invocation.
+     *
+     * @throws SQLException Thrown when the messages cannot be stored.
+     */
+    @Setup(Level.Invocation)
+    public void storeMessages() throws SQLException {
+        if ("BUCKETED".equals(layout)) {
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                int offset = bucket * windowSize;
+                store.createTables(bucketSuffix(bucket));
+                store.insertMessages(bucketSuffix(bucket), QUEUE_ID, messageIDs, offset,
+                                     Math.min(windowSize, messageCount - offset), EXPIRATION_TIME);
+            }
+        } else {
+            store.createTables("");
+            store.insertMessages("", QUEUE_ID, messageIDs, 0, messageCount, EXPIRATION_TIME);
+        }
+    }
+
+    /**
+     * Drops the tables left by the invocation, so that the next invocation starts from empty tables.
+     *
+     * @throws SQLException Thrown when the tables cannot be dropped.
+     */
+    @TearDown(Level.Invocation)
+    public void dropTables() throws SQLException {
+        store.closeStatements();
+        if ("BUCKETED".equals(layout)) {
+            for (int bucket = 0; bucket < bucketCount; bucket++) {
+                store.dropTables(bucketSuffix(bucket));
+            }
+        } else {
+            store.dropTables("");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        store.close();
+    }
+
+    /**
+     * Purges all messages of a queue.
+     *
+     * @param counters Counters of deleted rows and executed statements.
+     * @return The amount of deleted rows.
+     * @throws SQLException Thrown when a statement fails.
+     */
+    @Benchmark
+    public long purgeQueue(PurgeCounters counters) throws SQLException {
+        if ("BUCKETED".equals(layout)) {
+            dropSealedBuckets(counters);
+            return deleteRows(bucketSuffix(bucketCount - 1), SELECT_QUEUE_MESSAGE_IDS, QUEUE_ID, counters);
+        }
+        return deleteRows("", SELECT_QUEUE_MESSAGE_IDS, QUEUE_ID, counters);
+    }
+
+    /**
+     * Deletes messages whose time to live has passed.
+     *
+     * @param counters Counters of deleted rows and executed statements.
+     * @return The amount of deleted rows.
+     * @throws SQLException Thrown when a statement fails.
+     */
+    @Benchmark
+    public long deleteExpiredMessages(PurgeCounters counters) throws SQLException {
+        long now = System.currentTimeMillis();
+        if ("BUCKETED".equals(layout)) {
+            dropSealedBuckets(counters);
+            return deleteRows(bucketSuffix(bucketCount - 1), SELECT_EXPIRED_MESSAGE_IDS, now, counters);
+        }
+        return deleteRows("", SELECT_EXPIRED_MESSAGE_IDS, now, counters);
+    }
+
+    /**
+     * Drops the tables of all buckets but the one being filled.
+     *
+     * @param counters Counters of deleted rows and executed statements.
+     * @throws SQLException Thrown when a table cannot be dropped.
+     */
+    private void dropSealedBuckets(PurgeCounters counters) throws SQLException {
+        for (int bucket = 0; bucket < bucketCount - 1; bucket++) {
+            counters.statements = counters.statements + store.dropTables(bucketSuffix(bucket));
+        }
+    }
+
+    /**
+     * Reads the IDs of the messages to delete and deletes them from the content, metadata and
+     * expiration tables in batches.
+     *
+     * @param tableSuffix The suffix of the table names.
+     * @param query       The query selecting the message IDs to delete.
+     * @param parameter   The parameter of the query.
+     * @param counters    Counters of deleted rows and executed statements.
+     * @return The amount of deleted rows.
+     * @throws SQLException Thrown when a statement fails.
+     */
+    private long deleteRows(String tableSuffix, String query, long parameter, PurgeCounters counters)
+            throws SQLException {
+        int readCount = store.readMessageIDs(String.format(query, tableSuffix), parameter, readMessageIDs);
+        counters.statements++;
+        long deletedRows = 0L;
+        for (int offset = 0; offset < readCount; offset = offset + deleteBatchSize) {
+            int batchSize = Math.min(deleteBatchSize, readCount - offset);
+            for (String table : TABLES) {
+                deletedRows = deletedRows + store.deleteByMessageIDs(table + tableSuffix, readMessageIDs, offset,
+                                                                     batchSize);
+                counters.statements++;
+            }
+            store.commit();
+        }
+        counters.rowsDeleted = counters.rowsDeleted + deletedRows;
+        return deletedRows;
+    }
+
+    private static String bucketSuffix(int bucket) {
+        return "_" + bucket;
+    }
+
+    /**
+     * Rows deleted and statements executed, reported per second by JMH.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class PurgeCounters {
+
+        public long rowsDeleted;
+
+        public long statements;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rowsDeleted = 0L;
+            statements = 0L;
+        }
+    }
+}
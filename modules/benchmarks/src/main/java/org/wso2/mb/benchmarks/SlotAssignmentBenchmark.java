@@ -0,0 +1,328 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.mb.benchmarks;
+
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import com.lmax.disruptor.util.DaemonThreadFactory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the bookkeeping of slots, the message ID ranges the broker uses to distribute queue
+ * messages among nodes (performanceTuning/slots in broker.xml). Published message IDs are
+ * accumulated per queue until windowSize messages make up a slot. Slots are then assigned to a
+ * node, delivered and released. All operations go through a single synchronized manager as slot
+ * state is coordinated centrally. Run with multiple threads (-t) to see contention.
+ * <p>
+ * Each slot state change is persisted according to the storage parameter (slotManagement/storage).
+ * RDBMS makes a simulated database round trip while holding the manager lock, the way a synchronous
+ * store does. WRITE_BEHIND keeps the state in memory and publishes changes to a ring buffer, from
+ * which a background handler persists them in coalesced batches. MEMORY does not persist at all and
+ * gives the cost of the bookkeeping alone. A round trip is batchCostTokens of CPU, spent under the
+ * lock by RDBMS and on the handler thread by WRITE_BEHIND. Slots assigned per second, and for
+ * WRITE_BEHIND the batches and state changes persisted per second, are reported as secondary
+ * results.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SlotAssignmentBenchmark {
+
+    /**
+     * The amount of messages in a slot. 1000 is the broker default.
+     */
+    @Param({"100", "1000", "10000"})
+    public int windowSize;
+
+    /**
+     * The amount of queues messages are published to.
+     */
+    @Param({"1", "100"})
+    public int queueCount;
+
+    /**
+     * How slot state changes are persisted. One of MEMORY, RDBMS or WRITE_BEHIND.
+     */
+    @Param({"MEMORY", "RDBMS", "WRITE_BEHIND"})
+    public String storage;
+
+    /**
+     * The simulated cost of a database round trip in JMH CPU tokens.
+     */
+    @Param({"20000"})
+    public long batchCostTokens;
+
+    /**
+     * The simulated cost of persisting a single slot state change in JMH CPU tokens.
+     */
+    @Param({"50"})
+    public long eventCostTokens;
+
+    /**
+     * The size of the write-behind ring buffer.
+     */
+    private static final int RING_BUFFER_SIZE = 4096;
+
+    /**
+     * The maximum amount of slot state changes persisted in a write-behind batch.
+     */
+    private static final int WRITE_BEHIND_BATCH_SIZE = 1000;
+
+    /**
+     * The slot manager shared by all benchmark threads.
+     */
+    private SlotManager slotManager;
+
+    private Disruptor<BatchingEventHandler.Event> disruptor;
+
+    private BatchingEventHandler writeBehindHandler;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        SlotStateStore slotStateStore;
+        if ("RDBMS".equals(storage)) {
+            slotStateStore = new SlotStateStore() {
+                @Override
+                public void persist(long slotStartID) {
+                    Blackhole.consumeCPU(batchCostTokens + eventCostTokens);
+                }
+            };
+        } else if ("WRITE_BEHIND".equals(storage)) {
+            writeBehindHandler = new BatchingEventHandler(WRITE_BEHIND_BATCH_SIZE, batchCostTokens, eventCostTokens);
+            disruptor = new Disruptor<>(BatchingEventHandler.EVENT_FACTORY, RING_BUFFER_SIZE,
+                                        DaemonThreadFactory.INSTANCE, ProducerType.MULTI,
+                                        new YieldingWaitStrategy());
+            disruptor.handleEventsWith(writeBehindHandler);
+            final RingBuffer<BatchingEventHandler.Event> ringBuffer = disruptor.start();
+            slotStateStore = new SlotStateStore() {
+                @Override
+                public void persist(long slotStartID) {
+                    long sequence = ringBuffer.next();
+                    ringBuffer.get(sequence).value = slotStartID;
+                    ringBuffer.publish(sequence);
+                }
+            };
+        } else {
+            slotStateStore = new SlotStateStore() {
+                @Override
+                public void persist(long slotStartID) {
+                }
+            };
+        }
+        slotManager = new SlotManager(queueCount, windowSize, slotStateStore);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (null != disruptor) {
+            disruptor.shutdown();
+        }
+    }
+
+    /**
+     * Records a published message and, whenever a slot is completed, assigns the oldest unassigned
+     * slot of the queue and releases it once delivered.
+     *
+     * @param counters Counters of assigned slots and persisted state changes.
+     * @return The assigned slot start ID, or -1 if no slot was completed.
+     */
+    @Benchmark
+    public long publishAndAssign(SlotCounters counters) {
+        int queueIndex = ThreadLocalRandom.current().nextInt(queueCount);
+        long[] slot = slotManager.recordMessage(queueIndex);
+        if (null == slot) {
+            return -1L;
+        }
+        long[] assignedSlot = slotManager.assignSlot(queueIndex);
+        slotManager.releaseSlot(queueIndex, assignedSlot);
+        counters.slotsAssigned++;
+        return assignedSlot[0];
+    }
+
+    /**
+     * Keeps the slots of all queues.
+     */
+    private static class SlotManager {
+
+        private final int windowSize;
+
+        /**
+         * Persists slot state changes.
+         */
+        private final SlotStateStore slotStateStore;
+
+        /**
+         * The message ID generator.
+         */
+        private long nextMessageID = 0L;
+
+        /**
+         * The start ID of the slot being filled for each queue.
+         */
+        private final long[] slotStartIDs;
+
+        /**
+         * The amount of messages in the slot being filled for each queue.
+         */
+        private final int[] slotMessageCounts;
+
+        /**
+         * Completed slots which are not assigned yet for each queue, in the order of message IDs.
+         */
+        private final Deque<long[]>[] unassignedSlots;
+
+        /**
+         * Slots assigned to the node for each queue, keyed by their start ID.
+         */
+        private final TreeMap<Long, long[]>[] assignedSlots;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private SlotManager(int queueCount, int windowSize, SlotStateStore slotStateStore) {
+            this.windowSize = windowSize;
+            this.slotStateStore = slotStateStore;
+            this.slotStartIDs = new long[queueCount];
+            this.slotMessageCounts = new int[queueCount];
+            this.unassignedSlots = new Deque[queueCount];
+            this.assignedSlots = new TreeMap[queueCount];
+            for (int i = 0; i < queueCount; i++) {
+                unassignedSlots[i] = new ArrayDeque<>();
+                assignedSlots[i] = new TreeMap<>();
+            }
+        }
+
+        /**
+         * Records a message published to a queue.
+         *
+         * @param queueIndex The queue index.
+         * @return The slot completed by the message, or null if the slot is not yet filled.
+         */
+        private synchronized long[] recordMessage(int queueIndex) {
+            long messageID = nextMessageID++;
+            if (0 == slotMessageCounts[queueIndex]) {
+                slotStartIDs[queueIndex] = messageID;
+            }
+            slotMessageCounts[queueIndex]++;
+            if (windowSize > slotMessageCounts[queueIndex]) {
+                return null;
+            }
+            long[] slot = new long[]{slotStartIDs[queueIndex], messageID};
+            slotMessageCounts[queueIndex] = 0;
+            unassignedSlots[queueIndex].addLast(slot);
+            slotStateStore.persist(slot[0]);
+            return slot;
+        }
+
+        /**
+         * Assigns the oldest unassigned slot of a queue.
+         *
+         * @param queueIndex The queue index.
+         * @return The assigned slot.
+         */
+        private synchronized long[] assignSlot(int queueIndex) {
+            long[] slot = unassignedSlots[queueIndex].pollFirst();
+            assignedSlots[queueIndex].put(slot[0], slot);
+            slotStateStore.persist(slot[0]);
+            return slot;
+        }
+
+        /**
+         * Releases a slot once all its messages are delivered.
+         *
+         * @param queueIndex The queue index.
+         * @param slot       The slot to release.
+         */
+        private synchronized void releaseSlot(int queueIndex, long[] slot) {
+            assignedSlots[queueIndex].remove(slot[0]);
+            slotStateStore.persist(slot[0]);
+        }
+    }
+
+    /**
+     * Persists slot state changes made by the slot manager.
+     */
+    private interface SlotStateStore {
+
+        /**
+         * Persists a change to the state of a slot.
+         *
+         * @param slotStartID The start ID of the changed slot.
+         */
+        void persist(long slotStartID);
+    }
+
+    /**
+     * Slots assigned, and batches and state changes persisted by the write-behind handler, reported
+     * per second by JMH.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class SlotCounters {
+
+        public long slotsAssigned;
+
+        public long writeBehindBatches;
+
+        public long writeBehindStateChanges;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            slotsAssigned = 0L;
+        }
+
+        /**
+         * Takes the write-behind handler's counts of the iteration. Counts taken by other threads
+         * are reset, so the sum over threads is the total.
+         *
+         * @param benchmark The benchmark state.
+         */
+        @TearDown(Level.Iteration)
+        public void takeCounts(SlotAssignmentBenchmark benchmark) {
+            if (null != benchmark.writeBehindHandler) {
+                writeBehindBatches = benchmark.writeBehindHandler.takeBatchCount();
+                writeBehindStateChanges = benchmark.writeBehindHandler.takeEventCount();
+            }
+        }
+    }
+}
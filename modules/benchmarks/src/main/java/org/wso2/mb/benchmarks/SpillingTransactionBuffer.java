@@ -0,0 +1,230 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.benchmarks;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Buffers the message contents of a publisher transaction until commit. Contents are held on heap
+ * until the buffered size reaches a threshold, after which further contents are appended to a local
+ * file. At commit the heap contents and then the spilled contents are handed to a sink in the order
+ * they were enqueued, reading the file sequentially through a reused buffer so that heap usage stays
+ * flat regardless of the transaction size.
+ * <p>
+ * Spilled contents are written as a 4 byte length followed by the content. Instances are not thread
+ * safe.
+ */
+class SpillingTransactionBuffer implements Closeable {
+
+    /**
+     * Receives the buffered contents at commit.
+     */
+    interface ContentSink {
+
+        /**
+         * Writes a message content to the store.
+         *
+         * @param content The buffer holding the content. Only valid until the method returns.
+         * @param length  The length of the content in the buffer.
+         */
+        void write(byte[] content, int length);
+    }
+
+    /**
+     * The buffered size after which contents are spilled to the file.
+     */
+    private final long inMemoryThresholdBytes;
+
+    /**
+     * The directory the spill file is created in.
+     */
+    private final File spillDirectory;
+
+    /**
+     * Contents held on heap, in the order they were enqueued.
+     */
+    private final List<byte[]> heapContents = new ArrayList<>();
+
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+
+    private long heapBytes = 0L;
+
+    private long spilledBytes = 0L;
+
+    private int maximumSpilledLength = 0;
+
+    /**
+     * Whether the current transaction has reached the threshold. Once set, all further contents of
+     * the transaction are spilled so that the enqueue order is kept.
+     */
+    private boolean spilling = false;
+
+    /**
+     * The spill file. Created when the threshold is first reached.
+     */
+    private File spillFile;
+
+    private FileChannel spillChannel;
+
+    /**
+     * Creates a buffer.
+     *
+     * @param inMemoryThresholdBytes The buffered size after which contents are spilled to a file.
+     *                               Long.MAX_VALUE keeps all contents on heap.
+     * @param spillDirectory         The directory to create the spill file in.
+     */
+    SpillingTransactionBuffer(long inMemoryThresholdBytes, File spillDirectory) {
+        this.inMemoryThresholdBytes = inMemoryThresholdBytes;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Adds a message content to the transaction. The content is copied.
+     *
+     * @param content The message content.
+     * @throws IOException Thrown when writing to the spill file fails.
+     */
+    void enqueue(byte[] content) throws IOException {
+        if (!spilling && heapBytes + content.length <= inMemoryThresholdBytes) {
+            heapContents.add(content.clone());
+            heapBytes = heapBytes + content.length;
+            return;
+        }
+        if (null == spillChannel) {
+            spillFile = File.createTempFile("transaction", ".spill", spillDirectory);
+            spillChannel = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        spilling = true;
+        lengthBuffer.clear();
+        lengthBuffer.putInt(content.length).flip();
+        ByteBuffer[] record = {lengthBuffer, ByteBuffer.wrap(content)};
+        while (record[0].hasRemaining() || record[1].hasRemaining()) {
+            spillChannel.write(record);
+        }
+        spilledBytes = spilledBytes + content.length;
+        maximumSpilledLength = Math.max(maximumSpilledLength, content.length);
+    }
+
+    /**
+     * Hands all buffered contents to the sink in the order they were enqueued and empties the
+     * buffer.
+     *
+     * @param sink The sink writing contents to the store.
+     * @throws IOException Thrown when reading the spill file fails.
+     */
+    void commit(ContentSink sink) throws IOException {
+        for (byte[] content : heapContents) {
+            sink.write(content, content.length);
+        }
+        if (spilling) {
+            byte[] content = new byte[maximumSpilledLength];
+            ByteBuffer contentBuffer = ByteBuffer.wrap(content);
+            long position = 0L;
+            long size = spillChannel.position();
+            while (position < size) {
+                lengthBuffer.clear();
+                position = position + readFully(lengthBuffer, position);
+                int length = lengthBuffer.getInt(0);
+                contentBuffer.clear();
+                contentBuffer.limit(length);
+                position = position + readFully(contentBuffer, position);
+                sink.write(content, length);
+            }
+        }
+        rollback();
+    }
+
+    /**
+     * Discards all buffered contents.
+     *
+     * @throws IOException Thrown when truncating the spill file fails.
+     */
+    void rollback() throws IOException {
+        heapContents.clear();
+        heapBytes = 0L;
+        spilledBytes = 0L;
+        maximumSpilledLength = 0;
+        spilling = false;
+        if (null != spillChannel) {
+            spillChannel.truncate(0L);
+            spillChannel.position(0L);
+        }
+    }
+
+    /**
+     * Gets the size of the contents currently held on heap.
+     *
+     * @return The size in bytes.
+     */
+    long getHeapBytes() {
+        return heapBytes;
+    }
+
+    /**
+     * Gets the size of the contents currently spilled to the file.
+     *
+     * @return The size in bytes.
+     */
+    long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * Closes and deletes the spill file.
+     *
+     * @throws IOException Thrown when closing or deleting the file fails.
+     */
+    @Override
+    public void close() throws IOException {
+        if (null != spillChannel) {
+            spillChannel.close();
+            Files.deleteIfExists(spillFile.toPath());
+            spillChannel = null;
+        }
+    }
+
+    /**
+     * Fills a buffer from the spill file.
+     *
+     * @param buffer   The buffer to fill up to its limit.
+     * @param position The file position to read from.
+     * @return The amount of bytes read.
+     * @throws IOException Thrown when the file ends before the buffer is filled.
+     */
+    private int readFully(ByteBuffer buffer, long position) throws IOException {
+        int read = 0;
+        while (buffer.hasRemaining()) {
+            int count = spillChannel.read(buffer, position + read);
+            if (0 > count) {
+                throw new IOException("Unexpected end of spill file " + spillFile);
+            }
+            read = read + count;
+        }
+        return read;
+    }
+}
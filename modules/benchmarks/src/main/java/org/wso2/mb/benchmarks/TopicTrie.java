@@ -0,0 +1,268 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Matches published topics against wildcard subscriptions using a trie of topic levels, so that the
+ * cost of matching depends on the depth of the topic rather than the amount of subscriptions.
+ * <p>
+ * A subscription is stored at the node its topic filter leads to. The single level wildcard, "+" for
+ * MQTT and "*" for AMQP, and the multi level wildcard "#" are stored as children with those names.
+ * "#" matches the parent level and any amount of levels below it, as MQTT and the broker's AMQP
+ * topics do, and is only allowed as the last level.
+ * <p>
+ * Matching traverses the trie without locks. Children are held in concurrent maps and the
+ * subscribers of a node in an array which is replaced on each change, so a match sees each node
+ * either before or after a concurrent change. Changes are serialized on the trie. Match results of up
+ * to maximumCachedTopics topics are cached and the cache is cleared on every change, which suits
+ * subscriptions that change far less often than messages are published.
+ *
+ * @param <T> The subscriber type.
+ */
+class TopicTrie<T> {
+
+    /**
+     * The multi level wildcard.
+     */
+    private static final String MULTI_LEVEL_WILDCARD = "#";
+
+    private final char levelSeparator;
+
+    private final String singleLevelWildcard;
+
+    private final int maximumCachedTopics;
+
+    private final Node root = new Node();
+
+    /**
+     * Cached match results by topic.
+     */
+    private final Map<String, List<T>> matchCache = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on every change, before the match cache is cleared.
+     */
+    private volatile long version = 0L;
+
+    /**
+     * Creates a trie.
+     *
+     * @param levelSeparator      The character separating topic levels, '/' for MQTT and '.' for AMQP.
+     * @param singleLevelWildcard The single level wildcard, "+" for MQTT and "*" for AMQP.
+     * @param maximumCachedTopics The maximum amount of topics to cache match results for. 0 disables
+     *                            the cache.
+     */
+    TopicTrie(char levelSeparator, String singleLevelWildcard, int maximumCachedTopics) {
+        this.levelSeparator = levelSeparator;
+        this.singleLevelWildcard = singleLevelWildcard;
+        this.maximumCachedTopics = maximumCachedTopics;
+    }
+
+    /**
+     * Adds a subscription.
+     *
+     * @param topicFilter The topic filter, which may contain wildcards.
+     * @param subscriber  The subscriber.
+     */
+    synchronized void subscribe(String topicFilter, T subscriber) {
+        String[] levels = split(topicFilter);
+        for (int i = 0; i < levels.length - 1; i++) {
+            if (MULTI_LEVEL_WILDCARD.equals(levels[i])) {
+                throw new IllegalArgumentException("Multi level wildcard is only allowed as the last level of "
+                                                   + topicFilter);
+            }
+        }
+        Node node = root;
+        for (String level : levels) {
+            Node child = node.children.get(level);
+            if (null == child) {
+                child = new Node();
+                node.children.put(level, child);
+            }
+            node = child;
+        }
+        Object[] subscribers = Arrays.copyOf(node.subscribers, node.subscribers.length + 1);
+        subscribers[subscribers.length - 1] = subscriber;
+        node.subscribers = subscribers;
+        invalidateMatchCache();
+    }
+
+    /**
+     * Removes a subscription. Nodes left without subscribers and children are removed.
+     *
+     * @param topicFilter The topic filter the subscriber subscribed with.
+     * @param subscriber  The subscriber.
+     * @return Whether the subscription existed.
+     */
+    synchronized boolean unsubscribe(String topicFilter, T subscriber) {
+        boolean removed = remove(root, split(topicFilter), 0, subscriber);
+        if (removed) {
+            invalidateMatchCache();
+        }
+        return removed;
+    }
+
+    /**
+     * Gets the subscribers whose topic filters match a published topic.
+     *
+     * @param topic The published topic, without wildcards.
+     * @return The matching subscribers. Not modifiable.
+     */
+    List<T> match(String topic) {
+        List<T> subscribers = matchCache.get(topic);
+        if (null == subscribers) {
+            long matchedVersion = version;
+            List<T> matched = new ArrayList<>();
+            collect(root, split(topic), 0, matched);
+            subscribers = Collections.unmodifiableList(matched);
+            if (matchCache.size() < maximumCachedTopics) {
+                matchCache.put(topic, subscribers);
+                // A change during the match may have cleared the cache before the result was added
+                if (matchedVersion != version) {
+                    matchCache.remove(topic, subscribers);
+                }
+            }
+        }
+        return subscribers;
+    }
+
+    /**
+     * Checks whether the trie has no nodes below the root. As empty nodes are pruned when
+     * subscriptions are removed, this holds once all subscriptions are removed.
+     *
+     * @return Whether the root has no children.
+     */
+    boolean isEmpty() {
+        return root.children.isEmpty();
+    }
+
+    /**
+     * Drops all cached match results after a change.
+     */
+    private void invalidateMatchCache() {
+        version++;
+        matchCache.clear();
+    }
+
+    /**
+     * Adds the subscribers of the nodes below a node which match the remaining levels of a topic.
+     *
+     * @param node    The node matching the levels before the index.
+     * @param levels  The levels of the topic.
+     * @param index   The index of the next level to match.
+     * @param matched The list to add matching subscribers to.
+     */
+    private void collect(Node node, String[] levels, int index, List<T> matched) {
+        Node multiLevelChild = node.children.get(MULTI_LEVEL_WILDCARD);
+        if (null != multiLevelChild) {
+            addAll(multiLevelChild, matched);
+        }
+        if (levels.length == index) {
+            addAll(node, matched);
+            return;
+        }
+        Node child = node.children.get(levels[index]);
+        if (null != child) {
+            collect(child, levels, index + 1, matched);
+        }
+        Node singleLevelChild = node.children.get(singleLevelWildcard);
+        if (null != singleLevelChild) {
+            collect(singleLevelChild, levels, index + 1, matched);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addAll(Node node, List<T> matched) {
+        for (Object subscriber : node.subscribers) {
+            matched.add((T) subscriber);
+        }
+    }
+
+    /**
+     * Removes a subscriber from the node a topic filter leads to and prunes empty nodes on the way
+     * back.
+     *
+     * @return Whether the subscriber was removed.
+     */
+    private boolean remove(Node node, String[] levels, int index, T subscriber) {
+        if (levels.length == index) {
+            Object[] subscribers = node.subscribers;
+            for (int i = 0; i < subscribers.length; i++) {
+                if (subscribers[i].equals(subscriber)) {
+                    Object[] remaining = new Object[subscribers.length - 1];
+                    System.arraycopy(subscribers, 0, remaining, 0, i);
+                    System.arraycopy(subscribers, i + 1, remaining, i, remaining.length - i);
+                    node.subscribers = remaining;
+                    return true;
+                }
+            }
+            return false;
+        }
+        Node child = node.children.get(levels[index]);
+        if (null == child || !remove(child, levels, index + 1, subscriber)) {
+            return false;
+        }
+        if (0 == child.subscribers.length && child.children.isEmpty()) {
+            node.children.remove(levels[index]);
+        }
+        return true;
+    }
+
+    /**
+     * Splits a topic or topic filter in to levels without using regular expressions.
+     */
+    private String[] split(String topic) {
+        int levelCount = 1;
+        for (int i = 0; i < topic.length(); i++) {
+            if (levelSeparator == topic.charAt(i)) {
+                levelCount++;
+            }
+        }
+        String[] levels = new String[levelCount];
+        int start = 0;
+        for (int i = 0; i < levelCount - 1; i++) {
+            int end = topic.indexOf(levelSeparator, start);
+            levels[i] = topic.substring(start, end);
+            start = end + 1;
+        }
+        levels[levelCount - 1] = topic.substring(start);
+        return levels;
+    }
+
+    /**
+     * A topic level.
+     */
+    private static class Node {
+
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+
+        /**
+         * The subscribers whose topic filters end at this node. Replaced on each change.
+         */
+        private volatile Object[] subscribers = new Object[0];
+    }
+}
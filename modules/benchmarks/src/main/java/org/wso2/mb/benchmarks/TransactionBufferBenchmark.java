@@ -0,0 +1,223 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures publisher transactions which buffer message contents until commit. The broker holds a
+ * transaction's contents on heap and fails the commit once they exceed
+ * transaction/maxBatchSizeInBytes in broker.xml, which is 10MB by default.
+ * <p>
+ * HEAP keeps all contents on heap, which is what the broker does within the limit. SPILL keeps
+ * contents on heap up to inMemoryThresholdMB and appends the rest to a local file, which is streamed
+ * to the store at commit. The peak heap held by a transaction in each iteration is reported as a
+ * secondary result. Run with "-prof gc" to compare the allocation rates. The spill file is really
+ * written to and read back from the temporary directory, so its cost depends on the disk and page
+ * cache.
+ * <p>
+ * At commit each content is inserted in to the content table of an {@link EmbeddedMessageStore} as
+ * it is read from the buffer, and the transaction is committed once all contents are written. The
+ * table is emptied after each invocation, which is not measured. The default in-memory database
+ * keeps the written contents on heap until then, so a file database, such as
+ * jdbc:h2:/tmp/transaction-buffer, keeps them out of the allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TransactionBufferBenchmark {
+
+    private static final long BYTES_PER_MB = 1024L * 1024L;
+
+    /**
+     * Where transaction contents are buffered. One of HEAP or SPILL.
+     */
+    @Param({"HEAP", "SPILL"})
+    public String bufferMode;
+
+    /**
+     * The total content size of a transaction in MB.
+     */
+    @Param({"1", "50"})
+    public int transactionSizeMB;
+
+    /**
+     * The buffered size after which SPILL writes contents to the file, in MB.
+     */
+    @Param({"10"})
+    public int inMemoryThresholdMB;
+
+    /**
+     * The content size of a message in bytes.
+     */
+    @Param({"65536"})
+    public int messageSize;
+
+    /**
+     * The JDBC URL of the database.
+     */
+    @Param({"jdbc:h2:mem:transactionbuffer"})
+    public String jdbcUrl;
+
+    private static final String INSERT_CONTENT
+            = "INSERT INTO MB_CONTENT (MESSAGE_ID, CONTENT_OFFSET, MESSAGE_CONTENT) VALUES (?, 0, ?)";
+
+    private File spillDirectory;
+
+    private SpillingTransactionBuffer buffer;
+
+    private byte[] content;
+
+    private EmbeddedMessageStore store;
+
+    /**
+     * The ID of the last message written to the store.
+     */
+    private long lastMessageID = 0L;
+
+    @Setup
+    public void setup() throws IOException, SQLException {
+        store = new EmbeddedMessageStore(jdbcUrl, 0);
+        store.createTables("");
+        spillDirectory = Files.createTempDirectory("transaction-buffer").toFile();
+        long threshold = "SPILL".equals(bufferMode) ? inMemoryThresholdMB * BYTES_PER_MB : Long.MAX_VALUE;
+        buffer = new SpillingTransactionBuffer(threshold, spillDirectory);
+        content = new byte[messageSize];
+        new Random(messageSize).nextBytes(content);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, SQLException {
+        buffer.close();
+        Files.deleteIfExists(spillDirectory.toPath());
+        store.dropTables("");
+        store.close();
+    }
+
+    /**
+     * Empties the content table so that it does not grow across invocations.
+     *
+     * @throws SQLException Thrown when the table cannot be emptied.
+     */
+    @TearDown(Level.Invocation)
+    public void emptyContentTable() throws SQLException {
+        try (Statement statement = store.getConnection().createStatement()) {
+            statement.execute("TRUNCATE TABLE MB_CONTENT");
+        }
+        store.commit();
+    }
+
+    /**
+     * Enqueues the messages of a transaction and commits it.
+     *
+     * @param counters The peak heap held by a transaction.
+     * @return The ID of the last message written to the store.
+     * @throws IOException  Thrown when the spill file cannot be written or read.
+     * @throws SQLException Thrown when a content cannot be written to the store.
+     */
+    @Benchmark
+    public long publishTransaction(HeapCounters counters) throws IOException, SQLException {
+        long messageCount = transactionSizeMB * BYTES_PER_MB / messageSize;
+        for (long i = 0; i < messageCount; i++) {
+            buffer.enqueue(content);
+        }
+        counters.peakHeapBytes = Math.max(counters.peakHeapBytes, buffer.getHeapBytes());
+        StoreContentSink sink = new StoreContentSink(store.prepare(INSERT_CONTENT));
+        buffer.commit(sink);
+        if (null != sink.failure) {
+            throw sink.failure;
+        }
+        store.commit();
+        return lastMessageID;
+    }
+
+    /**
+     * Inserts each content as it is handed over, so that the store does not hold the contents of the
+     * transaction in a JDBC batch. The first failure is kept for the benchmark to throw, as the sink
+     * cannot throw it.
+     */
+    private final class StoreContentSink implements SpillingTransactionBuffer.ContentSink {
+
+        private final PreparedStatement insertContent;
+
+        private SQLException failure;
+
+        private StoreContentSink(PreparedStatement insertContent) {
+            this.insertContent = insertContent;
+        }
+
+        @Override
+        public void write(byte[] storedContent, int length) {
+            if (null != failure) {
+                return;
+            }
+            try {
+                lastMessageID++;
+                insertContent.setLong(1, lastMessageID);
+                insertContent.setBytes(2, (storedContent.length == length)
+                                          ? storedContent : Arrays.copyOf(storedContent, length));
+                insertContent.executeUpdate();
+            } catch (SQLException e) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * The peak heap held by a transaction in an iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class HeapCounters {
+
+        public long peakHeapBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            peakHeapBytes = 0L;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the commit latency of concurrent transactional publishers. The broker writes the messages
+ * of committed transactions to the message store using transactionMessageWriters writers
+ * (performanceTuning/inboundEvents in broker.xml), each with its own connection, and the publisher's
+ * commit returns once its transaction is written.
+ * <p>
+ * SERIAL writes every transaction with a single writer, which is the broker default. PARALLEL writes
+ * independent transactions concurrently with transactionMessageWriters writers. MERGED additionally
+ * lets a writer take up to mergeLimit waiting transactions and write them in a single database
+ * transaction, completing each publisher's commit once it is written.
+ * <p>
+ * Each benchmark thread is a publisher committing transactions, and the sampled time is the commit
+ * latency, so JMH reports its percentiles. Each writer owns an {@link EmbeddedMessageStore}
+ * connection and writes a database transaction as batched metadata and content inserts of all its
+ * messages followed by a commit. The tables are emptied after each iteration. The throughput run also
+ * reports the database transactions executed per second as a secondary result, which against the
+ * commit rate gives the publisher transactions merged in to a database transaction.
+ * <p>
+ * The default in-memory database serializes the statements of all connections and has no log to
+ * wait on, so PARALLEL only overlaps the work outside the database. A file database, such as
+ * jdbc:h2:/tmp/commit, adds the log writes a commit waits for, and an H2 server or
+ * jdbc:h2:mem:commit;MULTI_THREADED=1 runs the writers' statements in parallel.
+ */
+@BenchmarkMode({Mode.SampleTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+@Threads(8)
+public class TransactionCommitBenchmark {
+
+    /**
+     * How committed transactions are written, either SERIAL, PARALLEL or MERGED.
+     */
+    @Param({"SERIAL", "PARALLEL", "MERGED"})
+    public String commitMode;
+
+    /**
+     * The amount of writers used by PARALLEL and MERGED. SERIAL always uses a single writer.
+     */
+    @Param({"4"})
+    public int transactionMessageWriters;
+
+    /**
+     * The maximum amount of publisher transactions MERGED writes in a single database transaction.
+     */
+    @Param({"32"})
+    public int mergeLimit;
+
+    /**
+     * The amount of messages published in each transaction.
+     */
+    @Param({"1", "10"})
+    public int messagesPerTransaction;
+
+    /**
+     * The size of the content of a message.
+     */
+    @Param({"1024"})
+    public int contentSize;
+
+    /**
+     * The JDBC URL of the database.
+     */
+    @Param({"jdbc:h2:mem:commit"})
+    public String jdbcUrl;
+
+    /**
+     * The queue the messages are published to.
+     */
+    private static final int QUEUE_ID = 1;
+
+    /**
+     * Creates the tables and empties them between iterations. Also keeps an in-memory database open
+     * while writers connect and disconnect.
+     */
+    private EmbeddedMessageStore store;
+
+    /**
+     * Commits waiting to be written.
+     */
+    private BlockingQueue<CommitRequest> pendingCommits;
+
+    private List<Thread> writers;
+
+    /**
+     * The stores of the writers, each with its own connection.
+     */
+    private List<EmbeddedMessageStore> writerStores;
+
+    /**
+     * The ID of the last message written.
+     */
+    private final AtomicLong lastMessageID = new AtomicLong();
+
+    /**
+     * The amount of database transactions executed by the writers since last taken.
+     */
+    private final AtomicLong databaseTransactionCount = new AtomicLong();
+
+    @Setup
+    public void setup() throws SQLException {
+        store = new EmbeddedMessageStore(jdbcUrl, contentSize);
+        store.createTables("");
+        pendingCommits = new LinkedBlockingQueue<>();
+        int writerCount = "SERIAL".equals(commitMode) ? 1 : transactionMessageWriters;
+        final int transactionsPerWrite = "MERGED".equals(commitMode) ? mergeLimit : 1;
+        writers = new ArrayList<>(writerCount);
+        writerStores = new ArrayList<>(writerCount);
+        for (int i = 0; i < writerCount; i++) {
+            final EmbeddedMessageStore writerStore = new EmbeddedMessageStore(jdbcUrl, contentSize);
+            writerStores.add(writerStore);
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    writeCommits(writerStore, transactionsPerWrite);
+                }
+            }, "TransactionWriter-" + i);
+            writer.setDaemon(true);
+            writer.start();
+            writers.add(writer);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException, SQLException {
+        for (Thread writer : writers) {
+            writer.interrupt();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        for (EmbeddedMessageStore writerStore : writerStores) {
+            writerStore.close();
+        }
+        store.dropTables("");
+        store.close();
+    }
+
+    /**
+     * Empties the tables so that they do not grow across iterations. Publishers have no commits
+     * waiting, so the writers are idle.
+     *
+     * @throws SQLException Thrown when a table cannot be emptied.
+     */
+    @TearDown(Level.Iteration)
+    public void emptyTables() throws SQLException {
+        try (Statement statement = store.getConnection().createStatement()) {
+            statement.execute("TRUNCATE TABLE MB_CONTENT");
+            statement.execute("TRUNCATE TABLE MB_METADATA");
+        }
+        store.commit();
+    }
+
+    /**
+     * Commits a transaction and waits until it is written.
+     *
+     * @param counters Counters of the database transactions executed by the writers.
+     * @return The amount of messages committed.
+     * @throws InterruptedException Thrown when interrupted while waiting for the commit.
+     * @throws SQLException         Thrown when the writer failed to write the transaction.
+     */
+    @Benchmark
+    public int commitTransaction(WriterCounters counters) throws InterruptedException, SQLException {
+        CommitRequest commit = new CommitRequest(messagesPerTransaction);
+        pendingCommits.put(commit);
+        commit.await();
+        return commit.messageCount;
+    }
+
+    /**
+     * Takes waiting commits and writes them until the writer is interrupted. Runs on a writer thread.
+     *
+     * @param writerStore          The store of the writer.
+     * @param transactionsPerWrite The maximum amount of publisher transactions written in a single
+     *                             database transaction.
+     */
+    private void writeCommits(EmbeddedMessageStore writerStore, int transactionsPerWrite) {
+        List<CommitRequest> commits = new ArrayList<>(transactionsPerWrite);
+        long[] messageIDs = new long[transactionsPerWrite * messagesPerTransaction];
+        try {
+            while (true) {
+                commits.add(pendingCommits.take());
+                pendingCommits.drainTo(commits, transactionsPerWrite - 1);
+
+                int messageCount = 0;
+                for (CommitRequest commit : commits) {
+                    messageCount = messageCount + commit.messageCount;
+                }
+                long firstMessageID = lastMessageID.getAndAdd(messageCount) + 1;
+                for (int i = 0; i < messageCount; i++) {
+                    messageIDs[i] = firstMessageID + i;
+                }
+                SQLException failure = null;
+                try {
+                    writerStore.insertMessages("", QUEUE_ID, messageIDs, 0, messageCount, 0L);
+                    databaseTransactionCount.incrementAndGet();
+                } catch (SQLException e) {
+                    failure = e;
+                }
+
+                for (CommitRequest commit : commits) {
+                    commit.complete(failure);
+                }
+                commits.clear();
+            }
+        } catch (InterruptedException e) {
+            // Stopped at tear down. Publishers waiting for commits are released so that they can finish.
+            for (CommitRequest commit : commits) {
+                commit.complete(null);
+            }
+            List<CommitRequest> remaining = new ArrayList<>();
+            pendingCommits.drainTo(remaining);
+            for (CommitRequest commit : remaining) {
+                commit.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Database transactions executed by the writers, reported per second by JMH in the throughput
+     * run.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class WriterCounters {
+
+        public long databaseTransactions;
+
+        /**
+         * Takes the writers' count of the iteration. Counts taken by other publishers are reset, so
+         * the sum over publishers is the total.
+         *
+         * @param benchmark The benchmark state.
+         */
+        @TearDown(Level.Iteration)
+        public void takeCounts(TransactionCommitBenchmark benchmark) {
+            databaseTransactions = benchmark.databaseTransactionCount.getAndSet(0L);
+        }
+    }
+
+    /**
+     * A publisher's commit, completed by the writer once its messages are written or failed to be.
+     */
+    private static class CommitRequest {
+
+        private final int messageCount;
+
+        private final CountDownLatch written = new CountDownLatch(1);
+
+        private SQLException failure;
+
+        private CommitRequest(int messageCount) {
+            this.messageCount = messageCount;
+        }
+
+        private void complete(SQLException failure) {
+            this.failure = failure;
+            written.countDown();
+        }
+
+        private void await() throws InterruptedException, SQLException {
+            written.await();
+            if (null != failure) {
+                throw failure;
+            }
+        }
+    }
+}
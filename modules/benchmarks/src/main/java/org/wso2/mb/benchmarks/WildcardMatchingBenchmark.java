@@ -0,0 +1,176 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures matching published MQTT topics against subscriptions, modeled on the MqttIoTSample where
+ * vehicles publish sensor readings to "type/model/vehicleId/sensor" topics. Each vehicle has a
+ * subscription for its own sensors ("type/model/vehicleId/+") and a few wildcard subscriptions such
+ * as "+/+/+/engineTemperature" and "CAR/#" listen across vehicles.
+ * <p>
+ * LINEAR matches each topic against every subscription, which grows with the subscription count.
+ * TRIE matches through a {@link TopicTrie} and TRIE_CACHED additionally caches match results.
+ * Publishes are skewed towards a small set of vehicles, giving hot topics for the cache.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WildcardMatchingBenchmark {
+
+    private static final String[] VEHICLE_TYPES = {"CAR", "BIKE", "VAN"};
+
+    private static final int MODELS_PER_TYPE = 10;
+
+    private static final String[] SENSORS = {"engineTemperature", "speed", "acceleration"};
+
+    /**
+     * Subscriptions across vehicles, as used in the MqttIoTSample.
+     */
+    private static final String[] WILDCARD_SUBSCRIPTIONS =
+            {"+/+/+/engineTemperature", "CAR/#", "BIKE/Model3/#", "+/+/vehicle7/speed"};
+
+    /**
+     * The amount of published topics generated up front. A power of 2.
+     */
+    private static final int TOPIC_COUNT = 65536;
+
+    /**
+     * The matcher. One of LINEAR, TRIE or TRIE_CACHED.
+     */
+    @Param({"LINEAR", "TRIE", "TRIE_CACHED"})
+    public String matcher;
+
+    /**
+     * The amount of vehicles, each with its own subscription.
+     */
+    @Param({"1000", "200000"})
+    public int subscriptionCount;
+
+    /**
+     * The maximum amount of topics TRIE_CACHED caches match results for.
+     */
+    @Param({"10000"})
+    public int maximumCachedTopics;
+
+    private String[][] linearFilters;
+
+    private TopicTrie<String> trie;
+
+    private String[] topics;
+
+    private int topicIndex = 0;
+
+    @Setup
+    public void setup() {
+        List<String> filters = new ArrayList<>(subscriptionCount + WILDCARD_SUBSCRIPTIONS.length);
+        for (int vehicle = 0; vehicle < subscriptionCount; vehicle++) {
+            filters.add(getVehicleTopicPrefix(vehicle) + "+");
+        }
+        for (String filter : WILDCARD_SUBSCRIPTIONS) {
+            filters.add(filter);
+        }
+
+        if ("LINEAR".equals(matcher)) {
+            linearFilters = new String[filters.size()][];
+            for (int i = 0; i < filters.size(); i++) {
+                linearFilters[i] = filters.get(i).split("/");
+            }
+        } else {
+            trie = new TopicTrie<>('/', "+", "TRIE_CACHED".equals(matcher) ? maximumCachedTopics : 0);
+            for (String filter : filters) {
+                trie.subscribe(filter, filter);
+            }
+        }
+
+        // A quarter of the vehicles account for about 70% of the publishes
+        Random random = new Random(subscriptionCount);
+        topics = new String[TOPIC_COUNT];
+        for (int i = 0; i < TOPIC_COUNT; i++) {
+            int vehicle = (int) (subscriptionCount * Math.pow(random.nextDouble(), 4D));
+            topics[i] = getVehicleTopicPrefix(vehicle) + SENSORS[random.nextInt(SENSORS.length)];
+        }
+    }
+
+    /**
+     * Matches the next published topic against the subscriptions.
+     *
+     * @return The amount of matching subscriptions.
+     */
+    @Benchmark
+    public int matchTopic() {
+        String topic = topics[topicIndex++ & (TOPIC_COUNT - 1)];
+        if (null != trie) {
+            return trie.match(topic).size();
+        }
+        String[] levels = topic.split("/");
+        int matches = 0;
+        for (String[] filter : linearFilters) {
+            if (matches(filter, levels)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Matches a topic against a topic filter level by level.
+     *
+     * @param filter The levels of the topic filter.
+     * @param levels The levels of the topic.
+     * @return Whether the topic matches.
+     */
+    static boolean matches(String[] filter, String[] levels) {
+        for (int i = 0; i < filter.length; i++) {
+            if ("#".equals(filter[i])) {
+                return true;
+            }
+            if (i == levels.length || (!"+".equals(filter[i]) && !filter[i].equals(levels[i]))) {
+                return false;
+            }
+        }
+        return filter.length == levels.length;
+    }
+
+    private static String getVehicleTopicPrefix(int vehicle) {
+        String type = VEHICLE_TYPES[vehicle % VEHICLE_TYPES.length];
+        int model = (vehicle / VEHICLE_TYPES.length) % MODELS_PER_TYPE;
+        return type + "/Model" + model + "/vehicle" + vehicle + "/";
+    }
+}
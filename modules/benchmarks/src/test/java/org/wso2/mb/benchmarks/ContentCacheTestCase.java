@@ -0,0 +1,185 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.benchmarks;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.mb.benchmarks.ContentCacheBenchmark.FrequencySketch;
+import org.wso2.mb.benchmarks.ContentCacheBenchmark.OffHeapContentCache;
+import org.wso2.mb.benchmarks.ContentCacheBenchmark.TieredContentCache;
+import org.wso2.mb.benchmarks.ContentCacheBenchmark.TinyLfuContentCache;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks admission and weight accounting of the TinyLFU content cache, the frequency sketch it
+ * admits by, and eviction of the off-heap ring cache used by the content cache benchmark.
+ */
+public class ContentCacheTestCase {
+
+    /**
+     * The maximum weight of the TinyLFU caches. 1% of it is the window, which content larger than
+     * 100 bytes leaves as soon as it is put, and the rest the main cache.
+     */
+    private static final long MAXIMUM_WEIGHT = 10000L;
+
+    /**
+     * Content which needs more than one victim to be admitted is rejected if any of them is read at
+     * least as often, not only the first.
+     */
+    @Test
+    public void testAdmissionComparesEveryVictim() {
+        TinyLfuContentCache cache = new TinyLfuContentCache(MAXIMUM_WEIGHT, null);
+        cache.put(1L, content(4900, 1));
+        cache.put(2L, content(4900, 2));
+        // Moves 2 to the protected segment, so 1 is the first victim and 2 the second
+        read(cache, 2L, 5);
+        read(cache, 3L, 2);
+
+        cache.put(3L, content(9000, 3));
+
+        Assert.assertEquals(cache.getEvictionCount(), 1L, "Only the candidate should be evicted");
+        Assert.assertNull(cache.get(3L));
+        Assert.assertNotNull(cache.get(1L));
+        Assert.assertNotNull(cache.get(2L));
+    }
+
+    /**
+     * Content read more often than all the victims it needs is admitted and the victims are evicted.
+     */
+    @Test
+    public void testAdmissionEvictsLessFrequentVictims() {
+        TinyLfuContentCache cache = new TinyLfuContentCache(MAXIMUM_WEIGHT, null);
+        cache.put(1L, content(4900, 1));
+        cache.put(2L, content(4900, 2));
+        read(cache, 2L, 1);
+        read(cache, 3L, 3);
+
+        cache.put(3L, content(9000, 3));
+
+        Assert.assertEquals(cache.getEvictionCount(), 2L);
+        Assert.assertEquals(cache.get(3L), content(9000, 3));
+        Assert.assertNull(cache.get(1L));
+        Assert.assertNull(cache.get(2L));
+        Assert.assertEquals(cache.getWeight(), 9000L);
+    }
+
+    /**
+     * The cached content size never exceeds the maximum weight and content larger than the cache is
+     * evicted right away.
+     */
+    @Test
+    public void testWeightAccounting() {
+        TinyLfuContentCache cache = new TinyLfuContentCache(MAXIMUM_WEIGHT, null);
+        Random random = new Random(MAXIMUM_WEIGHT);
+        for (long messageID = 0L; messageID < 1000L; messageID++) {
+            if (null == cache.get(random.nextInt(100))) {
+                cache.put(messageID, new byte[1 + random.nextInt(3000)]);
+            }
+            Assert.assertTrue(cache.getWeight() <= MAXIMUM_WEIGHT, "Weight " + cache.getWeight());
+        }
+
+        long evictionCount = cache.getEvictionCount();
+        long weight = cache.getWeight();
+        cache.put(1000L, new byte[(int) MAXIMUM_WEIGHT + 1]);
+        Assert.assertEquals(cache.getEvictionCount(), evictionCount + 1);
+        Assert.assertEquals(cache.getWeight(), weight);
+        Assert.assertNull(cache.get(1000L));
+    }
+
+    /**
+     * Counts saturate at 15 and are halved once the amount of increments reaches the sample size.
+     */
+    @Test
+    public void testFrequencySketchAging() {
+        // 64 expected entries give 128 counters per row, which is also the minimum sample size
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 20; i++) {
+            sketch.increment(1L, 0);
+        }
+        for (int i = 0; i < 3; i++) {
+            sketch.increment(2L, 0);
+        }
+        Assert.assertEquals(sketch.frequency(1L), 15);
+        Assert.assertEquals(sketch.frequency(2L), 3);
+        Assert.assertEquals(sketch.frequency(3L), 0);
+
+        for (int i = 23; i < 128; i++) {
+            sketch.increment(3L, 0);
+        }
+        Assert.assertEquals(sketch.frequency(1L), 7);
+        Assert.assertEquals(sketch.frequency(2L), 1);
+        Assert.assertEquals(sketch.frequency(3L), 7);
+    }
+
+    /**
+     * Writing past the end of the ring wraps to the start and evicts only the content it overlaps,
+     * oldest first.
+     */
+    @Test
+    public void testOffHeapRingEviction() {
+        OffHeapContentCache cache = new OffHeapContentCache(100L);
+        cache.put(1L, content(40, 1));
+        cache.put(2L, content(40, 2));
+        cache.put(3L, content(40, 3));
+
+        Assert.assertEquals(cache.getEvictionCount(), 1L);
+        Assert.assertNull(cache.get(1L));
+        Assert.assertEquals(cache.get(2L), content(40, 2));
+        Assert.assertEquals(cache.get(3L), content(40, 3));
+
+        cache.put(4L, content(30, 4));
+        Assert.assertEquals(cache.getEvictionCount(), 2L);
+        Assert.assertNull(cache.get(2L));
+        Assert.assertEquals(cache.get(3L), content(40, 3));
+        Assert.assertEquals(cache.get(4L), content(30, 4));
+
+        cache.put(5L, content(101, 5));
+        Assert.assertNull(cache.get(5L), "Content larger than the ring should not be cached");
+        Assert.assertEquals(cache.getEvictionCount(), 2L);
+    }
+
+    /**
+     * Content rejected by the heap cache is read back from the off-heap cache.
+     */
+    @Test
+    public void testTieredCacheKeepsEvictedContent() {
+        TieredContentCache cache = new TieredContentCache(MAXIMUM_WEIGHT, 100000L);
+        cache.put(1L, content(9000, 1));
+        cache.put(2L, content(9000, 2));
+
+        Assert.assertEquals(cache.get(1L), content(9000, 1));
+        Assert.assertEquals(cache.get(2L), content(9000, 2));
+        Assert.assertEquals(cache.getEvictionCount(), 0L);
+    }
+
+    private static void read(TinyLfuContentCache cache, long messageID, int times) {
+        for (int i = 0; i < times; i++) {
+            cache.get(messageID);
+        }
+    }
+
+    private static byte[] content(int size, int value) {
+        byte[] content = new byte[size];
+        Arrays.fill(content, (byte) value);
+        return content;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.benchmarks;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that {@link SpillingTransactionBuffer} hands contents to the sink exactly as enqueued,
+ * whether they were held on heap or spilled.
+ */
+public class SpillingTransactionBufferTestCase {
+
+    /**
+     * The buffered size after which contents are spilled.
+     */
+    private static final long THRESHOLD_BYTES = 10L;
+
+    private File spillDirectory;
+
+    private SpillingTransactionBuffer buffer;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        spillDirectory = Files.createTempDirectory("spill-test").toFile();
+        buffer = new SpillingTransactionBuffer(THRESHOLD_BYTES, spillDirectory);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        buffer.close();
+        Files.deleteIfExists(spillDirectory.toPath());
+    }
+
+    /**
+     * Contents enqueued after the threshold is reached are spilled, including contents small
+     * enough to fit on heap, and all contents are committed in the enqueue order.
+     */
+    @Test
+    public void testCommitKeepsEnqueueOrder() throws IOException {
+        List<String> contents = Arrays.asList("aaaa", "bbbb", "cccc", "d", "eeeeeeee");
+        enqueueAll(contents);
+
+        Assert.assertEquals(buffer.getHeapBytes(), 8L, "Contents up to the threshold should be on heap");
+        Assert.assertEquals(buffer.getSpilledBytes(), 13L, "Contents after the threshold should be spilled");
+        Assert.assertEquals(commit(), contents);
+        Assert.assertEquals(buffer.getHeapBytes(), 0L);
+        Assert.assertEquals(buffer.getSpilledBytes(), 0L);
+    }
+
+    /**
+     * Empty contents are committed both when held on heap and when spilled.
+     */
+    @Test
+    public void testEmptyContentsCommitted() throws IOException {
+        List<String> contents = Arrays.asList("", "aaaaaaaaaa", "", "b", "");
+        enqueueAll(contents);
+
+        Assert.assertEquals(buffer.getSpilledBytes(), 1L);
+        Assert.assertEquals(commit(), contents);
+    }
+
+    /**
+     * Rolled back contents, heap or spilled, are not committed.
+     */
+    @Test
+    public void testRollbackDiscardsContents() throws IOException {
+        enqueueAll(Arrays.asList("aaaaaaaa", "bbbbbbbb", "cccccccc"));
+        buffer.rollback();
+
+        Assert.assertEquals(buffer.getHeapBytes(), 0L);
+        Assert.assertEquals(buffer.getSpilledBytes(), 0L);
+        Assert.assertEquals(commit(), new ArrayList<String>());
+
+        List<String> contents = Arrays.asList("dddd", "eeeeeeeeeeee");
+        enqueueAll(contents);
+        Assert.assertEquals(commit(), contents, "Contents after a rollback should be committed");
+    }
+
+    /**
+     * A buffer reused after a spilling transaction starts on heap again and reuses the spill file
+     * for a later transaction which spills less.
+     */
+    @Test
+    public void testReuseAfterCommit() throws IOException {
+        List<String> firstTransaction = Arrays.asList("aaaaaaaa", "bbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbb");
+        enqueueAll(firstTransaction);
+        Assert.assertEquals(commit(), firstTransaction);
+
+        List<String> secondTransaction = Arrays.asList("cc", "dd");
+        enqueueAll(secondTransaction);
+        Assert.assertEquals(buffer.getSpilledBytes(), 0L, "A new transaction should start on heap");
+        Assert.assertEquals(commit(), secondTransaction);
+
+        List<String> thirdTransaction = Arrays.asList("eeeeeeeeee", "f", "", "gg");
+        enqueueAll(thirdTransaction);
+        Assert.assertEquals(buffer.getSpilledBytes(), 3L);
+        Assert.assertEquals(commit(), thirdTransaction, "Stale spilled contents should not be committed");
+    }
+
+    private void enqueueAll(List<String> contents) throws IOException {
+        for (String content : contents) {
+            buffer.enqueue(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private List<String> commit() throws IOException {
+        final List<String> committedContents = new ArrayList<>();
+        buffer.commit(new SpillingTransactionBuffer.ContentSink() {
+            @Override
+            public void write(byte[] content, int length) {
+                committedContents.add(new String(content, 0, length, StandardCharsets.UTF_8));
+            }
+        });
+        return committedContents;
+    }
+}
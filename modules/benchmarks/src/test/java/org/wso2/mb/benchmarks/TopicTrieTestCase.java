@@ -0,0 +1,214 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.benchmarks;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks wildcard matching, removal and match caching of {@link TopicTrie}.
+ */
+public class TopicTrieTestCase {
+
+    /**
+     * "+" matches exactly one level.
+     */
+    @Test
+    public void testSingleLevelWildcard() {
+        TopicTrie<String> trie = new TopicTrie<>('/', "+", 0);
+        trie.subscribe("CAR/+/speed", "s1");
+        trie.subscribe("+/+/+", "s2");
+
+        Assert.assertEquals(sorted(trie.match("CAR/Model1/speed")), Arrays.asList("s1", "s2"));
+        Assert.assertEquals(trie.match("CAR/speed"), Collections.emptyList(), "+ should not match zero levels");
+        Assert.assertEquals(trie.match("CAR/Model1/vehicle1/speed"), Collections.emptyList(),
+                            "+ should not match two levels");
+        Assert.assertEquals(trie.match("BIKE/Model1/temperature"), Collections.singletonList("s2"));
+    }
+
+    /**
+     * AMQP topics use "." as the separator and "*" as the single level wildcard, where "+" is an
+     * ordinary level.
+     */
+    @Test
+    public void testAmqpSingleLevelWildcard() {
+        TopicTrie<String> trie = new TopicTrie<>('.', "*", 0);
+        trie.subscribe("stock.*.price", "s1");
+        trie.subscribe("stock.+", "s2");
+
+        Assert.assertEquals(trie.match("stock.wso2.price"), Collections.singletonList("s1"));
+        Assert.assertEquals(trie.match("stock.wso2"), Collections.emptyList(), "+ should not be a wildcard");
+        Assert.assertEquals(trie.match("stock.+"), Collections.singletonList("s2"));
+    }
+
+    /**
+     * "#" matches the parent level and any amount of levels below it.
+     */
+    @Test
+    public void testMultiLevelWildcardMatchesParentLevel() {
+        TopicTrie<String> trie = new TopicTrie<>('/', "+", 0);
+        trie.subscribe("CAR/#", "s1");
+        trie.subscribe("+/Model1/#", "s2");
+        trie.subscribe("#", "s3");
+
+        Assert.assertEquals(sorted(trie.match("CAR")), Arrays.asList("s1", "s3"));
+        Assert.assertEquals(sorted(trie.match("CAR/Model1")), Arrays.asList("s1", "s2", "s3"));
+        Assert.assertEquals(sorted(trie.match("CAR/Model1/vehicle1/speed")), Arrays.asList("s1", "s2", "s3"));
+        Assert.assertEquals(trie.match("BIKE/Model2"), Collections.singletonList("s3"));
+    }
+
+    /**
+     * "#" is only allowed as the last level of a topic filter.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMultiLevelWildcardOnlyAsLastLevel() {
+        new TopicTrie<String>('/', "+", 0).subscribe("CAR/#/speed", "s1");
+    }
+
+    /**
+     * Unsubscribing removes only the given subscriber of the given topic filter.
+     */
+    @Test
+    public void testUnsubscribe() {
+        TopicTrie<String> trie = new TopicTrie<>('/', "+", 0);
+        trie.subscribe("CAR/+", "s1");
+        trie.subscribe("CAR/+", "s2");
+        trie.subscribe("CAR/Model1", "s1");
+
+        Assert.assertTrue(trie.unsubscribe("CAR/+", "s1"));
+        Assert.assertEquals(sorted(trie.match("CAR/Model1")), Arrays.asList("s1", "s2"));
+        Assert.assertFalse(trie.unsubscribe("CAR/+", "s1"), "A removed subscription should not exist");
+        Assert.assertFalse(trie.unsubscribe("CAR/Model2", "s2"), "An unknown topic filter should not exist");
+        Assert.assertEquals(trie.match("CAR/Model2"), Collections.singletonList("s2"));
+    }
+
+    /**
+     * Nodes left without subscribers and children are pruned, while nodes on the path to other
+     * subscriptions are kept.
+     */
+    @Test
+    public void testUnsubscribePrunesEmptyNodes() {
+        TopicTrie<String> trie = new TopicTrie<>('/', "+", 0);
+        trie.subscribe("CAR/Model1/vehicle1/#", "s1");
+        trie.subscribe("CAR/Model1", "s2");
+
+        Assert.assertTrue(trie.unsubscribe("CAR/Model1", "s2"));
+        Assert.assertEquals(trie.match("CAR/Model1/vehicle1"), Collections.singletonList("s1"),
+                            "A node with children should be kept");
+        Assert.assertTrue(trie.unsubscribe("CAR/Model1/vehicle1/#", "s1"));
+        Assert.assertTrue(trie.isEmpty(), "All nodes should be pruned once all subscriptions are removed");
+    }
+
+    /**
+     * Match results are cached until the subscriptions change.
+     */
+    @Test
+    public void testMatchCacheInvalidation() {
+        TopicTrie<String> trie = new TopicTrie<>('/', "+", 10);
+        List<String> matched = trie.match("CAR/Model1");
+        Assert.assertEquals(matched, Collections.emptyList());
+        Assert.assertSame(trie.match("CAR/Model1"), matched, "The match result should be cached");
+
+        trie.subscribe("CAR/+", "s1");
+        Assert.assertEquals(trie.match("CAR/Model1"), Collections.singletonList("s1"),
+                            "Subscribing should invalidate the cached result");
+
+        Assert.assertTrue(trie.unsubscribe("CAR/+", "s1"));
+        Assert.assertEquals(trie.match("CAR/Model1"), Collections.emptyList(),
+                            "Unsubscribing should invalidate the cached result");
+
+        Assert.assertFalse(trie.unsubscribe("CAR/+", "s1"));
+        matched = trie.match("CAR/Model1");
+        Assert.assertSame(trie.match("CAR/Model1"), matched,
+                          "An unsubscribe which removes nothing should keep the cached result");
+    }
+
+    /**
+     * No more than the maximum amount of topics are cached.
+     */
+    @Test
+    public void testMatchCacheBound() {
+        TopicTrie<String> trie = new TopicTrie<>('/', "+", 1);
+        trie.subscribe("CAR/+", "s1");
+        List<String> first = trie.match("CAR/Model1");
+        List<String> second = trie.match("CAR/Model2");
+
+        Assert.assertSame(trie.match("CAR/Model1"), first);
+        Assert.assertNotSame(trie.match("CAR/Model2"), second, "Topics beyond the maximum should not be cached");
+        Assert.assertEquals(trie.match("CAR/Model2"), Collections.singletonList("s1"));
+    }
+
+    /**
+     * The trie, with and without the cache, matches the same subscriptions as matching each topic
+     * filter in turn, which the wildcard matching benchmark uses as its baseline.
+     */
+    @Test
+    public void testMatchesLinearMatching() {
+        String[] levels = {"a", "b", "c", "+", "#"};
+        Random random = new Random(3000);
+        List<String> filters = new ArrayList<>();
+        TopicTrie<String> trie = new TopicTrie<>('/', "+", 0);
+        TopicTrie<String> cachedTrie = new TopicTrie<>('/', "+", 100);
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder filter = new StringBuilder();
+            int depth = 1 + random.nextInt(4);
+            for (int level = 0; level < depth; level++) {
+                // "#" only as the last level
+                String name = levels[random.nextInt(level == depth - 1 ? levels.length : levels.length - 1)];
+                filter.append(0 == level ? "" : "/").append(name);
+            }
+            String subscriber = filter + " " + i;
+            filters.add(subscriber);
+            trie.subscribe(filter.toString(), subscriber);
+            cachedTrie.subscribe(filter.toString(), subscriber);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder topic = new StringBuilder();
+            int depth = 1 + random.nextInt(5);
+            for (int level = 0; level < depth; level++) {
+                topic.append(0 == level ? "" : "/").append(levels[random.nextInt(3)]);
+            }
+            String[] topicLevels = topic.toString().split("/");
+            List<String> expected = new ArrayList<>();
+            for (String subscriber : filters) {
+                String filter = subscriber.substring(0, subscriber.indexOf(' '));
+                if (WildcardMatchingBenchmark.matches(filter.split("/"), topicLevels)) {
+                    expected.add(subscriber);
+                }
+            }
+            Collections.sort(expected);
+            Assert.assertEquals(sorted(trie.match(topic.toString())), expected, "Topic " + topic);
+            Assert.assertEquals(sorted(cachedTrie.match(topic.toString())), expected, "Topic " + topic);
+        }
+    }
+
+    private static List<String> sorted(List<String> subscribers) {
+        List<String> sorted = new ArrayList<>(subscribers);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
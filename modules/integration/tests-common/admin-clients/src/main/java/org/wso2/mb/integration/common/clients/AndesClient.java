@@ -19,11 +19,13 @@
 package org.wso2.mb.integration.common.clients;
 
 
+import org.HdrHistogram.Histogram;
 import org.apache.log4j.Logger;
 import org.wso2.mb.integration.common.clients.configurations.AndesJMSClientConfiguration;
 import org.wso2.mb.integration.common.clients.configurations.AndesJMSConsumerClientConfiguration;
 import org.wso2.mb.integration.common.clients.configurations.AndesJMSPublisherClientConfiguration;
 import org.wso2.mb.integration.common.clients.exceptions.AndesClientException;
+import org.wso2.mb.integration.common.clients.operations.utils.AndesClientConstants;
 import org.wso2.mb.integration.common.clients.operations.utils.AndesClientOutputParser;
 import org.wso2.mb.integration.common.clients.operations.utils.AndesClientUtils;
 
@@ -61,6 +63,11 @@ public class AndesClient {
      */
     List<AndesJMSPublisher> publishers = new ArrayList<>();
 
+    /**
+     * The files this client writes to, whose writers are retained until the client is stopped
+     */
+    private final List<String> retainedFilePaths = new ArrayList<>();
+
     /**
      * Creates a single consumer or publisher based on the configuration passed
      *
@@ -94,24 +101,34 @@ public class AndesClient {
                        boolean createConsumersAndProducers)
             throws IOException, JMSException, NamingException, AndesClientException {
         if (0 < numberOfThreads) {
-            if ((config instanceof AndesJMSConsumerClientConfiguration) &&
-                    (null !=(((AndesJMSConsumerClientConfiguration) config).getFilePathToWriteReceivedMessages()))) {
-                AndesClientUtils.initializeReceivedMessagesPrintWriter(((AndesJMSConsumerClientConfiguration) config)
-                                                                       .getFilePathToWriteReceivedMessages());
-            }
-
-            if ((config instanceof AndesJMSPublisherClientConfiguration) &&
-                    (null !=(((AndesJMSPublisherClientConfiguration) config).getFilePathToWritePublishedMessages()))) {
-                AndesClientUtils.initializePublishedPrintWriter(((AndesJMSPublisherClientConfiguration) config).getFilePathToWritePublishedMessages());
-            }
-
             for (int i = 0; i < numberOfThreads; i++) {
                 if (config instanceof AndesJMSConsumerClientConfiguration) {
                     consumers
                             .add(new AndesJMSConsumer((AndesJMSConsumerClientConfiguration) config, createConsumersAndProducers));
                 } else if (config instanceof AndesJMSPublisherClientConfiguration) {
                     publishers
-                            .add(new AndesJMSPublisher((AndesJMSPublisherClientConfiguration) config, createConsumersAndProducers));
+                            .add(new AndesJMSPublisher((AndesJMSPublisherClientConfiguration) config, createConsumersAndProducers,
+                                                       i, numberOfThreads));
+                }
+            }
+
+            // The files are retained until the client is stopped, so that other clients writing to the same files
+            // do not close their writers meanwhile
+            if (config instanceof AndesJMSConsumerClientConfiguration) {
+                String filePathToWriteReceivedMessages =
+                        ((AndesJMSConsumerClientConfiguration) config).getFilePathToWriteReceivedMessages();
+                retainFileWriters(filePathToWriteReceivedMessages, config.getFilePathToWriteStatistics());
+                if (null != filePathToWriteReceivedMessages) {
+                    AndesClientUtils.initializeReceivedMessagesPrintWriter(filePathToWriteReceivedMessages);
+                }
+            }
+
+            if (config instanceof AndesJMSPublisherClientConfiguration) {
+                String filePathToWritePublishedMessages =
+                        ((AndesJMSPublisherClientConfiguration) config).getFilePathToWritePublishedMessages();
+                retainFileWriters(filePathToWritePublishedMessages, config.getFilePathToWriteStatistics());
+                if (null != filePathToWritePublishedMessages) {
+                    AndesClientUtils.initializePublishedPrintWriter(filePathToWritePublishedMessages);
                 }
             }
         } else {
@@ -134,7 +151,10 @@ public class AndesClient {
                 AndesClientUtils.sleepForInterval(this.startDelay);
             }
         }
+        // Publishers share the publish rate profile, hence they are given a common start time
+        long publishStartTime = AndesClientUtils.getEpochTimeInNanos();
         for (AndesJMSPublisher publisher : publishers) {
+            publisher.setPublishStartTime(publishStartTime);
             publisher.startClient();
             if (isStartDelaySet) {
                 AndesClientUtils.sleepForInterval(this.startDelay);
@@ -155,8 +175,25 @@ public class AndesClient {
         for (AndesJMSPublisher publisher : publishers) {
             publisher.stopClient();
         }
+        // Released once, as a client may be stopped more than once
+        AndesClientUtils.releaseFileWriters(retainedFilePaths.toArray(new String[retainedFilePaths.size()]));
+        retainedFilePaths.clear();
 
         log.info("TPS:" + this.getConsumerTPS() + " AverageLatency:" + this.getAverageLatency());
+        if (!consumers.isEmpty()) {
+            Histogram latencyHistogram = this.getLatencyHistogram();
+            log.info("LatencyPercentiles(ns) 50th:" + latencyHistogram.getValueAtPercentile(50D) +
+                     " 90th:" + latencyHistogram.getValueAtPercentile(90D) +
+                     " 99th:" + latencyHistogram.getValueAtPercentile(99D) +
+                     " 99.9th:" + latencyHistogram.getValueAtPercentile(99.9D) +
+                     " Max:" + latencyHistogram.getMaxValue());
+        }
+        if (!publishers.isEmpty()) {
+            Histogram sendLatencyHistogram = this.getSendLatencyHistogram();
+            log.info("SendLatencyPercentiles(ns) 50th:" + sendLatencyHistogram.getValueAtPercentile(50D) +
+                     " 99th:" + sendLatencyHistogram.getValueAtPercentile(99D) +
+                     " Max:" + sendLatencyHistogram.getMaxValue());
+        }
     }
 
     /**
@@ -186,16 +223,96 @@ public class AndesClient {
     }
 
     /**
-     * Gets the average latency for consumer(s).
+     * Gets the amount of content received by all consumers in the client. Text message content is
+     * counted in characters and bytes message content in bytes.
+     *
+     * @return The total received content length.
+     */
+    public long getReceivedContentLength() {
+        long allReceivedContentLength = 0L;
+        for (AndesJMSConsumer consumer : consumers) {
+            allReceivedContentLength = allReceivedContentLength + consumer.getReceivedContentLength();
+        }
+        return allReceivedContentLength;
+    }
+
+    /**
+     * Gets the average content throughput for consumer(s).
      *
-     * @return The average latency.
+     * @return The average received content length per second.
+     */
+    public double getConsumerContentThroughput() {
+        double throughput = 0D;
+        for (AndesJMSConsumer consumer : consumers) {
+            throughput = throughput + consumer.getContentThroughput();
+        }
+        return throughput / consumers.size();
+    }
+
+    /**
+     * Gets the average latency for consumer(s). The average of each consumer is weighted by the
+     * amount of messages it received.
+     *
+     * @return The average latency in seconds.
      */
     public double getAverageLatency() {
-        double averageLatency = 0L;
+        double totalLatency = 0D;
+        long totalReceivedMessageCount = 0L;
         for (AndesJMSConsumer consumer : consumers) {
-            averageLatency = averageLatency + consumer.getAverageLatency();
+            long receivedMessageCount = consumer.getReceivedMessageCount().get();
+            if (0L < receivedMessageCount) {
+                totalLatency = totalLatency + consumer.getAverageLatency() * receivedMessageCount;
+                totalReceivedMessageCount = totalReceivedMessageCount + receivedMessageCount;
+            }
+        }
+        if (0L == totalReceivedMessageCount) {
+            return 0D;
+        }
+        return totalLatency / totalReceivedMessageCount;
+    }
+
+    /**
+     * Gets the latency histogram for consumer(s). The histogram is created by merging the latency
+     * histograms of all the consumers.
+     *
+     * @return The merged latency histogram with values in nanoseconds.
+     */
+    public Histogram getLatencyHistogram() {
+        Histogram latencyHistogram =
+                new Histogram(AndesClientConstants.LATENCY_HISTOGRAM_SIGNIFICANT_DIGITS);
+        for (AndesJMSConsumer consumer : consumers) {
+            latencyHistogram.add(consumer.getLatencyHistogram());
+        }
+        return latencyHistogram;
+    }
+
+    /**
+     * Gets the latency at a given percentile for consumer(s).
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The latency in nanoseconds at the given percentile.
+     */
+    public long getLatencyAtPercentile(double percentile) {
+        return this.getLatencyHistogram().getValueAtPercentile(percentile);
+    }
+
+    /**
+     * Writes the latency percentiles recorded by the consumer(s) since the previous invocation of
+     * this method to the statistics file of the consumers. Invoking this method periodically will
+     * give the latency distribution over time.
+     *
+     * @throws IOException Thrown when writing to the statistics file.
+     */
+    public void writeIntervalLatencyStatisticsToFile() throws IOException {
+        Histogram intervalLatencyHistogram =
+                new Histogram(AndesClientConstants.LATENCY_HISTOGRAM_SIGNIFICANT_DIGITS);
+        for (AndesJMSConsumer consumer : consumers) {
+            intervalLatencyHistogram.add(consumer.getIntervalLatencyHistogram());
+        }
+        if (!consumers.isEmpty() && null != consumers.get(0).getConfig().getFilePathToWriteStatistics()) {
+            AndesClientUtils.writeLatencyStatisticsToFile(intervalLatencyHistogram,
+                                                          consumers.get(0).getConfig().getFilePathToWriteStatistics());
         }
-        return averageLatency / consumers.size();
     }
 
     /**
@@ -211,6 +328,32 @@ public class AndesClient {
         return allSentMessageCount;
     }
 
+    /**
+     * Gets the send latency histogram for publisher(s). The histogram is created by merging the send
+     * latency histograms of all the publishers. Only transactional publishers' send latencies include
+     * the broker's confirmation, see {@link AndesJMSPublisher#getSendLatencyHistogram()}.
+     *
+     * @return The merged send latency histogram with values in nanoseconds.
+     */
+    public Histogram getSendLatencyHistogram() {
+        Histogram sendLatencyHistogram =
+                new Histogram(AndesClientConstants.LATENCY_HISTOGRAM_SIGNIFICANT_DIGITS);
+        for (AndesJMSPublisher publisher : publishers) {
+            sendLatencyHistogram.add(publisher.getSendLatencyHistogram());
+        }
+        return sendLatencyHistogram;
+    }
+
+    /**
+     * Gets the send latency at a given percentile for publisher(s).
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The send latency in nanoseconds at the given percentile.
+     */
+    public long getSendLatencyAtPercentile(double percentile) {
+        return this.getSendLatencyHistogram().getValueAtPercentile(percentile);
+    }
+
     /**
      * Gets the average transactions per seconds for publisher(s). Suppressing "UnusedDeclaration"
      * as the client acts as an service.
@@ -259,6 +402,7 @@ public class AndesClient {
     public boolean checkIfMessagesAreInOrder()
             throws IOException {
         if (!consumers.isEmpty()) {
+            AndesClientUtils.flushPrintWriters();
             AndesClientOutputParser andesClientOutputParser =
                     new AndesClientOutputParser(consumers.get(0).getConfig()
                                                         .getFilePathToWriteReceivedMessages());
@@ -278,6 +422,7 @@ public class AndesClient {
     public boolean transactedOperation(long operationOccurredIndex)
             throws IOException {
         if (0 < consumers.size()) {
+            AndesClientUtils.flushPrintWriters();
             AndesClientOutputParser andesClientOutputParser =
                     new AndesClientOutputParser(consumers.get(0).getConfig()
                                                         .getFilePathToWriteReceivedMessages());
@@ -298,6 +443,7 @@ public class AndesClient {
     public boolean checkIfTransactedRollbackPreservesOrder(long messagesPerRollback)
             throws IOException {
         if (0 < consumers.size()) {
+            AndesClientUtils.flushPrintWriters();
             AndesClientOutputParser andesClientOutputParser =
                     new AndesClientOutputParser(consumers.get(0).getConfig()
                                                         .getFilePathToWriteReceivedMessages());
@@ -316,6 +462,7 @@ public class AndesClient {
     public long getTotalNumberOfDuplicates()
             throws IOException {
         if (0 < consumers.size()) {
+            AndesClientUtils.flushPrintWriters();
             AndesClientOutputParser andesClientOutputParser =
                     new AndesClientOutputParser(consumers.get(0).getConfig()
                                                         .getFilePathToWriteReceivedMessages());
@@ -361,4 +508,18 @@ public class AndesClient {
     public List<String> getReceivedMessages() {
         return consumers.get(0).getConfig().getReceivedMessages();
     }
+
+    /**
+     * Retains the writers of the files this client writes to. Null file paths are ignored.
+     *
+     * @param filePaths The file paths written to.
+     */
+    private void retainFileWriters(String... filePaths) {
+        for (String filePath : filePaths) {
+            if (null != filePath) {
+                AndesClientUtils.retainFileWriters(filePath);
+                retainedFilePaths.add(filePath);
+            }
+        }
+    }
 }
@@ -17,6 +17,8 @@
 */
 package org.wso2.mb.integration.common.clients;
 
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
 import org.apache.log4j.Logger;
 import org.wso2.mb.integration.common.clients.configurations.AndesJMSConsumerClientConfiguration;
 import org.wso2.mb.integration.common.clients.exceptions.AndesClientException;
@@ -25,6 +27,7 @@ import org.wso2.mb.integration.common.clients.operations.utils.AndesClientUtils;
 import org.wso2.mb.integration.common.clients.operations.utils.ExchangeType;
 import org.wso2.mb.integration.common.clients.operations.utils.JMSDeliveryStatus;
 
+import javax.jms.BytesMessage;
 import javax.jms.Connection;
 import javax.jms.JMSException;
 import javax.jms.Message;
@@ -44,6 +47,7 @@ import javax.jms.TopicSession;
 import javax.jms.TopicSubscriber;
 import javax.naming.NamingException;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -77,12 +81,42 @@ public class AndesJMSConsumer extends AndesJMSBase
      */
     private AtomicLong receivedMessageCount;
 
+    /**
+     * The amount of content received by the consumer. Text message content is counted in
+     * characters and bytes message content in bytes.
+     */
+    private final AtomicLong receivedContentLength = new AtomicLong(0L);
+
     /**
      * The addition of the time differences between the timestamp at which it got published and the
-     * timestamp at which it got consumed for each message consumed.
+     * timestamp at which it got consumed for each message consumed, in nanoseconds.
      */
     private long totalLatency;
 
+    /**
+     * Records the latency of each consumed message in nanoseconds. Recording values is lock-free,
+     * readers take interval histograms out of the recorder.
+     */
+    private final Recorder latencyRecorder =
+            new Recorder(AndesClientConstants.LATENCY_HISTOGRAM_SIGNIFICANT_DIGITS);
+
+    /**
+     * Histogram handed back to the latency recorder so that it is reused when draining.
+     */
+    private Histogram recycledLatencyHistogram;
+
+    /**
+     * All latencies drained out of the latency recorder since the consumer got created.
+     */
+    private final Histogram accumulatedLatencyHistogram =
+            new Histogram(AndesClientConstants.LATENCY_HISTOGRAM_SIGNIFICANT_DIGITS);
+
+    /**
+     * Latencies drained out of the latency recorder since the last interval snapshot.
+     */
+    private final Histogram intervalLatencyHistogram =
+            new Histogram(AndesClientConstants.LATENCY_HISTOGRAM_SIGNIFICANT_DIGITS);
+
     /**
      * The JMS connection used to create the JMS sessions
      */
@@ -459,7 +493,9 @@ public class AndesJMSConsumer extends AndesJMSBase
             long threadID = Thread.currentThread().getId();
             // Calculating total latency
             long currentTimeStamp = System.currentTimeMillis();
-            this.totalLatency = this.totalLatency + (currentTimeStamp - message.getJMSTimestamp());
+            long latency = this.getLatencyInNanos(message);
+            this.totalLatency = this.totalLatency + latency;
+            this.recordLatency(latency);
             // Setting timestamps for TPS calculation
             if (0 == this.firstMessageConsumedTimestamp) {
                 this.firstMessageConsumedTimestamp = currentTimeStamp;
@@ -496,15 +532,20 @@ public class AndesJMSConsumer extends AndesJMSBase
                         .getFilePathToWriteStatistics());
             }
             if (message instanceof TextMessage) {
-                TextMessage textMessage = (TextMessage) message;
+                String text = ((TextMessage) message).getText();
+                if (null != text) {
+                    this.receivedContentLength.addAndGet(text.length());
+                }
                 // Writes the received messages
                 if (null != this.consumerConfig.getFilePathToWriteReceivedMessages()) {
                     AndesClientUtils
-                            .writeReceivedMessagesToFile(textMessage.getText(), this.consumerConfig
+                            .writeReceivedMessagesToFile(text, this.consumerConfig
                                     .getFilePathToWriteReceivedMessages());
-                } else {
-                    this.consumerConfig.addReceivedMessage(textMessage.getText());
+                } else if (this.consumerConfig.isRetainReceivedMessages()) {
+                    this.consumerConfig.addReceivedMessage(text);
                 }
+            } else if (message instanceof BytesMessage) {
+                this.receivedContentLength.addAndGet(((BytesMessage) message).getBodyLength());
             }
 
             // Acknowledges messages
@@ -558,6 +599,74 @@ public class AndesJMSConsumer extends AndesJMSBase
         return false;
     }
 
+    /**
+     * Calculates the time taken for a message to reach the consumer since it got published. The
+     * send timestamp set by the andes client publisher is used if available, else the JMS
+     * timestamp is used.
+     *
+     * @param message The received message.
+     * @return The latency in nanoseconds.
+     * @throws JMSException
+     */
+    private long getLatencyInNanos(Message message) throws JMSException {
+        long sentTimestamp;
+        if (message.propertyExists(AndesClientConstants.ANDES_CLIENT_SEND_TIMESTAMP_PROPERTY)) {
+            sentTimestamp = message.getLongProperty(AndesClientConstants.ANDES_CLIENT_SEND_TIMESTAMP_PROPERTY);
+        } else {
+            sentTimestamp = TimeUnit.MILLISECONDS.toNanos(message.getJMSTimestamp());
+        }
+        // Clock differences between hosts could result in negative values
+        return Math.max(0L, AndesClientUtils.getEpochTimeInNanos() - sentTimestamp);
+    }
+
+    /**
+     * Records a latency value in the latency recorder. The value is corrected for coordinated
+     * omission when an expected interval between messages is configured.
+     *
+     * @param latency The latency in nanoseconds.
+     */
+    private void recordLatency(long latency) {
+        long expectedInterval = this.consumerConfig.getExpectedIntervalBetweenMessagesInNanos();
+        if (0 < expectedInterval) {
+            this.latencyRecorder.recordValueWithExpectedInterval(latency, expectedInterval);
+        } else {
+            this.latencyRecorder.recordValue(latency);
+        }
+    }
+
+    /**
+     * Moves the latencies recorded so far out of the latency recorder in to the accumulated and
+     * interval histograms.
+     */
+    private synchronized void drainLatencyRecorder() {
+        this.recycledLatencyHistogram = this.latencyRecorder.getIntervalHistogram(this.recycledLatencyHistogram);
+        this.accumulatedLatencyHistogram.add(this.recycledLatencyHistogram);
+        this.intervalLatencyHistogram.add(this.recycledLatencyHistogram);
+    }
+
+    /**
+     * Gets the histogram of all latencies recorded by the consumer in nanoseconds.
+     *
+     * @return A copy of the latency histogram.
+     */
+    public synchronized Histogram getLatencyHistogram() {
+        this.drainLatencyRecorder();
+        return this.accumulatedLatencyHistogram.copy();
+    }
+
+    /**
+     * Gets the histogram of latencies in nanoseconds recorded since the previous invocation of this
+     * method.
+     *
+     * @return The latency histogram for the interval.
+     */
+    public synchronized Histogram getIntervalLatencyHistogram() {
+        this.drainLatencyRecorder();
+        Histogram intervalHistogram = this.intervalLatencyHistogram.copy();
+        this.intervalLatencyHistogram.reset();
+        return intervalHistogram;
+    }
+
     /**
      * Gets the received message count for the consumer.
      *
@@ -581,17 +690,38 @@ public class AndesJMSConsumer extends AndesJMSBase
         }
     }
 
+    /**
+     * Gets the amount of content received by the consumer. Text message content is counted in
+     * characters and bytes message content in bytes.
+     *
+     * @return The received content length.
+     */
+    public long getReceivedContentLength() {
+        return this.receivedContentLength.get();
+    }
+
+    /**
+     * Gets the rate at which the consumer received content, between the first and the last
+     * message consumed.
+     *
+     * @return The received content length per second.
+     */
+    public double getContentThroughput() {
+        long duration = Math.max(1L, this.lastMessageConsumedTimestamp - this.firstMessageConsumedTimestamp);
+        return this.receivedContentLength.doubleValue() / (duration / 1000D);
+    }
+
     /**
      * Gets the average latency for the consumer in receiving messages.
      *
-     * @return The average latency.
+     * @return The average latency in seconds.
      */
     public double getAverageLatency() {
         if (0 == this.receivedMessageCount.doubleValue()) {
             log.warn("No messages were received to calculate average latency.");
             return 0D;
         } else {
-            return (((double) this.totalLatency) / 1000D) / this.receivedMessageCount.doubleValue();
+            return (((double) this.totalLatency) / TimeUnit.SECONDS.toNanos(1)) / this.receivedMessageCount.doubleValue();
         }
     }
 
@@ -17,13 +17,16 @@
 */
 package org.wso2.mb.integration.common.clients;
 
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
 import org.apache.log4j.Logger;
 import org.wso2.mb.integration.common.clients.configurations.AndesJMSPublisherClientConfiguration;
-import org.wso2.mb.integration.common.clients.configurations.JMSHeaderProperty;
-import org.wso2.mb.integration.common.clients.configurations.JMSHeaderPropertyType;
+import org.wso2.mb.integration.common.clients.configurations.PublishRateProfile;
+import org.wso2.mb.integration.common.clients.exceptions.AndesClientConfigurationException;
 import org.wso2.mb.integration.common.clients.exceptions.AndesClientException;
 import org.wso2.mb.integration.common.clients.operations.utils.AndesClientConstants;
 import org.wso2.mb.integration.common.clients.operations.utils.AndesClientUtils;
+import org.wso2.mb.integration.common.clients.operations.utils.JMSMessageTemplate;
 import org.wso2.mb.integration.common.clients.operations.utils.JMSMessageType;
 
 import javax.jms.Connection;
@@ -31,17 +34,20 @@ import javax.jms.ConnectionFactory;
 import javax.jms.DeliveryMode;
 import javax.jms.Destination;
 import javax.jms.JMSException;
-import javax.jms.MapMessage;
 import javax.jms.Message;
 import javax.jms.MessageProducer;
 import javax.jms.Session;
 import javax.jms.TextMessage;
 import javax.naming.NamingException;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.text.MessageFormat;
-import java.util.List;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * The JMS message publisher used for creating a publisher and for publishing JMS messages.
@@ -52,6 +58,12 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
      */
     private static Logger log = Logger.getLogger(AndesJMSPublisher.class);
 
+    /**
+     * When waiting for the intended send time of a message, the thread yields instead of parking
+     * once the remaining time is less than this value as parking is not accurate enough.
+     */
+    private static final long PARK_THRESHOLD_IN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
     /**
      * The configuration for the publisher
      */
@@ -72,6 +84,26 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
      */
     private long lastMessagePublishTimestamp;
 
+    /**
+     * Records the send latency of each message in nanoseconds, measured from the send call until the
+     * send, and the commit for transactional sessions, returns. Without a transaction the send may
+     * return before the broker has stored the message, so only a transactional send latency includes
+     * the broker's confirmation.
+     */
+    private final Recorder sendLatencyRecorder =
+            new Recorder(AndesClientConstants.LATENCY_HISTOGRAM_SIGNIFICANT_DIGITS);
+
+    /**
+     * Histogram handed back to the send latency recorder so that it is reused when draining.
+     */
+    private Histogram recycledSendLatencyHistogram;
+
+    /**
+     * All send latencies drained out of the send latency recorder since the publisher got created.
+     */
+    private final Histogram accumulatedSendLatencyHistogram =
+            new Histogram(AndesClientConstants.LATENCY_HISTOGRAM_SIGNIFICANT_DIGITS);
+
     /**
      * The connection which is used to create the JMS session
      */
@@ -92,6 +124,30 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
      */
     private String messageContent = null;
 
+    /**
+     * The message content read from file for byte and stream messages. Content of these message
+     * types is only kept as bytes so that large files are not held in memory as text as well.
+     */
+    private byte[] messageContentBytes = null;
+
+    /**
+     * The index of this publisher among the publishers created using the same configuration.
+     */
+    private final int publisherIndex;
+
+    /**
+     * The amount of publishers created using the same configuration. Used to share the publish
+     * rate among the publishers.
+     */
+    private final int publisherCount;
+
+    /**
+     * The time in nanoseconds since epoch from which the publish rate profile is applied. Shared by
+     * the publishers created using the same configuration. 0 if the profile is applied from the
+     * time this publisher starts.
+     */
+    private long publishStartTime = 0L;
+
     /**
      * Creates a new JMS publisher with a given configuration.
      *
@@ -102,10 +158,29 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
      */
     public AndesJMSPublisher(AndesJMSPublisherClientConfiguration config, boolean createPublisher)
             throws NamingException, JMSException {
+        this(config, createPublisher, 0, 1);
+    }
+
+    /**
+     * Creates a new JMS publisher with a given configuration which is one of many publishers
+     * created using the same configuration.
+     *
+     * @param config          The configuration
+     * @param createPublisher Creates connection, session and sender.
+     * @param publisherIndex  The index of the publisher starting from 0.
+     * @param publisherCount  The amount of publishers created using the configuration.
+     * @throws NamingException
+     * @throws JMSException
+     */
+    public AndesJMSPublisher(AndesJMSPublisherClientConfiguration config, boolean createPublisher,
+                             int publisherIndex, int publisherCount)
+            throws NamingException, JMSException {
         super(config);
 
         // Sets the configuration
         this.publisherConfig = config;
+        this.publisherIndex = publisherIndex;
+        this.publisherCount = publisherCount;
 
         if (null != config.getMessagesContentToSet()) {
             this.messageContent = config.getMessagesContentToSet();
@@ -135,6 +210,16 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
     @Override
     public void startClient() throws AndesClientException, IOException {
         if (null != connection && null != session && null != sender) {
+            // Revalidating as the configuration could have been changed after the profile was set
+            PublishRateProfile publishRateProfile = this.publisherConfig.getPublishRateProfile();
+            if (null != publishRateProfile) {
+                try {
+                    publishRateProfile.validate();
+                } catch (AndesClientConfigurationException e) {
+                    throw new AndesClientException("Invalid publish rate profile.", e);
+                }
+            }
+
             //reading message content from file
             if (null != this.publisherConfig.getReadMessagesFromFilePath()) {
                 this.getMessageContentFromFile();
@@ -172,11 +257,25 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
      * @throws IOException
      */
     public void getMessageContentFromFile() throws IOException {
-        if (null != this.publisherConfig.getReadMessagesFromFilePath()) {
-            BufferedReader br = new BufferedReader(new FileReader(this.publisherConfig
-                                                                          .getReadMessagesFromFilePath()));
+        String filePath = this.publisherConfig.getReadMessagesFromFilePath();
+        if (null != filePath) {
+            JMSMessageType messageType = this.publisherConfig.getJMSMessageType();
+            if (JMSMessageType.BYTE == messageType || JMSMessageType.STREAM == messageType) {
+                byte[] fileContent = Files.readAllBytes(Paths.get(filePath));
+                // Remove the last next line as done for text content.
+                int length = fileContent.length;
+                if (0 < length && '\n' == fileContent[length - 1]) {
+                    length--;
+                }
+                messageContentBytes = (length == fileContent.length) ? fileContent : Arrays.copyOf(fileContent, length);
+                return;
+            }
+
+            BufferedReader br = new BufferedReader(new FileReader(filePath));
             try {
-                StringBuilder sb = new StringBuilder();
+                // Sizing the builder to the file so that large files are not copied while growing.
+                long fileLength = new File(filePath).length();
+                StringBuilder sb = new StringBuilder((int) Math.min(fileLength + 1, Integer.MAX_VALUE - 8));
                 String line = br.readLine();
 
                 while (line != null) {
@@ -200,50 +299,43 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
     @Override
     public void run() {
         try {
-            Message message = null;
             long threadID = Thread.currentThread().getId();
+            String publisherIDPrefix = this.publisherConfig.getPublisherIDPrefix();
+            String publisherID = (null == publisherIDPrefix) ? Long.toString(threadID) :
+                                 publisherIDPrefix + "/" + threadID;
+            JMSMessageTemplate messageTemplate =
+                    new JMSMessageTemplate(this.publisherConfig, this.messageContent, this.messageContentBytes,
+                                           publisherID);
+            PublishRateProfile publishRateProfile = this.publisherConfig.getPublishRateProfile();
+            long publishStartTime = (0L < this.publishStartTime) ? this.publishStartTime :
+                                    AndesClientUtils.getEpochTimeInNanos();
             while (this.sentMessageCount < this.publisherConfig.getNumberOfMessagesToSend()) {
-                // Creating a JMS message
-                if (JMSMessageType.TEXT == this.publisherConfig.getJMSMessageType()) {
-                    if ((null != this.publisherConfig.getReadMessagesFromFilePath()) || (null != this.messageContent)) {
-                        message = this.session.createTextMessage(this.messageContent);
-                    } else {
-                        message = this.session.createTextMessage(MessageFormat
-                                .format(AndesClientConstants.PUBLISH_MESSAGE_FORMAT, this.sentMessageCount, threadID));
-                    }
-                } else if (JMSMessageType.BYTE == this.publisherConfig.getJMSMessageType()) {
-                    message = this.session.createBytesMessage();
-                } else if (JMSMessageType.MAP == this.publisherConfig.getJMSMessageType()) {
-                    MapMessage mapMessage = this.session.createMapMessage();
-                    if (null != this.publisherConfig.getReadMessagesFromFilePath()) {
-                        String[] entries = this.messageContent.split(System.getProperty("line.separator"));
-                        for (int i = 0; i < entries.length; i++) {
-                            mapMessage.setString("key" + i, entries[i]);
-                        }
-                    }
-                    message = mapMessage;
-                } else if (JMSMessageType.OBJECT == this.publisherConfig.getJMSMessageType()) {
-                    message = this.session.createObjectMessage();
-                } else if (JMSMessageType.STREAM == this.publisherConfig.getJMSMessageType()) {
-                    message = this.session.createStreamMessage();
-                }
-
-                //set JMS message type
-                String jmsType = publisherConfig.getJMSType();
-                if(message!= null && null != jmsType && !jmsType.isEmpty()) {
-                    message.setJMSType(jmsType);
-                }
-
-                //set JMS header properties
-                setMessageProperties(message);
+                // Creating a JMS message with the prepared content and properties
+                Message message = messageTemplate.createMessage(this.session, this.sentMessageCount);
 
                 if (null != message) {
+                    long sendTimestamp;
+                    if (null != publishRateProfile) {
+                        // Messages of all publishers sharing the configuration are interleaved
+                        long messageIndex = this.sentMessageCount * this.publisherCount + this.publisherIndex;
+                        sendTimestamp = publishStartTime + publishRateProfile.getIntendedSendTimeInNanos(messageIndex);
+                        this.waitUntil(sendTimestamp);
+                    } else {
+                        sendTimestamp = AndesClientUtils.getEpochTimeInNanos();
+                    }
+                    // Stamping the send time so that consumers can calculate latency in nanoseconds.
+                    // When publishing at a rate the intended send time is used so that delays in
+                    // sending are accounted in the latency.
+                    message.setLongProperty(AndesClientConstants.ANDES_CLIENT_SEND_TIMESTAMP_PROPERTY,
+                                            sendTimestamp);
+                    long sendStartTime = System.nanoTime();
                     this.sender.send(message, DeliveryMode.PERSISTENT, 0, this.publisherConfig
                             .getJMSMessageExpiryTime());
                     // need to commit if transactional
                     if(getConfig().isTransactionalSession()) {
                         session.commit();
                     }
+                    this.sendLatencyRecorder.recordValue(System.nanoTime() - sendStartTime);
                     if (message instanceof TextMessage && null != this.publisherConfig.getFilePathToWritePublishedMessages()){
                         AndesClientUtils.writePublishedMessagesToFile(((TextMessage) message)
                               .getText(), this.publisherConfig.getFilePathToWritePublishedMessages());
@@ -289,7 +381,7 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
                     }
 
                     // Delaying the publishing of messages
-                    if (0 < this.publisherConfig.getRunningDelay()) {
+                    if (null == publishRateProfile && 0 < this.publisherConfig.getRunningDelay()) {
                         try {
                             Thread.sleep(this.publisherConfig.getRunningDelay());
                         } catch (InterruptedException e) {
@@ -308,47 +400,20 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
     }
 
     /**
-     * Set JMS Headers to the message according to publisher configuration
+     * Waits until a given time is reached. Used to send messages at their intended send time when
+     * publishing at a rate.
      *
-     * @param message message to set properties
-     */
-    private void setMessageProperties(Message message) throws JMSException {
-
-        List<JMSHeaderProperty> headerPropertyList = publisherConfig.getJMSHeaderProperties();
-
-        for (JMSHeaderProperty jmsHeaderProperty : headerPropertyList) {
-            JMSHeaderPropertyType type = jmsHeaderProperty.getType();
-            String propertyKey = jmsHeaderProperty.getKey();
-            Object propertyValue = jmsHeaderProperty.getValue();
-            switch (type) {
-                case OBJECT:
-                    message.setObjectProperty(propertyKey, propertyValue);
-                    break;
-                case BYTE:
-                    message.setByteProperty(propertyKey, (Byte) propertyValue);
-                    break;
-                case BOOLEAN:
-                    message.setBooleanProperty(propertyKey, (Boolean) propertyValue);
-                    break;
-                case DOUBLE:
-                    message.setDoubleProperty(propertyKey, (Double) propertyValue);
-                    break;
-                case FLOAT:
-                    message.setFloatProperty(propertyKey, (Float) propertyValue);
-                    break;
-                case SHORT:
-                    message.setShortProperty(propertyKey, (Short) propertyValue);
-                    break;
-                case STRING:
-                    message.setStringProperty(propertyKey, (String) propertyValue);
-                    break;
-                case INTEGER:
-                    message.setIntProperty(propertyKey, (Integer) propertyValue);
-                    break;
-                case LONG:
-                    message.setLongProperty(propertyKey, (Long) propertyValue);
-                    break;
+     * @param epochTimeInNanos The time to wait till, in nanoseconds since epoch.
+     */
+    private void waitUntil(long epochTimeInNanos) {
+        long remainingTime = epochTimeInNanos - AndesClientUtils.getEpochTimeInNanos();
+        while (0 < remainingTime) {
+            if (PARK_THRESHOLD_IN_NANOS < remainingTime) {
+                LockSupport.parkNanos(remainingTime - PARK_THRESHOLD_IN_NANOS);
+            } else {
+                Thread.yield();
             }
+            remainingTime = epochTimeInNanos - AndesClientUtils.getEpochTimeInNanos();
         }
     }
 
@@ -361,6 +426,20 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
         return this.sentMessageCount;
     }
 
+    /**
+     * Gets the histogram of the time the send calls of the published messages took to return in
+     * nanoseconds. For transactional sessions the commit is included, so the values cover the
+     * broker's confirmation. Otherwise they only cover handing the message to the client library.
+     *
+     * @return A copy of the send latency histogram.
+     */
+    public synchronized Histogram getSendLatencyHistogram() {
+        this.recycledSendLatencyHistogram =
+                this.sendLatencyRecorder.getIntervalHistogram(this.recycledSendLatencyHistogram);
+        this.accumulatedSendLatencyHistogram.add(this.recycledSendLatencyHistogram);
+        return this.accumulatedSendLatencyHistogram.copy();
+    }
+
     /**
      * Gets the transactions per seconds for publisher.
      *
@@ -382,6 +461,16 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
         return this.publisherConfig;
     }
 
+    /**
+     * Sets the time from which the publish rate profile is applied, so that publishers sharing a
+     * configuration follow a single schedule. Needs to be set before the publisher is started.
+     *
+     * @param publishStartTime The time in nanoseconds since epoch.
+     */
+    public void setPublishStartTime(long publishStartTime) {
+        this.publishStartTime = publishStartTime;
+    }
+
     /**
      * Gets the JMS message sending connection ({@link javax.jms.Connection}).
      *
@@ -18,10 +18,12 @@
 
 package org.wso2.mb.integration.common.clients;
 
+import java.io.Serializable;
+
 /**
  * The configurations that needs to be passed to MQTT client.
  */
-public class MQTTClientConnectionConfiguration {
+public class MQTTClientConnectionConfiguration implements Serializable {
 
     /**
      * The protocol used by the broker.
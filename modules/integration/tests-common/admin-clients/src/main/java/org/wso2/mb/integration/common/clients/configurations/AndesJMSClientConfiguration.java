@@ -24,12 +24,14 @@ import org.wso2.mb.integration.common.clients.operations.utils.AndesClientConsta
 import org.wso2.mb.integration.common.clients.exceptions.AndesClientConfigurationException;
 import org.wso2.mb.integration.common.clients.operations.utils.ExchangeType;
 
+import java.io.Serializable;
+
 /**
  * This class acts as a configuration class for the Andes Client. The class contains configuration
  * that is common for both JMS publishers and consumer. The configuration mentioned are related to
  * JMS only.
  */
-public class AndesJMSClientConfiguration implements Cloneable {
+public class AndesJMSClientConfiguration implements Cloneable, Serializable {
 
     /**
      * The destination name to be used when a configuration is not passed to the client.
@@ -105,6 +105,20 @@ public class AndesJMSConsumerClientConfiguration extends AndesJMSClientConfigura
      */
     private List<String> receivedMessages = new ArrayList<>();
 
+    /**
+     * Whether contents of received text messages are kept in {@link #receivedMessages} when they are
+     * not written to a file. Disabling this keeps large message tests from holding every received
+     * message in memory.
+     */
+    private boolean retainReceivedMessages = true;
+
+    /**
+     * The interval in nanoseconds at which messages are expected to arrive. When set to a value
+     * greater than 0, latency samples that exceed this interval are back filled so that the latency
+     * histogram is corrected for coordinated omission.
+     */
+    private long expectedIntervalBetweenMessagesInNanos = 0L;
+
     /**
      * Creates a consumer configuration with default values.
      */
@@ -226,6 +240,8 @@ public class AndesJMSConsumerClientConfiguration extends AndesJMSClientConfigura
             this.async = config.getBoolean("base.consumer.async", true);
             this.selectors = config.getString("base.consumer.selectors", null);
             this.acknowledgeMode = JMSAcknowledgeMode.valueOf(config.getString("base.consumer.acknowledgeMode", "AUTO_ACKNOWLEDGE"));
+            this.expectedIntervalBetweenMessagesInNanos = config.getLong("base.consumer.expectedIntervalBetweenMessagesInNanos", 0L);
+            this.retainReceivedMessages = config.getBoolean("base.consumer.retainReceivedMessages", true);
         } catch (ConfigurationException e) {
             throw new AndesClientConfigurationException("Error in reading xml configuration file. Make sure the file exists.", e);
         } catch (IllegalArgumentException e) {
@@ -578,6 +594,56 @@ public class AndesJMSConsumerClientConfiguration extends AndesJMSClientConfigura
         this.receivedMessages.add(receivedMessages);
     }
 
+    /**
+     * Checks whether contents of received text messages are kept in memory when they are not
+     * written to a file.
+     *
+     * @return true if received message contents are kept, false otherwise.
+     */
+    public boolean isRetainReceivedMessages() {
+        return retainReceivedMessages;
+    }
+
+    /**
+     * Sets whether contents of received text messages are kept in memory when they are not written
+     * to a file. Set to false when receiving large messages whose contents are not verified.
+     *
+     * @param retainReceivedMessages true to keep received message contents, false otherwise.
+     */
+    public void setRetainReceivedMessages(boolean retainReceivedMessages) {
+        this.retainReceivedMessages = retainReceivedMessages;
+    }
+
+    /**
+     * Gets the interval in nanoseconds at which messages are expected to arrive. Used to correct
+     * the latency histogram for coordinated omission.
+     *
+     * @return The expected interval in nanoseconds. 0 if no correction is done.
+     */
+    public long getExpectedIntervalBetweenMessagesInNanos() {
+        return expectedIntervalBetweenMessagesInNanos;
+    }
+
+    /**
+     * Sets the interval in nanoseconds at which messages are expected to arrive. This is usually
+     * the publishing interval of the publishers. When set, latency samples larger than the interval
+     * are back filled in the latency histogram so that stalls are not under represented.
+     * Suppressing "UnusedDeclaration" as this is a configuration
+     *
+     * @param expectedIntervalBetweenMessagesInNanos The expected interval in nanoseconds. 0 to
+     *                                               disable the correction.
+     * @throws AndesClientConfigurationException
+     */
+    @SuppressWarnings("UnusedDeclaration")
+    public void setExpectedIntervalBetweenMessagesInNanos(long expectedIntervalBetweenMessagesInNanos)
+            throws AndesClientConfigurationException {
+        if (0 <= expectedIntervalBetweenMessagesInNanos) {
+            this.expectedIntervalBetweenMessagesInNanos = expectedIntervalBetweenMessagesInNanos;
+        } else {
+            throw new AndesClientConfigurationException("Expected interval between messages cannot be less than 0");
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -591,12 +657,14 @@ public class AndesJMSConsumerClientConfiguration extends AndesJMSClientConfigura
                "AcknowledgeAfterEachMessageCount=" + this.acknowledgeAfterEachMessageCount + "\n" +
                "FilePathToWriteReceivedMessages=" + this.filePathToWriteReceivedMessages + "\n" +
                "ReceivedMessages=" + this.receivedMessages + "\n" +
+               "RetainReceivedMessages=" + this.retainReceivedMessages + "\n" +
                "MaximumMessagesToReceived=" + this.maximumMessagesToReceived + "\n" +
                "SubscriptionID=" + this.subscriptionID + "\n" +
                "Durable=" + this.durable + "\n" +
                "AcknowledgeMode=" + this.acknowledgeMode + "\n" +
                "Async=" + this.async + "\n" +
-               "Selectors=" + this.selectors + "\n";
+               "Selectors=" + this.selectors + "\n" +
+               "ExpectedIntervalBetweenMessagesInNanos=" + this.expectedIntervalBetweenMessagesInNanos + "\n";
     }
 
     /**
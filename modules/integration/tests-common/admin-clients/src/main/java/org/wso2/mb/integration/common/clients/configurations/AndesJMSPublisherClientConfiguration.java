@@ -79,6 +79,20 @@ public class AndesJMSPublisherClientConfiguration extends AndesJMSClientConfigur
      */
     private String JMSType;
 
+    /**
+     * The rate at which messages are published. When set, the publishers created from this
+     * configuration publish in an open loop, sending each message at its intended send time
+     * regardless of how long the previous send took. Null results in publishing as fast as
+     * possible.
+     */
+    private PublishRateProfile publishRateProfile = null;
+
+    /**
+     * The prefix of the publisher ID written in the inbuilt message content. Null results in the
+     * publisher thread ID being used as the publisher ID.
+     */
+    private String publisherIDPrefix = null;
+
     /**
      * Creates a connection string with default properties.
      */
@@ -199,6 +213,10 @@ public class AndesJMSPublisherClientConfiguration extends AndesJMSClientConfigur
             messagesContentToSet = config.getString("base.publisher.messagesContentToSet", null);
             jmsMessageType = JMSMessageType.valueOf(config.getString("base.publisher.jmsMessageType", "TEXT"));
             filePathToWritePublishedMessages = config.getString("base.publisher.filePathToWritePublishedMessages", null);
+            double publishRate = config.getDouble("base.publisher.publishRate", 0D);
+            if (0D < publishRate) {
+                publishRateProfile = new PublishRateProfile(publishRate);
+            }
             JMSHeaderProperties = new ArrayList<JMSHeaderProperty>(5);
         } catch (ConfigurationException e) {
             throw new AndesClientConfigurationException("Error in reading xml configuration file. Make sure the file exists.", e);
@@ -391,6 +409,59 @@ public class AndesJMSPublisherClientConfiguration extends AndesJMSClientConfigur
         }
     }
 
+    /**
+     * Gets the rate at which messages are published.
+     *
+     * @return A copy of the publish rate profile. Null if messages are published as fast as
+     * possible.
+     */
+    public PublishRateProfile getPublishRateProfile() {
+        return (null != publishRateProfile) ? new PublishRateProfile(publishRateProfile) : null;
+    }
+
+    /**
+     * Sets the rate at which messages are published. The rates of the profile are for all the
+     * publishers created using this configuration together. The running delay is not applied when
+     * a publish rate profile is set. A copy of the profile is kept, so steps added to the given
+     * profile afterwards are not applied.
+     *
+     * @param publishRateProfile The publish rate profile. Null to publish as fast as possible.
+     * @throws AndesClientConfigurationException Thrown when the profile does not end with a rate
+     *                                           greater than 0.
+     */
+    public void setPublishRateProfile(PublishRateProfile publishRateProfile)
+            throws AndesClientConfigurationException {
+        if (null != publishRateProfile) {
+            PublishRateProfile profileCopy = new PublishRateProfile(publishRateProfile);
+            profileCopy.validate();
+            this.publishRateProfile = profileCopy;
+        } else {
+            this.publishRateProfile = null;
+        }
+    }
+
+    /**
+     * Gets the prefix of the publisher ID written in the inbuilt message content.
+     *
+     * @return The publisher ID prefix. Null if the publisher thread ID is used as it is.
+     */
+    public String getPublisherIDPrefix() {
+        return publisherIDPrefix;
+    }
+
+    /**
+     * Sets the prefix of the publisher ID written in the inbuilt message content. The publisher
+     * thread ID is appended to the prefix after a '/'. A prefix is needed to tell publishers apart
+     * when publishers in several JVMs send to the same destination, since thread IDs repeat across
+     * JVMs.
+     *
+     * @param publisherIDPrefix The publisher ID prefix without whitespaces. Null to use the
+     *                          publisher thread ID as it is.
+     */
+    public void setPublisherIDPrefix(String publisherIDPrefix) {
+        this.publisherIDPrefix = publisherIDPrefix;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -401,7 +472,9 @@ public class AndesJMSPublisherClientConfiguration extends AndesJMSClientConfigur
                "ReadMessagesFromFilePath=" + this.readMessagesFromFilePath + "\n" +
                "JmsMessageType=" + this.jmsMessageType + "\n" +
                "NumberOfMessagesToSend=" + this.numberOfMessagesToSend + "\n" +
-               "JmsMessageExpiryTime=" + this.jmsMessageExpiryTime + "\n";
+               "JmsMessageExpiryTime=" + this.jmsMessageExpiryTime + "\n" +
+               "PublishRateProfile=" + this.publishRateProfile + "\n" +
+               "PublisherIDPrefix=" + this.publisherIDPrefix + "\n";
     }
 
     /**
@@ -20,11 +20,13 @@
 
 package org.wso2.mb.integration.common.clients.configurations;
 
+import java.io.Serializable;
+
 /**
  * This class represents configuration of a JMS Header property. JMS sender reads them and set
  * when sending a JMS message to the provider
  */
-public class JMSHeaderProperty {
+public class JMSHeaderProperty implements Serializable {
 
     private String key;
 
@@ -0,0 +1,222 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.mb.integration.common.clients.configurations;
+
+import org.wso2.mb.integration.common.clients.exceptions.AndesClientConfigurationException;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class represents the rate at which all publishers created from a single
+ * {@link AndesJMSPublisherClientConfiguration} should publish messages. The profile is made out of
+ * consecutive steps where each step changes the rate linearly from a start rate to an end rate
+ * within a duration. Constant rates, ramp ups and step loads can be described using these steps.
+ * Once all steps are completed the end rate of the last step is maintained.
+ */
+public class PublishRateProfile implements Serializable {
+
+    /**
+     * The steps of the profile in the order they are applied.
+     */
+    private final List<PublishRateStep> steps = new ArrayList<>();
+
+    /**
+     * Creates an empty profile. Steps needs to be added before using the profile.
+     */
+    public PublishRateProfile() {
+    }
+
+    /**
+     * Creates a profile which publishes at a constant rate.
+     *
+     * @param messagesPerSecond The rate in messages per second.
+     * @throws AndesClientConfigurationException Thrown when the rate is invalid.
+     */
+    public PublishRateProfile(double messagesPerSecond) throws AndesClientConfigurationException {
+        this.addConstantStep(messagesPerSecond, 0L);
+    }
+
+    /**
+     * Creates a copy of a profile. Steps added to either profile afterwards do not affect the other.
+     *
+     * @param profile The profile to copy.
+     */
+    public PublishRateProfile(PublishRateProfile profile) {
+        this.steps.addAll(profile.steps);
+    }
+
+    /**
+     * Adds a step which publishes at a constant rate for a given duration.
+     *
+     * @param messagesPerSecond The rate in messages per second.
+     * @param durationInMillis  The duration of the step in milliseconds.
+     * @throws AndesClientConfigurationException Thrown when the rate or duration is invalid.
+     */
+    public void addConstantStep(double messagesPerSecond, long durationInMillis)
+            throws AndesClientConfigurationException {
+        this.addRampStep(messagesPerSecond, messagesPerSecond, durationInMillis);
+    }
+
+    /**
+     * Adds a step which changes the publishing rate linearly within a given duration.
+     *
+     * @param startMessagesPerSecond The rate in messages per second at the start of the step.
+     * @param endMessagesPerSecond   The rate in messages per second at the end of the step.
+     * @param durationInMillis       The duration of the step in milliseconds.
+     * @throws AndesClientConfigurationException Thrown when a rate or the duration is invalid.
+     */
+    public void addRampStep(double startMessagesPerSecond, double endMessagesPerSecond,
+                            long durationInMillis) throws AndesClientConfigurationException {
+        if (0D > startMessagesPerSecond || 0D > endMessagesPerSecond) {
+            throw new AndesClientConfigurationException("Publish rate cannot be less than 0");
+        }
+        if (0L > durationInMillis) {
+            throw new AndesClientConfigurationException("Publish rate step duration cannot be less than 0");
+        }
+        steps.add(new PublishRateStep(startMessagesPerSecond, endMessagesPerSecond,
+                                      durationInMillis / 1000D));
+    }
+
+    /**
+     * Gets the rate which is maintained once all the steps are completed.
+     *
+     * @return The rate in messages per second. 0 if the profile has no steps.
+     */
+    public double getFinalRate() {
+        if (steps.isEmpty()) {
+            return 0D;
+        }
+        return steps.get(steps.size() - 1).endRate;
+    }
+
+    /**
+     * Checks whether the profile can be used to publish messages. A profile which has no steps or
+     * ends with a rate of 0 never publishes the messages after its last step.
+     *
+     * @throws AndesClientConfigurationException Thrown when the profile does not end with a rate
+     *                                           greater than 0.
+     */
+    public void validate() throws AndesClientConfigurationException {
+        if (0D >= this.getFinalRate()) {
+            throw new AndesClientConfigurationException("The publish rate profile should end with a rate " +
+                                                        "greater than 0 : " + this);
+        }
+    }
+
+    /**
+     * Gets the time at which a message should be sent, relative to the time publishing started. The
+     * message index is counted across all publishers which share this profile. The profile should
+     * be valid as per {@link #validate()}.
+     *
+     * @param messageIndex The index of the message starting from 0.
+     * @return The intended send time in nanoseconds since the start of publishing.
+     */
+    public long getIntendedSendTimeInNanos(long messageIndex) {
+        double remainingMessages = messageIndex;
+        double elapsedSeconds = 0D;
+        for (PublishRateStep step : steps) {
+            double messagesInStep = step.getMessageCount();
+            if (remainingMessages < messagesInStep) {
+                return toNanos(elapsedSeconds + step.getTimeToPublish(remainingMessages));
+            }
+            remainingMessages = remainingMessages - messagesInStep;
+            elapsedSeconds = elapsedSeconds + step.durationInSeconds;
+        }
+        return toNanos(elapsedSeconds + (remainingMessages / this.getFinalRate()));
+    }
+
+    /**
+     * Converts a time in seconds to nanoseconds.
+     *
+     * @param seconds Time in seconds.
+     * @return Time in nanoseconds.
+     */
+    private static long toNanos(double seconds) {
+        return (long) (seconds * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        StringBuilder profile = new StringBuilder();
+        for (PublishRateStep step : steps) {
+            profile.append("[").append(step.startRate).append("->").append(step.endRate)
+                    .append(" msg/s for ").append(step.durationInSeconds).append("s]");
+        }
+        return profile.toString();
+    }
+
+    /**
+     * A single step of the profile where the rate changes linearly.
+     */
+    private static class PublishRateStep implements Serializable {
+
+        /**
+         * The rate in messages per second at the start of the step.
+         */
+        private final double startRate;
+
+        /**
+         * The rate in messages per second at the end of the step.
+         */
+        private final double endRate;
+
+        /**
+         * The duration of the step in seconds.
+         */
+        private final double durationInSeconds;
+
+        private PublishRateStep(double startRate, double endRate, double durationInSeconds) {
+            this.startRate = startRate;
+            this.endRate = endRate;
+            this.durationInSeconds = durationInSeconds;
+        }
+
+        /**
+         * Gets the amount of messages published within the step.
+         *
+         * @return The message count.
+         */
+        private double getMessageCount() {
+            return ((startRate + endRate) / 2D) * durationInSeconds;
+        }
+
+        /**
+         * Gets the time taken from the start of the step to publish a given amount of messages. The
+         * message count should be less than {@link #getMessageCount()}.
+         *
+         * @param messageCount The amount of messages.
+         * @return The time in seconds.
+         */
+        private double getTimeToPublish(double messageCount) {
+            if (startRate == endRate) {
+                return messageCount / startRate;
+            }
+            // Solving messageCount = startRate * t + (acceleration * t^2) / 2
+            double acceleration = (endRate - startRate) / durationInSeconds;
+            double discriminant = Math.max(0D, startRate * startRate + 2D * acceleration * messageCount);
+            return (Math.sqrt(discriminant) - startRate) / acceleration;
+        }
+    }
+}
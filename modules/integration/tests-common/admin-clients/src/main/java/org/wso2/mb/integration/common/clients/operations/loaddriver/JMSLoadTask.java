@@ -0,0 +1,122 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.mb.integration.common.clients.operations.loaddriver;
+
+import org.wso2.mb.integration.common.clients.AndesClient;
+import org.wso2.mb.integration.common.clients.configurations.AndesJMSClientConfiguration;
+import org.wso2.mb.integration.common.clients.configurations.AndesJMSPublisherClientConfiguration;
+import org.wso2.mb.integration.common.clients.exceptions.AndesClientException;
+
+import javax.jms.JMSException;
+import javax.naming.NamingException;
+import java.io.IOException;
+
+/**
+ * A load task which runs JMS publishers or consumers through an {@link AndesClient}. Note that a
+ * publish rate set in the configuration applies to each worker the task is assigned to. Publisher
+ * IDs in the message content are prefixed with the worker ID, so that received messages of
+ * publishers in different workers are verified separately.
+ */
+public class JMSLoadTask implements LoadTask {
+
+    /**
+     * The publisher or consumer configuration.
+     */
+    private final AndesJMSClientConfiguration config;
+
+    /**
+     * The amount of publisher or consumer threads to create.
+     */
+    private final int numberOfThreads;
+
+    /**
+     * The client created on the worker.
+     */
+    private transient AndesClient client;
+
+    /**
+     * Creates a JMS load task.
+     *
+     * @param config          The publisher or consumer configuration.
+     * @param numberOfThreads The amount of publisher or consumer threads to create.
+     */
+    public JMSLoadTask(AndesJMSClientConfiguration config, int numberOfThreads) {
+        this.config = config;
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepare(String workerID) throws AndesClientException {
+        if (config instanceof AndesJMSPublisherClientConfiguration) {
+            ((AndesJMSPublisherClientConfiguration) config).setPublisherIDPrefix(workerID);
+        }
+        try {
+            client = new AndesClient(config, numberOfThreads, true);
+        } catch (IOException | JMSException | NamingException e) {
+            throw new AndesClientException("Error while creating JMS clients.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void start() throws AndesClientException {
+        try {
+            client.startClient();
+        } catch (IOException | JMSException e) {
+            throw new AndesClientException("Error while starting JMS clients.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LoadReport getReport() {
+        LoadReport report = new LoadReport();
+        if (null != client) {
+            report.setSentMessageCount(client.getSentMessageCount());
+            report.setReceivedMessageCount(client.getReceivedMessageCount());
+            report.setPublisherTPS(client.getPublisherTPS());
+            report.setConsumerTPS(client.getConsumerTPS());
+            if (!client.getConsumers().isEmpty()) {
+                report.setLatencyHistogram(client.getLatencyHistogram());
+            }
+        }
+        return report;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() throws AndesClientException {
+        if (null != client) {
+            try {
+                client.stopClient();
+            } catch (JMSException e) {
+                throw new AndesClientException("Error while stopping JMS clients.", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.mb.integration.common.clients.operations.loaddriver;
+
+/**
+ * Commands sent from a {@link LoadDriverCoordinator} to a {@link LoadDriverWorker}. The worker
+ * replies to each command with a {@link LoadReport}.
+ */
+public enum LoadDriverCommand {
+    /**
+     * Assigns a {@link LoadTask} to the worker. The worker prepares the task on receiving it.
+     */
+    ASSIGN,
+
+    /**
+     * Starts all assigned tasks at a given wall clock time in milliseconds.
+     */
+    START,
+
+    /**
+     * Requests the current statistics of all assigned tasks.
+     */
+    REPORT,
+
+    /**
+     * Stops all assigned tasks and shuts down the worker.
+     */
+    STOP
+}
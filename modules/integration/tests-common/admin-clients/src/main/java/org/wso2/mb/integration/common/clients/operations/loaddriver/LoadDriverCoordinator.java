@@ -0,0 +1,446 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.mb.integration.common.clients.operations.loaddriver;
+
+import org.apache.log4j.Logger;
+import org.wso2.mb.integration.common.clients.exceptions.AndesClientException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinates a load test across multiple {@link LoadDriverWorker} processes. The coordinator
+ * accepts worker connections, assigns {@link LoadTask}s to them, starts all tasks at the same
+ * time and merges the statistics reported by the workers, including latency histograms.
+ * <p>
+ * The coordinator listens on the loopback address unless a bind address is given explicitly, and
+ * only accepts the load driver's own classes from workers.
+ * <p>
+ * A typical usage would be,
+ * <pre>
+ * LoadDriverCoordinator coordinator = new LoadDriverCoordinator(0);
+ * coordinator.startLocalWorkers(4);
+ * coordinator.acceptWorkers(4, 60000L);
+ * coordinator.assignTasks(tasks);
+ * coordinator.startTasks(1000L);
+ * ...
+ * LoadReport report = coordinator.stopTasks();
+ * coordinator.close();
+ * </pre>
+ */
+public class LoadDriverCoordinator implements Closeable {
+    /**
+     * The logger used in logging information, warnings, errors and etc.
+     */
+    private static Logger log = Logger.getLogger(LoadDriverCoordinator.class);
+
+    /**
+     * The time to wait for local worker processes to exit once the coordinator is closed.
+     */
+    private static final long WORKER_PROCESS_EXIT_WAIT_TIME_IN_MILLIS = 10000L;
+
+    /**
+     * The server socket the workers connect to.
+     */
+    private final ServerSocket serverSocket;
+
+    /**
+     * The connections to workers.
+     */
+    private final List<WorkerConnection> workers = new ArrayList<>();
+
+    /**
+     * The worker processes started by the coordinator.
+     */
+    private final List<Process> workerProcesses = new ArrayList<>();
+
+    /**
+     * Creates a coordinator which listens for workers on a given port of the loopback address.
+     * Only workers on the local host can connect.
+     *
+     * @param port The port to listen on. 0 to use any free port.
+     * @throws IOException Thrown when the port cannot be bound.
+     */
+    public LoadDriverCoordinator(int port) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * Creates a coordinator which listens for workers on a given address and port. An address
+     * reachable from other hosts should only be used on a trusted network.
+     *
+     * @param bindAddress The address to listen on.
+     * @param port        The port to listen on. 0 to use any free port.
+     * @throws IOException Thrown when the port cannot be bound.
+     */
+    public LoadDriverCoordinator(InetAddress bindAddress, int port) throws IOException {
+        this.serverSocket = new ServerSocket(port, 0, bindAddress);
+    }
+
+    /**
+     * Gets the address the coordinator listens on.
+     *
+     * @return The address.
+     */
+    public InetAddress getAddress() {
+        return serverSocket.getInetAddress();
+    }
+
+    /**
+     * Gets the port the coordinator listens on.
+     *
+     * @return The port.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Starts worker processes on the local host. The workers use the class path and java
+     * executable of the current JVM. {@link #acceptWorkers(int, long)} should be invoked afterwards
+     * for the workers to be used.
+     *
+     * @param numberOfWorkers The amount of worker processes to start.
+     * @param jvmArguments    Additional JVM arguments for the workers such as heap size.
+     * @throws IOException Thrown when a worker process cannot be started.
+     */
+    public void startLocalWorkers(int numberOfWorkers, String... jvmArguments) throws IOException {
+        String javaExecutable = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        for (int i = 0; i < numberOfWorkers; i++) {
+            List<String> command = new ArrayList<>();
+            command.add(javaExecutable);
+            for (String jvmArgument : jvmArguments) {
+                command.add(jvmArgument);
+            }
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(LoadDriverWorker.class.getName());
+            command.add(this.getLocalWorkerConnectAddress());
+            command.add(Integer.toString(this.getPort()));
+            command.add("worker-" + (workerProcesses.size() + 1));
+
+            ProcessBuilder processBuilder = new ProcessBuilder(command);
+            processBuilder.redirectErrorStream(true);
+            processBuilder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+            workerProcesses.add(processBuilder.start());
+        }
+        log.info("Started " + numberOfWorkers + " local load driver workers.");
+    }
+
+    /**
+     * Waits for workers to connect.
+     *
+     * @param numberOfWorkers The amount of workers to wait for.
+     * @param timeoutInMillis The maximum time to wait for all workers.
+     * @throws AndesClientException Thrown when workers do not connect within the timeout.
+     * @throws IOException          Thrown when accepting a connection fails.
+     */
+    public void acceptWorkers(int numberOfWorkers, long timeoutInMillis)
+            throws AndesClientException, IOException {
+        long deadline = System.currentTimeMillis() + timeoutInMillis;
+        for (int i = 0; i < numberOfWorkers; i++) {
+            long remainingTime = deadline - System.currentTimeMillis();
+            if (0L >= remainingTime) {
+                throw new AndesClientException("Only " + i + " of " + numberOfWorkers + " workers connected.");
+            }
+            serverSocket.setSoTimeout((int) Math.min(remainingTime, Integer.MAX_VALUE));
+            try {
+                workers.add(new WorkerConnection(serverSocket.accept()));
+            } catch (SocketTimeoutException e) {
+                throw new AndesClientException("Only " + i + " of " + numberOfWorkers + " workers connected.", e);
+            }
+        }
+        log.info(workers.size() + " load driver workers connected.");
+    }
+
+    /**
+     * Gets the amount of connected workers.
+     *
+     * @return The worker count.
+     */
+    public int getWorkerCount() {
+        return workers.size();
+    }
+
+    /**
+     * Assigns tasks to workers in a round robin manner. Each worker prepares its tasks before this
+     * method returns.
+     *
+     * @param tasks The tasks to assign.
+     * @throws AndesClientException Thrown when there are no workers or a worker fails to prepare a
+     *                              task.
+     * @throws IOException          Thrown when communicating with a worker fails.
+     */
+    public void assignTasks(List<? extends LoadTask> tasks) throws AndesClientException, IOException {
+        if (workers.isEmpty()) {
+            throw new AndesClientException("No workers are connected to assign tasks.");
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            this.assignTask(i % workers.size(), tasks.get(i));
+        }
+    }
+
+    /**
+     * Assigns a task to a worker. The worker prepares the task before this method returns.
+     *
+     * @param workerIndex The index of the worker in the order they connected.
+     * @param task        The task to assign.
+     * @throws AndesClientException Thrown when the worker fails to prepare the task.
+     * @throws IOException          Thrown when communicating with the worker fails.
+     */
+    public void assignTask(int workerIndex, LoadTask task) throws AndesClientException, IOException {
+        WorkerConnection worker = workers.get(workerIndex);
+        worker.sendCommand(LoadDriverCommand.ASSIGN, task);
+        checkErrors(worker.receiveReport());
+    }
+
+    /**
+     * Starts the tasks of all workers at the same time. The start time is set a given delay ahead
+     * so that all workers receive the command before it. Workers run on hosts sharing the same
+     * clock, hence the wall clock time is used.
+     *
+     * @param startDelayInMillis The delay until the tasks are started.
+     * @throws AndesClientException Thrown when a worker fails to start its tasks.
+     * @throws IOException          Thrown when communicating with a worker fails.
+     */
+    public void startTasks(long startDelayInMillis) throws AndesClientException, IOException {
+        Long startTime = System.currentTimeMillis() + startDelayInMillis;
+        for (WorkerConnection worker : workers) {
+            worker.sendCommand(LoadDriverCommand.START, startTime);
+        }
+        List<LoadReport> reports = new ArrayList<>();
+        for (WorkerConnection worker : workers) {
+            reports.add(worker.receiveReport());
+        }
+        checkErrors(LoadReport.merge(reports));
+    }
+
+    /**
+     * Gets the current statistics merged across all workers.
+     *
+     * @return The merged report.
+     * @throws IOException Thrown when communicating with a worker fails.
+     */
+    public LoadReport getReport() throws IOException {
+        return LoadReport.merge(this.getWorkerReports());
+    }
+
+    /**
+     * Gets the current statistics of each worker.
+     *
+     * @return The reports of the workers in the order they connected.
+     * @throws IOException Thrown when communicating with a worker fails.
+     */
+    public List<LoadReport> getWorkerReports() throws IOException {
+        for (WorkerConnection worker : workers) {
+            worker.sendCommand(LoadDriverCommand.REPORT, null);
+        }
+        List<LoadReport> reports = new ArrayList<>();
+        for (WorkerConnection worker : workers) {
+            reports.add(worker.receiveReport());
+        }
+        return reports;
+    }
+
+    /**
+     * Waits until the given amount of messages are received across all workers or no messages are
+     * received within an interval.
+     *
+     * @param expectedMessageCount              The amount of messages expected.
+     * @param waitTimeTillMessageCounterChanges The time in milliseconds to wait for the received
+     *                                          message count to change.
+     * @return The merged report after waiting.
+     * @throws IOException Thrown when communicating with a worker fails.
+     */
+    public LoadReport waitForMessages(long expectedMessageCount, long waitTimeTillMessageCounterChanges)
+            throws IOException {
+        LoadReport report = this.getReport();
+        long previousMessageCount = -1L;
+        while (report.getReceivedMessageCount() < expectedMessageCount &&
+               report.getReceivedMessageCount() != previousMessageCount) {
+            previousMessageCount = report.getReceivedMessageCount();
+            try {
+                TimeUnit.MILLISECONDS.sleep(waitTimeTillMessageCounterChanges);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            report = this.getReport();
+            log.info("Messages received by load driver workers : " + report.getReceivedMessageCount());
+        }
+        return report;
+    }
+
+    /**
+     * Stops the tasks of all workers. Workers shut down once their tasks are stopped.
+     *
+     * @return The final statistics merged across all workers.
+     * @throws IOException Thrown when communicating with a worker fails.
+     */
+    public LoadReport stopTasks() throws IOException {
+        for (WorkerConnection worker : workers) {
+            worker.sendCommand(LoadDriverCommand.STOP, null);
+        }
+        List<LoadReport> reports = new ArrayList<>();
+        for (WorkerConnection worker : workers) {
+            reports.add(worker.receiveReport());
+        }
+        LoadReport report = LoadReport.merge(reports);
+        log.info("Load driver results :\n" + report);
+        return report;
+    }
+
+    /**
+     * Closes worker connections and the server socket. Local worker processes are destroyed if
+     * they do not exit on their own.
+     *
+     * @throws IOException Thrown when closing the server socket fails.
+     */
+    @Override
+    public void close() throws IOException {
+        for (WorkerConnection worker : workers) {
+            worker.close();
+        }
+        workers.clear();
+        serverSocket.close();
+
+        long deadline = System.currentTimeMillis() + WORKER_PROCESS_EXIT_WAIT_TIME_IN_MILLIS;
+        for (Process workerProcess : workerProcesses) {
+            while (isAlive(workerProcess) && System.currentTimeMillis() < deadline) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(100L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            workerProcess.destroy();
+        }
+        workerProcesses.clear();
+    }
+
+    /**
+     * Gets the address local workers connect to. The loopback address is used if the coordinator
+     * listens on all addresses.
+     *
+     * @return The address.
+     */
+    private String getLocalWorkerConnectAddress() {
+        InetAddress address = this.getAddress();
+        if (address.isAnyLocalAddress()) {
+            address = InetAddress.getLoopbackAddress();
+        }
+        return address.getHostAddress();
+    }
+
+    /**
+     * Checks whether a process is still running.
+     *
+     * @param process The process.
+     * @return true if the process is running, false otherwise.
+     */
+    private static boolean isAlive(Process process) {
+        try {
+            process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Throws an exception if a report contains errors.
+     *
+     * @param report The report to check.
+     * @throws AndesClientException Thrown with the errors in the report.
+     */
+    private static void checkErrors(LoadReport report) throws AndesClientException {
+        if (report.hasErrors()) {
+            throw new AndesClientException("Load driver workers reported errors : " + report.getErrorMessage());
+        }
+    }
+
+    /**
+     * A connection to a single worker.
+     */
+    private static class WorkerConnection implements Closeable {
+
+        private final Socket socket;
+
+        private final ObjectOutputStream outputStream;
+
+        private final ObjectInputStream inputStream;
+
+        private WorkerConnection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.socket.setTcpNoDelay(true);
+            this.socket.setSoTimeout(0);
+            this.outputStream = new ObjectOutputStream(socket.getOutputStream());
+            this.outputStream.flush();
+            this.inputStream = new LoadDriverObjectInputStream(socket.getInputStream());
+        }
+
+        /**
+         * Sends a command and its payload to the worker.
+         *
+         * @param command The command.
+         * @param payload The payload of the command. Null if the command has no payload.
+         * @throws IOException Thrown when writing to the worker fails.
+         */
+        private void sendCommand(LoadDriverCommand command, Serializable payload) throws IOException {
+            outputStream.writeObject(command);
+            outputStream.writeObject(payload);
+            outputStream.reset();
+            outputStream.flush();
+        }
+
+        /**
+         * Receives the report the worker replies with.
+         *
+         * @return The report.
+         * @throws IOException Thrown when reading from the worker fails.
+         */
+        private LoadReport receiveReport() throws IOException {
+            try {
+                return (LoadReport) inputStream.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Invalid reply received from load driver worker.", e);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
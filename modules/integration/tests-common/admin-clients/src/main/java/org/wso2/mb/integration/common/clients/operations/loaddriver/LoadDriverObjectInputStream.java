@@ -0,0 +1,114 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.mb.integration.common.clients.operations.loaddriver;
+
+import org.wso2.mb.integration.common.clients.ClientMode;
+import org.wso2.mb.integration.common.clients.MQTTClientConnectionConfiguration;
+import org.wso2.mb.integration.common.clients.QualityOfService;
+import org.wso2.mb.integration.common.clients.configurations.AndesJMSClientConfiguration;
+import org.wso2.mb.integration.common.clients.operations.utils.ExchangeType;
+import org.wso2.mb.integration.common.clients.operations.utils.JMSAcknowledgeMode;
+import org.wso2.mb.integration.common.clients.operations.utils.JMSMessageType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An object input stream which only deserializes the classes exchanged between the
+ * {@link LoadDriverCoordinator} and its workers, which are commands, {@link LoadTask}s with their
+ * client configurations and {@link LoadReport}s. Any other class sent by a peer is rejected before
+ * it is instantiated.
+ */
+class LoadDriverObjectInputStream extends ObjectInputStream {
+
+    /**
+     * The package of the client configuration classes, including the classes nested in them.
+     */
+    private static final String CONFIGURATION_PACKAGE = AndesJMSClientConfiguration.class.getPackage().getName() + ".";
+
+    /**
+     * The package of the latency histogram classes in {@link LoadReport}.
+     */
+    private static final String HISTOGRAM_PACKAGE = "org.HdrHistogram.";
+
+    /**
+     * The other classes allowed to be deserialized.
+     */
+    private static final Set<String> ALLOWED_CLASS_NAMES = new HashSet<>(Arrays.asList(
+            LoadDriverCommand.class.getName(),
+            LoadReport.class.getName(),
+            MQTTClientConnectionConfiguration.class.getName(),
+            QualityOfService.class.getName(),
+            ClientMode.class.getName(),
+            ExchangeType.class.getName(),
+            JMSAcknowledgeMode.class.getName(),
+            JMSMessageType.class.getName(),
+            ArrayList.class.getName(),
+            Enum.class.getName(),
+            Number.class.getName(),
+            String.class.getName(),
+            Boolean.class.getName(),
+            Character.class.getName(),
+            Byte.class.getName(),
+            Short.class.getName(),
+            Integer.class.getName(),
+            Long.class.getName(),
+            Float.class.getName(),
+            Double.class.getName()));
+
+    /**
+     * Creates a stream reading from the given input stream.
+     *
+     * @param inputStream The input stream to read from.
+     * @throws IOException Thrown when reading the stream header fails.
+     */
+    LoadDriverObjectInputStream(InputStream inputStream) throws IOException {
+        super(inputStream);
+    }
+
+    /**
+     * Resolves a class only if it is allowed. Classes are loaded without being initialized.
+     *
+     * @param desc The class descriptor read from the stream.
+     * @return The allowed class.
+     * @throws IOException            Thrown when the class is not allowed.
+     * @throws ClassNotFoundException Thrown when the class cannot be found.
+     */
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        String className = desc.getName();
+        if (ALLOWED_CLASS_NAMES.contains(className) || className.startsWith(CONFIGURATION_PACKAGE)
+            || className.startsWith(HISTOGRAM_PACKAGE)) {
+            return super.resolveClass(desc);
+        }
+        Class<?> resolvedClass = super.resolveClass(desc);
+        if (LoadTask.class.isAssignableFrom(resolvedClass)
+            || (resolvedClass.isArray() && resolvedClass.getComponentType().isPrimitive())) {
+            return resolvedClass;
+        }
+        throw new InvalidClassException(className, "Class is not allowed in load driver communication.");
+    }
+}
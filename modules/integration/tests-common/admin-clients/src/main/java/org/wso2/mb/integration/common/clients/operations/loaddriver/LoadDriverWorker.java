@@ -0,0 +1,226 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.mb.integration.common.clients.operations.loaddriver;
+
+import org.apache.log4j.Logger;
+import org.wso2.mb.integration.common.clients.exceptions.AndesClientException;
+import org.wso2.mb.integration.common.clients.operations.utils.AndesClientUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A worker process of the load driver. The worker connects to a {@link LoadDriverCoordinator},
+ * executes the {@link LoadTask}s assigned to it and replies to each command with a
+ * {@link LoadReport}. A worker is started as a separate JVM so that the load is not limited by a
+ * single JVM's network and garbage collection capacity.
+ * <p>
+ * Usage : LoadDriverWorker &lt;coordinator host&gt; &lt;coordinator port&gt; [worker ID]
+ */
+public class LoadDriverWorker {
+    /**
+     * The logger used in logging information, warnings, errors and etc.
+     */
+    private static Logger log = Logger.getLogger(LoadDriverWorker.class);
+
+    /**
+     * The ID of the worker used in reports.
+     */
+    private final String workerID;
+
+    /**
+     * The tasks assigned to the worker.
+     */
+    private final List<LoadTask> tasks = new ArrayList<>();
+
+    /**
+     * Creates a worker.
+     *
+     * @param workerID The ID of the worker used in reports.
+     */
+    public LoadDriverWorker(String workerID) {
+        this.workerID = workerID;
+    }
+
+    /**
+     * Starts a worker which connects to a coordinator. The JVM exits once the coordinator stops
+     * the worker.
+     *
+     * @param args The coordinator host, the coordinator port and optionally the worker ID.
+     */
+    public static void main(String[] args) {
+        if (2 > args.length) {
+            log.error("Usage : LoadDriverWorker <coordinator host> <coordinator port> [worker ID]");
+            System.exit(1);
+        }
+        String workerID = (2 < args.length) ? args[2] : args[0] + ":" + args[1];
+        int exitCode = 0;
+        try {
+            new LoadDriverWorker(workerID).run(args[0], Integer.parseInt(args[1]));
+        } catch (IOException | ClassNotFoundException e) {
+            log.error("Worker " + workerID + " failed while communicating with the coordinator.", e);
+            exitCode = 1;
+        }
+        // Client threads such as MQTT executors are not daemon threads
+        System.exit(exitCode);
+    }
+
+    /**
+     * Connects to the coordinator and executes its commands until the worker is stopped or the
+     * coordinator disconnects.
+     *
+     * @param coordinatorHost The host of the coordinator.
+     * @param coordinatorPort The port of the coordinator.
+     * @throws IOException            Thrown when communicating with the coordinator fails or the
+     *                                coordinator sends a class other than the load driver classes.
+     * @throws ClassNotFoundException Thrown when a command or task cannot be deserialized.
+     */
+    public void run(String coordinatorHost, int coordinatorPort)
+            throws IOException, ClassNotFoundException {
+        try (Socket socket = new Socket(coordinatorHost, coordinatorPort)) {
+            socket.setTcpNoDelay(true);
+            ObjectOutputStream outputStream = new ObjectOutputStream(socket.getOutputStream());
+            outputStream.flush();
+            ObjectInputStream inputStream = new LoadDriverObjectInputStream(socket.getInputStream());
+            log.info("Worker " + workerID + " connected to coordinator " + coordinatorHost + ":" + coordinatorPort);
+
+            boolean running = true;
+            while (running) {
+                LoadDriverCommand command;
+                try {
+                    command = (LoadDriverCommand) inputStream.readObject();
+                } catch (EOFException e) {
+                    log.warn("Coordinator disconnected from worker " + workerID);
+                    this.stopTasks();
+                    break;
+                }
+                Object payload = inputStream.readObject();
+
+                LoadReport report;
+                if (LoadDriverCommand.ASSIGN == command) {
+                    report = this.assignTask((LoadTask) payload);
+                } else if (LoadDriverCommand.START == command) {
+                    report = this.startTasks((Long) payload);
+                } else if (LoadDriverCommand.REPORT == command) {
+                    report = this.getReport();
+                } else {
+                    report = this.stopTasks();
+                    running = false;
+                }
+
+                report.setWorkerID(workerID);
+                outputStream.writeObject(report);
+                outputStream.reset();
+                outputStream.flush();
+            }
+        }
+    }
+
+    /**
+     * Prepares and keeps a task.
+     *
+     * @param task The task to assign.
+     * @return The report of all tasks with an error if preparing failed.
+     */
+    private LoadReport assignTask(LoadTask task) {
+        try {
+            task.prepare(workerID);
+            tasks.add(task);
+            return this.getReport();
+        } catch (AndesClientException e) {
+            log.error("Worker " + workerID + " failed to prepare task.", e);
+            return this.createErrorReport(e);
+        }
+    }
+
+    /**
+     * Waits until the given start time and starts all tasks.
+     *
+     * @param startTime The wall clock time in milliseconds to start the tasks.
+     * @return The report of all tasks with an error if starting failed.
+     */
+    private LoadReport startTasks(long startTime) {
+        AndesClientUtils.sleepForInterval(startTime - System.currentTimeMillis());
+        try {
+            for (LoadTask task : tasks) {
+                task.start();
+            }
+            log.info("Worker " + workerID + " started " + tasks.size() + " tasks.");
+            return this.getReport();
+        } catch (AndesClientException e) {
+            log.error("Worker " + workerID + " failed to start tasks.", e);
+            return this.createErrorReport(e);
+        }
+    }
+
+    /**
+     * Stops all tasks. The report is created after the tasks are stopped so that it includes the
+     * messages sent and received until then.
+     *
+     * @return The final report of all tasks with errors if stopping any of them failed.
+     */
+    private LoadReport stopTasks() {
+        List<String> errors = new ArrayList<>();
+        for (LoadTask task : tasks) {
+            try {
+                task.stop();
+            } catch (AndesClientException e) {
+                log.error("Worker " + workerID + " failed to stop task.", e);
+                errors.add(e.getMessage());
+            }
+        }
+        LoadReport report = this.getReport();
+        for (String error : errors) {
+            report.addError(error);
+        }
+        log.info("Worker " + workerID + " stopped.\n" + report);
+        return report;
+    }
+
+    /**
+     * Gets the merged report of all tasks.
+     *
+     * @return The report.
+     */
+    private LoadReport getReport() {
+        LoadReport report = new LoadReport();
+        for (LoadTask task : tasks) {
+            report.add(task.getReport());
+        }
+        return report;
+    }
+
+    /**
+     * Creates a report of all tasks with an error.
+     *
+     * @param e The error.
+     * @return The report.
+     */
+    private LoadReport createErrorReport(AndesClientException e) {
+        LoadReport report = this.getReport();
+        String cause = (null != e.getCause()) ? " Cause : " + e.getCause().getMessage() : "";
+        report.addError(e.getMessage() + cause);
+        return report;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.mb.integration.common.clients.operations.loaddriver;
+
+import org.HdrHistogram.Histogram;
+import org.wso2.mb.integration.common.clients.operations.utils.AndesClientConstants;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics of one or more {@link LoadTask}s. Reports of workers are merged by the
+ * {@link LoadDriverCoordinator} to get the statistics of the whole load test.
+ */
+public class LoadReport implements Serializable {
+
+    /**
+     * The ID of the worker which created the report. Null for merged reports.
+     */
+    private String workerID;
+
+    /**
+     * The amount of messages sent.
+     */
+    private long sentMessageCount = 0L;
+
+    /**
+     * The amount of messages received.
+     */
+    private long receivedMessageCount = 0L;
+
+    /**
+     * The amount of messages sent per second.
+     */
+    private double publisherTPS = 0D;
+
+    /**
+     * The amount of messages received per second.
+     */
+    private double consumerTPS = 0D;
+
+    /**
+     * The latency distribution of received messages in nanoseconds.
+     */
+    private Histogram latencyHistogram =
+            new Histogram(AndesClientConstants.LATENCY_HISTOGRAM_SIGNIFICANT_DIGITS);
+
+    /**
+     * The errors occurred while executing the tasks. Null if there were no errors.
+     */
+    private String errorMessage;
+
+    /**
+     * Merges a list of reports. Counts and TPS values are summed as tasks run in parallel and
+     * latency histograms are merged.
+     *
+     * @param reports The reports to merge.
+     * @return The merged report.
+     */
+    public static LoadReport merge(List<LoadReport> reports) {
+        LoadReport mergedReport = new LoadReport();
+        for (LoadReport report : reports) {
+            mergedReport.add(report);
+        }
+        return mergedReport;
+    }
+
+    /**
+     * Adds the statistics of another report to this report.
+     *
+     * @param report The report to add.
+     */
+    public void add(LoadReport report) {
+        this.sentMessageCount = this.sentMessageCount + report.sentMessageCount;
+        this.receivedMessageCount = this.receivedMessageCount + report.receivedMessageCount;
+        this.publisherTPS = this.publisherTPS + report.publisherTPS;
+        this.consumerTPS = this.consumerTPS + report.consumerTPS;
+        this.latencyHistogram.add(report.latencyHistogram);
+        if (null != report.errorMessage) {
+            String reportError = (null != report.workerID) ? report.workerID + " : " + report.errorMessage :
+                                 report.errorMessage;
+            this.errorMessage = (null == this.errorMessage) ? reportError : this.errorMessage + "\n" + reportError;
+        }
+    }
+
+    /**
+     * Adds an error to the report.
+     *
+     * @param errorMessage The error message.
+     */
+    public void addError(String errorMessage) {
+        this.errorMessage = (null == this.errorMessage) ? errorMessage : this.errorMessage + "\n" + errorMessage;
+    }
+
+    public String getWorkerID() {
+        return workerID;
+    }
+
+    public void setWorkerID(String workerID) {
+        this.workerID = workerID;
+    }
+
+    public long getSentMessageCount() {
+        return sentMessageCount;
+    }
+
+    public void setSentMessageCount(long sentMessageCount) {
+        this.sentMessageCount = sentMessageCount;
+    }
+
+    public long getReceivedMessageCount() {
+        return receivedMessageCount;
+    }
+
+    public void setReceivedMessageCount(long receivedMessageCount) {
+        this.receivedMessageCount = receivedMessageCount;
+    }
+
+    public double getPublisherTPS() {
+        return publisherTPS;
+    }
+
+    public void setPublisherTPS(double publisherTPS) {
+        this.publisherTPS = publisherTPS;
+    }
+
+    public double getConsumerTPS() {
+        return consumerTPS;
+    }
+
+    public void setConsumerTPS(double consumerTPS) {
+        this.consumerTPS = consumerTPS;
+    }
+
+    public Histogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    public void setLatencyHistogram(Histogram latencyHistogram) {
+        this.latencyHistogram = latencyHistogram;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * Checks whether an error occurred in any of the tasks.
+     *
+     * @return true if an error occurred, false otherwise.
+     */
+    public boolean hasErrors() {
+        return null != errorMessage;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        if (null != workerID) {
+            report.append("WorkerID=").append(workerID).append("\n");
+        }
+        report.append("SentMessageCount=").append(sentMessageCount).append("\n");
+        report.append("ReceivedMessageCount=").append(receivedMessageCount).append("\n");
+        report.append("PublisherTPS=").append(publisherTPS).append("\n");
+        report.append("ConsumerTPS=").append(consumerTPS).append("\n");
+        if (0L < latencyHistogram.getTotalCount()) {
+            double nanosPerMilli = TimeUnit.MILLISECONDS.toNanos(1);
+            report.append("P50Latency(ms)=").append(latencyHistogram.getValueAtPercentile(50D) / nanosPerMilli).append("\n");
+            report.append("P99Latency(ms)=").append(latencyHistogram.getValueAtPercentile(99D) / nanosPerMilli).append("\n");
+            report.append("P99.9Latency(ms)=").append(latencyHistogram.getValueAtPercentile(99.9D) / nanosPerMilli).append("\n");
+            report.append("MaxLatency(ms)=").append(latencyHistogram.getMaxValue() / nanosPerMilli).append("\n");
+        }
+        if (null != errorMessage) {
+            report.append("Errors=").append(errorMessage).append("\n");
+        }
+        return report.toString();
+    }
+}
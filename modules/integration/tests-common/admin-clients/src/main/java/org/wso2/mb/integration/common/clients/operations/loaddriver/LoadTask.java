@@ -0,0 +1,62 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.mb.integration.common.clients.operations.loaddriver;
+
+import org.wso2.mb.integration.common.clients.exceptions.AndesClientException;
+
+import java.io.Serializable;
+
+/**
+ * A unit of load which a {@link LoadDriverCoordinator} assigns to a {@link LoadDriverWorker}. A
+ * task is created on the coordinator, serialized to the worker and executed there. Clients
+ * created by a task should be kept in transient fields.
+ */
+public interface LoadTask extends Serializable {
+
+    /**
+     * Creates the clients and their connections. Invoked when the task is assigned to a worker so
+     * that connection establishment does not delay the synchronized start.
+     *
+     * @param workerID The ID of the worker the task is assigned to. Used to tell apart clients of
+     *                 different workers.
+     * @throws AndesClientException Thrown when creating the clients fails.
+     */
+    void prepare(String workerID) throws AndesClientException;
+
+    /**
+     * Starts publishing or consuming messages.
+     *
+     * @throws AndesClientException Thrown when starting the clients fails.
+     */
+    void start() throws AndesClientException;
+
+    /**
+     * Gets the current statistics of the task.
+     *
+     * @return The statistics of the task.
+     */
+    LoadReport getReport();
+
+    /**
+     * Stops the clients and closes their connections.
+     *
+     * @throws AndesClientException Thrown when stopping the clients fails.
+     */
+    void stop() throws AndesClientException;
+}
@@ -0,0 +1,202 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.mb.integration.common.clients.operations.loaddriver;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.wso2.mb.integration.common.clients.ClientMode;
+import org.wso2.mb.integration.common.clients.MQTTClientConnectionConfiguration;
+import org.wso2.mb.integration.common.clients.MQTTClientEngine;
+import org.wso2.mb.integration.common.clients.QualityOfService;
+import org.wso2.mb.integration.common.clients.exceptions.AndesClientException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A load task which runs MQTT publishers or subscribers through an {@link MQTTClientEngine}.
+ * Subscribers are subscribed when the task is prepared and publishers are created when the task
+ * is started, as the engine starts publishing as soon as a publisher is created.
+ */
+public class MQTTLoadTask implements LoadTask {
+
+    /**
+     * The connection configuration of the clients.
+     */
+    private final MQTTClientConnectionConfiguration configuration;
+
+    /**
+     * The topic to publish or subscribe to.
+     */
+    private final String topicName;
+
+    /**
+     * The quality of service of the clients.
+     */
+    private final QualityOfService qos;
+
+    /**
+     * The message payload. Null for subscribers.
+     */
+    private final byte[] payload;
+
+    /**
+     * The amount of clients to create.
+     */
+    private final int numberOfClients;
+
+    /**
+     * The amount of messages each publisher sends.
+     */
+    private final int numberOfMessages;
+
+    /**
+     * The client connection mode.
+     */
+    private final ClientMode clientMode;
+
+    /**
+     * The engine created on the worker.
+     */
+    private transient MQTTClientEngine mqttClientEngine;
+
+    /**
+     * The time the task was started in milliseconds. Used to calculate TPS.
+     */
+    private transient long startTime;
+
+    /**
+     * Creates a task which runs MQTT subscribers.
+     *
+     * @param configuration   The connection configuration of the subscribers.
+     * @param topicName       The topic to subscribe to.
+     * @param qos             The quality of service.
+     * @param numberOfClients The amount of subscribers to create.
+     * @param clientMode      The client connection mode.
+     * @return The subscriber task.
+     */
+    public static MQTTLoadTask createSubscriberTask(MQTTClientConnectionConfiguration configuration,
+                                                    String topicName, QualityOfService qos,
+                                                    int numberOfClients, ClientMode clientMode) {
+        return new MQTTLoadTask(configuration, topicName, qos, null, numberOfClients, 0, clientMode);
+    }
+
+    /**
+     * Creates a task which runs MQTT publishers.
+     *
+     * @param configuration    The connection configuration of the publishers.
+     * @param topicName        The topic to publish to.
+     * @param qos              The quality of service.
+     * @param payload          The message payload.
+     * @param numberOfClients  The amount of publishers to create.
+     * @param numberOfMessages The amount of messages each publisher sends.
+     * @param clientMode       The client connection mode.
+     * @return The publisher task.
+     */
+    public static MQTTLoadTask createPublisherTask(MQTTClientConnectionConfiguration configuration,
+                                                   String topicName, QualityOfService qos,
+                                                   byte[] payload, int numberOfClients,
+                                                   int numberOfMessages, ClientMode clientMode) {
+        return new MQTTLoadTask(configuration, topicName, qos, payload, numberOfClients,
+                                numberOfMessages, clientMode);
+    }
+
+    private MQTTLoadTask(MQTTClientConnectionConfiguration configuration, String topicName,
+                         QualityOfService qos, byte[] payload, int numberOfClients,
+                         int numberOfMessages, ClientMode clientMode) {
+        this.configuration = configuration;
+        this.topicName = topicName;
+        this.qos = qos;
+        this.payload = payload;
+        this.numberOfClients = numberOfClients;
+        this.numberOfMessages = numberOfMessages;
+        this.clientMode = clientMode;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepare(String workerID) throws AndesClientException {
+        mqttClientEngine = new MQTTClientEngine();
+        if (!isPublisherTask()) {
+            try {
+                mqttClientEngine.createSubscriberConnection(topicName, qos, numberOfClients, false,
+                                                            clientMode, configuration);
+            } catch (MqttException e) {
+                throw new AndesClientException("Error while creating MQTT subscribers.", e);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void start() throws AndesClientException {
+        startTime = System.currentTimeMillis();
+        if (isPublisherTask()) {
+            try {
+                mqttClientEngine.createPublisherConnection(topicName, qos, payload, numberOfClients,
+                                                           numberOfMessages, clientMode, configuration);
+            } catch (MqttException e) {
+                throw new AndesClientException("Error while creating MQTT publishers.", e);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LoadReport getReport() {
+        LoadReport report = new LoadReport();
+        if (null != mqttClientEngine) {
+            double elapsedSeconds = (System.currentTimeMillis() - startTime) / (double) TimeUnit.SECONDS.toMillis(1);
+            report.setSentMessageCount(mqttClientEngine.getSentMessageCount());
+            report.setReceivedMessageCount(mqttClientEngine.getReceivedMessageCount());
+            if (0L < startTime && 0D < elapsedSeconds) {
+                report.setPublisherTPS(report.getSentMessageCount() / elapsedSeconds);
+                report.setConsumerTPS(report.getReceivedMessageCount() / elapsedSeconds);
+            }
+        }
+        return report;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() throws AndesClientException {
+        if (null != mqttClientEngine) {
+            try {
+                mqttClientEngine.shutdown();
+            } catch (MqttException e) {
+                throw new AndesClientException("Error while shutting down MQTT clients.", e);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the task runs publishers.
+     *
+     * @return true if the task runs publishers, false if it runs subscribers.
+     */
+    private boolean isPublisherTask() {
+        return null != payload;
+    }
+}
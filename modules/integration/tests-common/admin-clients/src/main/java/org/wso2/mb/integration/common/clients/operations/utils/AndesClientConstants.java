@@ -64,7 +64,8 @@ public class AndesClientConstants {
             System.getProperty("framework.resource.location") + File.separator + "stats.csv";
 
     /**
-     * Message publishing format
+     * Message publishing format. The content is built by {@link JMSMessageTemplate} without number
+     * grouping.
      */
     public static final String PUBLISH_MESSAGE_FORMAT = "Sending Message:{0} ThreadID:{1}";
     // please see usages prior editing
@@ -155,4 +156,15 @@ public class AndesClientConstants {
      */
     public static final String ANDES_REDELIVERY_DELAY_PROPERTY = "AndesRedeliveryDelay";
 
+    /**
+     * The JMS property which stores the time at which the andes client publisher sent the message,
+     * in nanoseconds since epoch.
+     */
+    public static final String ANDES_CLIENT_SEND_TIMESTAMP_PROPERTY = "AndesClientSendTimestamp";
+
+    /**
+     * Number of significant decimal digits maintained by the latency histograms.
+     */
+    public static final int LATENCY_HISTOGRAM_SIGNIFICANT_DIGITS = 3;
+
 }
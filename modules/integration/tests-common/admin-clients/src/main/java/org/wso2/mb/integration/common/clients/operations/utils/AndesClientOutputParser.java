@@ -28,10 +28,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -46,14 +43,9 @@ public class AndesClientOutputParser {
     private static Log log = LogFactory.getLog(AndesClientOutputParser.class);
 
     /**
-     * Map that stored received messages. Used to check message duplication.
+     * The verifier used to check duplication and order of received messages.
      */
-    private Map<Long, Integer> mapOfReceivedMessages = new HashMap<Long, Integer>();
-
-    /**
-     * List of received messages.
-     */
-    private List<Long> messages = new ArrayList<Long>();
+    private final ReceivedMessageVerifier receivedMessageVerifier;
 
     /**
      * File path to parse received messages
@@ -68,36 +60,31 @@ public class AndesClientOutputParser {
      */
     public AndesClientOutputParser(String filePath) throws IOException {
         this.filePath = filePath;
+        this.receivedMessageVerifier = new ReceivedMessageVerifier(filePath);
         parseFile();
     }
 
     /**
-     * Reads received messages from a file path and store the message ID in necessary data
-     * structures.
+     * Reads received messages from a file path and verifies them in a single pass. The messages
+     * themselves are not kept in memory.
      *
      * @throws IOException
      */
     private void parseFile() throws IOException {
+        // Received messages are written asynchronously, hence waiting till they are in the file
+        AndesClientUtils.flushPrintWriters();
         try {
-            BufferedReader br = new BufferedReader(new FileReader(filePath));
-            try {
-                String line = br.readLine();
-                while (line != null) {
-                    String tempSendMessageString = line.substring(AndesClientConstants.PUBLISH_MESSAGE_FORMAT.indexOf("Sending Message:") + "Sending Message:".length());
-                    long messageIdentifier = Long.valueOf(tempSendMessageString.substring(0, tempSendMessageString
-                            .indexOf(" ")).replace(",",""));
-                    this.addMessage(messageIdentifier);
-                    line = br.readLine();
-                }
-            } finally {
-                br.close();
-            }
+            receivedMessageVerifier.verifyNewLines();
+            // The file is completely written, hence a last line without a line separator is complete
+            receivedMessageVerifier.verifyRemainingLine();
         } catch (FileNotFoundException e) {
             log.error("Error " + filePath + " the file containing received messages couldn't found", e);
             throw e;
         } catch (IOException e) {
             log.error("Error " + filePath + " the file cannot be read", e);
             throw e;
+        } finally {
+            receivedMessageVerifier.close();
         }
     }
 
@@ -107,32 +94,32 @@ public class AndesClientOutputParser {
      * @return A map of duplicated message IDs as key.
      */
     public Map<Long, Integer> getDuplicatedMessages() {
-        Map<Long, Integer> messagesDuplicated = new HashMap<Long, Integer>();
-        for (Long messageIdentifier : mapOfReceivedMessages.keySet()) {
-            if (mapOfReceivedMessages.get(messageIdentifier) > 1) {
-                messagesDuplicated.put(messageIdentifier, mapOfReceivedMessages.get(messageIdentifier));
-            }
-        }
-        return messagesDuplicated;
+        return receivedMessageVerifier.getDuplicatedMessages();
     }
 
     /**
-     * Checks if messages are received in the correct order.
+     * Checks if messages are received in the correct order. Order is checked for each publisher
+     * separately.
      *
      * @return true if messages are in order, false otherwise.
      */
     public boolean checkIfMessagesAreInOrder() {
-        boolean result = true;
-        for (int count = 0; count < messages.size(); count++) {
-            if (messages.get(count) != (count)) {
-                result = false;
-                log.warn("Message order is broken at message " + messages.get(count));
-                break;
-            }
+        boolean result = receivedMessageVerifier.isInOrder();
+        if (!result) {
+            log.warn("Message order is broken. " + receivedMessageVerifier);
         }
         return result;
     }
 
+    /**
+     * Gets the verifier which holds the results of verifying the received messages.
+     *
+     * @return The received message verifier.
+     */
+    public ReceivedMessageVerifier getReceivedMessageVerifier() {
+        return receivedMessageVerifier;
+    }
+
     /**
      * Prints missing message IDs.
      * Suppressing "UnusedDeclaration" as this could be used for debugging purposes
@@ -142,10 +129,10 @@ public class AndesClientOutputParser {
     @SuppressWarnings("UnusedDeclaration")
     public void printMissingMessages(int numberOfSentMessages) {
         log.info("Printing Missing Messages");
-        for (long count = 0; count < numberOfSentMessages; count++) {
-            if (mapOfReceivedMessages.get(count) == null) {
-                log.info("Missing message id:" + count + 1 + "\n");
-            }
+        for (String publisherID : receivedMessageVerifier.getPublisherIDs()) {
+            log.info("Missing message ids of ThreadID:" + publisherID + " " +
+                     receivedMessageVerifier.getMissingMessages(publisherID, numberOfSentMessages,
+                                                                numberOfSentMessages));
         }
     }
 
@@ -160,42 +147,25 @@ public class AndesClientOutputParser {
     }
 
     /**
-     * Prints the map that contains received messages.
+     * Prints the summary of received messages.
      * Suppressing "UnusedDeclaration" as this could be used for debugging purposes
      */
     @SuppressWarnings("UnusedDeclaration")
     public void printMessagesMap() {
         log.info("Printing Received Messages");
-        log.info(mapOfReceivedMessages);
-    }
-
-    /**
-     * Adds received message IDs to a list and a map.
-     *
-     * @param messageIdentifier Received message ID.
-     */
-    private void addMessage(Long messageIdentifier) {
-        if (mapOfReceivedMessages.get(messageIdentifier) == null) {
-            mapOfReceivedMessages.put(messageIdentifier, 1);
-        } else {
-            int currentCount = mapOfReceivedMessages.get(messageIdentifier);
-            mapOfReceivedMessages.put(messageIdentifier, currentCount + 1);
-        }
-
-        messages.add(messageIdentifier);
+        log.info(receivedMessageVerifier);
     }
 
     /**
-     * Prints received message IDs in sorted.
+     * Prints received message IDs in sorted for each publisher.
      * Suppressing "UnusedDeclaration" as this could be used for debugging purposes
      */
     @SuppressWarnings("UnusedDeclaration")
     public void printMessagesSorted() {
         log.info("Printing Sorted Messages");
-        List<Long> cloneOfMessages = new ArrayList<Long>();
-        cloneOfMessages.addAll(messages);
-        Collections.sort(cloneOfMessages);
-        log.info(cloneOfMessages);
+        for (String publisherID : receivedMessageVerifier.getPublisherIDs()) {
+            log.info("ThreadID:" + publisherID + " " + receivedMessageVerifier.getReceivedSequences(publisherID));
+        }
     }
 
     /**
@@ -214,8 +184,7 @@ public class AndesClientOutputParser {
             try {
                 String line = br.readLine();
                 while (line != null) {
-                    String tempSendMessageString = line.substring(AndesClientConstants.PUBLISH_MESSAGE_FORMAT.indexOf("Sending Message:") + "Sending Message:".length());
-                    long messageIdentifier = Long.parseLong(tempSendMessageString.substring(0, tempSendMessageString.indexOf(" ")));
+                    long messageIdentifier = getMessageIdentifier(line);
                     if (count == 0) {
                         firstMessageIdentifier = messageIdentifier;
                     }
@@ -341,42 +310,11 @@ public class AndesClientOutputParser {
 
 
     /**
-     * Parse the file and get the number of duplicate message IDs.
+     * Gets the number of duplicate message IDs.
      *
      * @return Duplicated message ID count.
      */
     public long numberDuplicatedMessages() {
-        long duplicateCount = 0;
-        List<Long> messagesDuplicated = new ArrayList<Long>();
-        try {
-            BufferedReader br = new BufferedReader(new FileReader(filePath));
-            //Needed try/finally to close the file
-            try {
-                String line = br.readLine();
-                while (line != null) {
-                    String tempSendMessageString = line.substring(AndesClientConstants.PUBLISH_MESSAGE_FORMAT.indexOf("Sending Message:") + "Sending Message:".length());
-                    long messageIdentifier = Long.parseLong(tempSendMessageString.substring(0, tempSendMessageString.indexOf(" ")));
-                    if (messagesDuplicated.contains(messageIdentifier)) {
-                        duplicateCount++;
-                    } else {
-                        messagesDuplicated.add(messageIdentifier);
-                    }
-                    line = br.readLine();
-                }
-            } catch (IOException e) {
-                log.error("Error while parsing the file containing received messages", e);
-            } finally {
-
-                try {
-                    br.close();
-                } catch (IOException e) {
-                    log.error("Error while closing the file containing received messages", e);
-                }
-
-            }
-        } catch (FileNotFoundException e) {
-            log.error("Error " + filePath + " the file containing received messages couldn't found", e);
-        }
-        return duplicateCount;
+        return receivedMessageVerifier.getDuplicateCount();
     }
 }
@@ -17,6 +17,7 @@
 */
 package org.wso2.mb.integration.common.clients.operations.utils;
 
+import org.HdrHistogram.Histogram;
 import org.apache.commons.lang.RandomStringUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -30,6 +31,9 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -42,20 +46,36 @@ public class AndesClientUtils {
     private static Logger log = Logger.getLogger(AndesClientUtils.class);
 
     /**
-     * The print writer to print received messages to a file.
+     * The header row of the statistics file.
      */
-    private static PrintWriter receivedMessagePrintWriter;
+    private static final String STATISTICS_HEADER =
+            "TIMESTAMP,CONSUMER_TPS,AVERAGE_LATENCY,,TIMESTAMP,PUBLISHER_TPS,," +
+            "TIMESTAMP,INTERVAL_MESSAGE_COUNT,P50_LATENCY,P90_LATENCY,P99_LATENCY,P99.9_LATENCY,MAX_LATENCY";
 
     /**
-     * The print writer to print statistics such as TPS for consumers and producers and also the
-     * average latency to a file.
+     * The writers used to write received messages, published messages and statistics, mapped
+     * against the file path they write to. Each file gets its own writer so that clients writing
+     * to different files do not share a writer.
      */
-    private static PrintWriter statisticsPrintWriter;
+    private static final Map<String, AsyncBatchedFileWriter> fileWriters = new ConcurrentHashMap<>();
 
     /**
-     * The print writer to print messages that are being sent by the publisher.
+     * The amount of clients which retain the writer of each file path. A writer is only closed once
+     * no client writing to its file is left. Guarded by {@link #fileWriters}.
      */
-    private static PrintWriter publishedMessagePrintWriter;
+    private static final Map<String, Integer> fileWriterReferenceCounts = new HashMap<>();
+
+    /**
+     * The wall clock time in nanoseconds at which this class got loaded. Used as the base for
+     * {@link #getEpochTimeInNanos()}.
+     */
+    private static final long EPOCH_TIME_BASE_IN_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+
+    /**
+     * The value of {@link System#nanoTime()} at which this class got loaded.
+     */
+    private static final long NANO_TIME_BASE = System.nanoTime();
 
     /**
      * Waits until no messages are received. The waiting is done by using a loop checking whether
@@ -171,112 +191,220 @@ public class AndesClientUtils {
     }
 
     /**
-     * Writes received messages to a file.
+     * Gets the wall clock time in nanoseconds since epoch. The value is derived from
+     * {@link System#nanoTime()} and therefore has nanosecond resolution, while being comparable
+     * with timestamps taken by other clients running on the same host.
+     *
+     * @return The time in nanoseconds since epoch.
+     */
+    public static long getEpochTimeInNanos() {
+        return EPOCH_TIME_BASE_IN_NANOS + (System.nanoTime() - NANO_TIME_BASE);
+    }
+
+    /**
+     * Writes received messages to a file. The content is written asynchronously.
      *
      * @param content  Message content to write.
      * @param filePath File path where the message content should be written.
      */
     public static void writeReceivedMessagesToFile(String content, String filePath)
             throws IOException {
-
-        if (receivedMessagePrintWriter == null) {
-            initializeReceivedMessagesPrintWriter(filePath);
-        }
-        receivedMessagePrintWriter.println(content);
-
+        writeLineToFile(content, filePath, null);
     }
 
     /**
-     * Writes statistics to a file.
+     * Writes statistics to a file. The content is written asynchronously.
      *
      * @param content  Statistic content.
      * @param filePath File path where the statistics should be written.
      */
     public static void writeStatisticsToFile(String content, String filePath) throws IOException {
-        if (statisticsPrintWriter == null) {
-            initializeStatisticsPrintWriter(filePath);
-        }
-
-        statisticsPrintWriter.println(content);
+        writeLineToFile(content, filePath, STATISTICS_HEADER);
+    }
 
+    /**
+     * Writes the percentiles of a latency histogram as a statistics row to a file. Latencies are
+     * written in seconds.
+     *
+     * @param latencyHistogram The latency histogram with values in nanoseconds.
+     * @param filePath         File path where the statistics should be written.
+     */
+    public static void writeLatencyStatisticsToFile(Histogram latencyHistogram, String filePath)
+            throws IOException {
+        double nanosPerSecond = TimeUnit.SECONDS.toNanos(1);
+        String statisticsString = ",,,,,,," + Long.toString(System.currentTimeMillis()) + "," +
+                                  Long.toString(latencyHistogram.getTotalCount()) + "," +
+                                  Double.toString(latencyHistogram.getValueAtPercentile(50D) / nanosPerSecond) + "," +
+                                  Double.toString(latencyHistogram.getValueAtPercentile(90D) / nanosPerSecond) + "," +
+                                  Double.toString(latencyHistogram.getValueAtPercentile(99D) / nanosPerSecond) + "," +
+                                  Double.toString(latencyHistogram.getValueAtPercentile(99.9D) / nanosPerSecond) + "," +
+                                  Double.toString(latencyHistogram.getMaxValue() / nanosPerSecond);
+        writeStatisticsToFile(statisticsString, filePath);
     }
 
     /**
-     * Writes published messages to a file.
+     * Writes published messages to a file. The content is written asynchronously.
      *
      * @param content  Statistic content.
      * @param filePath File path where the statistics should be written.
      */
     public static void writePublishedMessagesToFile(String content, String filePath) throws IOException {
-        if (publishedMessagePrintWriter == null) {
-            initializePublishedPrintWriter(filePath);
-        }
-
-        publishedMessagePrintWriter.println(content);
+        writeLineToFile(content, filePath, null);
     }
 
     /**
-     * Initialize the message content print writer. This needs to be invoked before each test case.
+     * Initialize the message content writer. This needs to be invoked before each test case.
      *
      * @param filePath The file path to write to.
      */
     public static void initializeReceivedMessagesPrintWriter(String filePath) throws IOException {
-        if (StringUtils.isNotEmpty(filePath)) {
-            File writerFile = new File(filePath);
-            if (writerFile.exists() || writerFile.createNewFile()) {
-                BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(filePath));
-                receivedMessagePrintWriter = new PrintWriter(bufferedWriter);
-            }
-        }
+        initializeFileWriter(filePath, null);
     }
 
     /**
-     * Initialize the statistics print writer. This needs to be invoked before each test case.
+     * Initialize the statistics writer. This needs to be invoked before each test case.
      *
      * @param filePath The file path to write to.
      */
     public static void initializeStatisticsPrintWriter(String filePath) throws IOException {
-        if (StringUtils.isNotEmpty(filePath)) {
-            File writerFile = new File(filePath);
-            if (writerFile.exists() || writerFile.createNewFile()) {
-                BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(filePath));
-                statisticsPrintWriter = new PrintWriter(bufferedWriter);
-                statisticsPrintWriter
-                        .println("TIMESTAMP,CONSUMER_TPS,AVERAGE_LATENCY,,TIMESTAMP,PUBLISHER_TPS");
-            }
-        }
+        initializeFileWriter(filePath, STATISTICS_HEADER);
     }
 
     /**
-     * Initialize the published messages print writer. This needs to be invoked before each test
+     * Initialize the published messages writer. This needs to be invoked before each test
      * case.
      *
      * @param filePath The file path to write to.
      */
     public static void initializePublishedPrintWriter(String filePath) throws IOException {
-        if (StringUtils.isNotEmpty(filePath)) {
-            File writerFile = new File(filePath);
-            if (writerFile.exists() || writerFile.createNewFile()) {
-                BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(filePath));
-                publishedMessagePrintWriter = new PrintWriter(bufferedWriter);
+        initializeFileWriter(filePath, null);
+    }
+
+    /**
+     * Waits until all the content written so far is flushed to the files.
+     */
+    public static void flushPrintWriters() {
+        for (AsyncBatchedFileWriter fileWriter : fileWriters.values()) {
+            try {
+                fileWriter.flush();
+            } catch (IOException e) {
+                log.error("Error while flushing content to file.", e);
             }
         }
     }
 
     /**
-     * Prints print writers to file paths.
+     * Retains the writers of the given files for a client writing to them. A retained writer is
+     * not closed until every client retaining it releases it, and is not replaced when a client
+     * initializes a writer for the same file meanwhile.
+     *
+     * @param filePaths The file paths written to. Null or empty file paths are ignored.
      */
-    public static void flushPrintWriters() {
-        if (null != receivedMessagePrintWriter) {
-            receivedMessagePrintWriter.flush();
+    public static void retainFileWriters(String... filePaths) {
+        synchronized (fileWriters) {
+            for (String filePath : filePaths) {
+                if (StringUtils.isNotEmpty(filePath)) {
+                    Integer referenceCount = fileWriterReferenceCounts.get(filePath);
+                    fileWriterReferenceCounts.put(filePath, (null == referenceCount) ? 1 : referenceCount + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the writers of the given files retained by a client. A writer which is no longer
+     * retained by any client writes all its pending content and is closed. Content written to
+     * these files afterwards initializes new writers, overwriting the files.
+     *
+     * @param filePaths The file paths written to. Null or empty file paths are ignored.
+     */
+    public static void releaseFileWriters(String... filePaths) {
+        synchronized (fileWriters) {
+            for (String filePath : filePaths) {
+                if (StringUtils.isNotEmpty(filePath)) {
+                    Integer referenceCount = fileWriterReferenceCounts.remove(filePath);
+                    if (null != referenceCount && 1 < referenceCount) {
+                        fileWriterReferenceCounts.put(filePath, referenceCount - 1);
+                        continue;
+                    }
+                    AsyncBatchedFileWriter fileWriter = fileWriters.remove(filePath);
+                    if (null != fileWriter) {
+                        try {
+                            fileWriter.close();
+                        } catch (IOException e) {
+                            log.error("Error while closing file " + filePath, e);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a line to the writer of a file. A new writer is initialized if the file is not written
+     * to yet. Nothing is written if the file path is empty.
+     *
+     * @param content  The line to write.
+     * @param filePath The file path to write to.
+     * @param header   The first line to write when a new writer is initialized. Null if the file
+     *                 has no header.
+     * @throws IOException Thrown when the file cannot be opened or written to.
+     */
+    private static void writeLineToFile(String content, String filePath, String header)
+            throws IOException {
+        AsyncBatchedFileWriter fileWriter = fileWriters.get(filePath);
+        if (null == fileWriter) {
+            synchronized (fileWriters) {
+                fileWriter = fileWriters.get(filePath);
+                if (null == fileWriter) {
+                    fileWriter = initializeFileWriter(filePath, header);
+                }
+            }
         }
+        if (null != fileWriter) {
+            fileWriter.writeLine(content);
+        }
+    }
 
-        if (null != statisticsPrintWriter) {
-            statisticsPrintWriter.flush();
+    /**
+     * Initializes a writer for a file, overwriting existing content. The writer previously
+     * initialized for the same file is closed after writing its pending content, unless another
+     * client still retains it, in which case it is kept and written to by both clients. Nothing is
+     * initialized if the file path is empty.
+     *
+     * @param filePath The file path to write to.
+     * @param header   The first line to write. Null if the file has no header.
+     * @return The writer for the file, or null if the file path is empty.
+     * @throws IOException Thrown when the file cannot be opened for writing.
+     */
+    private static AsyncBatchedFileWriter initializeFileWriter(String filePath, String header)
+            throws IOException {
+        if (StringUtils.isEmpty(filePath)) {
+            return null;
         }
 
-        if (null != publishedMessagePrintWriter) {
-            publishedMessagePrintWriter.flush();
+        synchronized (fileWriters) {
+            AsyncBatchedFileWriter previousFileWriter = fileWriters.get(filePath);
+            Integer referenceCount = fileWriterReferenceCounts.get(filePath);
+            // The initializing client retains the file as well
+            if (null != previousFileWriter && null != referenceCount && 1 < referenceCount) {
+                return previousFileWriter;
+            }
+            if (null != previousFileWriter) {
+                fileWriters.remove(filePath);
+                previousFileWriter.close();
+            }
+
+            File writerFile = new File(filePath);
+            if (!writerFile.exists() && !writerFile.createNewFile()) {
+                throw new IOException("Unable to create file " + filePath);
+            }
+            AsyncBatchedFileWriter fileWriter = new AsyncBatchedFileWriter(filePath);
+            if (null != header) {
+                fileWriter.writeLine(header);
+            }
+            fileWriters.put(filePath, fileWriter);
+            return fileWriter;
         }
     }
 
@@ -0,0 +1,228 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.mb.integration.common.clients.operations.utils;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes lines to a file from a background thread. Threads writing lines only add them to a
+ * bounded queue, so that file I/O does not happen on the message receiving or publishing
+ * threads. The background thread drains the queue and writes lines to the file in batches. When
+ * lines are added faster than the file is written, the queue fills up and adding a line waits
+ * until there is room, which bounds the memory held by pending lines.
+ */
+public class AsyncBatchedFileWriter implements Closeable {
+    /**
+     * The logger used in logging information, warnings, errors and etc.
+     */
+    private static Logger log = Logger.getLogger(AsyncBatchedFileWriter.class);
+
+    /**
+     * The maximum amount of lines written to the file before flushing.
+     */
+    private static final int MAXIMUM_BATCH_SIZE = 1000;
+
+    /**
+     * The maximum amount of lines waiting to be written to the file.
+     */
+    private static final int MAXIMUM_PENDING_LINE_COUNT = 64 * MAXIMUM_BATCH_SIZE;
+
+    /**
+     * The time the background thread waits when no lines are available to write.
+     */
+    private static final long IDLE_WAIT_TIME_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Lines which are yet to be written to the file.
+     */
+    private final BlockingQueue<String> pendingLines = new ArrayBlockingQueue<>(MAXIMUM_PENDING_LINE_COUNT);
+
+    /**
+     * The amount of lines added to the writer.
+     */
+    private final AtomicLong addedLineCount = new AtomicLong(0L);
+
+    /**
+     * The amount of lines written and flushed to the file by the background thread.
+     */
+    private volatile long flushedLineCount = 0L;
+
+    /**
+     * Whether the background thread should keep on writing lines.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * The error occurred in the background thread while writing to the file, if any.
+     */
+    private volatile IOException writeError;
+
+    /**
+     * The writer used to write to the file.
+     */
+    private final BufferedWriter fileWriter;
+
+    /**
+     * The background thread which writes lines to the file.
+     */
+    private final Thread writerThread;
+
+    /**
+     * The path of the file written to.
+     */
+    private final String filePath;
+
+    /**
+     * Creates a writer for a given file and starts the background thread. Existing content of the
+     * file is overwritten.
+     *
+     * @param filePath The file path to write to.
+     * @throws IOException Thrown when the file cannot be opened for writing.
+     */
+    public AsyncBatchedFileWriter(String filePath) throws IOException {
+        this.filePath = filePath;
+        this.fileWriter = new BufferedWriter(new FileWriter(filePath));
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writePendingLines();
+            }
+        }, "AndesClientFileWriter-" + new File(filePath).getName());
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Adds a line to be written to the file. The line is written asynchronously. Waits while the
+     * maximum amount of lines are pending.
+     *
+     * @param line The line to write.
+     * @throws IOException Thrown when the background thread failed to write to the file or has
+     *                     stopped, or when interrupted while waiting.
+     */
+    public void writeLine(String line) throws IOException {
+        this.checkWriteError();
+        try {
+            while (!this.pendingLines.offer(line, IDLE_WAIT_TIME_IN_NANOS, TimeUnit.NANOSECONDS)) {
+                this.checkWriteError();
+                if (!this.writerThread.isAlive()) {
+                    throw new IOException("Writer for " + this.filePath + " has stopped before writing all lines");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to write to file " + this.filePath);
+        }
+        this.addedLineCount.incrementAndGet();
+    }
+
+    /**
+     * Waits until all the lines added before invoking this method are written and flushed to the
+     * file.
+     *
+     * @throws IOException Thrown when the background thread failed to write to the file or has
+     *                     stopped.
+     */
+    public void flush() throws IOException {
+        long lineCountToFlush = this.addedLineCount.get();
+        while (this.flushedLineCount < lineCountToFlush) {
+            this.checkWriteError();
+            if (!this.writerThread.isAlive()) {
+                throw new IOException("Writer for " + this.filePath + " has stopped before writing all lines");
+            }
+            LockSupport.unpark(this.writerThread);
+            LockSupport.parkNanos(IDLE_WAIT_TIME_IN_NANOS);
+        }
+    }
+
+    /**
+     * Writes all pending lines, stops the background thread and closes the file.
+     *
+     * @throws IOException Thrown when writing or closing the file fails.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.flush();
+        } finally {
+            this.running = false;
+            LockSupport.unpark(this.writerThread);
+            try {
+                this.writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.fileWriter.close();
+        }
+    }
+
+    /**
+     * Drains the pending lines in batches and writes them to the file until the writer is closed.
+     * Runs on the background thread.
+     */
+    private void writePendingLines() {
+        long writtenLineCount = 0L;
+        try {
+            while (this.running || !this.pendingLines.isEmpty()) {
+                int batchSize = 0;
+                String line = this.pendingLines.poll();
+                while (null != line) {
+                    this.fileWriter.write(line);
+                    this.fileWriter.newLine();
+                    batchSize++;
+                    line = (MAXIMUM_BATCH_SIZE > batchSize) ? this.pendingLines.poll() : null;
+                }
+
+                if (0 < batchSize) {
+                    this.fileWriter.flush();
+                    writtenLineCount = writtenLineCount + batchSize;
+                    this.flushedLineCount = writtenLineCount;
+                } else {
+                    LockSupport.parkNanos(this, IDLE_WAIT_TIME_IN_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error while writing to file " + this.filePath, e);
+            this.writeError = e;
+        }
+    }
+
+    /**
+     * Throws the error occurred in the background thread, if any.
+     *
+     * @throws IOException The error occurred while writing to the file.
+     */
+    private void checkWriteError() throws IOException {
+        if (null != this.writeError) {
+            throw new IOException("Error while writing to file " + this.filePath, this.writeError);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.integration.common.clients.operations.utils;
+
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot of the garbage collections done by a JVM, either the JVM running the clients or the
+ * broker read through remote JMX. Taking a snapshot before and after a test and getting the
+ * difference shows how much collection work moving message content caused in that JVM.
+ */
+public class GarbageCollectionStatistics {
+
+    /**
+     * The name of the JVM the snapshot is taken of, used to label the statistics.
+     */
+    private final String jvmName;
+
+    /**
+     * The amount of collections done by all collectors.
+     */
+    private final long collectionCount;
+
+    /**
+     * The accumulated collection time of all collectors in milliseconds.
+     */
+    private final long collectionTimeInMillis;
+
+    /**
+     * Creates a snapshot with given values.
+     *
+     * @param jvmName                The name of the JVM.
+     * @param collectionCount        The amount of collections.
+     * @param collectionTimeInMillis The collection time in milliseconds.
+     */
+    private GarbageCollectionStatistics(String jvmName, long collectionCount, long collectionTimeInMillis) {
+        this.jvmName = jvmName;
+        this.collectionCount = collectionCount;
+        this.collectionTimeInMillis = collectionTimeInMillis;
+    }
+
+    /**
+     * Takes a snapshot of the garbage collections done so far by the JVM running the clients.
+     *
+     * @return The snapshot.
+     */
+    public static GarbageCollectionStatistics capture() {
+        return capture("Client", ManagementFactory.getGarbageCollectorMXBeans());
+    }
+
+    /**
+     * Takes a snapshot of the garbage collections done so far by the broker running on localhost.
+     *
+     * @param jmxServerPort   The JMX RMI server port of the broker.
+     * @param rmiRegistryPort The RMI registry port of the broker.
+     * @param username        The username to connect to the JMX server with.
+     * @param password        The password of the user.
+     * @return The snapshot.
+     * @throws IOException Thrown when the JMX server of the broker cannot be read.
+     */
+    public static GarbageCollectionStatistics captureBroker(int jmxServerPort, int rmiRegistryPort,
+                                                            String username, String password)
+            throws IOException {
+        JMXServiceURL url = new JMXServiceURL("service:jmx:rmi://localhost:" + jmxServerPort +
+                                              "/jndi/rmi://localhost:" + rmiRegistryPort + "/jmxrmi");
+        Map<String, String[]> environment = new HashMap<>();
+        environment.put(JMXConnector.CREDENTIALS, new String[]{username, password});
+        try (JMXConnector jmxConnector = JMXConnectorFactory.connect(url, environment)) {
+            MBeanServerConnection connection = jmxConnector.getMBeanServerConnection();
+            return capture("Broker", ManagementFactory.getPlatformMXBeans(connection, GarbageCollectorMXBean.class));
+        }
+    }
+
+    /**
+     * Sums up the collections done by the collectors of a JVM.
+     *
+     * @param jvmName    The name of the JVM.
+     * @param collectors The garbage collectors of the JVM.
+     * @return The snapshot.
+     */
+    private static GarbageCollectionStatistics capture(String jvmName,
+                                                       List<GarbageCollectorMXBean> collectors) {
+        long count = 0L;
+        long time = 0L;
+        for (GarbageCollectorMXBean collector : collectors) {
+            // Collectors return -1 when a value is not available
+            count = count + Math.max(0L, collector.getCollectionCount());
+            time = time + Math.max(0L, collector.getCollectionTime());
+        }
+        return new GarbageCollectionStatistics(jvmName, count, time);
+    }
+
+    /**
+     * Gets the garbage collections done since an earlier snapshot of the same JVM.
+     *
+     * @param earlier The earlier snapshot.
+     * @return The difference between this snapshot and the earlier snapshot.
+     */
+    public GarbageCollectionStatistics since(GarbageCollectionStatistics earlier) {
+        return new GarbageCollectionStatistics(this.jvmName, this.collectionCount - earlier.collectionCount,
+                                               this.collectionTimeInMillis - earlier.collectionTimeInMillis);
+    }
+
+    /**
+     * Gets the amount of collections done by all collectors.
+     *
+     * @return The collection count.
+     */
+    public long getCollectionCount() {
+        return collectionCount;
+    }
+
+    /**
+     * Gets the accumulated collection time of all collectors.
+     *
+     * @return The collection time in milliseconds.
+     */
+    public long getCollectionTimeInMillis() {
+        return collectionTimeInMillis;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return this.jvmName + "GCCount:" + this.collectionCount + " " + this.jvmName + "GCTime(ms):" +
+               this.collectionTimeInMillis;
+    }
+}
@@ -0,0 +1,339 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.mb.integration.common.clients.operations.utils;
+
+import org.wso2.mb.integration.common.clients.configurations.AndesJMSPublisherClientConfiguration;
+import org.wso2.mb.integration.common.clients.configurations.JMSHeaderProperty;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+import javax.jms.Session;
+import javax.jms.StreamMessage;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class creates the JMS messages sent by a single publisher thread. Message bodies, map
+ * entries and header properties are prepared once when the template is created. For the inbuilt
+ * message content only the message sequence number is patched in to a reused buffer for each
+ * message, which keeps the publisher from allocating and formatting content on each send. Text
+ * messages with the inbuilt content still need a new string for each message, as text bodies are
+ * immutable strings. Header properties are set through setters resolved from their types once.
+ * <p>
+ * The inbuilt content follows {@link AndesClientConstants#PUBLISH_MESSAGE_FORMAT}. The same
+ * content is written as bytes for byte and stream messages. Instances are not thread safe.
+ */
+public class JMSMessageTemplate {
+
+    /**
+     * The maximum amount of characters a long value can take.
+     */
+    private static final int MAXIMUM_LONG_LENGTH = 20;
+
+    /**
+     * The text which precedes the message sequence number in the inbuilt content.
+     */
+    private static final String SEQUENCE_PREFIX = "Sending Message:";
+
+    /**
+     * The text which precedes the publisher ID in the inbuilt content.
+     */
+    private static final String THREAD_ID_PREFIX = " ThreadID:";
+
+    /**
+     * The JMS message type to create.
+     */
+    private final JMSMessageType messageType;
+
+    /**
+     * The message content set through the configuration. Null if the inbuilt content is used.
+     */
+    private final String messageContent;
+
+    /**
+     * The message content encoded for byte and stream messages. Null for other message types or
+     * if the inbuilt content is used.
+     */
+    private final byte[] messageContentBytes;
+
+    /**
+     * Keys of the map message entries.
+     */
+    private final String[] mapMessageKeys;
+
+    /**
+     * Values of the map message entries.
+     */
+    private final String[] mapMessageValues;
+
+    /**
+     * The JMS type to set. Null if not set.
+     */
+    private final String jmsType;
+
+    /**
+     * The setters of the JMS header properties to set.
+     */
+    private final HeaderPropertySetter[] headerPropertySetters;
+
+    /**
+     * The reused buffer holding the inbuilt content as bytes. The sequence number is patched in
+     * after the sequence prefix and the publisher ID is written after it.
+     */
+    private final byte[] inbuiltContentBuffer;
+
+    /**
+     * The publisher ID part of the inbuilt content, including its prefix.
+     */
+    private final byte[] publisherIDSuffix;
+
+    /**
+     * Creates a message template for a publisher thread.
+     *
+     * @param publisherConfig The publisher configuration.
+     * @param messageContent      The message content read from file or set through configuration.
+     *                            Null to use the inbuilt content.
+     * @param messageContentBytes The message content read from file for byte and stream messages.
+     *                            Null to encode the message content when needed.
+     * @param publisherID         The ID of the publisher used in the inbuilt content.
+     */
+    public JMSMessageTemplate(AndesJMSPublisherClientConfiguration publisherConfig,
+                              String messageContent, byte[] messageContentBytes, String publisherID) {
+        this.messageType = publisherConfig.getJMSMessageType();
+        this.messageContent = messageContent;
+
+        String configuredJMSType = publisherConfig.getJMSType();
+        this.jmsType = (null != configuredJMSType && !configuredJMSType.isEmpty()) ? configuredJMSType : null;
+        this.headerPropertySetters = new HeaderPropertySetter[publisherConfig.getJMSHeaderProperties().size()];
+        for (int i = 0; i < this.headerPropertySetters.length; i++) {
+            this.headerPropertySetters[i] = createHeaderPropertySetter(publisherConfig.getJMSHeaderProperties().get(i));
+        }
+
+        // Only byte and stream messages need encoded content, which matters for large contents
+        if (null != messageContentBytes) {
+            this.messageContentBytes = messageContentBytes;
+        } else if (null != messageContent
+                   && (JMSMessageType.BYTE == this.messageType || JMSMessageType.STREAM == this.messageType)) {
+            this.messageContentBytes = messageContent.getBytes(StandardCharsets.UTF_8);
+        } else {
+            this.messageContentBytes = null;
+        }
+
+        if (JMSMessageType.MAP == this.messageType && null != publisherConfig.getReadMessagesFromFilePath()
+            && null != messageContent) {
+            this.mapMessageValues = messageContent.split(System.getProperty("line.separator"));
+            this.mapMessageKeys = new String[this.mapMessageValues.length];
+            for (int i = 0; i < this.mapMessageValues.length; i++) {
+                this.mapMessageKeys[i] = "key" + i;
+            }
+        } else {
+            this.mapMessageValues = new String[0];
+            this.mapMessageKeys = new String[0];
+        }
+
+        byte[] sequencePrefix = SEQUENCE_PREFIX.getBytes(StandardCharsets.US_ASCII);
+        this.publisherIDSuffix = (THREAD_ID_PREFIX + publisherID).getBytes(StandardCharsets.US_ASCII);
+        this.inbuiltContentBuffer =
+                new byte[sequencePrefix.length + MAXIMUM_LONG_LENGTH + this.publisherIDSuffix.length];
+        System.arraycopy(sequencePrefix, 0, this.inbuiltContentBuffer, 0, sequencePrefix.length);
+    }
+
+    /**
+     * Creates a JMS message with the prepared body and properties.
+     *
+     * @param session  The session used to create the message.
+     * @param sequence The sequence number of the message within the publisher.
+     * @return The JMS message. Null if the message type is not supported.
+     * @throws JMSException
+     */
+    public Message createMessage(Session session, long sequence) throws JMSException {
+        Message message = null;
+        if (JMSMessageType.TEXT == this.messageType) {
+            if (null != this.messageContent) {
+                message = session.createTextMessage(this.messageContent);
+            } else {
+                // Text bodies are strings, hence a string is created for each message
+                int length = this.writeInbuiltContent(sequence);
+                message = session.createTextMessage(
+                        new String(this.inbuiltContentBuffer, 0, length, StandardCharsets.US_ASCII));
+            }
+        } else if (JMSMessageType.BYTE == this.messageType) {
+            BytesMessage bytesMessage = session.createBytesMessage();
+            if (null != this.messageContentBytes) {
+                bytesMessage.writeBytes(this.messageContentBytes);
+            } else {
+                bytesMessage.writeBytes(this.inbuiltContentBuffer, 0, this.writeInbuiltContent(sequence));
+            }
+            message = bytesMessage;
+        } else if (JMSMessageType.MAP == this.messageType) {
+            MapMessage mapMessage = session.createMapMessage();
+            for (int i = 0; i < this.mapMessageKeys.length; i++) {
+                mapMessage.setString(this.mapMessageKeys[i], this.mapMessageValues[i]);
+            }
+            message = mapMessage;
+        } else if (JMSMessageType.OBJECT == this.messageType) {
+            message = session.createObjectMessage();
+        } else if (JMSMessageType.STREAM == this.messageType) {
+            StreamMessage streamMessage = session.createStreamMessage();
+            if (null != this.messageContentBytes) {
+                streamMessage.writeBytes(this.messageContentBytes);
+            } else {
+                streamMessage.writeBytes(this.inbuiltContentBuffer, 0, this.writeInbuiltContent(sequence));
+            }
+            message = streamMessage;
+        }
+
+        if (null != message) {
+            if (null != this.jmsType) {
+                message.setJMSType(this.jmsType);
+            }
+            for (HeaderPropertySetter headerPropertySetter : this.headerPropertySetters) {
+                headerPropertySetter.setProperty(message);
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Patches the sequence number and the thread ID in to the inbuilt content buffer.
+     *
+     * @param sequence The sequence number. Should not be negative.
+     * @return The length of the content in the buffer.
+     */
+    private int writeInbuiltContent(long sequence) {
+        int position = SEQUENCE_PREFIX.length();
+
+        // Writing digits in reverse order and then swapping them in place
+        long remaining = sequence;
+        int digitsStart = position;
+        do {
+            this.inbuiltContentBuffer[position++] = (byte) ('0' + (remaining % 10));
+            remaining = remaining / 10;
+        } while (0 < remaining);
+        for (int left = digitsStart, right = position - 1; left < right; left++, right--) {
+            byte digit = this.inbuiltContentBuffer[left];
+            this.inbuiltContentBuffer[left] = this.inbuiltContentBuffer[right];
+            this.inbuiltContentBuffer[right] = digit;
+        }
+
+        System.arraycopy(this.publisherIDSuffix, 0, this.inbuiltContentBuffer, position,
+                         this.publisherIDSuffix.length);
+        return position + this.publisherIDSuffix.length;
+    }
+
+    /**
+     * Creates the setter of a JMS header property. The value is cast to the type of the property
+     * here, so that setting the property on each message needs no type checks.
+     *
+     * @param headerProperty The header property.
+     * @return The setter of the header property.
+     */
+    private static HeaderPropertySetter createHeaderPropertySetter(JMSHeaderProperty headerProperty) {
+        final String key = headerProperty.getKey();
+        final Object value = headerProperty.getValue();
+        switch (headerProperty.getType()) {
+            case BYTE:
+                final byte byteValue = (Byte) value;
+                return new HeaderPropertySetter() {
+                    @Override
+                    public void setProperty(Message message) throws JMSException {
+                        message.setByteProperty(key, byteValue);
+                    }
+                };
+            case BOOLEAN:
+                final boolean booleanValue = (Boolean) value;
+                return new HeaderPropertySetter() {
+                    @Override
+                    public void setProperty(Message message) throws JMSException {
+                        message.setBooleanProperty(key, booleanValue);
+                    }
+                };
+            case DOUBLE:
+                final double doubleValue = (Double) value;
+                return new HeaderPropertySetter() {
+                    @Override
+                    public void setProperty(Message message) throws JMSException {
+                        message.setDoubleProperty(key, doubleValue);
+                    }
+                };
+            case FLOAT:
+                final float floatValue = (Float) value;
+                return new HeaderPropertySetter() {
+                    @Override
+                    public void setProperty(Message message) throws JMSException {
+                        message.setFloatProperty(key, floatValue);
+                    }
+                };
+            case SHORT:
+                final short shortValue = (Short) value;
+                return new HeaderPropertySetter() {
+                    @Override
+                    public void setProperty(Message message) throws JMSException {
+                        message.setShortProperty(key, shortValue);
+                    }
+                };
+            case STRING:
+                final String stringValue = (String) value;
+                return new HeaderPropertySetter() {
+                    @Override
+                    public void setProperty(Message message) throws JMSException {
+                        message.setStringProperty(key, stringValue);
+                    }
+                };
+            case INTEGER:
+                final int intValue = (Integer) value;
+                return new HeaderPropertySetter() {
+                    @Override
+                    public void setProperty(Message message) throws JMSException {
+                        message.setIntProperty(key, intValue);
+                    }
+                };
+            case LONG:
+                final long longValue = (Long) value;
+                return new HeaderPropertySetter() {
+                    @Override
+                    public void setProperty(Message message) throws JMSException {
+                        message.setLongProperty(key, longValue);
+                    }
+                };
+            default:
+                return new HeaderPropertySetter() {
+                    @Override
+                    public void setProperty(Message message) throws JMSException {
+                        message.setObjectProperty(key, value);
+                    }
+                };
+        }
+    }
+
+    /**
+     * Sets a single JMS header property to messages.
+     */
+    private interface HeaderPropertySetter {
+
+        /**
+         * Sets the header property to a message.
+         *
+         * @param message The message to set the property.
+         * @throws JMSException
+         */
+        void setProperty(Message message) throws JMSException;
+    }
+}
@@ -0,0 +1,552 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.wso2.mb.integration.common.clients.operations.utils;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Verifies received messages in a single pass without keeping the messages in memory. Messages are
+ * identified by the publisher ID and the sequence number in the content written by
+ * {@link JMSMessageTemplate}. A publisher ID is the publisher thread ID, prefixed with an ID such
+ * as a load driver worker ID and a '/' when publishers run in several JVMs. For each publisher a
+ * bitmap of received sequence numbers is kept, which is used to detect duplicates and gaps.
+ * Ordering is checked per publisher.
+ * <p>
+ * Lines can be fed one at a time through {@link #verifyLine(CharSequence)} or read from the
+ * received messages file through {@link #verifyNewLines()}. The latter reads only the lines
+ * written since the previous invocation, so a test can verify the file while consumers are still
+ * writing to it. All methods are thread safe.
+ */
+public class ReceivedMessageVerifier implements Closeable {
+    /**
+     * The logger used in logging information, warnings, errors and etc.
+     */
+    private static Logger log = Logger.getLogger(ReceivedMessageVerifier.class);
+
+    /**
+     * The text which precedes the message sequence number in the message content.
+     */
+    private static final String SEQUENCE_PREFIX = "Sending Message:";
+
+    /**
+     * The text which precedes the publisher ID in the message content.
+     */
+    private static final String THREAD_ID_PREFIX = "ThreadID:";
+
+    /**
+     * The amount of characters read from the file at once.
+     */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The character separating the prefix of a publisher ID from the thread ID.
+     */
+    private static final char PUBLISHER_ID_SEPARATOR = '/';
+
+    /**
+     * The received message state of each publisher mapped against the publisher ID.
+     */
+    private final Map<String, PublisherState> publisherStates = new HashMap<>();
+
+    /**
+     * The file path to read received messages from. Null if lines are fed directly.
+     */
+    private final String filePath;
+
+    /**
+     * The reader of the received messages file. Opened on the first read.
+     */
+    private Reader fileReader;
+
+    /**
+     * The buffer used to read the received messages file.
+     */
+    private char[] readBuffer;
+
+    /**
+     * Characters of a line which is not yet completely written to the file.
+     */
+    private final StringBuilder partialLine = new StringBuilder();
+
+    /**
+     * The amount of verified messages.
+     */
+    private long messageCount = 0L;
+
+    /**
+     * The amount of messages received more than once.
+     */
+    private long duplicateCount = 0L;
+
+    /**
+     * The amount of messages received with a lower sequence number than a message received
+     * earlier from the same publisher.
+     */
+    private long orderViolationCount = 0L;
+
+    /**
+     * The amount of lines which are not in the inbuilt message format.
+     */
+    private long unrecognizedLineCount = 0L;
+
+    /**
+     * Creates a verifier which is fed lines through {@link #verifyLine(CharSequence)}.
+     */
+    public ReceivedMessageVerifier() {
+        this(null);
+    }
+
+    /**
+     * Creates a verifier which reads lines from a received messages file.
+     *
+     * @param filePath The file path for received messages.
+     */
+    public ReceivedMessageVerifier(String filePath) {
+        this.filePath = filePath;
+    }
+
+    /**
+     * Reads and verifies the lines written to the received messages file since the previous
+     * invocation. A line which is not completely written yet is verified in the next invocation,
+     * or by {@link #verifyRemainingLine()} once the file is completely written.
+     *
+     * @return The amount of lines verified.
+     * @throws IOException Thrown when the received messages file is either missing or cannot be
+     *                     read.
+     */
+    public synchronized long verifyNewLines() throws IOException {
+        if (null == this.filePath) {
+            throw new IllegalStateException("File path to read received messages is not provided");
+        }
+        if (null == this.fileReader) {
+            this.fileReader = new InputStreamReader(new FileInputStream(this.filePath), StandardCharsets.UTF_8);
+            this.readBuffer = new char[READ_BUFFER_SIZE];
+        }
+
+        long verifiedLineCount = 0L;
+        int readCount = this.fileReader.read(this.readBuffer);
+        while (0 < readCount) {
+            int lineStart = 0;
+            for (int i = 0; i < readCount; i++) {
+                if ('\n' == this.readBuffer[i]) {
+                    int lineEnd = (lineStart < i && '\r' == this.readBuffer[i - 1]) ? i - 1 : i;
+                    if (0 < this.partialLine.length()) {
+                        this.partialLine.append(this.readBuffer, lineStart, lineEnd - lineStart);
+                        int length = this.partialLine.length();
+                        if (0 < length && '\r' == this.partialLine.charAt(length - 1)) {
+                            this.partialLine.setLength(length - 1);
+                        }
+                        this.verifyLine(this.partialLine);
+                        this.partialLine.setLength(0);
+                    } else {
+                        this.verifyLine(new CharArraySequence(this.readBuffer, lineStart, lineEnd));
+                    }
+                    verifiedLineCount++;
+                    lineStart = i + 1;
+                }
+            }
+            this.partialLine.append(this.readBuffer, lineStart, readCount - lineStart);
+            readCount = this.fileReader.read(this.readBuffer);
+        }
+        return verifiedLineCount;
+    }
+
+    /**
+     * Verifies the characters read after the last line separator of the received messages file as
+     * a line. To be invoked after {@link #verifyNewLines()} once the file is completely written, as
+     * the last line of a file need not end with a line separator.
+     *
+     * @return The amount of lines verified, which is 0 if the file ended with a line separator.
+     */
+    public synchronized long verifyRemainingLine() {
+        int length = this.partialLine.length();
+        if (0 < length && '\r' == this.partialLine.charAt(length - 1)) {
+            this.partialLine.setLength(--length);
+        }
+        if (0 == length) {
+            return 0L;
+        }
+        this.verifyLine(this.partialLine);
+        this.partialLine.setLength(0);
+        return 1L;
+    }
+
+    /**
+     * Verifies a single received message content.
+     *
+     * @param line The received message content.
+     */
+    public synchronized void verifyLine(CharSequence line) {
+        int position = indexOf(line, SEQUENCE_PREFIX, 0);
+        long sequence = -1L;
+        String publisherID = null;
+        if (0 <= position) {
+            position = position + SEQUENCE_PREFIX.length();
+            sequence = parseNumber(line, position);
+            position = indexOf(line, THREAD_ID_PREFIX, position);
+            if (0 <= position) {
+                publisherID = parsePublisherID(line, position + THREAD_ID_PREFIX.length());
+            }
+        }
+
+        if (0L > sequence || Integer.MAX_VALUE < sequence || null == publisherID) {
+            if (0L == this.unrecognizedLineCount) {
+                log.warn("Received message content is not in the inbuilt message format : " + line);
+            }
+            this.unrecognizedLineCount++;
+            return;
+        }
+
+        PublisherState publisherState = this.publisherStates.get(publisherID);
+        if (null == publisherState) {
+            publisherState = new PublisherState();
+            this.publisherStates.put(publisherID, publisherState);
+        }
+
+        this.messageCount++;
+        if (sequence < publisherState.highestSequence) {
+            this.orderViolationCount++;
+        }
+        if (publisherState.addSequence((int) sequence)) {
+            this.duplicateCount++;
+        }
+    }
+
+    /**
+     * Gets the amount of verified messages.
+     *
+     * @return The message count.
+     */
+    public synchronized long getMessageCount() {
+        return this.messageCount;
+    }
+
+    /**
+     * Gets the amount of messages which were received more than once. A message received three
+     * times is counted as two duplicates.
+     *
+     * @return The duplicate count.
+     */
+    public synchronized long getDuplicateCount() {
+        return this.duplicateCount;
+    }
+
+    /**
+     * Gets the amount of messages received after a message with a higher sequence number from the
+     * same publisher.
+     *
+     * @return The order violation count.
+     */
+    public synchronized long getOrderViolationCount() {
+        return this.orderViolationCount;
+    }
+
+    /**
+     * Gets the amount of messages not received so far, considering all sequence numbers of a
+     * publisher from 0 up to the highest received.
+     *
+     * @return The gap count.
+     */
+    public synchronized long getGapCount() {
+        long gapCount = 0L;
+        for (PublisherState publisherState : this.publisherStates.values()) {
+            gapCount = gapCount + publisherState.getGapCount();
+        }
+        return gapCount;
+    }
+
+    /**
+     * Gets the amount of lines which did not contain a sequence number and a publisher ID.
+     *
+     * @return The unrecognized line count.
+     */
+    public synchronized long getUnrecognizedLineCount() {
+        return this.unrecognizedLineCount;
+    }
+
+    /**
+     * Gets the IDs of the publishers which messages were received from.
+     *
+     * @return A list of publisher IDs.
+     */
+    public synchronized List<String> getPublisherIDs() {
+        return new ArrayList<>(this.publisherStates.keySet());
+    }
+
+    /**
+     * Checks whether each publisher's messages were received exactly once, in order and without
+     * gaps starting from sequence number 0.
+     *
+     * @return true if messages are in order, false otherwise.
+     */
+    public synchronized boolean isInOrder() {
+        return 0L == this.orderViolationCount && 0L == this.duplicateCount && 0L == this.getGapCount();
+    }
+
+    /**
+     * Gets the duplicated messages. Sequence numbers of different publishers are merged, hence
+     * this is meaningful when there is a single publisher.
+     *
+     * @return A map of duplicated sequence numbers and the amount of times they were received.
+     */
+    public synchronized Map<Long, Integer> getDuplicatedMessages() {
+        Map<Long, Integer> duplicatedMessages = new HashMap<>();
+        for (PublisherState publisherState : this.publisherStates.values()) {
+            for (Map.Entry<Integer, Integer> duplicate : publisherState.receiveCounts.entrySet()) {
+                Long sequence = duplicate.getKey().longValue();
+                Integer previousCount = duplicatedMessages.get(sequence);
+                duplicatedMessages.put(sequence, (null == previousCount) ? duplicate.getValue() :
+                                                 previousCount + duplicate.getValue());
+            }
+        }
+        return duplicatedMessages;
+    }
+
+    /**
+     * Gets the sequence numbers of a publisher which were not received below a given sequence
+     * number.
+     *
+     * @param publisherID          The publisher ID.
+     * @param expectedMessageCount The amount of messages the publisher sent.
+     * @param maximumResults       The maximum amount of sequence numbers to return.
+     * @return A list of missing sequence numbers.
+     */
+    public synchronized List<Long> getMissingMessages(String publisherID, long expectedMessageCount,
+                                                      int maximumResults) {
+        List<Long> missingMessages = new ArrayList<>();
+        PublisherState publisherState = this.publisherStates.get(publisherID);
+        int sequenceLimit = (int) Math.min(expectedMessageCount, Integer.MAX_VALUE);
+        int sequence = (null == publisherState) ? 0 : publisherState.receivedSequences.nextClearBit(0);
+        while (sequence < sequenceLimit && missingMessages.size() < maximumResults) {
+            missingMessages.add((long) sequence);
+            sequence = (null == publisherState) ? sequence + 1 :
+                       publisherState.receivedSequences.nextClearBit(sequence + 1);
+        }
+        return missingMessages;
+    }
+
+    /**
+     * Gets the sequence numbers received from a publisher.
+     *
+     * @param publisherID The publisher ID.
+     * @return A copy of the bitmap of received sequence numbers.
+     */
+    public synchronized BitSet getReceivedSequences(String publisherID) {
+        PublisherState publisherState = this.publisherStates.get(publisherID);
+        return (null == publisherState) ? new BitSet() : (BitSet) publisherState.receivedSequences.clone();
+    }
+
+    /**
+     * Closes the received messages file.
+     *
+     * @throws IOException Thrown when closing the file fails.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (null != this.fileReader) {
+            this.fileReader.close();
+            this.fileReader = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String toString() {
+        return "Messages=" + this.messageCount + ", Publishers=" + this.publisherStates.size() +
+               ", Duplicates=" + this.duplicateCount + ", Gaps=" + this.getGapCount() +
+               ", OrderViolations=" + this.orderViolationCount +
+               ", UnrecognizedLines=" + this.unrecognizedLineCount;
+    }
+
+    /**
+     * Finds a text within a character sequence.
+     *
+     * @param sequence  The character sequence to search.
+     * @param text      The text to find.
+     * @param fromIndex The index to start searching from.
+     * @return The index of the text. -1 if not found.
+     */
+    private static int indexOf(CharSequence sequence, String text, int fromIndex) {
+        int lastStart = sequence.length() - text.length();
+        for (int start = fromIndex; start <= lastStart; start++) {
+            int matched = 0;
+            while (matched < text.length() && sequence.charAt(start + matched) == text.charAt(matched)) {
+                matched++;
+            }
+            if (matched == text.length()) {
+                return start;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a non negative number starting at a given index. Number grouping characters are
+     * skipped.
+     *
+     * @param sequence The character sequence to parse from.
+     * @param index    The index where the number starts.
+     * @return The number. -1 if there are no digits at the index.
+     */
+    private static long parseNumber(CharSequence sequence, int index) {
+        long number = 0L;
+        boolean hasDigits = false;
+        for (int i = index; i < sequence.length(); i++) {
+            char character = sequence.charAt(i);
+            if ('0' <= character && '9' >= character) {
+                number = number * 10L + (character - '0');
+                hasDigits = true;
+            } else if (',' != character) {
+                break;
+            }
+        }
+        return hasDigits ? number : -1L;
+    }
+
+    /**
+     * Parses a publisher ID starting at a given index. The ID ends at the first whitespace. The
+     * thread ID after the last separator is parsed as a number, so that number grouping
+     * characters do not make IDs of the same publisher differ.
+     *
+     * @param sequence The character sequence to parse from.
+     * @param index    The index where the publisher ID starts.
+     * @return The publisher ID. Null if there is no thread ID at the index.
+     */
+    private static String parsePublisherID(CharSequence sequence, int index) {
+        int separatorIndex = -1;
+        for (int i = index; i < sequence.length() && !Character.isWhitespace(sequence.charAt(i)); i++) {
+            if (PUBLISHER_ID_SEPARATOR == sequence.charAt(i)) {
+                separatorIndex = i;
+            }
+        }
+        long threadID = parseNumber(sequence, (0 <= separatorIndex) ? separatorIndex + 1 : index);
+        if (0L > threadID) {
+            return null;
+        }
+        return (0 <= separatorIndex) ?
+               sequence.subSequence(index, separatorIndex + 1).toString() + threadID : Long.toString(threadID);
+    }
+
+    /**
+     * The received message state of a single publisher.
+     */
+    private static class PublisherState {
+
+        /**
+         * The sequence numbers received from the publisher.
+         */
+        private final BitSet receivedSequences = new BitSet();
+
+        /**
+         * The amount of times duplicated sequence numbers were received. Only sequence numbers
+         * received more than once are kept.
+         */
+        private final Map<Integer, Integer> receiveCounts = new HashMap<>();
+
+        /**
+         * The highest sequence number received. -1 if no messages are received.
+         */
+        private long highestSequence = -1L;
+
+        /**
+         * The amount of distinct sequence numbers received.
+         */
+        private long distinctCount = 0L;
+
+        /**
+         * Marks a sequence number as received.
+         *
+         * @param sequence The sequence number.
+         * @return true if the sequence number was received before, false otherwise.
+         */
+        private boolean addSequence(int sequence) {
+            this.highestSequence = Math.max(this.highestSequence, sequence);
+            if (this.receivedSequences.get(sequence)) {
+                Integer receiveCount = this.receiveCounts.get(sequence);
+                this.receiveCounts.put(sequence, (null == receiveCount) ? 2 : receiveCount + 1);
+                return true;
+            }
+            this.receivedSequences.set(sequence);
+            this.distinctCount++;
+            return false;
+        }
+
+        /**
+         * Gets the amount of sequence numbers not received from 0 up to the highest received.
+         *
+         * @return The gap count.
+         */
+        private long getGapCount() {
+            return (this.highestSequence + 1L) - this.distinctCount;
+        }
+    }
+
+    /**
+     * A character sequence view over a region of a character array, used to verify lines without
+     * copying them out of the read buffer.
+     */
+    private static class CharArraySequence implements CharSequence {
+
+        private final char[] characters;
+
+        private final int start;
+
+        private final int end;
+
+        private CharArraySequence(char[] characters, int start, int end) {
+            this.characters = characters;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return this.end - this.start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return this.characters[this.start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new CharArraySequence(this.characters, this.start + start, this.start + end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(this.characters, this.start, this.end - this.start);
+        }
+    }
+}
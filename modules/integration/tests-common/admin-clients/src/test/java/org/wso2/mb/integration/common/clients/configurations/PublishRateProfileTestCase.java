@@ -0,0 +1,154 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.integration.common.clients.configurations;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.mb.integration.common.clients.exceptions.AndesClientConfigurationException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifies the intended send times of publish rate profiles and the validation of profiles.
+ */
+public class PublishRateProfileTestCase {
+
+    /**
+     * The tolerated difference between an intended send time and the expected one in seconds.
+     */
+    private static final double DELTA_IN_SECONDS = 1E-6D;
+
+    /**
+     * Messages of a constant rate profile are evenly spaced.
+     *
+     * @throws AndesClientConfigurationException
+     */
+    @Test
+    public void testConstantRate() throws AndesClientConfigurationException {
+        PublishRateProfile profile = new PublishRateProfile(100D);
+        profile.validate();
+
+        assertSendTime(profile, 0L, 0D);
+        assertSendTime(profile, 50L, 0.5D);
+        assertSendTime(profile, 1000L, 10D);
+    }
+
+    /**
+     * Messages of a ramp are sent at the times the linearly changing rate reaches their index,
+     * which is solved from the quadratic message count of the step.
+     *
+     * @throws AndesClientConfigurationException
+     */
+    @Test
+    public void testRamp() throws AndesClientConfigurationException {
+        // 100 messages are sent within the ramp, after which the rate stays at 100 msg/s
+        PublishRateProfile rampUp = new PublishRateProfile();
+        rampUp.addRampStep(0D, 100D, 2000L);
+        rampUp.validate();
+
+        assertSendTime(rampUp, 25L, 1D);
+        assertSendTime(rampUp, 100L, 2D);
+        assertSendTime(rampUp, 150L, 2.5D);
+
+        // A decreasing rate takes the smaller root, 100t - 12.5t^2 = 75
+        PublishRateProfile rampDown = new PublishRateProfile();
+        rampDown.addRampStep(100D, 50D, 2000L);
+        rampDown.validate();
+
+        assertSendTime(rampDown, 75L, 4D - Math.sqrt(10D));
+        assertSendTime(rampDown, 150L, 2D);
+        assertSendTime(rampDown, 200L, 3D);
+    }
+
+    /**
+     * Steps are applied one after the other, and the rate of the last step is maintained once
+     * all steps are completed.
+     *
+     * @throws AndesClientConfigurationException
+     */
+    @Test
+    public void testMultipleSteps() throws AndesClientConfigurationException {
+        // 10 messages in the first step, 20 in the second and 50 in the third
+        PublishRateProfile profile = new PublishRateProfile();
+        profile.addConstantStep(10D, 1000L);
+        profile.addRampStep(10D, 30D, 1000L);
+        profile.addConstantStep(50D, 1000L);
+        profile.validate();
+
+        assertSendTime(profile, 5L, 0.5D);
+        assertSendTime(profile, 10L, 1D);
+        // 10t + 10t^2 = 5 within the second step
+        assertSendTime(profile, 15L, 1D + (Math.sqrt(3D) - 1D) / 2D);
+        assertSendTime(profile, 30L, 2D);
+        assertSendTime(profile, 55L, 2.5D);
+        assertSendTime(profile, 90L, 3.2D);
+        Assert.assertEquals(profile.getFinalRate(), 50D);
+    }
+
+    /**
+     * A profile without steps never sends a message.
+     *
+     * @throws AndesClientConfigurationException
+     */
+    @Test(expectedExceptions = AndesClientConfigurationException.class)
+    public void testEmptyProfileInvalid() throws AndesClientConfigurationException {
+        new PublishRateProfile().validate();
+    }
+
+    /**
+     * A profile ending with a rate of 0 never sends the messages after its last step.
+     *
+     * @throws AndesClientConfigurationException
+     */
+    @Test(expectedExceptions = AndesClientConfigurationException.class)
+    public void testProfileEndingWithZeroRateInvalid() throws AndesClientConfigurationException {
+        PublishRateProfile profile = new PublishRateProfile();
+        profile.addConstantStep(100D, 1000L);
+        profile.addRampStep(100D, 0D, 1000L);
+        profile.validate();
+    }
+
+    /**
+     * Rates cannot be negative.
+     *
+     * @throws AndesClientConfigurationException
+     */
+    @Test(expectedExceptions = AndesClientConfigurationException.class)
+    public void testNegativeRateInvalid() throws AndesClientConfigurationException {
+        new PublishRateProfile().addRampStep(-1D, 100D, 1000L);
+    }
+
+    /**
+     * Step durations cannot be negative.
+     *
+     * @throws AndesClientConfigurationException
+     */
+    @Test(expectedExceptions = AndesClientConfigurationException.class)
+    public void testNegativeDurationInvalid() throws AndesClientConfigurationException {
+        new PublishRateProfile().addConstantStep(100D, -1L);
+    }
+
+    private static void assertSendTime(PublishRateProfile profile, long messageIndex, double expectedSeconds) {
+        double sendTimeInSeconds =
+                profile.getIntendedSendTimeInNanos(messageIndex) / (double) TimeUnit.SECONDS.toNanos(1);
+        Assert.assertEquals(sendTimeInSeconds, expectedSeconds, DELTA_IN_SECONDS,
+                            "Unexpected send time for message " + messageIndex + " of profile " + profile);
+    }
+}
@@ -0,0 +1,236 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.integration.common.clients.operations.loaddriver;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a {@link LoadDriverCoordinator} with workers in the same JVM, using tasks which report
+ * fixed statistics instead of running clients against a broker.
+ */
+public class LoadDriverTestCase {
+
+    /**
+     * The time to wait for workers to connect and exit.
+     */
+    private static final long WORKER_TIMEOUT_IN_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * The amount of messages each task reports once started and again once stopped.
+     */
+    private static final long TASK_MESSAGE_COUNT = 100L;
+
+    /**
+     * The latency each task records for its messages.
+     */
+    private static final long TASK_LATENCY_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private LoadDriverCoordinator coordinator;
+
+    private final List<Thread> workerThreads = new ArrayList<>();
+
+    private final List<Throwable> workerErrors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        coordinator = new LoadDriverCoordinator(0);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException, InterruptedException {
+        coordinator.close();
+        for (Thread workerThread : workerThreads) {
+            workerThread.join(WORKER_TIMEOUT_IN_MILLIS);
+        }
+        workerThreads.clear();
+        workerErrors.clear();
+    }
+
+    /**
+     * The coordinator only accepts connections on the loopback address by default.
+     */
+    @Test
+    public void testListensOnLoopbackAddress() {
+        Assert.assertTrue(coordinator.getAddress().isLoopbackAddress(),
+                          "Coordinator should listen on the loopback address, but listens on "
+                          + coordinator.getAddress());
+    }
+
+    /**
+     * Two workers run two tasks each. The merged report includes the messages each task reports
+     * while stopping.
+     */
+    @Test
+    public void testMergedReportOfTwoWorkers() throws Exception {
+        startWorker("worker-1");
+        startWorker("worker-2");
+        coordinator.acceptWorkers(2, WORKER_TIMEOUT_IN_MILLIS);
+        Assert.assertEquals(coordinator.getWorkerCount(), 2);
+
+        coordinator.assignTasks(Arrays.asList(new FixedLoadTask(), new FixedLoadTask(), new FixedLoadTask(),
+                                              new FixedLoadTask()));
+        coordinator.startTasks(100L);
+
+        List<LoadReport> workerReports = coordinator.getWorkerReports();
+        Set<String> workerIDs = new HashSet<>();
+        for (LoadReport workerReport : workerReports) {
+            workerIDs.add(workerReport.getWorkerID());
+            Assert.assertEquals(workerReport.getSentMessageCount(), 2 * TASK_MESSAGE_COUNT,
+                                "Each worker should report the messages of its two tasks");
+        }
+        Assert.assertEquals(workerIDs, new HashSet<>(Arrays.asList("worker-1", "worker-2")));
+
+        LoadReport report = coordinator.stopTasks();
+        long expectedMessageCount = 4 * 2 * TASK_MESSAGE_COUNT;
+        Assert.assertFalse(report.hasErrors(), "Workers reported errors : " + report.getErrorMessage());
+        Assert.assertEquals(report.getSentMessageCount(), expectedMessageCount,
+                            "Messages counted while stopping should be in the report");
+        Assert.assertEquals(report.getReceivedMessageCount(), expectedMessageCount);
+        Assert.assertEquals(report.getLatencyHistogram().getTotalCount(), expectedMessageCount,
+                            "Latency histograms of all tasks should be merged");
+        Assert.assertEquals((double) report.getLatencyHistogram().getMaxValue(), (double) TASK_LATENCY_IN_NANOS,
+                            TASK_LATENCY_IN_NANOS / 100D);
+
+        for (Thread workerThread : workerThreads) {
+            workerThread.join(WORKER_TIMEOUT_IN_MILLIS);
+            Assert.assertFalse(workerThread.isAlive(), "Worker should exit once stopped");
+        }
+        Assert.assertTrue(workerErrors.isEmpty(), "Workers failed : " + workerErrors);
+    }
+
+    /**
+     * A reply of a class other than the load driver classes is rejected by the coordinator.
+     */
+    @Test(expectedExceptions = InvalidClassException.class)
+    public void testUnexpectedClassRejected() throws Exception {
+        Thread peerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (Socket socket = new Socket(coordinator.getAddress(), coordinator.getPort())) {
+                    ObjectOutputStream outputStream = new ObjectOutputStream(socket.getOutputStream());
+                    outputStream.flush();
+                    ObjectInputStream inputStream = new ObjectInputStream(socket.getInputStream());
+                    inputStream.readObject();
+                    inputStream.readObject();
+                    outputStream.writeObject(new Date());
+                    outputStream.flush();
+                    // Keeping the connection open until the coordinator closes it
+                    inputStream.read();
+                } catch (IOException | ClassNotFoundException e) {
+                    workerErrors.add(e);
+                }
+            }
+        });
+        peerThread.start();
+        workerThreads.add(peerThread);
+
+        coordinator.acceptWorkers(1, WORKER_TIMEOUT_IN_MILLIS);
+        coordinator.assignTask(0, new FixedLoadTask());
+    }
+
+    /**
+     * Starts a worker in a thread which connects to the coordinator.
+     *
+     * @param workerID The ID of the worker.
+     */
+    private void startWorker(final String workerID) {
+        final String coordinatorHost = coordinator.getAddress().getHostAddress();
+        Thread workerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    new LoadDriverWorker(workerID).run(coordinatorHost, coordinator.getPort());
+                } catch (IOException | ClassNotFoundException e) {
+                    workerErrors.add(e);
+                }
+            }
+        }, workerID);
+        workerThread.start();
+        workerThreads.add(workerThread);
+    }
+
+    /**
+     * A task which reports a fixed amount of messages once started and the same amount again once
+     * stopped, like a client which keeps receiving messages until it is closed.
+     */
+    public static class FixedLoadTask implements LoadTask {
+
+        private transient boolean started;
+
+        private transient boolean stopped;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void prepare(String workerID) {
+            started = false;
+            stopped = false;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void start() {
+            started = true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public LoadReport getReport() {
+            long messageCount = stopped ? 2 * TASK_MESSAGE_COUNT : (started ? TASK_MESSAGE_COUNT : 0L);
+            LoadReport report = new LoadReport();
+            report.setSentMessageCount(messageCount);
+            report.setReceivedMessageCount(messageCount);
+            if (0L < messageCount) {
+                report.getLatencyHistogram().recordValueWithCount(TASK_LATENCY_IN_NANOS, messageCount);
+            }
+            return report;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+    }
+}
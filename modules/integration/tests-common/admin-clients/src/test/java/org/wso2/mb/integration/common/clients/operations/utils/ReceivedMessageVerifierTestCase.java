@@ -0,0 +1,189 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.integration.common.clients.operations.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Verifies received message contents in the format written by {@link JMSMessageTemplate}.
+ */
+public class ReceivedMessageVerifierTestCase {
+
+    /**
+     * Publishers with the same thread ID in different load driver workers are told apart by the
+     * worker ID prefix.
+     */
+    @Test
+    public void testPublishersOfDifferentWorkersVerifiedSeparately() {
+        ReceivedMessageVerifier verifier = new ReceivedMessageVerifier();
+        verifier.verifyLine("Sending Message:0 ThreadID:worker-1/7");
+        verifier.verifyLine("Sending Message:0 ThreadID:worker-2/7");
+        verifier.verifyLine("Sending Message:1 ThreadID:worker-1/7");
+        verifier.verifyLine("Sending Message:1 ThreadID:worker-2/7");
+
+        Assert.assertEquals(verifier.getMessageCount(), 4L);
+        Assert.assertEquals(verifier.getDuplicateCount(), 0L, "Messages of different workers are not duplicates");
+        Assert.assertTrue(verifier.isInOrder());
+        Assert.assertEquals(new HashSet<>(verifier.getPublisherIDs()),
+                            new HashSet<>(Arrays.asList("worker-1/7", "worker-2/7")));
+    }
+
+    /**
+     * Thread IDs formatted with grouping characters identify the same publisher as plain ones.
+     */
+    @Test
+    public void testGroupedThreadIDIdentifiesSamePublisher() {
+        ReceivedMessageVerifier verifier = new ReceivedMessageVerifier();
+        verifier.verifyLine("Sending Message:0 ThreadID:7,335");
+        verifier.verifyLine("Sending Message:1 ThreadID:7335");
+        verifier.verifyLine("Sending Message:1 ThreadID:7335");
+
+        Assert.assertEquals(verifier.getPublisherIDs(), Arrays.asList("7335"));
+        Assert.assertEquals(verifier.getDuplicateCount(), 1L);
+        Assert.assertEquals(verifier.getUnrecognizedLineCount(), 0L);
+    }
+
+    /**
+     * Lines without a publisher ID are counted as unrecognized.
+     */
+    @Test
+    public void testLineWithoutPublisherIDUnrecognized() {
+        ReceivedMessageVerifier verifier = new ReceivedMessageVerifier();
+        verifier.verifyLine("Sending Message:0 ThreadID:worker-1/");
+        verifier.verifyLine("Some other content");
+
+        Assert.assertEquals(verifier.getMessageCount(), 0L);
+        Assert.assertEquals(verifier.getUnrecognizedLineCount(), 2L);
+    }
+
+    /**
+     * Sequence numbers not received up to the highest received one of each publisher are counted
+     * as gaps, and are no longer counted once received.
+     */
+    @Test
+    public void testGapsCountedPerPublisher() {
+        ReceivedMessageVerifier verifier = new ReceivedMessageVerifier();
+        verifier.verifyLine("Sending Message:0 ThreadID:7");
+        verifier.verifyLine("Sending Message:1 ThreadID:7");
+        verifier.verifyLine("Sending Message:4 ThreadID:7");
+        verifier.verifyLine("Sending Message:2 ThreadID:8");
+
+        Assert.assertEquals(verifier.getGapCount(), 4L);
+        Assert.assertEquals(verifier.getMissingMessages("7", 6L, 10), Arrays.asList(2L, 3L, 5L));
+        Assert.assertEquals(verifier.getMissingMessages("8", 3L, 1), Arrays.asList(0L));
+        Assert.assertFalse(verifier.isInOrder());
+
+        verifier.verifyLine("Sending Message:2 ThreadID:7");
+        verifier.verifyLine("Sending Message:3 ThreadID:7");
+
+        Assert.assertEquals(verifier.getGapCount(), 2L, "Only the gaps of the other publisher should remain");
+        Assert.assertEquals(verifier.getDuplicateCount(), 0L);
+    }
+
+    /**
+     * A message received after a message with a higher sequence number from the same publisher is
+     * an order violation, while interleaved messages of different publishers are not.
+     */
+    @Test
+    public void testOrderViolationsCountedPerPublisher() {
+        ReceivedMessageVerifier verifier = new ReceivedMessageVerifier();
+        verifier.verifyLine("Sending Message:0 ThreadID:7");
+        verifier.verifyLine("Sending Message:2 ThreadID:7");
+        verifier.verifyLine("Sending Message:0 ThreadID:8");
+        verifier.verifyLine("Sending Message:1 ThreadID:7");
+        verifier.verifyLine("Sending Message:1 ThreadID:8");
+
+        Assert.assertEquals(verifier.getOrderViolationCount(), 1L);
+        Assert.assertEquals(verifier.getGapCount(), 0L);
+        Assert.assertEquals(verifier.getDuplicateCount(), 0L);
+        Assert.assertFalse(verifier.isInOrder());
+
+        verifier.verifyLine("Sending Message:2 ThreadID:7");
+
+        Assert.assertEquals(verifier.getOrderViolationCount(), 1L,
+                            "A duplicate of the highest sequence number should not be an order violation");
+        Assert.assertEquals(verifier.getDuplicateCount(), 1L);
+    }
+
+    /**
+     * A line is verified once its line separator is written, and the last line of a completely
+     * written file is verified without one.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testLinesVerifiedFromFile() throws IOException {
+        File file = File.createTempFile("receivedMessages", ".txt");
+        file.deleteOnExit();
+        ReceivedMessageVerifier verifier = new ReceivedMessageVerifier(file.getAbsolutePath());
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            write(outputStream, "Sending Message:0 ThreadID:7\r\nSending Message:1 Thre");
+            Assert.assertEquals(verifier.verifyNewLines(), 1L);
+
+            write(outputStream, "adID:7\nSending Message:2 ThreadID:7");
+            Assert.assertEquals(verifier.verifyNewLines(), 1L, "A partially written line should be completed");
+            Assert.assertEquals(verifier.getMessageCount(), 2L);
+
+            Assert.assertEquals(verifier.verifyRemainingLine(), 1L);
+            Assert.assertEquals(verifier.verifyRemainingLine(), 0L, "The remaining line should be verified once");
+            Assert.assertEquals(verifier.getMessageCount(), 3L);
+            Assert.assertEquals(verifier.getUnrecognizedLineCount(), 0L);
+            Assert.assertTrue(verifier.isInOrder());
+        } finally {
+            verifier.close();
+        }
+    }
+
+    /**
+     * Nothing remains to be verified when a file ends with a line separator.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testNoRemainingLineAfterLineSeparator() throws IOException {
+        File file = File.createTempFile("receivedMessages", ".txt");
+        file.deleteOnExit();
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            write(outputStream, "Sending Message:0 ThreadID:7\r\n");
+        }
+        ReceivedMessageVerifier verifier = new ReceivedMessageVerifier(file.getAbsolutePath());
+        try {
+            Assert.assertEquals(verifier.verifyNewLines(), 1L);
+            Assert.assertEquals(verifier.verifyRemainingLine(), 0L);
+            Assert.assertEquals(verifier.getMessageCount(), 1L);
+        } finally {
+            verifier.close();
+        }
+    }
+
+    private static void write(OutputStream outputStream, String content) throws IOException {
+        outputStream.write(content.getBytes(StandardCharsets.UTF_8));
+        outputStream.flush();
+    }
+}
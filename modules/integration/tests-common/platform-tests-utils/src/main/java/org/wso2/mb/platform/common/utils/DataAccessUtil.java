@@ -25,12 +25,33 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class is used for testing database records directly.
  */
 public class DataAccessUtil {
 
+    /**
+     * Maximum time slot state changes can take to be written to the database.
+     */
+    private static final long SLOT_STATE_WRITE_DELAY_IN_MILLIS = 5000L;
+
+    /**
+     * Interval at which slot counts are read while waiting for them to be written.
+     */
+    private static final long SLOT_STATE_POLL_INTERVAL_IN_MILLIS = 200L;
+
+    /**
+     * Maximum time the broker can take to delete content of messages which were removed or never committed.
+     */
+    private static final long CONTENT_DELETION_DELAY_IN_MILLIS = 30000L;
+
+    /**
+     * Interval at which content chunk counts are read while waiting for content to be deleted.
+     */
+    private static final long CONTENT_DELETION_POLL_INTERVAL_IN_MILLIS = 1000L;
+
     /**
      * Get database connection
      * @return database connection
@@ -133,6 +154,114 @@ public class DataAccessUtil {
         return count;
     }
 
+    /**
+     * Wait until the number of slots in assigned state for a given queue reaches the expected count. Slot state may
+     * be written to the database asynchronously by the slot coordinator, so the count is read until it matches or
+     * the slot state write delay elapses.
+     * @param queueName queue name
+     * @param expectedCount expected number of slots
+     * @return number of slots read last
+     * @throws DataAccessUtilException
+     */
+    public long waitForAssignedSlotCountForQueue(String queueName, long expectedCount)
+            throws DataAccessUtilException {
+        long deadline = System.currentTimeMillis() + SLOT_STATE_WRITE_DELAY_IN_MILLIS;
+        long count = getAssignedSlotCountForQueue(queueName);
+        while (count != expectedCount && System.currentTimeMillis() < deadline) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(SLOT_STATE_POLL_INTERVAL_IN_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DataAccessUtilException("Interrupted while waiting for slot count of queue: "
+                                                  + queueName, e);
+            }
+            count = getAssignedSlotCountForQueue(queueName);
+        }
+        return count;
+    }
+
+    /**
+     * Get current number of slots for a given queue in any state.
+     * @param queueName queue name
+     * @return number of slots
+     * @throws DataAccessUtilException
+     */
+    public long getSlotCountForQueue(String queueName) throws DataAccessUtilException{
+        Connection connection = null;
+        PreparedStatement preparedStatement = null;
+        ResultSet resultSet = null;
+        long count = 0;
+        try {
+            connection = getConnection();
+            preparedStatement = connection.prepareStatement(RDBMSConstants.PS_GET_SLOTS_FOR_QUEUE);
+            preparedStatement.setString(1, queueName);
+            resultSet = preparedStatement.executeQuery();
+            if (resultSet.next()) {
+                count = resultSet.getLong(RDBMSConstants.SLOT_COUNT);
+            }
+        } catch (Exception e) {
+            throw new DataAccessUtilException("Failed to get slot count for queue: " + queueName, e);
+        }
+        finally {
+            close(resultSet, "getSlotCountForQueue");
+            close(preparedStatement, "getSlotCountForQueue");
+            close(connection, "getSlotCountForQueue");
+        }
+        return count;
+    }
+
+    /**
+     * Get current number of content chunks which do not belong to any message in the metadata table. Chunks of
+     * large messages are left in this state when a publisher rolls back or disconnects in the middle of a message.
+     * @return number of content chunks
+     * @throws DataAccessUtilException
+     */
+    public long getOrphanedContentChunkCount() throws DataAccessUtilException{
+        Connection connection = null;
+        PreparedStatement preparedStatement = null;
+        ResultSet resultSet = null;
+        long count = 0;
+        try {
+            connection = getConnection();
+            preparedStatement = connection.prepareStatement(RDBMSConstants.PS_GET_ORPHANED_CONTENT_CHUNKS);
+            resultSet = preparedStatement.executeQuery();
+            if (resultSet.next()) {
+                count = resultSet.getLong(RDBMSConstants.CHUNK_COUNT);
+            }
+        } catch (Exception e) {
+            throw new DataAccessUtilException("Failed to get orphaned content chunk count", e);
+        }
+        finally {
+            close(resultSet, "getOrphanedContentChunkCount");
+            close(preparedStatement, "getOrphanedContentChunkCount");
+            close(connection, "getOrphanedContentChunkCount");
+        }
+        return count;
+    }
+
+    /**
+     * Wait until no content chunks are left without a message in the metadata table. Content of removed and aborted
+     * messages is deleted asynchronously by the broker, so the count is read until it reaches zero or the content
+     * deletion delay elapses.
+     * @return number of orphaned content chunks read last
+     * @throws DataAccessUtilException
+     */
+    public long waitForOrphanedContentChunksToBeDeleted() throws DataAccessUtilException {
+        long deadline = System.currentTimeMillis() + CONTENT_DELETION_DELAY_IN_MILLIS;
+        long count = getOrphanedContentChunkCount();
+        while (0 != count && System.currentTimeMillis() < deadline) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(CONTENT_DELETION_POLL_INTERVAL_IN_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DataAccessUtilException("Interrupted while waiting for orphaned content chunks to be "
+                                                  + "deleted", e);
+            }
+            count = getOrphanedContentChunkCount();
+        }
+        return count;
+    }
+
     /**
      * closes the result set resources
      *
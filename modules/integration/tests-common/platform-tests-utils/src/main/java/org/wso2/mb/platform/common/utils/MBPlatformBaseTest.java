@@ -38,11 +38,14 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Base class of all MB integration tests
@@ -55,6 +58,11 @@ public class MBPlatformBaseTest {
     protected Map<String, TopicAdminClient> topicAdminClients;
     private Stack<String> stack = null;
 
+    /**
+     * Interval at which cluster nodes are polled while waiting for queues to be in sync.
+     */
+    private static final long QUEUE_SYNC_POLL_INTERVAL_IN_MILLIS = 100L;
+
     /**
      * Create automation context objects for every node in config
      *
@@ -303,6 +311,52 @@ public class MBPlatformBaseTest {
         return queueExists;
     }
 
+    /**
+     * Wait until the given queues are created in or deleted from all cluster nodes. Each node is polled for the
+     * queues it was not yet in sync with, so the time taken reflects how long cluster state changes take to reach
+     * every node.
+     *
+     * @param queues          The queue names
+     * @param created         true to wait until the queues exist in all nodes, false to wait until they are deleted
+     * @param timeoutInMillis The maximum time to wait in milliseconds
+     * @return The time taken for all nodes to be in sync in milliseconds, or -1 if the timeout elapsed first
+     * @throws AndesAdminServiceBrokerManagerAdminException
+     * @throws RemoteException
+     * @throws InterruptedException
+     */
+    protected long waitForQueueSyncInCluster(Collection<String> queues, boolean created, long timeoutInMillis)
+            throws AndesAdminServiceBrokerManagerAdminException, RemoteException, InterruptedException {
+        long startTime = System.currentTimeMillis();
+        Map<String, List<String>> pendingQueuesPerNode = new HashMap<String, List<String>>();
+        for (String nodeKey : andesAdminClients.keySet()) {
+            pendingQueuesPerNode.put(nodeKey, new ArrayList<String>(queues));
+        }
+
+        while (true) {
+            boolean inSync = true;
+            for (Map.Entry<String, List<String>> entry : pendingQueuesPerNode.entrySet()) {
+                AndesAdminClient andesAdminClient = andesAdminClients.get(entry.getKey());
+                Iterator<String> pendingQueues = entry.getValue().iterator();
+                while (pendingQueues.hasNext()) {
+                    if (created == (andesAdminClient.getQueueByName(pendingQueues.next()) != null)) {
+                        pendingQueues.remove();
+                    }
+                }
+                inSync = inSync && entry.getValue().isEmpty();
+            }
+
+            long elapsedTime = System.currentTimeMillis() - startTime;
+            if (inSync) {
+                return elapsedTime;
+            } else if (elapsedTime > timeoutInMillis) {
+                log.warn("Cluster nodes not in sync after " + elapsedTime + " ms. Pending queues : "
+                         + pendingQueuesPerNode);
+                return -1L;
+            }
+            TimeUnit.MILLISECONDS.sleep(QUEUE_SYNC_POLL_INTERVAL_IN_MILLIS);
+        }
+    }
+
     /**
      * Give a random AMQP broker URL.
      *
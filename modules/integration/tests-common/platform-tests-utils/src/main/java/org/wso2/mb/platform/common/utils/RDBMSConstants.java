@@ -26,6 +26,7 @@ public class RDBMSConstants {
     // Message Store tables
     protected static final String METADATA_TABLE = "MB_METADATA";
     protected static final String QUEUES_TABLE = "MB_QUEUE_MAPPING";
+    protected static final String CONTENT_TABLE = "MB_CONTENT";
 
     // Message Store table columns
     protected static final String MESSAGE_ID = "MESSAGE_ID";
@@ -43,6 +44,7 @@ public class RDBMSConstants {
     //Return variables
     protected static final String MSG_COUNT = "MSG_COUNT";
     protected static final String SLOT_COUNT = "SLOT_COUNT";
+    protected static final String CHUNK_COUNT = "CHUNK_COUNT";
 
     /**
      * Prepared statement for getting queue id
@@ -69,4 +71,22 @@ public class RDBMSConstants {
                 + " WHERE " + STORAGE_QUEUE_NAME + "=?"
                 + " AND " + SLOT_STATE + "=2";
 
+    /**
+     * Prepared statement for getting slots for a given queue in any state
+     */
+    protected static final String PS_GET_SLOTS_FOR_QUEUE =
+            " SELECT COUNT(" + SLOT_ID + ") AS " + SLOT_COUNT
+                + " FROM " + SLOT_TABLE
+                + " WHERE " + STORAGE_QUEUE_NAME + "=?";
+
+    /**
+     * Prepared statement for getting content chunks which do not belong to a message in the metadata table
+     */
+    protected static final String PS_GET_ORPHANED_CONTENT_CHUNKS =
+            "SELECT COUNT(" + CONTENT_TABLE + "." + MESSAGE_ID + ") AS " + CHUNK_COUNT
+                + " FROM " + CONTENT_TABLE
+                + " LEFT OUTER JOIN " + METADATA_TABLE
+                + " ON " + CONTENT_TABLE + "." + MESSAGE_ID + "=" + METADATA_TABLE + "." + MESSAGE_ID
+                + " WHERE " + METADATA_TABLE + "." + MESSAGE_ID + " IS NULL";
+
 }
@@ -0,0 +1,89 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.integration.tests.amqp.functional;
+
+import org.wso2.carbon.automation.engine.context.AutomationContext;
+import org.wso2.carbon.automation.engine.exceptions.AutomationFrameworkException;
+import org.wso2.carbon.automation.extensions.servers.carbonserver.TestServerManager;
+
+import javax.xml.xpath.XPathExpressionException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Manages a separate broker instance started with a given maximum heap size. The maximum heap
+ * size in the startup scripts of the extracted server pack is replaced before the server is
+ * started, since the server shared by the test suite is restarted within the same JVM and keeps
+ * its heap size.
+ */
+public class HeapLimitedServerManager extends TestServerManager {
+
+    /**
+     * The startup scripts setting the heap size of the server.
+     */
+    private static final String[] STARTUP_SCRIPTS = {"wso2server.sh", "wso2server.bat"};
+
+    /**
+     * The maximum heap size, such as "512m".
+     */
+    private final String maximumHeapSize;
+
+    /**
+     * Initiates a server given the {@link AutomationContext}, product zip path, arguments and
+     * maximum heap size. This does not start the server.
+     *
+     * @param context             The automation context.
+     * @param carbonZip           The path to the product zip file.
+     * @param startupParameterMap Arguments for startup.
+     * @param maximumHeapSize     The maximum heap size, such as "512m".
+     * @throws XPathExpressionException
+     */
+    public HeapLimitedServerManager(AutomationContext context, String carbonZip,
+                                    Map<String, String> startupParameterMap, String maximumHeapSize)
+            throws XPathExpressionException {
+        super(context, carbonZip, startupParameterMap);
+        this.maximumHeapSize = maximumHeapSize;
+    }
+
+    /**
+     * Replaces the maximum heap size in the startup scripts of the extracted server pack.
+     *
+     * @throws AutomationFrameworkException Thrown when a startup script cannot be updated.
+     */
+    @Override
+    public void configureServer() throws AutomationFrameworkException {
+        for (String startupScript : STARTUP_SCRIPTS) {
+            Path scriptPath = new File(getCarbonHome() + File.separator + "bin", startupScript).toPath();
+            try {
+                if (Files.exists(scriptPath)) {
+                    String script = new String(Files.readAllBytes(scriptPath), StandardCharsets.UTF_8);
+                    script = script.replaceAll("-Xmx[0-9]+[kKmMgG]?", "-Xmx" + maximumHeapSize);
+                    Files.write(scriptPath, script.getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (IOException e) {
+                throw new AutomationFrameworkException("Error while setting the maximum heap size in " + scriptPath, e);
+            }
+        }
+    }
+}
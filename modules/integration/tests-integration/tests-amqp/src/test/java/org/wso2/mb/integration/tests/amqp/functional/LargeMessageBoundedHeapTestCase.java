@@ -0,0 +1,149 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.integration.tests.amqp.functional;
+
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.wso2.carbon.automation.engine.annotations.ExecutionEnvironment;
+import org.wso2.carbon.automation.engine.annotations.SetEnvironment;
+import org.wso2.carbon.automation.engine.context.AutomationContext;
+import org.wso2.carbon.automation.engine.exceptions.AutomationFrameworkException;
+import org.wso2.carbon.automation.extensions.servers.carbonserver.MultipleServersManager;
+import org.wso2.mb.integration.common.clients.AndesClient;
+import org.wso2.mb.integration.common.clients.configurations.AndesJMSConsumerClientConfiguration;
+import org.wso2.mb.integration.common.clients.configurations.AndesJMSPublisherClientConfiguration;
+import org.wso2.mb.integration.common.clients.exceptions.AndesClientConfigurationException;
+import org.wso2.mb.integration.common.clients.exceptions.AndesClientException;
+import org.wso2.mb.integration.common.clients.operations.utils.AndesClientConstants;
+import org.wso2.mb.integration.common.clients.operations.utils.AndesClientUtils;
+import org.wso2.mb.integration.common.clients.operations.utils.ExchangeType;
+import org.wso2.mb.integration.common.clients.operations.utils.JMSMessageType;
+
+import javax.jms.JMSException;
+import javax.naming.NamingException;
+import javax.xml.xpath.XPathExpressionException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sends messages much larger than the broker heap to a broker started with a 512MB maximum heap.
+ * Content of a large message is persisted in chunks, so the broker should handle these messages
+ * with a heap much smaller than the total content.
+ */
+public class LargeMessageBoundedHeapTestCase {
+
+    private static Logger log = Logger.getLogger(LargeMessageBoundedHeapTestCase.class);
+
+    /**
+     * The maximum heap size of the broker.
+     */
+    private static final String MAXIMUM_HEAP_SIZE = "512m";
+
+    /**
+     * The port offset of the broker, which is separate from the broker shared by the test suite.
+     */
+    private static final int PORT_OFFSET = 1310;
+
+    private final MultipleServersManager serverManager = new MultipleServersManager();
+
+    /**
+     * Starts a broker with a limited heap.
+     *
+     * @throws XPathExpressionException
+     * @throws AutomationFrameworkException
+     */
+    @SetEnvironment(executionEnvironments = {ExecutionEnvironment.STANDALONE})
+    @BeforeClass(alwaysRun = true)
+    public void startServer() throws XPathExpressionException, AutomationFrameworkException {
+        Map<String, String> startupParameterMap = new HashMap<>();
+        startupParameterMap.put("-DportOffset", Integer.toString(PORT_OFFSET));
+        HeapLimitedServerManager server = new HeapLimitedServerManager(new AutomationContext(),
+                System.getProperty("carbon.zip"), startupParameterMap, MAXIMUM_HEAP_SIZE);
+        serverManager.startServers(server);
+    }
+
+    /**
+     * Send 5 byte messages of size 100MB and check whether consumer receives the same amount of
+     * messages.
+     *
+     * @throws AndesClientConfigurationException
+     * @throws NamingException
+     * @throws JMSException
+     * @throws IOException
+     * @throws AndesClientException
+     */
+    @SetEnvironment(executionEnvironments = {ExecutionEnvironment.STANDALONE})
+    @Test(groups = {"wso2.mb", "queue"})
+    public void performQueueHundredMBSizeMessageSendReceiveTestCase()
+            throws AndesClientConfigurationException, NamingException, JMSException, IOException,
+                   AndesClientException {
+        long sendCount = 5L;
+        int port = AndesClientConstants.DEFAULT_PORT + PORT_OFFSET;
+
+        // Creating a file of 100MB
+        AndesClientUtils.createMockFile(AndesClientConstants.FILE_PATH_FOR_ONE_KB_SAMPLE_FILE,
+                                        AndesClientConstants.FILE_PATH_FOR_CREATING_A_NEW_FILE, 100 * 1024);
+
+        // Creating a consumer client configuration
+        AndesJMSConsumerClientConfiguration consumerConfig =
+                new AndesJMSConsumerClientConfiguration(port, ExchangeType.QUEUE, "singleLargeQueue100MB");
+        consumerConfig.setMaximumMessagesToReceived(sendCount);
+        consumerConfig.setRetainReceivedMessages(false);
+
+        // Creating a publisher client configuration. Byte messages are used so that the publisher
+        // does not hold the content as text.
+        AndesJMSPublisherClientConfiguration publisherConfig =
+                new AndesJMSPublisherClientConfiguration(port, ExchangeType.QUEUE, "singleLargeQueue100MB");
+        publisherConfig.setNumberOfMessagesToSend(sendCount);
+        publisherConfig.setJMSMessageType(JMSMessageType.BYTE);
+        publisherConfig.setReadMessagesFromFilePath(AndesClientConstants.FILE_PATH_FOR_CREATING_A_NEW_FILE);
+
+        // Creating clients
+        AndesClient consumerClient = new AndesClient(consumerConfig, true);
+        consumerClient.startClient();
+
+        AndesClient publisherClient = new AndesClient(publisherConfig, true);
+        publisherClient.startClient();
+
+        AndesClientUtils.waitForMessagesAndShutdown(consumerClient, AndesClientConstants.DEFAULT_RUN_TIME * 3);
+
+        log.info("Consumer content throughput(MB/s) with a " + MAXIMUM_HEAP_SIZE + " broker heap : "
+                 + consumerClient.getConsumerContentThroughput() / (1024D * 1024D));
+
+        // Evaluating
+        Assert.assertEquals(publisherClient.getSentMessageCount(), sendCount, "Message sending failed");
+        Assert.assertEquals(consumerClient.getReceivedMessageCount(), sendCount, "Message receiving failed.");
+    }
+
+    /**
+     * Stops the broker with the limited heap.
+     *
+     * @throws AutomationFrameworkException
+     */
+    @SetEnvironment(executionEnvironments = {ExecutionEnvironment.STANDALONE})
+    @AfterClass(alwaysRun = true)
+    public void stopServer() throws AutomationFrameworkException {
+        serverManager.stopAllServers();
+    }
+}
@@ -18,25 +18,40 @@
 
 package org.wso2.mb.integration.tests.amqp.functional;
 
+import org.apache.commons.configuration.ConfigurationException;
 import org.apache.log4j.Logger;
 import org.testng.Assert;
+import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
+import org.wso2.andes.configuration.enums.AndesConfiguration;
+import org.wso2.carbon.andes.stub.AndesAdminServiceBrokerManagerAdminException;
+import org.wso2.carbon.authenticator.stub.LoginAuthenticationExceptionException;
 import org.wso2.carbon.automation.engine.context.TestUserMode;
+import org.wso2.carbon.integration.common.utils.LoginLogoutClient;
+import org.wso2.carbon.integration.common.utils.exceptions.AutomationUtilException;
+import org.wso2.carbon.integration.common.utils.mgt.ServerConfigurationManager;
 import org.wso2.mb.integration.common.clients.AndesClient;
 import org.wso2.mb.integration.common.clients.configurations.AndesJMSConsumerClientConfiguration;
 import org.wso2.mb.integration.common.clients.configurations.AndesJMSPublisherClientConfiguration;
 import org.wso2.mb.integration.common.clients.exceptions.AndesClientConfigurationException;
 import org.wso2.mb.integration.common.clients.exceptions.AndesClientException;
+import org.wso2.mb.integration.common.clients.operations.clients.AndesAdminClient;
 import org.wso2.mb.integration.common.clients.operations.utils.AndesClientConstants;
 import org.wso2.mb.integration.common.clients.operations.utils.AndesClientUtils;
 import org.wso2.mb.integration.common.clients.operations.utils.ExchangeType;
+import org.wso2.mb.integration.common.utils.backend.ConfigurationEditor;
 import org.wso2.mb.integration.common.utils.backend.MBIntegrationBaseTest;
+import org.xml.sax.SAXException;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
+import java.rmi.RemoteException;
 import java.util.concurrent.TimeUnit;
 import javax.jms.JMSException;
 import javax.naming.NamingException;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.xpath.XPathExpressionException;
 
 /**
@@ -50,12 +65,43 @@ public class QueueMessageExpireTestCase extends MBIntegrationBaseTest {
     private static Logger log = Logger.getLogger(QueueMessageExpireTestCase.class);
 
     /**
-     * Initializing test case
-     * @throws javax.xml.xpath.XPathExpressionException
+     * Interval in seconds of the expired message deletion tasks while the test class runs. Kept short so
+     * that the time expired messages are kept in the store can be bounded by the test.
+     */
+    private static final String EXPIRY_DELETION_INTERVAL_IN_SECONDS = "10";
+
+    /**
+     * The maximum time an expired message is allowed to remain in the store after its expiration time.
+     * Allows a few runs of the deletion tasks.
+     */
+    private static final long EXPIRED_MESSAGE_STORAGE_BOUND_IN_MILLIS = 60000L;
+
+    /**
+     * Initializing test case and shortening the expired message deletion intervals.
+     *
+     * @throws XPathExpressionException
+     * @throws IOException
+     * @throws ConfigurationException
+     * @throws SAXException
+     * @throws XMLStreamException
+     * @throws LoginAuthenticationExceptionException
+     * @throws URISyntaxException
+     * @throws AutomationUtilException
      */
     @BeforeClass(alwaysRun = true)
-    public void init() throws XPathExpressionException {
+    public void init() throws XPathExpressionException, IOException, ConfigurationException, SAXException,
+            XMLStreamException, LoginAuthenticationExceptionException, URISyntaxException, AutomationUtilException {
         super.init(TestUserMode.SUPER_TENANT_USER);
+
+        super.serverManager = new ServerConfigurationManager(automationContext);
+        String defaultMBConfigurationPath = ServerConfigurationManager.getCarbonHome() +
+                File.separator + "repository" + File.separator + "conf" + File.separator + "broker.xml";
+        ConfigurationEditor configurationEditor = new ConfigurationEditor(defaultMBConfigurationPath);
+        configurationEditor.updateProperty(AndesConfiguration.PERFORMANCE_TUNING_PRE_DELIVERY_EXPIRY_DELETION_INTERVAL,
+                EXPIRY_DELETION_INTERVAL_IN_SECONDS);
+        configurationEditor.updateProperty(AndesConfiguration
+                .PERFORMANCE_TUNING_PERIODIC_EXPIRY_MESSAGE_DELETION_INTERVAL, EXPIRY_DELETION_INTERVAL_IN_SECONDS);
+        configurationEditor.applyUpdatedConfigurationAndRestartServer(serverManager);
     }
 
     /**
@@ -221,4 +267,111 @@ public class QueueMessageExpireTestCase extends MBIntegrationBaseTest {
                 "Message receiving failed. Expected " + sendCountWithoutExpiration + " but received "
                         + (consumer1MsgCount + consumer2MsgCount));
     }
+
+    /**
+     * 1. Create a queue without subscribers.
+     * 2. Send messages with expiration and verify that they are stored.
+     * 3. Verify that the stored message count of the queue drops to 0 within a bounded time after expiration,
+     * while the queue has no subscribers.
+     * 4. Subscribe after the messages are removed and verify that none are received.
+     *
+     * @throws AndesClientConfigurationException
+     * @throws JMSException
+     * @throws NamingException
+     * @throws IOException
+     * @throws AndesClientException
+     * @throws XPathExpressionException
+     * @throws AutomationUtilException
+     * @throws AndesAdminServiceBrokerManagerAdminException
+     */
+    @Test(groups = "wso2.mb", description = "Expired messages of a queue are removed from the store within a bound")
+    public void performQueueExpiredMessageStorageTestCase()
+            throws AndesClientConfigurationException, JMSException, NamingException, IOException,
+            AndesClientException, XPathExpressionException, AutomationUtilException,
+            AndesAdminServiceBrokerManagerAdminException {
+
+        String queueName = "queueWithExpiredMessageStorage";
+        // Message send count
+        long sendCount = 100L;
+        // Expiration time for messages
+        long expirationTime = 5000L;
+
+        LoginLogoutClient loginLogoutClientForAdmin = new LoginLogoutClient(super.automationContext);
+        String sessionCookie = loginLogoutClientForAdmin.login();
+        AndesAdminClient andesAdminClient = new AndesAdminClient(backendURL, sessionCookie);
+        andesAdminClient.createQueue(queueName);
+
+        AndesJMSPublisherClientConfiguration publisherConfig =
+                new AndesJMSPublisherClientConfiguration(getAMQPPort(), ExchangeType.QUEUE, queueName);
+        publisherConfig.setNumberOfMessagesToSend(sendCount);
+        publisherConfig.setPrintsPerMessageCount(sendCount / 10L);
+        publisherConfig.setJMSMessageExpiryTime(expirationTime);
+
+        AndesClient publisherClient = new AndesClient(publisherConfig, true);
+        long publishStartTime = System.currentTimeMillis();
+        publisherClient.startClient();
+
+        // Waiting until the messages are published, but not longer than the expiration time
+        while (publisherClient.getSentMessageCount() < sendCount
+               && System.currentTimeMillis() < publishStartTime + expirationTime) {
+            AndesClientUtils.sleepForInterval(100L);
+        }
+
+        Assert.assertEquals(publisherClient.getSentMessageCount(), sendCount, "Message send failed.");
+        // Allowing the broker to write the published messages to the store
+        AndesClientUtils.sleepForInterval(1000L);
+        Assert.assertEquals(getStoredMessageCount(andesAdminClient, queueName), sendCount,
+                "Messages with expiration were not stored before expiring.");
+
+        // Expired messages should leave the store within the bound while there are no subscribers, so that
+        // removal does not depend on the delivery path
+        long storedMessageCount = getStoredMessageCount(andesAdminClient, queueName);
+        long deadline = publishStartTime + expirationTime + EXPIRED_MESSAGE_STORAGE_BOUND_IN_MILLIS;
+        while (0L < storedMessageCount && System.currentTimeMillis() < deadline) {
+            AndesClientUtils.sleepForInterval(1000L);
+            storedMessageCount = getStoredMessageCount(andesAdminClient, queueName);
+        }
+        log.info("Expired messages remaining in store for " + queueName + " : " + storedMessageCount);
+
+        Assert.assertEquals(storedMessageCount, 0L, "Expired messages were not removed from the store within "
+                                                    + EXPIRED_MESSAGE_STORAGE_BOUND_IN_MILLIS + " milliseconds.");
+
+        // Subscribing only after the messages are removed to verify that none of them are delivered
+        AndesJMSConsumerClientConfiguration consumerConfig =
+                new AndesJMSConsumerClientConfiguration(getAMQPPort(), ExchangeType.QUEUE, queueName);
+        consumerConfig.setAsync(false);
+
+        AndesClient consumerClient = new AndesClient(consumerConfig, true);
+        consumerClient.startClient();
+        AndesClientUtils.waitForMessagesAndShutdown(consumerClient, AndesClientConstants.DEFAULT_RUN_TIME);
+        andesAdminClient.deleteQueue(queueName);
+
+        Assert.assertEquals(consumerClient.getReceivedMessageCount(), 0L, "Expired messages were delivered.");
+    }
+
+    /**
+     * Gets the number of messages stored for a queue.
+     *
+     * @param andesAdminClient The admin client to query with.
+     * @param queueName        The queue name.
+     * @return The number of messages.
+     * @throws RemoteException
+     * @throws AndesAdminServiceBrokerManagerAdminException
+     */
+    private long getStoredMessageCount(AndesAdminClient andesAdminClient, String queueName)
+            throws RemoteException, AndesAdminServiceBrokerManagerAdminException {
+        return andesAdminClient.getQueueByName(queueName).getMessageCount();
+    }
+
+    /**
+     * Revert changed configurations
+     *
+     * @throws AutomationUtilException
+     * @throws IOException
+     */
+    @AfterClass()
+    public void cleanup() throws AutomationUtilException, IOException {
+        //Revert back to original configuration.
+        super.serverManager.restoreToLastConfiguration(true);
+    }
 }
@@ -18,16 +18,21 @@
 
 package org.wso2.mb.integration.tests.amqp.functional;
 
+import org.apache.log4j.Logger;
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
+import org.wso2.carbon.andes.stub.AndesAdminServiceBrokerManagerAdminException;
 import org.wso2.carbon.automation.engine.context.TestUserMode;
+import org.wso2.carbon.integration.common.utils.LoginLogoutClient;
+import org.wso2.carbon.integration.common.utils.exceptions.AutomationUtilException;
 import org.wso2.mb.integration.common.clients.AndesClient;
 import org.wso2.mb.integration.common.clients.configurations.AndesJMSConsumerClientConfiguration;
 import org.wso2.mb.integration.common.clients.configurations.AndesJMSPublisherClientConfiguration;
 import org.wso2.mb.integration.common.clients.exceptions.AndesClientException;
 import org.wso2.mb.integration.common.clients.operations.utils.AndesClientConstants;
 import org.wso2.mb.integration.common.clients.exceptions.AndesClientConfigurationException;
+import org.wso2.mb.integration.common.clients.operations.clients.AndesAdminClient;
 import org.wso2.mb.integration.common.clients.operations.utils.AndesClientUtils;
 import org.wso2.mb.integration.common.clients.operations.utils.ExchangeType;
 import org.wso2.mb.integration.common.utils.backend.MBIntegrationBaseTest;
@@ -36,6 +41,7 @@ import javax.jms.JMSException;
 import javax.naming.NamingException;
 import javax.xml.xpath.XPathExpressionException;
 import java.io.IOException;
+import java.rmi.RemoteException;
 
 /**
  * This class includes unit tests to verify that messages with JMS expiration are properly removed when delivering to
@@ -43,6 +49,8 @@ import java.io.IOException;
  */
 public class TopicMessageExpiryTestCase extends MBIntegrationBaseTest {
 
+    private static final Logger log = Logger.getLogger(TopicMessageExpiryTestCase.class);
+
     /**
      * Total message count sent
      */
@@ -68,6 +76,11 @@ public class TopicMessageExpiryTestCase extends MBIntegrationBaseTest {
      */
     private static final long EXPIRATION_TIME = 5L;
 
+    /**
+     * Maximum time in milliseconds expired messages may remain stored after they expire
+     */
+    private static final long EXPIRED_MESSAGE_STORAGE_BOUND_IN_MILLIS = 60000L;
+
     /**
      * Initializing test case
      *
@@ -131,4 +144,113 @@ public class TopicMessageExpiryTestCase extends MBIntegrationBaseTest {
         Assert.assertEquals(consumerClient.getReceivedMessageCount(), EXPECTED_COUNT, "Message receiving failed for consumerClient");
     }
 
+    /**
+     * 1. Create a durable subscription to a topic and close the subscriber.
+     * 2. Send messages with and without expiry as configured while the subscriber is offline.
+     * 3. Verify that the expired messages are removed from the store of the offline subscription within the
+     * storage bound.
+     * 4. Subscribe again with the same subscription ID and verify that only messages without expiry are received.
+     * The subscription is removed once they are received.
+     *
+     * @throws AndesClientConfigurationException
+     * @throws NamingException
+     * @throws JMSException
+     * @throws IOException
+     * @throws AndesClientException
+     * @throws AutomationUtilException
+     * @throws AndesAdminServiceBrokerManagerAdminException
+     */
+    @Test(groups = "wso2.mb", description = "Durable topic subscriber reconnecting after messages are expired")
+    public void performDurableTopicExpiryAfterReconnectTestCase()
+            throws AndesClientConfigurationException, NamingException, JMSException, IOException,
+                   AndesClientException, XPathExpressionException, AutomationUtilException,
+                   AndesAdminServiceBrokerManagerAdminException {
+
+        // Queue storing the messages of the durable subscription
+        String subscriptionQueueName = AndesClientConstants.CARBON_CLIENT_ID + ":durableTopicWithExpirySub";
+        // Expiration time for messages sent while the subscriber is offline
+        long expirationTime = 5000L;
+
+        AndesJMSConsumerClientConfiguration consumerConfig =
+                new AndesJMSConsumerClientConfiguration(getAMQPPort(), ExchangeType.TOPIC, "durableTopicWithExpiry");
+        consumerConfig.setDurable(true, "durableTopicWithExpirySub");
+        consumerConfig.setAsync(false);
+
+        AndesJMSPublisherClientConfiguration publisherConfigWithoutExpiration =
+                new AndesJMSPublisherClientConfiguration(getAMQPPort(), ExchangeType.TOPIC, "durableTopicWithExpiry");
+        publisherConfigWithoutExpiration.setPrintsPerMessageCount(SEND_COUNT_WITHOUT_EXPIRATION / 10L);
+        publisherConfigWithoutExpiration.setNumberOfMessagesToSend(SEND_COUNT_WITHOUT_EXPIRATION);
+
+        AndesJMSPublisherClientConfiguration publisherConfigWithExpiration =
+                new AndesJMSPublisherClientConfiguration(getAMQPPort(), ExchangeType.TOPIC, "durableTopicWithExpiry");
+        publisherConfigWithExpiration.setPrintsPerMessageCount(SEND_COUNT_WITH_EXPIRATION / 10L);
+        publisherConfigWithExpiration.setNumberOfMessagesToSend(SEND_COUNT_WITH_EXPIRATION);
+        publisherConfigWithExpiration.setJMSMessageExpiryTime(expirationTime);
+
+        // Creating the durable subscription and going offline
+        AndesClient initialConsumerClient = new AndesClient(consumerConfig, true);
+        initialConsumerClient.startClient();
+        AndesClientUtils.sleepForInterval(AndesClientConstants.DEFAULT_RUN_TIME / 2L);
+        initialConsumerClient.stopClient();
+
+        AndesClient publisherClientWithoutExpiration = new AndesClient(publisherConfigWithoutExpiration, true);
+        publisherClientWithoutExpiration.startClient();
+
+        long publishStartTime = System.currentTimeMillis();
+        AndesClient publisherClientWithExpiration = new AndesClient(publisherConfigWithExpiration, true);
+        publisherClientWithExpiration.startClient();
+
+        // Waiting until all the messages with expiry are expired
+        AndesClientUtils.sleepForInterval(publishStartTime + expirationTime + 1000L - System.currentTimeMillis());
+
+        LoginLogoutClient loginLogoutClientForAdmin = new LoginLogoutClient(super.automationContext);
+        String sessionCookie = loginLogoutClientForAdmin.login();
+        AndesAdminClient andesAdminClient = new AndesAdminClient(backendURL, sessionCookie);
+
+        // Expired messages should leave the store of the subscription within the bound while it is offline, so that
+        // only the messages without expiry remain
+        long storedMessageCount = getStoredMessageCount(andesAdminClient, subscriptionQueueName);
+        long deadline = publishStartTime + expirationTime + EXPIRED_MESSAGE_STORAGE_BOUND_IN_MILLIS;
+        while (SEND_COUNT_WITHOUT_EXPIRATION != storedMessageCount && System.currentTimeMillis() < deadline) {
+            AndesClientUtils.sleepForInterval(1000L);
+            storedMessageCount = getStoredMessageCount(andesAdminClient, subscriptionQueueName);
+        }
+        log.info("Messages remaining in store for " + subscriptionQueueName + " : " + storedMessageCount);
+
+        Assert.assertEquals(storedMessageCount, SEND_COUNT_WITHOUT_EXPIRATION,
+                "Expired messages were not removed from the store of the offline durable subscription within "
+                + EXPIRED_MESSAGE_STORAGE_BOUND_IN_MILLIS + " milliseconds.");
+
+        // Reconnecting and removing the subscription once the messages without expiry are received. As only those
+        // remain stored, any delivered expired message would take the place of one of them.
+        consumerConfig.setPrintsPerMessageCount(EXPECTED_COUNT / 10L);
+        consumerConfig.setUnSubscribeAfterEachMessageCount(EXPECTED_COUNT);
+        AndesClient consumerClient = new AndesClient(consumerConfig, true);
+        consumerClient.startClient();
+
+        AndesClientUtils.waitForMessagesAndShutdown(consumerClient, AndesClientConstants.DEFAULT_RUN_TIME);
+
+        // Evaluating
+        Assert.assertEquals(publisherClientWithoutExpiration.getSentMessageCount(), SEND_COUNT_WITHOUT_EXPIRATION,
+                "Message send failed for publisherClientWithoutExpiration");
+        Assert.assertEquals(publisherClientWithExpiration.getSentMessageCount(), SEND_COUNT_WITH_EXPIRATION,
+                "Message send failed for publisherClientWithExpiration");
+
+        Assert.assertEquals(consumerClient.getReceivedMessageCount(), EXPECTED_COUNT,
+                "Expired messages were delivered to the reconnected durable subscriber");
+    }
+
+    /**
+     * Gets the number of messages stored for a queue.
+     *
+     * @param andesAdminClient The admin client to query with.
+     * @param queueName        The queue name.
+     * @return The number of messages.
+     * @throws RemoteException
+     * @throws AndesAdminServiceBrokerManagerAdminException
+     */
+    private long getStoredMessageCount(AndesAdminClient andesAdminClient, String queueName)
+            throws RemoteException, AndesAdminServiceBrokerManagerAdminException {
+        return andesAdminClient.getQueueByName(queueName).getMessageCount();
+    }
 }
@@ -18,6 +18,7 @@
 
 package org.wso2.mb.integration.tests.amqp.functional;
 
+import org.apache.log4j.Logger;
 import org.testng.Assert;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeClass;
@@ -51,6 +52,11 @@ import java.util.concurrent.TimeUnit;
  */
 public class TransactionalPublishingTestCase extends MBIntegrationBaseTest {
 
+    /**
+     * Logger used for logging the commit latency of transactional publishers
+     */
+    private static Logger log = Logger.getLogger(TransactionalPublishingTestCase.class);
+
     /**
      * Initializes the test case
      * @throws XPathExpressionException
@@ -534,4 +540,59 @@ public class TransactionalPublishingTestCase extends MBIntegrationBaseTest {
             publisherClient1.stopClient();
         }
     }
+
+    /**
+     * Test many small transactions committed concurrently
+     *
+     * - Create transactional publishers which commit after each message, all publishing concurrently
+     * - Create a non transactional subscriber
+     * - Test whether the subscriber received all the committed messages
+     * - Report the commit latency percentiles, as concurrent commits queue behind the broker's
+     *   transaction message writers
+     *
+     * @throws AndesClientConfigurationException
+     * @throws IOException
+     * @throws JMSException
+     * @throws AndesClientException
+     * @throws NamingException
+     * @throws XPathExpressionException
+     */
+    @Test(groups = {"wso2.mb", "queue", "transaction" },
+            description = "Test many small transactions committed concurrently by multiple publishers")
+    public void concurrentSmallTransactionsTestCase() throws AndesClientConfigurationException, IOException,
+            JMSException, AndesClientException, NamingException, XPathExpressionException {
+
+        int publisherCount = 10;
+        long transactionsPerPublisher = 100L;
+        long expectedCount = publisherCount * transactionsPerPublisher;
+        String queueName = "Transactional-concurrentSmallTransactionsTestCase";
+
+        AndesJMSConsumerClientConfiguration consumerConfig =
+                new AndesJMSConsumerClientConfiguration(getAMQPPort(), ExchangeType.QUEUE, queueName);
+        consumerConfig.setMaximumMessagesToReceived(expectedCount);
+        consumerConfig.setPrintsPerMessageCount(expectedCount / 10L);
+        consumerConfig.setAsync(false);
+
+        // Each message is sent in its own transaction
+        AndesJMSPublisherClientConfiguration publisherConfig =
+                new AndesJMSPublisherClientConfiguration(getAMQPPort(), ExchangeType.QUEUE, queueName);
+        publisherConfig.setTransactionalSession(true);
+        publisherConfig.setNumberOfMessagesToSend(transactionsPerPublisher);
+        publisherConfig.setPrintsPerMessageCount(transactionsPerPublisher / 10L);
+
+        AndesClient consumerClient = new AndesClient(consumerConfig, true);
+        consumerClient.startClient();
+
+        AndesClient publisherClient = new AndesClient(publisherConfig, publisherCount, true);
+        publisherClient.startClient();
+
+        AndesClientUtils.waitForMessagesAndShutdown(consumerClient, AndesClientConstants.DEFAULT_RUN_TIME);
+
+        log.info("Send and commit latency(ns) 50th:" + publisherClient.getSendLatencyAtPercentile(50D)
+                 + " 99th:" + publisherClient.getSendLatencyAtPercentile(99D));
+
+        Assert.assertEquals(publisherClient.getSentMessageCount(), expectedCount, "Message sending failed");
+        Assert.assertEquals(consumerClient.getReceivedMessageCount(), expectedCount,
+                "Expected message count not received after commits");
+    }
 }
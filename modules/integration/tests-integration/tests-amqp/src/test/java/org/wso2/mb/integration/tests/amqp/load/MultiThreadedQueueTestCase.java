@@ -18,6 +18,7 @@
 
 package org.wso2.mb.integration.tests.amqp.load;
 
+import org.apache.log4j.Logger;
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
@@ -36,11 +37,17 @@ import javax.jms.JMSException;
 import javax.naming.NamingException;
 import javax.xml.xpath.XPathExpressionException;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Test class for multiple publishers running parallel for queues.
  */
 public class MultiThreadedQueueTestCase extends MBIntegrationBaseTest {
+    /**
+     * Logger used for logging throughput and latency of the test
+     */
+    private static Logger log = Logger.getLogger(MultiThreadedQueueTestCase.class);
+
     private static final long SEND_COUNT = 10000L;
     private static final long EXPECTED_COUNT = SEND_COUNT;
     private static final int NUMBER_OF_SUBSCRIBERS = 7;
@@ -58,7 +65,10 @@ public class MultiThreadedQueueTestCase extends MBIntegrationBaseTest {
 
     /**
      * Send 10,000 messages collaboratively by 7 threads and receive collaboratively by 7 threads
-     * and see if all messages are received.
+     * and see if all messages are received. The publish throughput and the 99th percentile of the
+     * send latency are reported, so that the effect of the inbound message writer batching can be
+     * compared between runs. The publishers are not transactional, so the send latency is only the
+     * time a send call takes to return and does not include the broker storing the message.
      *
      * @throws AndesClientConfigurationException
      * @throws NamingException
@@ -93,6 +103,13 @@ public class MultiThreadedQueueTestCase extends MBIntegrationBaseTest {
         AndesClientUtils
                 .waitForMessagesAndShutdown(consumerClient, AndesClientConstants.DEFAULT_RUN_TIME);
 
+        // Reporting throughput and send call latency
+        double publishThroughput = publisherClient.getPublisherTPS() * NUMBER_OF_PUBLISHERS;
+        double consumeThroughput = consumerClient.getConsumerTPS() * NUMBER_OF_SUBSCRIBERS;
+        long sendLatency99th = publisherClient.getSendLatencyAtPercentile(99D);
+        log.info("PublishThroughput(msg/s):" + publishThroughput + " ConsumeThroughput(msg/s):" + consumeThroughput
+                 + " SendCallLatency99th(ms):" + (sendLatency99th / (double) TimeUnit.MILLISECONDS.toNanos(1)));
+
         // Evaluating
         Assert.assertEquals(publisherClient
                                     .getSentMessageCount(), SEND_COUNT * NUMBER_OF_PUBLISHERS, "Message sending failed");
@@ -22,10 +22,12 @@
  */
 package org.wso2.mb.integration.tests.amqp.load;
 
+import org.apache.log4j.Logger;
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 import org.wso2.carbon.automation.engine.context.TestUserMode;
+import org.wso2.carbon.automation.engine.context.beans.User;
 import org.wso2.mb.integration.common.clients.AndesClient;
 import org.wso2.mb.integration.common.clients.configurations.AndesJMSConsumerClientConfiguration;
 import org.wso2.mb.integration.common.clients.configurations.AndesJMSPublisherClientConfiguration;
@@ -34,6 +36,7 @@ import org.wso2.mb.integration.common.clients.exceptions.AndesClientException;
 import org.wso2.mb.integration.common.clients.operations.utils.AndesClientConstants;
 import org.wso2.mb.integration.common.clients.operations.utils.AndesClientUtils;
 import org.wso2.mb.integration.common.clients.operations.utils.ExchangeType;
+import org.wso2.mb.integration.common.clients.operations.utils.GarbageCollectionStatistics;
 import org.wso2.mb.integration.common.utils.backend.MBIntegrationBaseTest;
 
 import javax.jms.JMSException;
@@ -46,6 +49,8 @@ import java.io.IOException;
  */
 public class QueueLargeMessageSendReceiveTestCase extends MBIntegrationBaseTest {
 
+    private static Logger log = Logger.getLogger(QueueLargeMessageSendReceiveTestCase.class);
+
     /**
      * Initialize the test as super tenant user.
      *
@@ -64,17 +69,20 @@ public class QueueLargeMessageSendReceiveTestCase extends MBIntegrationBaseTest
      * @throws NamingException
      * @throws JMSException
      * @throws AndesClientException
+     * @throws XPathExpressionException
      */
     @Test(groups = {"wso2.mb", "queue"}, enabled = true)
     public void performQueueOneMBSizeMessageSendReceiveTestCase()
             throws AndesClientConfigurationException, IOException, NamingException, JMSException,
-                   AndesClientException {
+                   AndesClientException, XPathExpressionException {
         long sendCount = 1000L;
 
         // Creating a consumer client configuration
         AndesJMSConsumerClientConfiguration consumerConfig =
                 new AndesJMSConsumerClientConfiguration(ExchangeType.QUEUE, "Queue1MBSendReceive");
         consumerConfig.setMaximumMessagesToReceived(sendCount);
+        // Only the amount of messages is evaluated, holding large contents in memory is not needed
+        consumerConfig.setRetainReceivedMessages(false);
         consumerConfig.setPrintsPerMessageCount(sendCount / 10L);
 
         // Creating a publisher client configuration
@@ -85,6 +93,9 @@ public class QueueLargeMessageSendReceiveTestCase extends MBIntegrationBaseTest
         publisherConfig
                 .setReadMessagesFromFilePath(AndesClientConstants.MESSAGE_CONTENT_INPUT_FILE_PATH_1MB);   // Setting file to be sent by publisher
 
+        GarbageCollectionStatistics clientGCBeforeRun = GarbageCollectionStatistics.capture();
+        GarbageCollectionStatistics brokerGCBeforeRun = captureBrokerGarbageCollections();
+
         // Creating clients
         AndesClient consumerClient = new AndesClient(consumerConfig, true);
         consumerClient.startClient();
@@ -95,6 +106,11 @@ public class QueueLargeMessageSendReceiveTestCase extends MBIntegrationBaseTest
         AndesClientUtils
                 .waitForMessagesAndShutdown(consumerClient, AndesClientConstants.DEFAULT_RUN_TIME);
 
+        log.info("Consumer content throughput(MB/s):" +
+                 consumerClient.getConsumerContentThroughput() / (1024D * 1024D));
+        log.info(GarbageCollectionStatistics.capture().since(clientGCBeforeRun) + " " +
+                 captureBrokerGarbageCollections().since(brokerGCBeforeRun));
+
         // Evaluating
         Assert.assertEquals(publisherClient
                                     .getSentMessageCount(), sendCount, "Message sending failed");
@@ -111,11 +127,12 @@ public class QueueLargeMessageSendReceiveTestCase extends MBIntegrationBaseTest
      * @throws JMSException
      * @throws IOException
      * @throws AndesClientException
+     * @throws XPathExpressionException
      */
     @Test(groups = {"wso2.mb", "queue"}, enabled = true)
     public void performQueueTenMBSizeMessageSendReceiveTestCase()
             throws AndesClientConfigurationException, NamingException, JMSException, IOException,
-                   AndesClientException {
+                   AndesClientException, XPathExpressionException {
         long sendCount = 10L;
 
         // Creating a file of 10MB
@@ -126,6 +143,8 @@ public class QueueLargeMessageSendReceiveTestCase extends MBIntegrationBaseTest
         AndesJMSConsumerClientConfiguration consumerConfig =
                 new AndesJMSConsumerClientConfiguration(ExchangeType.QUEUE, "singleLargeQueue10MB");
         consumerConfig.setMaximumMessagesToReceived(sendCount);
+        // Only the amount of messages is evaluated, holding large contents in memory is not needed
+        consumerConfig.setRetainReceivedMessages(false);
 
         // Creating a publisher client configuration
         AndesJMSPublisherClientConfiguration publisherConfig =
@@ -134,6 +153,9 @@ public class QueueLargeMessageSendReceiveTestCase extends MBIntegrationBaseTest
         publisherConfig
                 .setReadMessagesFromFilePath(AndesClientConstants.FILE_PATH_FOR_CREATING_A_NEW_FILE);   // Setting file to be sent by publisher
 
+        GarbageCollectionStatistics clientGCBeforeRun = GarbageCollectionStatistics.capture();
+        GarbageCollectionStatistics brokerGCBeforeRun = captureBrokerGarbageCollections();
+
         // Creating clients
         AndesClient consumerClient = new AndesClient(consumerConfig, true);
         consumerClient.startClient();
@@ -144,10 +166,29 @@ public class QueueLargeMessageSendReceiveTestCase extends MBIntegrationBaseTest
         AndesClientUtils
                 .waitForMessagesAndShutdown(consumerClient, AndesClientConstants.DEFAULT_RUN_TIME);
 
+        log.info("Consumer content throughput(MB/s):" +
+                 consumerClient.getConsumerContentThroughput() / (1024D * 1024D));
+        log.info(GarbageCollectionStatistics.capture().since(clientGCBeforeRun) + " " +
+                 captureBrokerGarbageCollections().since(brokerGCBeforeRun));
+
         // Evaluating
         Assert.assertEquals(publisherClient
                                     .getSentMessageCount(), sendCount, "Message sending failed");
         Assert.assertEquals(consumerClient
                                     .getReceivedMessageCount(), sendCount, "Message receiving failed.");
     }
+
+    /**
+     * Takes a snapshot of the garbage collections done by the broker through its JMX server.
+     *
+     * @return The snapshot.
+     * @throws XPathExpressionException
+     * @throws IOException
+     */
+    private GarbageCollectionStatistics captureBrokerGarbageCollections()
+            throws XPathExpressionException, IOException {
+        User adminUser = automationContext.getContextTenant().getContextUser();
+        return GarbageCollectionStatistics.captureBroker(getJMXServerPort(), getRMIRegistryPort(),
+                                                         adminUser.getUserName(), adminUser.getPassword());
+    }
 }
@@ -18,12 +18,15 @@
 
 package org.wso2.mb.integration.tests.mqtt.load;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 import org.wso2.carbon.automation.engine.context.TestUserMode;
+import org.wso2.carbon.automation.engine.context.beans.User;
 import org.wso2.mb.integration.common.clients.AndesMQTTClient;
 import org.wso2.mb.integration.common.clients.ClientMode;
 import org.wso2.mb.integration.common.clients.MQTTClientEngine;
@@ -31,6 +34,7 @@ import org.wso2.mb.integration.common.clients.MQTTConstants;
 import org.wso2.mb.integration.common.clients.QualityOfService;
 import org.wso2.mb.integration.common.clients.operations.utils.AndesClientConstants;
 import org.wso2.mb.integration.common.clients.operations.utils.AndesClientUtils;
+import org.wso2.mb.integration.common.clients.operations.utils.GarbageCollectionStatistics;
 import org.wso2.mb.integration.common.utils.backend.MBIntegrationBaseTest;
 import org.wso2.mb.integration.tests.mqtt.DataProvider.QualityOfServiceDataProvider;
 
@@ -38,12 +42,15 @@ import javax.xml.xpath.XPathExpressionException;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Test case that sends 10 1MB messages in MQTT protocol.
  */
 public class OneMBMessageTestCase extends MBIntegrationBaseTest {
 
+    private static final Log log = LogFactory.getLog(OneMBMessageTestCase.class);
+
     /**
      * Initialize super class.
      *
@@ -61,6 +68,7 @@ public class OneMBMessageTestCase extends MBIntegrationBaseTest {
      * @param qualityOfService The Quality of service to test
      * @throws MqttException
      * @throws IOException
+     * @throws XPathExpressionException
      */
     @Test(groups = {"wso2.mb", "mqtt"}, description = "Send and receive large Message of 1 MB",
             dataProvider = "QualityOfServiceDataProvider", dataProviderClass = QualityOfServiceDataProvider.class)
@@ -79,18 +87,43 @@ public class OneMBMessageTestCase extends MBIntegrationBaseTest {
 
         byte[] oneMBBytes = Files.readAllBytes(Paths.get(AndesClientConstants.FILE_PATH_FOR_CREATING_A_NEW_FILE));
 
+        GarbageCollectionStatistics clientGCBeforeRun = GarbageCollectionStatistics.capture();
+        GarbageCollectionStatistics brokerGCBeforeRun = captureBrokerGarbageCollections();
+
         //create the subscribers
         mqttClientEngine.createSubscriberConnection(topicName, qualityOfService, noOfSubscribers, false,
                 ClientMode.BLOCKING, automationContext);
 
+        // Blocking publishers return once all the messages are published
+        long publishStartTime = System.nanoTime();
         mqttClientEngine.createPublisherConnection(topicName, qualityOfService, oneMBBytes, noOfPublishers, sendCount,
                 ClientMode.BLOCKING, automationContext);
+        double publishTimeInSeconds = (System.nanoTime() - publishStartTime) / (double) TimeUnit.SECONDS.toNanos(1);
 
         mqttClientEngine.waitUntilAllMessageReceivedAndShutdownClients();
 
+        log.info(qualityOfService + " publisher content throughput(MB/s):" +
+                 (sendCount * oneMBBytes.length) / (1024D * 1024D) / publishTimeInSeconds);
+        log.info(GarbageCollectionStatistics.capture().since(clientGCBeforeRun) + " " +
+                 captureBrokerGarbageCollections().since(brokerGCBeforeRun));
+
         for (MqttMessage mqttMessage : mqttClientEngine.getSubscriberList().get(0).getReceivedMessages()) {
             Assert.assertEquals(mqttMessage.getPayload(), oneMBBytes,
                     "The received message is incorrect");
         }
     }
+
+    /**
+     * Takes a snapshot of the garbage collections done by the broker through its JMX server.
+     *
+     * @return The snapshot.
+     * @throws XPathExpressionException
+     * @throws IOException
+     */
+    private GarbageCollectionStatistics captureBrokerGarbageCollections()
+            throws XPathExpressionException, IOException {
+        User adminUser = automationContext.getContextTenant().getContextUser();
+        return GarbageCollectionStatistics.captureBroker(getJMXServerPort(), getRMIRegistryPort(),
+                                                         adminUser.getUserName(), adminUser.getPassword());
+    }
 }
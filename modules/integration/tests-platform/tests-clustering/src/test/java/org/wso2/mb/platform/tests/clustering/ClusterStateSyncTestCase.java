@@ -0,0 +1,242 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.platform.tests.clustering;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+import org.wso2.carbon.andes.stub.AndesAdminServiceBrokerManagerAdminException;
+import org.wso2.carbon.authenticator.stub.LoginAuthenticationExceptionException;
+import org.wso2.carbon.automation.engine.context.AutomationContext;
+import org.wso2.carbon.automation.engine.context.TestUserMode;
+import org.wso2.carbon.integration.common.utils.exceptions.AutomationUtilException;
+import org.wso2.mb.integration.common.clients.AndesClient;
+import org.wso2.mb.integration.common.clients.configurations.AndesJMSConsumerClientConfiguration;
+import org.wso2.mb.integration.common.clients.configurations.AndesJMSPublisherClientConfiguration;
+import org.wso2.mb.integration.common.clients.exceptions.AndesClientConfigurationException;
+import org.wso2.mb.integration.common.clients.exceptions.AndesClientException;
+import org.wso2.mb.integration.common.clients.operations.clients.AndesAdminClient;
+import org.wso2.mb.integration.common.clients.operations.clients.TopicAdminClient;
+import org.wso2.mb.integration.common.clients.operations.utils.AndesClientConstants;
+import org.wso2.mb.integration.common.clients.operations.utils.AndesClientUtils;
+import org.wso2.mb.integration.common.clients.operations.utils.ExchangeType;
+import org.wso2.mb.platform.common.utils.MBPlatformBaseTest;
+import org.xml.sax.SAXException;
+
+import javax.jms.JMSException;
+import javax.naming.NamingException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.xpath.XPathExpressionException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests how fast queue and durable subscription changes made in one node reach the other nodes of the cluster.
+ * Changes are made in bulk across all nodes and every node is expected to be in sync well within the periodic
+ * virtual host sync interval (vHostSyncTaskInterval, 900 seconds by default), so that nodes do not depend on the
+ * periodic full sync to see changes made by other nodes.
+ */
+public class ClusterStateSyncTestCase extends MBPlatformBaseTest {
+
+    /**
+     * Number of queues created and deleted in bulk.
+     */
+    private static final int QUEUE_COUNT = 200;
+
+    /**
+     * Number of durable topic subscriptions created in bulk.
+     */
+    private static final int DURABLE_SUBSCRIPTION_COUNT = 20;
+
+    /**
+     * Maximum time allowed for all nodes to be in sync after a bulk change.
+     */
+    private static final long MAXIMUM_SYNC_TIME_IN_MILLIS = 30000L;
+
+    private static final String QUEUE_NAME_PREFIX = "clusterStateSyncQueue";
+
+    private static final String TOPIC_NAME_PREFIX = "clusterStateSyncTopic";
+
+    private List<String> queueNames = new ArrayList<>();
+
+    private TopicAdminClient topicAdminClient;
+
+    /**
+     * Prepare environment for tests.
+     *
+     * @throws LoginAuthenticationExceptionException
+     * @throws IOException
+     * @throws XPathExpressionException
+     * @throws URISyntaxException
+     * @throws SAXException
+     * @throws XMLStreamException
+     * @throws AutomationUtilException
+     */
+    @BeforeClass(alwaysRun = true)
+    public void init()
+            throws LoginAuthenticationExceptionException, IOException, XPathExpressionException,
+            URISyntaxException, SAXException, XMLStreamException, AutomationUtilException {
+        super.initCluster(TestUserMode.SUPER_TENANT_ADMIN);
+        super.initAndesAdminClients();
+
+        AutomationContext automationContext = getAutomationContextWithKey(getRandomMBInstance());
+        topicAdminClient = new TopicAdminClient(automationContext.getContextUrls().getBackEndUrl(),
+                super.login(automationContext));
+
+        for (int i = 0; i < QUEUE_COUNT; i++) {
+            queueNames.add(QUEUE_NAME_PREFIX + i);
+        }
+    }
+
+    /**
+     * Create queues spread across all nodes and check that every node sees every queue within the allowed time.
+     *
+     * @throws AndesAdminServiceBrokerManagerAdminException
+     * @throws RemoteException
+     * @throws InterruptedException
+     */
+    @Test(groups = "wso2.mb", description = "Bulk queue creation sync across cluster nodes")
+    public void testBulkQueueCreationSync()
+            throws AndesAdminServiceBrokerManagerAdminException, RemoteException, InterruptedException {
+        List<AndesAdminClient> adminClients = new ArrayList<>(andesAdminClients.values());
+        for (int i = 0; i < queueNames.size(); i++) {
+            adminClients.get(i % adminClients.size()).createQueue(queueNames.get(i));
+        }
+
+        long syncTime = waitForQueueSyncInCluster(queueNames, true, MAXIMUM_SYNC_TIME_IN_MILLIS);
+        log.info("Creation of " + QUEUE_COUNT + " queues synced across cluster in " + syncTime + " ms");
+
+        Assert.assertTrue(syncTime != -1L, "Queues created in cluster nodes were not visible in all nodes within "
+                                           + MAXIMUM_SYNC_TIME_IN_MILLIS + " ms");
+    }
+
+    /**
+     * Delete the queues created, half from each node, and check that every node stops listing them within the
+     * allowed time.
+     *
+     * @throws AndesAdminServiceBrokerManagerAdminException
+     * @throws RemoteException
+     * @throws InterruptedException
+     */
+    @Test(groups = "wso2.mb", description = "Bulk queue deletion sync across cluster nodes",
+          dependsOnMethods = "testBulkQueueCreationSync")
+    public void testBulkQueueDeletionSync()
+            throws AndesAdminServiceBrokerManagerAdminException, RemoteException, InterruptedException {
+        List<AndesAdminClient> adminClients = new ArrayList<>(andesAdminClients.values());
+        for (int i = 0; i < queueNames.size(); i++) {
+            // Deleting from a different node than the one the queue was created in
+            adminClients.get((i + 1) % adminClients.size()).deleteQueue(queueNames.get(i));
+        }
+
+        long syncTime = waitForQueueSyncInCluster(queueNames, false, MAXIMUM_SYNC_TIME_IN_MILLIS);
+        log.info("Deletion of " + QUEUE_COUNT + " queues synced across cluster in " + syncTime + " ms");
+
+        Assert.assertTrue(syncTime != -1L, "Queues deleted in cluster nodes were still visible in some nodes after "
+                                           + MAXIMUM_SYNC_TIME_IN_MILLIS + " ms");
+    }
+
+    /**
+     * Create durable topic subscriptions in one node and publish to them from another node right after the cluster
+     * sync time. Every subscription should receive all messages, which requires the publishing node to know of all
+     * subscriptions without waiting for a periodic sync.
+     *
+     * @param messageCount Number of messages to publish to each topic
+     * @throws XPathExpressionException
+     * @throws AndesClientConfigurationException
+     * @throws NamingException
+     * @throws JMSException
+     * @throws IOException
+     * @throws AndesClientException
+     */
+    @Test(groups = "wso2.mb", description = "Bulk durable subscription sync across cluster nodes")
+    @Parameters({"messageCount"})
+    public void testBulkDurableSubscriptionSync(long messageCount)
+            throws XPathExpressionException, AndesClientConfigurationException, NamingException, JMSException,
+            IOException, AndesClientException {
+        long sendCount = messageCount / DURABLE_SUBSCRIPTION_COUNT;
+        AutomationContext subscriberContext = getAutomationContextWithKey(getRandomMBInstance());
+        AutomationContext publisherContext = getAutomationContextWithKey(getRandomMBInstance());
+
+        List<AndesClient> consumerClients = new ArrayList<>(DURABLE_SUBSCRIPTION_COUNT);
+        for (int i = 0; i < DURABLE_SUBSCRIPTION_COUNT; i++) {
+            AndesJMSConsumerClientConfiguration consumerConfig = new AndesJMSConsumerClientConfiguration(
+                    subscriberContext.getInstance().getHosts().get("default"),
+                    Integer.parseInt(subscriberContext.getInstance().getPorts().get("amqp")),
+                    ExchangeType.TOPIC, TOPIC_NAME_PREFIX + i);
+            consumerConfig.setDurable(true, TOPIC_NAME_PREFIX + "Subscription" + i);
+            consumerConfig.setMaximumMessagesToReceived(sendCount);
+            consumerConfig.setUnSubscribeAfterEachMessageCount(sendCount);
+
+            AndesClient consumerClient = new AndesClient(consumerConfig, true);
+            consumerClient.startClient();
+            consumerClients.add(consumerClient);
+        }
+
+        AndesClientUtils.sleepForInterval(AndesClientConstants.DEFAULT_CLUSTER_SYNC_TIME);
+
+        List<AndesClient> publisherClients = new ArrayList<>(DURABLE_SUBSCRIPTION_COUNT);
+        for (int i = 0; i < DURABLE_SUBSCRIPTION_COUNT; i++) {
+            AndesJMSPublisherClientConfiguration publisherConfig = new AndesJMSPublisherClientConfiguration(
+                    publisherContext.getInstance().getHosts().get("default"),
+                    Integer.parseInt(publisherContext.getInstance().getPorts().get("amqp")),
+                    ExchangeType.TOPIC, TOPIC_NAME_PREFIX + i);
+            publisherConfig.setNumberOfMessagesToSend(sendCount);
+
+            AndesClient publisherClient = new AndesClient(publisherConfig, true);
+            publisherClient.startClient();
+            publisherClients.add(publisherClient);
+        }
+
+        for (AndesClient consumerClient : consumerClients) {
+            AndesClientUtils.waitForMessagesAndShutdown(consumerClient, AndesClientConstants.DEFAULT_RUN_TIME);
+        }
+
+        for (int i = 0; i < DURABLE_SUBSCRIPTION_COUNT; i++) {
+            Assert.assertEquals(publisherClients.get(i).getSentMessageCount(), sendCount,
+                                "Message sending failed for topic " + TOPIC_NAME_PREFIX + i);
+            Assert.assertEquals(consumerClients.get(i).getReceivedMessageCount(), sendCount,
+                                "Durable subscription " + TOPIC_NAME_PREFIX + "Subscription" + i
+                                + " did not receive all messages published from another node");
+        }
+    }
+
+    /**
+     * Cleanup after running tests.
+     *
+     * @throws Exception
+     */
+    @AfterClass(alwaysRun = true)
+    public void destroy() throws Exception {
+        AndesAdminClient andesAdminClient = getAndesAdminClientWithKey(getRandomMBInstance());
+        for (String queueName : queueNames) {
+            if (andesAdminClient.getQueueByName(queueName) != null) {
+                andesAdminClient.deleteQueue(queueName);
+            }
+        }
+        for (int i = 0; i < DURABLE_SUBSCRIPTION_COUNT; i++) {
+            topicAdminClient.removeTopic(TOPIC_NAME_PREFIX + i);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.platform.tests.clustering;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.wso2.carbon.andes.stub.AndesAdminServiceBrokerManagerAdminException;
+import org.wso2.carbon.authenticator.stub.LoginAuthenticationExceptionException;
+import org.wso2.carbon.automation.engine.context.AutomationContext;
+import org.wso2.carbon.automation.engine.context.TestUserMode;
+import org.wso2.carbon.integration.common.utils.exceptions.AutomationUtilException;
+import org.wso2.mb.integration.common.clients.AndesClient;
+import org.wso2.mb.integration.common.clients.AndesJMSPublisher;
+import org.wso2.mb.integration.common.clients.configurations.AndesJMSConsumerClientConfiguration;
+import org.wso2.mb.integration.common.clients.configurations.AndesJMSPublisherClientConfiguration;
+import org.wso2.mb.integration.common.clients.exceptions.AndesClientConfigurationException;
+import org.wso2.mb.integration.common.clients.exceptions.AndesClientException;
+import org.wso2.mb.integration.common.clients.operations.clients.AndesAdminClient;
+import org.wso2.mb.integration.common.clients.operations.utils.AndesClientConstants;
+import org.wso2.mb.integration.common.clients.operations.utils.AndesClientUtils;
+import org.wso2.mb.integration.common.clients.operations.utils.ExchangeType;
+import org.wso2.mb.platform.common.utils.DataAccessUtil;
+import org.wso2.mb.platform.common.utils.MBPlatformBaseTest;
+import org.wso2.mb.platform.common.utils.exceptions.DataAccessUtilException;
+import org.xml.sax.SAXException;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.naming.NamingException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.xpath.XPathExpressionException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+
+/**
+ * Tests that content chunks of large messages do not remain in the message store when a transactional publisher
+ * rolls back or disconnects before committing. Content of a large message is written in chunks, so chunks of
+ * messages which never got committed need to be cleaned up by the broker.
+ */
+public class LargeMessageContentCleanupTestCase extends MBPlatformBaseTest {
+
+    private static final String LARGE_MESSAGE_QUEUE = "largeMessageContentCleanupQueue";
+
+    /**
+     * Size of a message published in the test. Spans many content chunks.
+     */
+    private static final int MESSAGE_SIZE_IN_BYTES = 10 * 1024 * 1024;
+
+    /**
+     * Number of messages published in each transaction.
+     */
+    private static final int MESSAGES_PER_TRANSACTION = 3;
+
+    private DataAccessUtil dataAccessUtil = new DataAccessUtil();
+
+    /**
+     * Prepare environment for tests.
+     *
+     * @throws LoginAuthenticationExceptionException
+     * @throws IOException
+     * @throws XPathExpressionException
+     * @throws URISyntaxException
+     * @throws SAXException
+     * @throws XMLStreamException
+     * @throws AutomationUtilException
+     */
+    @BeforeClass(alwaysRun = true)
+    public void init()
+            throws LoginAuthenticationExceptionException, IOException, XPathExpressionException,
+            URISyntaxException, SAXException, XMLStreamException, AutomationUtilException {
+        super.initCluster(TestUserMode.SUPER_TENANT_ADMIN);
+        super.initAndesAdminClients();
+    }
+
+    /**
+     * 1. Subscribe to a queue from one node.
+     * 2. Publish large messages from another node in a transaction and roll it back.
+     * 3. Publish large messages in a new transaction and close the publisher without committing.
+     * 4. Check that no message is received and no content chunk is left without its message.
+     *
+     * @throws XPathExpressionException
+     * @throws AndesClientConfigurationException
+     * @throws NamingException
+     * @throws JMSException
+     * @throws IOException
+     * @throws AndesClientException
+     * @throws DataAccessUtilException
+     */
+    @Test(groups = "wso2.mb", description = "Content of rolled back and aborted large messages is deleted")
+    public void testRolledBackAndAbortedLargeMessageContentIsDeleted()
+            throws XPathExpressionException, AndesClientConfigurationException, NamingException, JMSException,
+            IOException, AndesClientException, DataAccessUtilException {
+        AutomationContext publisherContext = getAutomationContextWithKey(getRandomMBInstance());
+        AutomationContext consumerContext = getAutomationContextWithKey(getRandomMBInstance());
+
+        AndesJMSConsumerClientConfiguration consumerConfig =
+                new AndesJMSConsumerClientConfiguration(consumerContext.getInstance().getHosts().get("default"),
+                        Integer.parseInt(consumerContext.getInstance().getPorts().get("amqp")),
+                        ExchangeType.QUEUE, LARGE_MESSAGE_QUEUE);
+        consumerConfig.setRetainReceivedMessages(false);
+
+        AndesJMSPublisherClientConfiguration publisherConfig =
+                new AndesJMSPublisherClientConfiguration(publisherContext.getInstance().getHosts().get("default"),
+                        Integer.parseInt(publisherContext.getInstance().getPorts().get("amqp")),
+                        ExchangeType.QUEUE, LARGE_MESSAGE_QUEUE);
+        publisherConfig.setTransactionalSession(true);
+
+        long orphanedChunksBeforePublishing = dataAccessUtil.waitForOrphanedContentChunksToBeDeleted();
+
+        AndesClient consumerClient = new AndesClient(consumerConfig, true);
+        consumerClient.startClient();
+        AndesClientUtils.sleepForInterval(AndesClientConstants.DEFAULT_CLUSTER_SYNC_TIME);
+
+        byte[] content = new byte[MESSAGE_SIZE_IN_BYTES];
+        Arrays.fill(content, (byte) 'a');
+
+        // Rolling back a transaction with large messages
+        AndesClient rollbackPublisherClient = new AndesClient(publisherConfig, true);
+        AndesJMSPublisher rollbackPublisher = rollbackPublisherClient.getPublishers().get(0);
+        try {
+            publishLargeMessages(rollbackPublisher, content);
+            rollbackPublisher.getSession().rollback();
+        } finally {
+            rollbackPublisherClient.stopClient();
+        }
+
+        // Closing the publisher in the middle of a transaction with large messages
+        AndesClient abortPublisherClient = new AndesClient(publisherConfig, true);
+        publishLargeMessages(abortPublisherClient.getPublishers().get(0), content);
+        abortPublisherClient.stopClient();
+
+        AndesClientUtils.waitForMessagesAndShutdown(consumerClient, AndesClientConstants.DEFAULT_RUN_TIME);
+        long orphanedChunks = dataAccessUtil.waitForOrphanedContentChunksToBeDeleted();
+
+        // Evaluating
+        Assert.assertEquals(orphanedChunksBeforePublishing, 0L, "Content chunks were orphaned before the test.");
+        Assert.assertEquals(consumerClient.getReceivedMessageCount(), 0L,
+                            "Messages of a transaction which was not committed were received.");
+        Assert.assertEquals(orphanedChunks, 0L,
+                            "Content chunks of rolled back and aborted messages were not deleted.");
+    }
+
+    /**
+     * Publishes large messages within the current transaction of a publisher without committing.
+     *
+     * @param publisher The transactional publisher.
+     * @param content   The content of a message.
+     * @throws JMSException
+     */
+    private void publishLargeMessages(AndesJMSPublisher publisher, byte[] content) throws JMSException {
+        for (int i = 0; i < MESSAGES_PER_TRANSACTION; i++) {
+            BytesMessage message = publisher.getSession().createBytesMessage();
+            message.writeBytes(content);
+            publisher.getSender().send(message);
+        }
+    }
+
+    /**
+     * Cleanup after running tests.
+     *
+     * @throws AndesAdminServiceBrokerManagerAdminException
+     * @throws RemoteException
+     */
+    @AfterClass(alwaysRun = true)
+    public void destroy() throws AndesAdminServiceBrokerManagerAdminException, RemoteException {
+        AndesAdminClient andesAdminClient = getAndesAdminClientWithKey(getRandomMBInstance());
+        if (andesAdminClient.getQueueByName(LARGE_MESSAGE_QUEUE) != null) {
+            andesAdminClient.deleteQueue(LARGE_MESSAGE_QUEUE);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+*  Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+*  WSO2 Inc. licenses this file to you under the Apache License,
+*  Version 2.0 (the "License"); you may not use this file except
+*  in compliance with the License.
+*  You may obtain a copy of the License at
+*
+*    http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.wso2.mb.platform.tests.clustering;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+import org.wso2.carbon.andes.stub.AndesAdminServiceBrokerManagerAdminException;
+import org.wso2.carbon.authenticator.stub.LoginAuthenticationExceptionException;
+import org.wso2.carbon.automation.engine.context.AutomationContext;
+import org.wso2.carbon.automation.engine.context.TestUserMode;
+import org.wso2.carbon.integration.common.utils.exceptions.AutomationUtilException;
+import org.wso2.mb.integration.common.clients.AndesClient;
+import org.wso2.mb.integration.common.clients.configurations.AndesJMSConsumerClientConfiguration;
+import org.wso2.mb.integration.common.clients.configurations.AndesJMSPublisherClientConfiguration;
+import org.wso2.mb.integration.common.clients.configurations.PublishRateProfile;
+import org.wso2.mb.integration.common.clients.exceptions.AndesClientConfigurationException;
+import org.wso2.mb.integration.common.clients.exceptions.AndesClientException;
+import org.wso2.mb.integration.common.clients.operations.clients.AndesAdminClient;
+import org.wso2.mb.integration.common.clients.operations.utils.AndesClientConstants;
+import org.wso2.mb.integration.common.clients.operations.utils.AndesClientUtils;
+import org.wso2.mb.integration.common.clients.operations.utils.ExchangeType;
+import org.wso2.mb.platform.common.utils.DataAccessUtil;
+import org.wso2.mb.platform.common.utils.MBPlatformBaseTest;
+import org.wso2.mb.platform.common.utils.exceptions.DataAccessUtilException;
+import org.xml.sax.SAXException;
+
+import javax.jms.JMSException;
+import javax.naming.NamingException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.xpath.XPathExpressionException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests slot creation and delivery latency when queues with very different publish rates share the cluster. A
+ * high rate queue should be stored in a few large slots, while messages of a low rate queue should not wait for a
+ * slot to fill up before being delivered (performanceTuning/slots in broker.xml). The window size the slot manager
+ * uses for each queue is not exposed, hence the slot count is bounded using the configured window size.
+ */
+public class MixedRateQueueSlotTestCase extends MBPlatformBaseTest {
+
+    private static final String HIGH_RATE_QUEUE = "mixedRateHighQueue";
+
+    private static final String LOW_RATE_QUEUE = "mixedRateLowQueue";
+
+    /**
+     * Publish rate of the low rate queue in messages per second.
+     */
+    private static final double LOW_RATE = 5D;
+
+    /**
+     * Number of messages published to the low rate queue.
+     */
+    private static final long LOW_RATE_MESSAGE_COUNT = 50L;
+
+    /**
+     * The number of messages after which a slot is closed (performanceTuning/slots/windowSize in broker.xml).
+     */
+    private static final long SLOT_WINDOW_SIZE = 1000L;
+
+    /**
+     * The time after which a partially filled slot is closed (performanceTuning/slots/messageAccumulationTimeout in
+     * broker.xml).
+     */
+    private static final long MESSAGE_ACCUMULATION_TIMEOUT_IN_MILLIS = 2000L;
+
+    /**
+     * The interval at which slots are checked against the accumulation timeout (performanceTuning/slots/timerPeriod
+     * in broker.xml).
+     */
+    private static final long SLOT_TIMER_PERIOD_IN_MILLIS = 1000L;
+
+    /**
+     * Maximum 99th percentile delivery latency allowed for the low rate queue. The message accumulation timeout
+     * plus the slot timer period bounds how long a message waits for its slot to be closed.
+     */
+    private static final long MAXIMUM_LOW_RATE_LATENCY_IN_MILLIS =
+            MESSAGE_ACCUMULATION_TIMEOUT_IN_MILLIS + SLOT_TIMER_PERIOD_IN_MILLIS;
+
+    private DataAccessUtil dataAccessUtil = new DataAccessUtil();
+
+    /**
+     * Prepare environment for tests.
+     *
+     * @throws LoginAuthenticationExceptionException
+     * @throws IOException
+     * @throws XPathExpressionException
+     * @throws URISyntaxException
+     * @throws SAXException
+     * @throws XMLStreamException
+     * @throws AutomationUtilException
+     */
+    @BeforeClass(alwaysRun = true)
+    public void init()
+            throws LoginAuthenticationExceptionException, IOException, XPathExpressionException,
+            URISyntaxException, SAXException, XMLStreamException, AutomationUtilException {
+        super.initCluster(TestUserMode.SUPER_TENANT_ADMIN);
+        super.initAndesAdminClients();
+    }
+
+    /**
+     * Publish a burst to the high rate queue while it has no subscribers and count the slots created for it. Then
+     * subscribe to both queues from another node, publish to the low rate queue at a low rate and check the delivery
+     * latency of the low rate queue.
+     *
+     * @param messageCount Number of messages published to the high rate queue
+     * @throws XPathExpressionException
+     * @throws AndesClientConfigurationException
+     * @throws NamingException
+     * @throws JMSException
+     * @throws IOException
+     * @throws AndesClientException
+     * @throws DataAccessUtilException
+     * @throws InterruptedException
+     * @throws AndesAdminServiceBrokerManagerAdminException
+     */
+    @Test(groups = "wso2.mb", description = "Slot count and latency of queues with mixed publish rates")
+    @Parameters({"messageCount"})
+    public void testMixedRateQueues(long messageCount)
+            throws XPathExpressionException, AndesClientConfigurationException, NamingException, JMSException,
+            IOException, AndesClientException, DataAccessUtilException, InterruptedException,
+            AndesAdminServiceBrokerManagerAdminException {
+        AutomationContext publisherContext = getAutomationContextWithKey(getRandomMBInstance());
+        AutomationContext consumerContext = getAutomationContextWithKey(getRandomMBInstance());
+        String publisherHost = publisherContext.getInstance().getHosts().get("default");
+        int publisherPort = Integer.parseInt(publisherContext.getInstance().getPorts().get("amqp"));
+        String consumerHost = consumerContext.getInstance().getHosts().get("default");
+        int consumerPort = Integer.parseInt(consumerContext.getInstance().getPorts().get("amqp"));
+
+        // Publishing a burst to the high rate queue with no subscribers so that slots stay in the database
+        AndesJMSPublisherClientConfiguration highRatePublisherConfig =
+                new AndesJMSPublisherClientConfiguration(publisherHost, publisherPort, ExchangeType.QUEUE,
+                                                         HIGH_RATE_QUEUE);
+        highRatePublisherConfig.setNumberOfMessagesToSend(messageCount);
+        highRatePublisherConfig.setPrintsPerMessageCount(messageCount / 10L);
+
+        getAndesAdminClientWithKey(getRandomMBInstance()).createQueue(HIGH_RATE_QUEUE);
+        AndesClient highRatePublisherClient = new AndesClient(highRatePublisherConfig, true);
+        long publishStartTime = System.currentTimeMillis();
+        highRatePublisherClient.startClient();
+
+        long publishDeadline = publishStartTime + AndesClientConstants.DEFAULT_RUN_TIME * 3;
+        while (highRatePublisherClient.getSentMessageCount() < messageCount
+               && System.currentTimeMillis() < publishDeadline) {
+            TimeUnit.MILLISECONDS.sleep(100L);
+        }
+        long publishTimeInMillis = System.currentTimeMillis() - publishStartTime;
+        // Waiting for the accumulation timeout so that the last partially filled slot is submitted
+        AndesClientUtils.sleepForInterval(MAXIMUM_LOW_RATE_LATENCY_IN_MILLIS);
+
+        long highRateSlotCount = dataAccessUtil.getSlotCountForQueue(HIGH_RATE_QUEUE);
+        // Full windows need ceil(messageCount / windowSize) slots. While publishing, the accumulation timeout can
+        // close a partially filled slot at most once per timeout, adding a slot each time.
+        long maximumHighRateSlotCount = (messageCount + SLOT_WINDOW_SIZE - 1) / SLOT_WINDOW_SIZE
+                                        + publishTimeInMillis / MESSAGE_ACCUMULATION_TIMEOUT_IN_MILLIS;
+        log.info("High rate queue stored " + messageCount + " messages in " + highRateSlotCount + " slots within "
+                 + publishTimeInMillis + " ms, expected at most " + maximumHighRateSlotCount + " slots");
+
+        // Subscribing to both queues and publishing to the low rate queue
+        AndesJMSConsumerClientConfiguration highRateConsumerConfig =
+                new AndesJMSConsumerClientConfiguration(consumerHost, consumerPort, ExchangeType.QUEUE,
+                                                        HIGH_RATE_QUEUE);
+        highRateConsumerConfig.setMaximumMessagesToReceived(messageCount);
+        AndesJMSConsumerClientConfiguration lowRateConsumerConfig =
+                new AndesJMSConsumerClientConfiguration(consumerHost, consumerPort, ExchangeType.QUEUE,
+                                                        LOW_RATE_QUEUE);
+        lowRateConsumerConfig.setMaximumMessagesToReceived(LOW_RATE_MESSAGE_COUNT);
+
+        AndesJMSPublisherClientConfiguration lowRatePublisherConfig =
+                new AndesJMSPublisherClientConfiguration(publisherHost, publisherPort, ExchangeType.QUEUE,
+                                                         LOW_RATE_QUEUE);
+        lowRatePublisherConfig.setNumberOfMessagesToSend(LOW_RATE_MESSAGE_COUNT);
+        lowRatePublisherConfig.setPublishRateProfile(new PublishRateProfile(LOW_RATE));
+
+        AndesClient highRateConsumerClient = new AndesClient(highRateConsumerConfig, true);
+        highRateConsumerClient.startClient();
+        AndesClient lowRateConsumerClient = new AndesClient(lowRateConsumerConfig, true);
+        lowRateConsumerClient.startClient();
+
+        AndesClientUtils.sleepForInterval(AndesClientConstants.DEFAULT_CLUSTER_SYNC_TIME);
+
+        AndesClient lowRatePublisherClient = new AndesClient(lowRatePublisherConfig, true);
+        lowRatePublisherClient.startClient();
+
+        AndesClientUtils.waitForMessagesAndShutdown(lowRateConsumerClient, AndesClientConstants.DEFAULT_RUN_TIME);
+        AndesClientUtils.waitForMessagesAndShutdown(highRateConsumerClient, AndesClientConstants.DEFAULT_RUN_TIME);
+
+        long lowRateLatencyInMillis =
+                TimeUnit.NANOSECONDS.toMillis(lowRateConsumerClient.getLatencyAtPercentile(99D));
+        log.info("Low rate queue 99th percentile latency : " + lowRateLatencyInMillis + " ms, high rate queue "
+                 + "99th percentile latency : "
+                 + TimeUnit.NANOSECONDS.toMillis(highRateConsumerClient.getLatencyAtPercentile(99D)) + " ms");
+
+        // Evaluating
+        Assert.assertEquals(highRatePublisherClient.getSentMessageCount(), messageCount,
+                            "Message sending failed for high rate queue.");
+        Assert.assertEquals(lowRatePublisherClient.getSentMessageCount(), LOW_RATE_MESSAGE_COUNT,
+                            "Message sending failed for low rate queue.");
+        Assert.assertEquals(highRateConsumerClient.getReceivedMessageCount(), messageCount,
+                            "Message receiving failed for high rate queue.");
+        Assert.assertEquals(lowRateConsumerClient.getReceivedMessageCount(), LOW_RATE_MESSAGE_COUNT,
+                            "Message receiving failed for low rate queue.");
+
+        Assert.assertTrue(highRateSlotCount > 0, "No slots were created for high rate queue.");
+        Assert.assertTrue(highRateSlotCount <= maximumHighRateSlotCount,
+                          "High rate queue created " + highRateSlotCount + " slots for " + messageCount
+                          + " messages, expected at most " + maximumHighRateSlotCount + ".");
+        Assert.assertTrue(lowRateLatencyInMillis <= MAXIMUM_LOW_RATE_LATENCY_IN_MILLIS,
+                          "Low rate queue 99th percentile latency " + lowRateLatencyInMillis + " ms exceeded "
+                          + MAXIMUM_LOW_RATE_LATENCY_IN_MILLIS + " ms.");
+    }
+
+    /**
+     * Cleanup after running tests.
+     *
+     * @throws AndesAdminServiceBrokerManagerAdminException
+     * @throws RemoteException
+     */
+    @AfterClass(alwaysRun = true)
+    public void destroy() throws AndesAdminServiceBrokerManagerAdminException, RemoteException {
+        AndesAdminClient andesAdminClient = getAndesAdminClientWithKey(getRandomMBInstance());
+        if (andesAdminClient.getQueueByName(HIGH_RATE_QUEUE) != null) {
+            andesAdminClient.deleteQueue(HIGH_RATE_QUEUE);
+        }
+        if (andesAdminClient.getQueueByName(LOW_RATE_QUEUE) != null) {
+            andesAdminClient.deleteQueue(LOW_RATE_QUEUE);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c)2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+/**
+ * The outcome of migrating a single chunk of rows.
+ */
+class ChunkResult {
+
+    /**
+     * The number of rows read in the chunk.
+     */
+    private final int rowCount;
+
+    /**
+     * The last key read in the chunk. The next chunk starts after this key.
+     */
+    private final long lastKey;
+
+    ChunkResult(int rowCount, long lastKey) {
+        this.rowCount = rowCount;
+        this.lastKey = lastKey;
+    }
+
+    int getRowCount() {
+        return rowCount;
+    }
+
+    long getLastKey() {
+        return lastKey;
+    }
+}
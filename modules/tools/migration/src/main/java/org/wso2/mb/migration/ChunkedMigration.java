@@ -0,0 +1,60 @@
+/*
+ * Copyright (c)2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * A migration step which modifies a table in chunks of rows read in key order. The table is split in to key ranges
+ * which are migrated in parallel, each by reading chunks after the last key migrated.
+ */
+interface ChunkedMigration {
+
+    /**
+     * The name of the step, used in progress logs and checkpoints.
+     *
+     * @return the name of the step
+     */
+    String getName();
+
+    /**
+     * Split the rows to be migrated in to key ranges.
+     *
+     * @param conn       the connection to use
+     * @param rangeCount the preferred number of ranges
+     * @return the key ranges, empty if there is nothing to migrate
+     * @throws SQLException in case of executing query
+     */
+    List<KeyRange> createRanges(Connection conn, int rangeCount) throws SQLException;
+
+    /**
+     * Migrate the next chunk of rows of a key range. The chunk is committed by the caller.
+     *
+     * @param conn      the connection to use
+     * @param range     the key range being migrated
+     * @param lastKey   the key after which rows are read
+     * @param chunkSize the maximum number of rows to read
+     * @return the number of rows read and the last key read. Reading less rows than the chunk size means the range
+     * is completely migrated
+     * @throws SQLException in case of executing update
+     */
+    ChunkResult migrateChunk(Connection conn, KeyRange range, long lastKey, int chunkSize) throws SQLException;
+}
@@ -81,6 +81,7 @@ class DBConnector {
     private static final String SLOT_ID = "SLOT_ID";
     private static final String STORAGE_QUEUE_NAME = "STORAGE_QUEUE_NAME";
     private static final String ASSIGNED_QUEUE_NAME = "ASSIGNED_QUEUE_NAME";
+    private static final String MESSAGE_ID = "MESSAGE_ID";
 
     /**
      * Prepared statements to read, insert and update bindings and message routers.
@@ -88,8 +89,6 @@ class DBConnector {
     private static final String GET_BINDINGS = "SELECT * FROM " + MB_BINDING;
     private static final String GET_QUEUES = "SELECT * FROM " + MB_QUEUE;
     private static final String GET_QUEUE_MAPPINGS = "SELECT * FROM " + MB_QUEUE_MAPPING;
-    private static final String GET_MB_SLOT_MESSAGE_IDS = "SELECT * FROM " + MB_SLOT_MESSAGE_ID;
-    private static final String GET_SLOTS = "SELECT * FROM " + MB_SLOT;
     private static final String GET_MB_QUEUE_TO_LAST_ASSIGNED_IDS = "SELECT * FROM " + MB_QUEUE_TO_LAST_ASSIGNED_ID;
 
 
@@ -108,10 +107,39 @@ class DBConnector {
                                                 + " SET " + QUEUE_NAME + " =?"
                                                 + " WHERE " + QUEUE_NAME + " =?";
 
-    private static final String UPDATE_MB_SLOT_MESSAGE_ID = "UPDATE " + MB_SLOT_MESSAGE_ID
-                                                + " SET " + QUEUE_NAME + " =?"
+    /**
+     * Queries used to migrate MB_SLOT and MB_SLOT_MESSAGE_ID in chunks. Rows are read in key order after the last
+     * key migrated, so that each chunk starts where the previous one ended without scanning rows already migrated.
+     */
+    private static final String GET_SLOT_ID_RANGE = "SELECT MIN(" + SLOT_ID + "), MAX(" + SLOT_ID + ")"
+                                                + " FROM " + MB_SLOT;
+
+    private static final String GET_SLOT_CHUNK = "SELECT " + SLOT_ID + ", " + STORAGE_QUEUE_NAME
+                                                + " FROM " + MB_SLOT
+                                                + " WHERE " + SLOT_ID + " >?"
+                                                + " AND " + SLOT_ID + " <=?"
+                                                + " ORDER BY " + SLOT_ID;
+
+    private static final String GET_SLOT_MESSAGE_ID_QUEUE_NAMES = "SELECT DISTINCT " + QUEUE_NAME
+                                                + " FROM " + MB_SLOT_MESSAGE_ID;
+
+    private static final String GET_SLOT_MESSAGE_ID_RANGE = "SELECT MIN(" + MESSAGE_ID + "), MAX(" + MESSAGE_ID + ")"
+                                                + " FROM " + MB_SLOT_MESSAGE_ID
                                                 + " WHERE " + QUEUE_NAME + " =?";
 
+    private static final String GET_SLOT_MESSAGE_ID_CHUNK = "SELECT " + MESSAGE_ID
+                                                + " FROM " + MB_SLOT_MESSAGE_ID
+                                                + " WHERE " + QUEUE_NAME + " =?"
+                                                + " AND " + MESSAGE_ID + " >?"
+                                                + " AND " + MESSAGE_ID + " <=?"
+                                                + " ORDER BY " + MESSAGE_ID;
+
+    private static final String UPDATE_MB_SLOT_MESSAGE_ID_RANGE = "UPDATE " + MB_SLOT_MESSAGE_ID
+                                                + " SET " + QUEUE_NAME + " =?"
+                                                + " WHERE " + QUEUE_NAME + " =?"
+                                                + " AND " + MESSAGE_ID + " >?"
+                                                + " AND " + MESSAGE_ID + " <=?";
+
     private static final String UPDATE_MB_SLOT = "UPDATE " + MB_SLOT
                                                 + " SET " + STORAGE_QUEUE_NAME + " =?"
                                                 + " , " + ASSIGNED_QUEUE_NAME + " =?"
@@ -368,30 +396,61 @@ class DBConnector {
     }
 
     /**
-     * Make all queue names in MB_SLOT table all simple
+     * Read the minimum and maximum slot IDs of the MB_SLOT table.
      *
-     * @throws SQLException in case of executing update
+     * @param conn the connection to use
+     * @return the minimum and maximum slot IDs, null if the table is empty
+     * @throws SQLException in case of executing query
      */
-    void updateQueueNamesInSlots() throws SQLException {
+    long[] readSlotIdRange(Connection conn) throws SQLException {
 
-        try(Connection conn = getConnection();
-            PreparedStatement updateStatement = conn.prepareStatement(UPDATE_MB_SLOT);
-            PreparedStatement preparedStatement = conn.prepareStatement(GET_SLOTS);
-            ResultSet resultSet = preparedStatement.executeQuery()) {
+        try (PreparedStatement preparedStatement = conn.prepareStatement(GET_SLOT_ID_RANGE);
+             ResultSet resultSet = preparedStatement.executeQuery()) {
+            return readKeyRange(resultSet);
+        }
+    }
 
-            while (resultSet.next()) {
-                String queueName = resultSet.getString(STORAGE_QUEUE_NAME);
-                if(queueNameHasCapitals(queueName)) {
-                    String newQueueName = queueName.toLowerCase();
-                    updateStatement.setString(1, newQueueName);
-                    updateStatement.setString(2, newQueueName);
-                    updateStatement.setString(3, resultSet.getString(SLOT_ID));
-                    updateStatement.addBatch();
+    /**
+     * Make queue names of a chunk of rows in MB_SLOT table all simple. Reads at most the given number of rows with a
+     * slot ID greater than the last slot ID and updates the ones with capital letters in a single batch. The caller
+     * is responsible for committing the chunk.
+     *
+     * @param conn        the connection to use
+     * @param lastSlotId  the slot ID after which rows are read
+     * @param upperSlotId the maximum slot ID to read
+     * @param chunkSize   the maximum number of rows to read
+     * @return the number of rows read and the last slot ID read
+     * @throws SQLException in case of executing update
+     */
+    ChunkResult updateQueueNamesInSlotChunk(Connection conn, long lastSlotId, long upperSlotId, int chunkSize)
+            throws SQLException {
+
+        int rowCount = 0;
+        long lastKey = lastSlotId;
+        try (PreparedStatement preparedStatement = conn.prepareStatement(GET_SLOT_CHUNK);
+             PreparedStatement updateStatement = conn.prepareStatement(UPDATE_MB_SLOT)) {
+            preparedStatement.setLong(1, lastSlotId);
+            preparedStatement.setLong(2, upperSlotId);
+            preparedStatement.setMaxRows(chunkSize);
+            preparedStatement.setFetchSize(chunkSize);
+
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    lastKey = resultSet.getLong(SLOT_ID);
+                    rowCount++;
+                    String queueName = resultSet.getString(STORAGE_QUEUE_NAME);
+                    if (queueNameHasCapitals(queueName)) {
+                        String newQueueName = queueName.toLowerCase();
+                        updateStatement.setString(1, newQueueName);
+                        updateStatement.setString(2, newQueueName);
+                        updateStatement.setLong(3, lastKey);
+                        updateStatement.addBatch();
+                    }
                 }
             }
             updateStatement.executeBatch();
-
         }
+        return new ChunkResult(rowCount, lastKey);
     }
 
     /**
@@ -421,28 +480,89 @@ class DBConnector {
     }
 
     /**
-     * Make queue names in  MB_SLOT_MESSAGE_ID table all simple.
+     * Read the queue names in MB_SLOT_MESSAGE_ID table which contain capital letters.
      *
-     * @throws SQLException in case of executing update
+     * @param conn the connection to use
+     * @return the queue names to be made simple
+     * @throws SQLException in case of executing query
      */
-    void updateQueueNamesInSlotMessageIds() throws SQLException {
+    List<String> readSlotMessageIdQueueNamesWithCapitals(Connection conn) throws SQLException {
 
-        try(Connection conn = getConnection();
-            PreparedStatement updateStatement = conn.prepareStatement(UPDATE_MB_SLOT_MESSAGE_ID);
-            PreparedStatement preparedStatement = conn.prepareStatement(GET_MB_SLOT_MESSAGE_IDS);
-            ResultSet resultSet = preparedStatement.executeQuery()) {
+        List<String> queueNames = new ArrayList<>();
+        try (PreparedStatement preparedStatement = conn.prepareStatement(GET_SLOT_MESSAGE_ID_QUEUE_NAMES);
+             ResultSet resultSet = preparedStatement.executeQuery()) {
 
             while (resultSet.next()) {
                 String queueName = resultSet.getString(QUEUE_NAME);
-                if(queueNameHasCapitals(queueName)) {
-                    String newQueueName = queueName.toLowerCase();
-                    updateStatement.setString(1, newQueueName);
-                    updateStatement.setString(2, queueName);
-                    updateStatement.addBatch();
+                if (queueNameHasCapitals(queueName)) {
+                    queueNames.add(queueName);
+                }
+            }
+        }
+        return queueNames;
+    }
+
+    /**
+     * Read the minimum and maximum message IDs of a queue in MB_SLOT_MESSAGE_ID table.
+     *
+     * @param conn      the connection to use
+     * @param queueName the name of the queue
+     * @return the minimum and maximum message IDs, null if the queue has no rows
+     * @throws SQLException in case of executing query
+     */
+    long[] readSlotMessageIdRange(Connection conn, String queueName) throws SQLException {
+
+        try (PreparedStatement preparedStatement = conn.prepareStatement(GET_SLOT_MESSAGE_ID_RANGE)) {
+            preparedStatement.setString(1, queueName);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                return readKeyRange(resultSet);
+            }
+        }
+    }
+
+    /**
+     * Make the queue name of a chunk of rows of a queue in MB_SLOT_MESSAGE_ID table all simple. Reads at most the
+     * given number of message IDs greater than the last message ID and updates the rows within the read range with a
+     * single statement. The caller is responsible for committing the chunk.
+     *
+     * @param conn           the connection to use
+     * @param queueName      the queue name to be made simple
+     * @param lastMessageId  the message ID after which rows are read
+     * @param upperMessageId the maximum message ID to read
+     * @param chunkSize      the maximum number of rows to read
+     * @return the number of rows read and the last message ID read
+     * @throws SQLException in case of executing update
+     */
+    ChunkResult updateQueueNameInSlotMessageIdChunk(Connection conn, String queueName, long lastMessageId,
+                                                    long upperMessageId, int chunkSize) throws SQLException {
+
+        int rowCount = 0;
+        long lastKey = lastMessageId;
+        try (PreparedStatement preparedStatement = conn.prepareStatement(GET_SLOT_MESSAGE_ID_CHUNK)) {
+            preparedStatement.setString(1, queueName);
+            preparedStatement.setLong(2, lastMessageId);
+            preparedStatement.setLong(3, upperMessageId);
+            preparedStatement.setMaxRows(chunkSize);
+            preparedStatement.setFetchSize(chunkSize);
+
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    lastKey = resultSet.getLong(MESSAGE_ID);
+                    rowCount++;
                 }
             }
-            updateStatement.executeBatch();
         }
+
+        if (rowCount > 0) {
+            try (PreparedStatement updateStatement = conn.prepareStatement(UPDATE_MB_SLOT_MESSAGE_ID_RANGE)) {
+                updateStatement.setString(1, queueName.toLowerCase());
+                updateStatement.setString(2, queueName);
+                updateStatement.setLong(3, lastMessageId);
+                updateStatement.setLong(4, lastKey);
+                updateStatement.executeUpdate();
+            }
+        }
+        return new ChunkResult(rowCount, lastKey);
     }
 
     /**
@@ -471,6 +591,23 @@ class DBConnector {
     }
 
 
+    /**
+     * Read a minimum and maximum key pair returned by an aggregate query.
+     *
+     * @param resultSet the result set of the query
+     * @return the minimum and maximum keys, null if there were no rows to aggregate
+     * @throws SQLException in case of reading the result set
+     */
+    private long[] readKeyRange(ResultSet resultSet) throws SQLException {
+        if (resultSet.next()) {
+            long minimumKey = resultSet.getLong(1);
+            if (!resultSet.wasNull()) {
+                return new long[] { minimumKey, resultSet.getLong(2) };
+            }
+        }
+        return null;
+    }
+
     /**
      * Check if string has any uppercase letter
      *
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c)2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A range of keys of a table which is migrated by a single worker. The range includes keys greater than the lower
+ * bound and less than or equal to the upper bound, optionally restricted to rows of a given partition key such as a
+ * queue name.
+ */
+class KeyRange {
+
+    /**
+     * The index of the range within its migration step.
+     */
+    private final int index;
+
+    /**
+     * The value rows of the range should match in addition to the key range. Null if not restricted.
+     */
+    private final String partitionKey;
+
+    /**
+     * The exclusive lower bound of the range.
+     */
+    private final long lowerBound;
+
+    /**
+     * The inclusive upper bound of the range.
+     */
+    private final long upperBound;
+
+    KeyRange(int index, String partitionKey, long lowerBound, long upperBound) {
+        this.index = index;
+        this.partitionKey = partitionKey;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    String getPartitionKey() {
+        return partitionKey;
+    }
+
+    long getLowerBound() {
+        return lowerBound;
+    }
+
+    long getUpperBound() {
+        return upperBound;
+    }
+
+    /**
+     * Split keys from a minimum to a maximum in to ranges of roughly equal size.
+     *
+     * @param partitionKey the value rows of the ranges should match, null if not restricted
+     * @param minimumKey   the minimum key to include
+     * @param maximumKey   the maximum key to include
+     * @param rangeCount   the number of ranges to create
+     * @param firstIndex   the index of the first range
+     * @return the ranges in key order
+     */
+    static List<KeyRange> split(String partitionKey, long minimumKey, long maximumKey, int rangeCount,
+                                int firstIndex) {
+        List<KeyRange> ranges = new ArrayList<>(rangeCount);
+        long rangeSize = Math.max(1L, ((maximumKey - minimumKey) / rangeCount) + 1);
+        long lowerBound = minimumKey - 1;
+        int index = firstIndex;
+        while (lowerBound < maximumKey) {
+            long upperBound = Math.min(maximumKey, lowerBound + rangeSize);
+            ranges.add(new KeyRange(index++, partitionKey, lowerBound, upperBound));
+            lowerBound = upperBound;
+        }
+        return ranges;
+    }
+
+    @Override
+    public String toString() {
+        return ((null != partitionKey) ? partitionKey + " " : "") + "(" + lowerBound + ", " + upperBound + "]";
+    }
+}
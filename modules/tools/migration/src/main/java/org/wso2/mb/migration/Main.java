@@ -26,6 +26,15 @@ public class Main {
 
     private static final Logger logger = Logger.getLogger(Main.class);
 
+    /**
+     * Modes the tool can be run in, given as the first argument. The offline mode migrates everything with brokers
+     * stopped. The other modes migrate the slot tables while brokers are running, in the given order.
+     */
+    private static final String OFFLINE_MODE = "offline";
+    private static final String PREPARE_MODE = "prepare";
+    private static final String BACKFILL_MODE = "backfill";
+    private static final String CUTOVER_MODE = "cutover";
+
     public static void main(String[] args) {
 
 
@@ -34,6 +43,24 @@ public class Main {
             //Create new processor to read, modify and write data into the database
             Processor processor = new Processor();
 
+            String mode = (args.length > 0) ? args[0] : OFFLINE_MODE;
+            if (PREPARE_MODE.equals(mode)) {
+                //Start recording changes to slot tables while brokers are running
+                processor.prepareOnlineMigration();
+                return;
+            } else if (BACKFILL_MODE.equals(mode)) {
+                //Copy slot tables in chunks while brokers are running
+                processor.backfillOnlineMigration();
+                return;
+            } else if (CUTOVER_MODE.equals(mode)) {
+                //Swap in the copied slot tables once brokers are stopped and continue with the remaining steps
+                processor.cutOverOnlineMigration();
+            } else if (!OFFLINE_MODE.equals(mode)) {
+                logger.error("Unknown mode " + mode + ". Expected one of " + OFFLINE_MODE + ", " + PREPARE_MODE
+                        + ", " + BACKFILL_MODE + " or " + CUTOVER_MODE);
+                return;
+            }
+
             //Create DLC message router since it was not present in WSO2MB 3.1.0
             processor.creteDlcMessageRouter();
 
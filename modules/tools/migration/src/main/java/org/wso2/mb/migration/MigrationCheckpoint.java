@@ -0,0 +1,202 @@
+/*
+ * Copyright (c)2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Keeps track of the progress of the migration in a properties file, so that an interrupted migration can be resumed
+ * from where it stopped. Completed steps are skipped, and for chunked steps the key ranges and the last key committed
+ * within each range are recorded. The file is rewritten after each committed chunk.
+ */
+class MigrationCheckpoint {
+
+    private static final String COMPLETED_SUFFIX = ".completed";
+    private static final String RANGE_COUNT_SUFFIX = ".ranges";
+    private static final String RANGE_PREFIX = ".range.";
+    private static final String PARTITION_KEY_SUFFIX = ".partitionkey";
+    private static final String LOWER_BOUND_SUFFIX = ".lower";
+    private static final String UPPER_BOUND_SUFFIX = ".upper";
+    private static final String LAST_KEY_SUFFIX = ".last";
+    private static final String DONE_SUFFIX = ".done";
+
+    /**
+     * The file the checkpoint is stored in.
+     */
+    private final File checkpointFile;
+
+    /**
+     * The recorded progress.
+     */
+    private final Properties progress = new Properties();
+
+    /**
+     * Load the checkpoint from the given file if it exists.
+     *
+     * @param checkpointFile the file the checkpoint is stored in
+     * @throws IOException in case of error while reading the file
+     */
+    MigrationCheckpoint(File checkpointFile) throws IOException {
+        this.checkpointFile = checkpointFile;
+        if (checkpointFile.exists()) {
+            try (Reader reader = new FileReader(checkpointFile)) {
+                progress.load(reader);
+            }
+        }
+    }
+
+    /**
+     * Check if a step was completed in a previous run.
+     *
+     * @param step the name of the step
+     * @return true if the step is completed
+     */
+    synchronized boolean isCompleted(String step) {
+        return Boolean.parseBoolean(progress.getProperty(step + COMPLETED_SUFFIX));
+    }
+
+    /**
+     * Record that a step is completed.
+     *
+     * @param step the name of the step
+     * @throws IOException in case of error while writing the checkpoint
+     */
+    synchronized void markCompleted(String step) throws IOException {
+        progress.setProperty(step + COMPLETED_SUFFIX, Boolean.TRUE.toString());
+        save();
+    }
+
+    /**
+     * Read the key ranges of a chunked step recorded in a previous run.
+     *
+     * @param step the name of the step
+     * @return the key ranges, null if they were not recorded
+     */
+    synchronized List<KeyRange> getRanges(String step) {
+        String rangeCount = progress.getProperty(step + RANGE_COUNT_SUFFIX);
+        if (null == rangeCount) {
+            return null;
+        }
+        List<KeyRange> ranges = new ArrayList<>();
+        for (int index = 0; index < Integer.parseInt(rangeCount); index++) {
+            String prefix = rangePrefix(step, index);
+            ranges.add(new KeyRange(index, progress.getProperty(prefix + PARTITION_KEY_SUFFIX),
+                    Long.parseLong(progress.getProperty(prefix + LOWER_BOUND_SUFFIX)),
+                    Long.parseLong(progress.getProperty(prefix + UPPER_BOUND_SUFFIX))));
+        }
+        return ranges;
+    }
+
+    /**
+     * Record the key ranges of a chunked step, so that a resumed run migrates the same ranges.
+     *
+     * @param step   the name of the step
+     * @param ranges the key ranges
+     * @throws IOException in case of error while writing the checkpoint
+     */
+    synchronized void saveRanges(String step, List<KeyRange> ranges) throws IOException {
+        for (KeyRange range : ranges) {
+            String prefix = rangePrefix(step, range.getIndex());
+            if (null != range.getPartitionKey()) {
+                progress.setProperty(prefix + PARTITION_KEY_SUFFIX, range.getPartitionKey());
+            }
+            progress.setProperty(prefix + LOWER_BOUND_SUFFIX, Long.toString(range.getLowerBound()));
+            progress.setProperty(prefix + UPPER_BOUND_SUFFIX, Long.toString(range.getUpperBound()));
+        }
+        progress.setProperty(step + RANGE_COUNT_SUFFIX, Integer.toString(ranges.size()));
+        save();
+    }
+
+    /**
+     * Read the last key committed within a key range.
+     *
+     * @param step  the name of the step
+     * @param range the key range
+     * @return the last key committed, the lower bound of the range if nothing was committed
+     */
+    synchronized long getLastKey(String step, KeyRange range) {
+        String lastKey = progress.getProperty(rangePrefix(step, range.getIndex()) + LAST_KEY_SUFFIX);
+        return (null != lastKey) ? Long.parseLong(lastKey) : range.getLowerBound();
+    }
+
+    /**
+     * Record the last key committed within a key range.
+     *
+     * @param step    the name of the step
+     * @param range   the key range
+     * @param lastKey the last key committed
+     * @throws IOException in case of error while writing the checkpoint
+     */
+    synchronized void saveLastKey(String step, KeyRange range, long lastKey) throws IOException {
+        progress.setProperty(rangePrefix(step, range.getIndex()) + LAST_KEY_SUFFIX, Long.toString(lastKey));
+        save();
+    }
+
+    /**
+     * Check if a key range was completely migrated.
+     *
+     * @param step  the name of the step
+     * @param range the key range
+     * @return true if the range is completely migrated
+     */
+    synchronized boolean isRangeDone(String step, KeyRange range) {
+        return Boolean.parseBoolean(progress.getProperty(rangePrefix(step, range.getIndex()) + DONE_SUFFIX));
+    }
+
+    /**
+     * Record that a key range is completely migrated.
+     *
+     * @param step  the name of the step
+     * @param range the key range
+     * @throws IOException in case of error while writing the checkpoint
+     */
+    synchronized void markRangeDone(String step, KeyRange range) throws IOException {
+        progress.setProperty(rangePrefix(step, range.getIndex()) + DONE_SUFFIX, Boolean.TRUE.toString());
+        save();
+    }
+
+    private static String rangePrefix(String step, int index) {
+        return step + RANGE_PREFIX + index;
+    }
+
+    /**
+     * Write the checkpoint to a temporary file and move it over the checkpoint file, so that an interruption while
+     * writing does not leave a partially written checkpoint behind.
+     *
+     * @throws IOException in case of error while writing the checkpoint
+     */
+    private void save() throws IOException {
+        File temporaryFile = new File(checkpointFile.getPath() + ".tmp");
+        try (Writer writer = new FileWriter(temporaryFile)) {
+            progress.store(writer, "WSO2 MB migration progress. Delete this file to run the migration from the start");
+        }
+        Files.move(temporaryFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
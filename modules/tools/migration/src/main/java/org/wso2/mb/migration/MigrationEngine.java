@@ -0,0 +1,220 @@
+/*
+ * Copyright (c)2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs chunked migration steps using a pool of workers. Each worker migrates a key range on its own connection,
+ * committing after each chunk and recording the last committed key in the checkpoint. Progress of the running step is
+ * logged periodically.
+ */
+class MigrationEngine {
+
+    private static final Logger logger = Logger.getLogger(MigrationEngine.class);
+
+    private final DBConnector connector;
+
+    private final MigrationCheckpoint checkpoint;
+
+    /**
+     * The number of key ranges migrated in parallel.
+     */
+    private final int workerCount;
+
+    /**
+     * The maximum number of rows read and updated in a single transaction.
+     */
+    private final int chunkSize;
+
+    /**
+     * The interval at which progress is logged.
+     */
+    private final long progressIntervalInSeconds;
+
+    MigrationEngine(DBConnector connector, MigrationCheckpoint checkpoint, int workerCount, int chunkSize,
+                    long progressIntervalInSeconds) {
+        this.connector = connector;
+        this.checkpoint = checkpoint;
+        this.workerCount = workerCount;
+        this.chunkSize = chunkSize;
+        this.progressIntervalInSeconds = progressIntervalInSeconds;
+    }
+
+    /**
+     * Run a chunked migration step. The step is skipped if it was completed in a previous run, and key ranges
+     * migrated in a previous run are continued from their last committed key.
+     *
+     * @param migration the step to run
+     * @throws MigrationException in case of error while migrating a key range
+     */
+    void migrate(final ChunkedMigration migration) throws MigrationException {
+        final String step = migration.getName();
+        if (checkpoint.isCompleted(step)) {
+            logger.info("Skipping " + step + " since it was migrated in a previous run");
+            return;
+        }
+
+        List<KeyRange> ranges = createRanges(migration);
+        final AtomicLong migratedRowCount = new AtomicLong();
+        final AtomicInteger doneRangeCount = new AtomicInteger();
+        final int rangeCount = ranges.size();
+        final long startTime = System.nanoTime();
+
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount);
+        ScheduledExecutorService progressReporter = Executors.newSingleThreadScheduledExecutor();
+        progressReporter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                logProgress(step, migratedRowCount.get(), doneRangeCount.get(), rangeCount, startTime);
+            }
+        }, progressIntervalInSeconds, progressIntervalInSeconds, TimeUnit.SECONDS);
+
+        List<Future<?>> results = new ArrayList<>(rangeCount);
+        for (final KeyRange range : ranges) {
+            if (checkpoint.isRangeDone(step, range)) {
+                doneRangeCount.incrementAndGet();
+                continue;
+            }
+            results.add(workers.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws SQLException, IOException {
+                    migrateRange(migration, range, migratedRowCount);
+                    doneRangeCount.incrementAndGet();
+                    return null;
+                }
+            }));
+        }
+
+        MigrationException error = null;
+        try {
+            for (Future<?> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    if (null == error) {
+                        error = new MigrationException("Error while migrating " + step + ". Run the tool again to "
+                                + "resume from the last committed chunk", e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MigrationException("Interrupted while migrating " + step, e);
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+            progressReporter.shutdownNow();
+        }
+
+        if (null != error) {
+            throw error;
+        }
+        logProgress(step, migratedRowCount.get(), doneRangeCount.get(), rangeCount, startTime);
+        try {
+            checkpoint.markCompleted(step);
+        } catch (IOException e) {
+            throw new MigrationException("Error while recording completion of " + step, e);
+        }
+    }
+
+    /**
+     * Read the key ranges of a step from the checkpoint, or create and record them if this is the first run of the
+     * step.
+     *
+     * @param migration the step
+     * @return the key ranges of the step
+     * @throws MigrationException in case of error while reading the key ranges
+     */
+    private List<KeyRange> createRanges(ChunkedMigration migration) throws MigrationException {
+        String step = migration.getName();
+        List<KeyRange> ranges = checkpoint.getRanges(step);
+        if (null != ranges) {
+            logger.info("Resuming " + step + " with " + ranges.size() + " key ranges");
+            return ranges;
+        }
+
+        try (Connection conn = connector.getConnection()) {
+            ranges = migration.createRanges(conn, workerCount);
+            checkpoint.saveRanges(step, ranges);
+        } catch (SQLException | IOException e) {
+            throw new MigrationException("Error while splitting " + step + " in to key ranges", e);
+        }
+        logger.info("Migrating " + step + " in " + ranges.size() + " key ranges using " + workerCount + " workers");
+        return ranges;
+    }
+
+    /**
+     * Migrate a key range chunk by chunk, starting after the last key committed.
+     *
+     * @param migration        the step
+     * @param range            the key range to migrate
+     * @param migratedRowCount the counter of rows migrated in the step
+     * @throws SQLException in case of error while migrating a chunk
+     * @throws IOException  in case of error while writing the checkpoint
+     */
+    private void migrateRange(ChunkedMigration migration, KeyRange range, AtomicLong migratedRowCount)
+            throws SQLException, IOException {
+        String step = migration.getName();
+        long lastKey = checkpoint.getLastKey(step, range);
+
+        try (Connection conn = connector.getConnection()) {
+            conn.setAutoCommit(false);
+            while (true) {
+                ChunkResult result;
+                try {
+                    result = migration.migrateChunk(conn, range, lastKey, chunkSize);
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+                migratedRowCount.addAndGet(result.getRowCount());
+
+                if (result.getRowCount() < chunkSize) {
+                    checkpoint.markRangeDone(step, range);
+                    return;
+                }
+                lastKey = result.getLastKey();
+                checkpoint.saveLastKey(step, range, lastKey);
+            }
+        }
+    }
+
+    private void logProgress(String step, long migratedRowCount, int doneRangeCount, int rangeCount,
+                             long startTime) {
+        double elapsedSeconds = Math.max(1L, System.nanoTime() - startTime) / (double) TimeUnit.SECONDS.toNanos(1);
+        logger.info(String.format("%s: %d rows processed, %d/%d key ranges completed, %.0f rows/s", step,
+                migratedRowCount, doneRangeCount, rangeCount, migratedRowCount / elapsedSeconds));
+    }
+}
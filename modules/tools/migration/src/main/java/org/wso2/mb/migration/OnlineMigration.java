@@ -0,0 +1,264 @@
+/*
+ * Copyright (c)2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Migrates the slot tables while brokers are running, so that brokers only need to be stopped for a short cut-over.
+ * <ol>
+ * <li>prepare: creates the changelog table, a shadow table for each slot table and triggers recording changes.</li>
+ * <li>backfill: copies the slot tables to the shadow tables in chunks, then applies the changelog.</li>
+ * <li>cutover: run with brokers stopped. Applies the remaining changelog, swaps the shadow tables in and runs the
+ * remaining steps, which only touch a row per queue.</li>
+ * </ol>
+ */
+class OnlineMigration {
+
+    private static final Logger logger = Logger.getLogger(OnlineMigration.class);
+
+    private static final String CREATE_CHANGELOG = "CREATE TABLE IF NOT EXISTS " + ShadowTable.MB_MIGRATION_CHANGELOG
+            + " (" + ShadowTable.CHANGE_ID + " BIGINT NOT NULL AUTO_INCREMENT, "
+            + ShadowTable.TABLE_NAME + " VARCHAR(64) NOT NULL, "
+            + ShadowTable.ROW_KEY + " BIGINT NOT NULL, "
+            + "PRIMARY KEY (" + ShadowTable.CHANGE_ID + "))";
+
+    private static final String GET_CHANGES = "SELECT " + ShadowTable.CHANGE_ID + ", " + ShadowTable.TABLE_NAME
+            + ", " + ShadowTable.ROW_KEY + " FROM " + ShadowTable.MB_MIGRATION_CHANGELOG
+            + " ORDER BY " + ShadowTable.CHANGE_ID;
+
+    private static final String DELETE_CHANGES = "DELETE FROM " + ShadowTable.MB_MIGRATION_CHANGELOG
+            + " WHERE " + ShadowTable.CHANGE_ID + " IN (";
+
+    /**
+     * Maximum number of change IDs deleted by a single statement.
+     */
+    private static final int DELETE_BATCH_SIZE = 500;
+
+    private static final String DROP_CHANGELOG = "DROP TABLE IF EXISTS " + ShadowTable.MB_MIGRATION_CHANGELOG;
+
+    /**
+     * Steps recorded in the migration checkpoint.
+     */
+    private static final String PREPARE_STEP = "ONLINE_PREPARE";
+    private static final String SWAP_STEP = "ONLINE_SWAP";
+
+    private final DBConnector connector;
+
+    private final MigrationEngine migrationEngine;
+
+    private final MigrationCheckpoint checkpoint;
+
+    private final int chunkSize;
+
+    /**
+     * The slot tables migrated online, each with its key column and queue name columns.
+     */
+    private final List<ShadowTable> tables = Arrays.asList(
+            new ShadowTable("MB_SLOT", "SLOT_ID", "STORAGE_QUEUE_NAME", "ASSIGNED_QUEUE_NAME"),
+            new ShadowTable("MB_SLOT_MESSAGE_ID", "MESSAGE_ID", "QUEUE_NAME"));
+
+    OnlineMigration(DBConnector connector, MigrationEngine migrationEngine, MigrationCheckpoint checkpoint,
+                    int chunkSize) {
+        this.connector = connector;
+        this.migrationEngine = migrationEngine;
+        this.checkpoint = checkpoint;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Create the changelog table, the shadow tables and the triggers. Changes made by brokers are recorded from this
+     * point onwards.
+     *
+     * @throws MigrationException in case of error while creating the tables
+     */
+    void prepare() throws MigrationException {
+        if (checkpoint.isCompleted(PREPARE_STEP)) {
+            logger.info("Online migration is already prepared");
+            return;
+        }
+        try (Connection conn = connector.getConnection();
+             Statement statement = conn.createStatement()) {
+            statement.executeUpdate(CREATE_CHANGELOG);
+            for (ShadowTable table : tables) {
+                table.create(conn);
+            }
+            checkpoint.markCompleted(PREPARE_STEP);
+            logger.info("Prepared online migration. Changes to slot tables are recorded in "
+                    + ShadowTable.MB_MIGRATION_CHANGELOG);
+        } catch (SQLException | IOException e) {
+            throw new MigrationException("Error while preparing online migration", e);
+        }
+    }
+
+    /**
+     * Copy the slot tables to the shadow tables in chunks and apply the changes recorded meanwhile. Can be run while
+     * brokers are running and can be run again to resume or to catch up with new changes.
+     *
+     * @throws MigrationException in case of error while copying
+     */
+    void backfill() throws MigrationException {
+        checkPrepared();
+        for (ShadowTable table : tables) {
+            migrationEngine.migrate(new ShadowCopyMigration(table));
+        }
+        int appliedChangeCount = applyChangelog();
+        logger.info("Backfill completed. Applied " + appliedChangeCount + " recorded changes. Stop the brokers and "
+                + "run the cut-over");
+    }
+
+    /**
+     * Apply the remaining changes, swap the shadow tables in and drop the changelog. Brokers must be stopped.
+     *
+     * @throws MigrationException in case of error while swapping the tables
+     */
+    void cutOver() throws MigrationException {
+        checkPrepared();
+        for (ShadowTable table : tables) {
+            if (!checkpoint.isCompleted(new ShadowCopyMigration(table).getName())) {
+                throw new MigrationException("Backfill of " + table.getTableName() + " is not completed");
+            }
+        }
+        if (checkpoint.isCompleted(SWAP_STEP)) {
+            logger.info("Skipping table swap since it was done in a previous run");
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        try (Connection conn = connector.getConnection()) {
+            for (ShadowTable table : tables) {
+                table.dropTriggers(conn);
+            }
+            int appliedChangeCount = applyChangelog();
+            for (ShadowTable table : tables) {
+                table.swap(conn);
+            }
+            try (Statement statement = conn.createStatement()) {
+                statement.executeUpdate(DROP_CHANGELOG);
+            }
+            checkpoint.markCompleted(SWAP_STEP);
+            logger.info("Applied " + appliedChangeCount + " recorded changes and swapped slot tables in "
+                    + (System.currentTimeMillis() - startTime) + " ms");
+        } catch (SQLException | IOException e) {
+            throw new MigrationException("Error while swapping slot tables", e);
+        }
+    }
+
+    /**
+     * Apply the recorded changes to the shadow tables in chunks until the changelog is empty. Each chunk deletes the
+     * applied changes in the same transaction. Only the changes read are deleted, not a range of change IDs, since a
+     * broker transaction that is not committed yet may hold a lower change ID than the last one read.
+     *
+     * @return the number of changes applied
+     * @throws MigrationException in case of error while applying changes
+     */
+    int applyChangelog() throws MigrationException {
+        Map<String, ShadowTable> tablesByName = new LinkedHashMap<>();
+        for (ShadowTable table : tables) {
+            tablesByName.put(table.getTableName(), table);
+        }
+
+        int appliedChangeCount = 0;
+        try (Connection conn = connector.getConnection()) {
+            conn.setAutoCommit(false);
+            int changeCount;
+            do {
+                Map<String, Set<Long>> changedKeys = new LinkedHashMap<>();
+                List<Long> changeIds = new ArrayList<>();
+                try (PreparedStatement preparedStatement = conn.prepareStatement(GET_CHANGES)) {
+                    preparedStatement.setMaxRows(chunkSize);
+                    try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                        while (resultSet.next()) {
+                            changeIds.add(resultSet.getLong(ShadowTable.CHANGE_ID));
+                            String tableName = resultSet.getString(ShadowTable.TABLE_NAME);
+                            if (!changedKeys.containsKey(tableName)) {
+                                changedKeys.put(tableName, new LinkedHashSet<Long>());
+                            }
+                            changedKeys.get(tableName).add(resultSet.getLong(ShadowTable.ROW_KEY));
+                        }
+                    }
+                }
+                changeCount = changeIds.size();
+
+                if (changeCount > 0) {
+                    try {
+                        for (Map.Entry<String, Set<Long>> entry : changedKeys.entrySet()) {
+                            tablesByName.get(entry.getKey()).copyRows(conn, entry.getValue());
+                        }
+                        deleteChanges(conn, changeIds);
+                        conn.commit();
+                    } catch (SQLException e) {
+                        conn.rollback();
+                        throw e;
+                    }
+                    appliedChangeCount = appliedChangeCount + changeCount;
+                }
+            } while (changeCount == chunkSize);
+        } catch (SQLException e) {
+            throw new MigrationException("Error while applying changes recorded in "
+                    + ShadowTable.MB_MIGRATION_CHANGELOG, e);
+        }
+        return appliedChangeCount;
+    }
+
+    /**
+     * Delete the given changes from the changelog in batches. The caller is responsible for committing.
+     *
+     * @param conn      the connection to use
+     * @param changeIds the IDs of the applied changes
+     * @throws SQLException in case of executing update
+     */
+    private void deleteChanges(Connection conn, List<Long> changeIds) throws SQLException {
+        for (int from = 0; from < changeIds.size(); from = from + DELETE_BATCH_SIZE) {
+            List<Long> batch = changeIds.subList(from, Math.min(from + DELETE_BATCH_SIZE, changeIds.size()));
+            StringBuilder delete = new StringBuilder(DELETE_CHANGES);
+            for (int i = 0; i < batch.size(); i++) {
+                delete.append((i > 0) ? ", ?" : "?");
+            }
+            delete.append(")");
+
+            try (PreparedStatement deleteStatement = conn.prepareStatement(delete.toString())) {
+                for (int i = 0; i < batch.size(); i++) {
+                    deleteStatement.setLong(i + 1, batch.get(i));
+                }
+                deleteStatement.executeUpdate();
+            }
+        }
+    }
+
+    private void checkPrepared() throws MigrationException {
+        if (!checkpoint.isCompleted(PREPARE_STEP)) {
+            throw new MigrationException("Online migration is not prepared. Run the tool with 'prepare' first");
+        }
+    }
+}
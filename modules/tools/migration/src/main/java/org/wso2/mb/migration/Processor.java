@@ -51,6 +51,38 @@ public class Processor {
      */
     private final String DLC_MESSAGE_ROUTER = "amq.dlc";
 
+    /**
+     * Names of the steps recorded in the migration checkpoint.
+     */
+    private static final String DLC_MESSAGE_ROUTER_STEP = "DLC_MESSAGE_ROUTER";
+    private static final String BINDINGS_STEP = "BINDINGS";
+    private static final String QUEUES_AND_BINDINGS_STEP = "MB_QUEUE";
+    private static final String QUEUE_MAPPINGS_STEP = "MB_QUEUE_MAPPING";
+    private static final String QUEUE_TO_LAST_ASSIGNED_IDS_STEP = "MB_QUEUE_TO_LAST_ASSIGNED_ID";
+
+    /**
+     * Default values of the optional properties in config.properties.
+     */
+    private static final String DEFAULT_WORKER_COUNT = "4";
+    private static final String DEFAULT_CHUNK_SIZE = "10000";
+    private static final String DEFAULT_CHECKPOINT_FILE = "conf/migration-checkpoint.properties";
+    private static final String DEFAULT_PROGRESS_INTERVAL = "10";
+
+    /**
+     * Records completed steps so that an interrupted migration can be resumed.
+     */
+    private MigrationCheckpoint checkpoint;
+
+    /**
+     * The engine which migrates large tables in parallel chunks.
+     */
+    private MigrationEngine migrationEngine;
+
+    /**
+     * Migrates the slot tables while brokers are running.
+     */
+    private OnlineMigration onlineMigration;
+
     /**
      * Initializes the processor with properties given in config.properties file.
      *
@@ -66,6 +98,13 @@ public class Processor {
         prop.load(reader);
         connector = new DBConnector(prop);
         modifier = new Modifier();
+        checkpoint = new MigrationCheckpoint(new File(prop.getProperty("checkpointfile", DEFAULT_CHECKPOINT_FILE)));
+        migrationEngine = new MigrationEngine(connector, checkpoint,
+                Integer.parseInt(prop.getProperty("workercount", DEFAULT_WORKER_COUNT)),
+                Integer.parseInt(prop.getProperty("chunksize", DEFAULT_CHUNK_SIZE)),
+                Long.parseLong(prop.getProperty("progressinterval", DEFAULT_PROGRESS_INTERVAL)));
+        onlineMigration = new OnlineMigration(connector, migrationEngine, checkpoint,
+                Integer.parseInt(prop.getProperty("chunksize", DEFAULT_CHUNK_SIZE)));
 
     }
 
@@ -95,10 +134,14 @@ public class Processor {
      * @throws MigrationException in case of error while write message router
      */
     void creteDlcMessageRouter() throws MigrationException {
+        if (isCompleted(DLC_MESSAGE_ROUTER_STEP)) {
+            return;
+        }
         try {
             connector.writeMessageRouter(DLC_MESSAGE_ROUTER, modifier.createExchangeDetails(DLC_MESSAGE_ROUTER,
                     "DLC", "false"));
             logger.info("DLC message router created");
+            markCompleted(DLC_MESSAGE_ROUTER_STEP);
         } catch (SQLException e) {
             throw new MigrationException("Error while creating message router", e);
         }
@@ -111,7 +154,9 @@ public class Processor {
      * @throws MigrationException in case of error while read bindings
      */
     void modifyBindings() throws MigrationException {
-
+        if (isCompleted(BINDINGS_STEP)) {
+            return;
+        }
         try {
             List<Binding> bindings = connector.readBindings();
             for (Binding binding : bindings) {
@@ -125,6 +170,7 @@ public class Processor {
             }
             connector.updateBindings(bindings);
             addDlcBindings();
+            markCompleted(BINDINGS_STEP);
 
         } catch (SQLException e) {
             throw new MigrationException("Error while modifying bindings in the database", e);
@@ -132,20 +178,90 @@ public class Processor {
     }
 
     /**
-     * Read data of tables and modify data making all queue name references all simple.
+     * Read data of tables and modify data making all queue name references all simple. MB_SLOT and
+     * MB_SLOT_MESSAGE_ID, which grow with the number of messages, are migrated in parallel chunks while the tables
+     * holding a row per queue are migrated in a single pass.
      *
      * @throws MigrationException in case of error while converting queue names to lowercase
      */
     void makeQueueNamesAllSimple() throws MigrationException {
         try {
-            connector.updateQueueNamesInQueuesAndBindings();
-            connector.updateQueueNamesInSlots();
-            connector.updateQueueNamesInQueueMappings();
-            connector.updateQueueNamesInSlotMessageIds();
-            connector.updateQueueNamesInQueueToLastAssignedIds();
+            if (!isCompleted(QUEUES_AND_BINDINGS_STEP)) {
+                connector.updateQueueNamesInQueuesAndBindings();
+                markCompleted(QUEUES_AND_BINDINGS_STEP);
+            }
+            migrationEngine.migrate(new SlotMigration(connector));
+            if (!isCompleted(QUEUE_MAPPINGS_STEP)) {
+                connector.updateQueueNamesInQueueMappings();
+                markCompleted(QUEUE_MAPPINGS_STEP);
+            }
+            migrationEngine.migrate(new SlotMessageIdMigration(connector));
+            if (!isCompleted(QUEUE_TO_LAST_ASSIGNED_IDS_STEP)) {
+                connector.updateQueueNamesInQueueToLastAssignedIds();
+                markCompleted(QUEUE_TO_LAST_ASSIGNED_IDS_STEP);
+            }
             logger.info("Converted queue names into lowercase");
         } catch (SQLException e) {
             throw new MigrationException("Error while converting queue names to lowercase", e);
         }
     }
+
+    /**
+     * Prepares the online migration of the slot tables. Changes brokers make to the slot tables are recorded from
+     * this point onwards.
+     *
+     * @throws MigrationException in case of error while creating the shadow and changelog tables
+     */
+    void prepareOnlineMigration() throws MigrationException {
+        onlineMigration.prepare();
+    }
+
+    /**
+     * Copies the slot tables to their shadow tables while brokers are running.
+     *
+     * @throws MigrationException in case of error while copying
+     */
+    void backfillOnlineMigration() throws MigrationException {
+        onlineMigration.backfill();
+    }
+
+    /**
+     * Swaps the migrated slot tables in. Brokers must be stopped. The slot table steps of
+     * {@link #makeQueueNamesAllSimple()} are skipped afterwards.
+     *
+     * @throws MigrationException in case of error while swapping the tables
+     */
+    void cutOverOnlineMigration() throws MigrationException {
+        onlineMigration.cutOver();
+        markCompleted(new SlotMigration(connector).getName());
+        markCompleted(new SlotMessageIdMigration(connector).getName());
+    }
+
+    /**
+     * Check if a step was completed in a previous run of the tool.
+     *
+     * @param step the name of the step
+     * @return true if the step should be skipped
+     */
+    private boolean isCompleted(String step) {
+        if (checkpoint.isCompleted(step)) {
+            logger.info("Skipping " + step + " since it was migrated in a previous run");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record a step as completed so that it is skipped when the tool is run again.
+     *
+     * @param step the name of the step
+     * @throws MigrationException in case of error while writing the checkpoint
+     */
+    private void markCompleted(String step) throws MigrationException {
+        try {
+            checkpoint.markCompleted(step);
+        } catch (IOException e) {
+            throw new MigrationException("Error while recording completion of " + step, e);
+        }
+    }
 }
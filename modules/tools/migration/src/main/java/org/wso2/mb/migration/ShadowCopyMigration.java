@@ -0,0 +1,58 @@
+/*
+ * Copyright (c)2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Copies a table to its shadow table in chunks of keys while brokers are running.
+ */
+class ShadowCopyMigration implements ChunkedMigration {
+
+    private static final String NAME_PREFIX = "ONLINE_";
+
+    private final ShadowTable table;
+
+    ShadowCopyMigration(ShadowTable table) {
+        this.table = table;
+    }
+
+    @Override
+    public String getName() {
+        return NAME_PREFIX + table.getTableName();
+    }
+
+    @Override
+    public List<KeyRange> createRanges(Connection conn, int rangeCount) throws SQLException {
+        long[] keyRange = table.readKeyRange(conn);
+        if (null == keyRange) {
+            return Collections.emptyList();
+        }
+        return KeyRange.split(null, keyRange[0], keyRange[1], rangeCount, 0);
+    }
+
+    @Override
+    public ChunkResult migrateChunk(Connection conn, KeyRange range, long lastKey, int chunkSize)
+            throws SQLException {
+        return table.copyChunk(conn, lastKey, range.getUpperBound(), chunkSize);
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c)2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A table migrated online through a shadow table. Rows are copied to the shadow table with queue names made all
+ * simple while brokers keep using the original table. Triggers on the original table record the keys of inserted,
+ * updated and deleted rows in the changelog table so that the shadow table can be brought up to date before the
+ * tables are swapped. The statements use MySQL syntax.
+ */
+class ShadowTable {
+
+    /**
+     * Suffixes of the tables created while migrating online.
+     */
+    private static final String SHADOW_SUFFIX = "_MIGRATION";
+    private static final String BACKUP_SUFFIX = "_PRE_MIGRATION";
+
+    /**
+     * The changelog table and its columns.
+     */
+    static final String MB_MIGRATION_CHANGELOG = "MB_MIGRATION_CHANGELOG";
+    static final String CHANGE_ID = "CHANGE_ID";
+    static final String TABLE_NAME = "TABLE_NAME";
+    static final String ROW_KEY = "ROW_KEY";
+
+    private static final String[] TRIGGER_EVENTS = { "INSERT", "UPDATE", "DELETE" };
+
+    private final String tableName;
+
+    private final String shadowTableName;
+
+    private final String keyColumn;
+
+    /**
+     * Upper case names of the columns holding queue names.
+     */
+    private final Set<String> queueNameColumns;
+
+    ShadowTable(String tableName, String keyColumn, String... queueNameColumns) {
+        this.tableName = tableName;
+        this.shadowTableName = tableName + SHADOW_SUFFIX;
+        this.keyColumn = keyColumn;
+        this.queueNameColumns = new HashSet<>(Arrays.asList(queueNameColumns));
+    }
+
+    String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * Create the shadow table with the same structure as the original table and the triggers which record changes
+     * to the original table. Any shadow table left by a previous attempt is dropped.
+     *
+     * @param conn the connection to use
+     * @throws SQLException in case of executing update
+     */
+    void create(Connection conn) throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            dropTriggers(statement);
+            statement.executeUpdate("DROP TABLE IF EXISTS " + shadowTableName);
+            statement.executeUpdate("CREATE TABLE " + shadowTableName + " LIKE " + tableName);
+            for (String event : TRIGGER_EVENTS) {
+                String row = "DELETE".equals(event) ? "OLD" : "NEW";
+                statement.executeUpdate("CREATE TRIGGER " + triggerName(event) + " AFTER " + event
+                        + " ON " + tableName + " FOR EACH ROW"
+                        + " INSERT INTO " + MB_MIGRATION_CHANGELOG + " (" + TABLE_NAME + ", " + ROW_KEY + ")"
+                        + " VALUES ('" + tableName + "', " + row + "." + keyColumn + ")");
+            }
+        }
+    }
+
+    /**
+     * Drop the triggers so that changes to the original table are no longer recorded.
+     *
+     * @param conn the connection to use
+     * @throws SQLException in case of executing update
+     */
+    void dropTriggers(Connection conn) throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            dropTriggers(statement);
+        }
+    }
+
+    private void dropTriggers(Statement statement) throws SQLException {
+        for (String event : TRIGGER_EVENTS) {
+            statement.executeUpdate("DROP TRIGGER IF EXISTS " + triggerName(event));
+        }
+    }
+
+    /**
+     * Replace the original table with the shadow table in a single rename. The original table is kept with the
+     * backup suffix.
+     *
+     * @param conn the connection to use
+     * @throws SQLException in case of executing update
+     */
+    void swap(Connection conn) throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            statement.executeUpdate("RENAME TABLE " + tableName + " TO " + tableName + BACKUP_SUFFIX + ", "
+                    + shadowTableName + " TO " + tableName);
+        }
+    }
+
+    /**
+     * Read the minimum and maximum keys of the original table.
+     *
+     * @param conn the connection to use
+     * @return the minimum and maximum keys, null if the table is empty
+     * @throws SQLException in case of executing query
+     */
+    long[] readKeyRange(Connection conn) throws SQLException {
+        try (PreparedStatement preparedStatement = conn.prepareStatement(
+                "SELECT MIN(" + keyColumn + "), MAX(" + keyColumn + ") FROM " + tableName);
+             ResultSet resultSet = preparedStatement.executeQuery()) {
+            if (resultSet.next()) {
+                long minimumKey = resultSet.getLong(1);
+                if (!resultSet.wasNull()) {
+                    return new long[] { minimumKey, resultSet.getLong(2) };
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copy a chunk of rows with keys greater than the last key to the shadow table. Rows of the shadow table within
+     * the copied key range are replaced, so copying a chunk again has no further effect. The caller is responsible
+     * for committing the chunk.
+     *
+     * @param conn      the connection to use
+     * @param lastKey   the key after which rows are copied
+     * @param upperKey  the maximum key to copy
+     * @param chunkSize the maximum number of rows to copy
+     * @return the number of rows copied and the last key copied
+     * @throws SQLException in case of executing update
+     */
+    ChunkResult copyChunk(Connection conn, long lastKey, long upperKey, int chunkSize) throws SQLException {
+        List<Object[]> rows = new ArrayList<>(chunkSize);
+        List<String> columns;
+        long lastCopiedKey = lastKey;
+        try (PreparedStatement preparedStatement = conn.prepareStatement("SELECT * FROM " + tableName
+                + " WHERE " + keyColumn + " >? AND " + keyColumn + " <=? ORDER BY " + keyColumn)) {
+            preparedStatement.setLong(1, lastKey);
+            preparedStatement.setLong(2, upperKey);
+            preparedStatement.setMaxRows(chunkSize);
+            preparedStatement.setFetchSize(chunkSize);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                columns = readColumns(resultSet);
+                while (resultSet.next()) {
+                    rows.add(readRow(resultSet, columns));
+                    lastCopiedKey = resultSet.getLong(keyColumn);
+                }
+            }
+        }
+
+        if (!rows.isEmpty()) {
+            try (PreparedStatement deleteStatement = conn.prepareStatement("DELETE FROM " + shadowTableName
+                    + " WHERE " + keyColumn + " >? AND " + keyColumn + " <=?")) {
+                deleteStatement.setLong(1, lastKey);
+                deleteStatement.setLong(2, lastCopiedKey);
+                deleteStatement.executeUpdate();
+            }
+            insertRows(conn, columns, rows);
+        }
+        return new ChunkResult(rows.size(), lastCopiedKey);
+    }
+
+    /**
+     * Bring the rows with the given keys in the shadow table up to date with the original table. Rows deleted from
+     * the original table are deleted from the shadow table. The caller is responsible for committing.
+     *
+     * @param conn the connection to use
+     * @param keys the keys of the changed rows
+     * @throws SQLException in case of executing update
+     */
+    void copyRows(Connection conn, Collection<Long> keys) throws SQLException {
+        List<Object[]> rows = new ArrayList<>(keys.size());
+        List<String> columns = null;
+        try (PreparedStatement deleteStatement = conn.prepareStatement("DELETE FROM " + shadowTableName
+                + " WHERE " + keyColumn + " =?");
+             PreparedStatement preparedStatement = conn.prepareStatement("SELECT * FROM " + tableName
+                     + " WHERE " + keyColumn + " =?")) {
+            for (Long key : keys) {
+                deleteStatement.setLong(1, key);
+                deleteStatement.addBatch();
+
+                preparedStatement.setLong(1, key);
+                try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                    if (null == columns) {
+                        columns = readColumns(resultSet);
+                    }
+                    while (resultSet.next()) {
+                        rows.add(readRow(resultSet, columns));
+                    }
+                }
+            }
+            deleteStatement.executeBatch();
+        }
+        if (!rows.isEmpty()) {
+            insertRows(conn, columns, rows);
+        }
+    }
+
+    private void insertRows(Connection conn, List<String> columns, List<Object[]> rows) throws SQLException {
+        StringBuilder insert = new StringBuilder("INSERT INTO ").append(shadowTableName).append(" (");
+        StringBuilder values = new StringBuilder(" VALUES (");
+        for (int i = 0; i < columns.size(); i++) {
+            insert.append((i > 0) ? ", " : "").append(columns.get(i));
+            values.append((i > 0) ? ", " : "").append("?");
+        }
+        insert.append(")").append(values).append(")");
+
+        try (PreparedStatement insertStatement = conn.prepareStatement(insert.toString())) {
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    insertStatement.setObject(i + 1, row[i]);
+                }
+                insertStatement.addBatch();
+            }
+            insertStatement.executeBatch();
+        }
+    }
+
+    private List<String> readColumns(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        List<String> columns = new ArrayList<>(metaData.getColumnCount());
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            columns.add(metaData.getColumnName(i));
+        }
+        return columns;
+    }
+
+    /**
+     * Read the current row with the queue names made all simple.
+     */
+    private Object[] readRow(ResultSet resultSet, List<String> columns) throws SQLException {
+        Object[] row = new Object[columns.size()];
+        for (int i = 0; i < row.length; i++) {
+            Object value = resultSet.getObject(i + 1);
+            if (value instanceof String && queueNameColumns.contains(columns.get(i).toUpperCase(Locale.ENGLISH))) {
+                value = ((String) value).toLowerCase();
+            }
+            row[i] = value;
+        }
+        return row;
+    }
+
+    private String triggerName(String event) {
+        return tableName + SHADOW_SUFFIX + "_" + event;
+    }
+}
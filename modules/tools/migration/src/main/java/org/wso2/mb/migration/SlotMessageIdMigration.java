@@ -0,0 +1,62 @@
+/*
+ * Copyright (c)2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Makes queue names in MB_SLOT_MESSAGE_ID table all simple, in chunks of message IDs. The message IDs of each queue
+ * to be renamed are split separately so that large queues are migrated by several workers.
+ */
+class SlotMessageIdMigration implements ChunkedMigration {
+
+    private final DBConnector connector;
+
+    SlotMessageIdMigration(DBConnector connector) {
+        this.connector = connector;
+    }
+
+    @Override
+    public String getName() {
+        return "MB_SLOT_MESSAGE_ID";
+    }
+
+    @Override
+    public List<KeyRange> createRanges(Connection conn, int rangeCount) throws SQLException {
+        List<KeyRange> ranges = new ArrayList<>();
+        for (String queueName : connector.readSlotMessageIdQueueNamesWithCapitals(conn)) {
+            long[] messageIdRange = connector.readSlotMessageIdRange(conn, queueName);
+            if (null != messageIdRange) {
+                ranges.addAll(KeyRange.split(queueName, messageIdRange[0], messageIdRange[1], rangeCount,
+                        ranges.size()));
+            }
+        }
+        return ranges;
+    }
+
+    @Override
+    public ChunkResult migrateChunk(Connection conn, KeyRange range, long lastKey, int chunkSize)
+            throws SQLException {
+        return connector.updateQueueNameInSlotMessageIdChunk(conn, range.getPartitionKey(), lastKey,
+                range.getUpperBound(), chunkSize);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c)2017, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the changelog against an in-memory H2 database while a broker transaction is still open.
+ */
+public class OnlineMigrationTestCase {
+
+    private static final int CHUNK_SIZE = 10;
+
+    private DBConnector connector;
+
+    private Connection keepAliveConnection;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("driverclassname", "org.h2.Driver");
+        properties.setProperty("dburl", "jdbc:h2:mem:online_migration;MODE=MySQL;LOCK_TIMEOUT=10000");
+        properties.setProperty("dbuser", "sa");
+        properties.setProperty("dbpassword", "");
+        connector = new DBConnector(properties);
+
+        // The in-memory database lives as long as a connection is open
+        keepAliveConnection = connector.getConnection();
+        try (Statement statement = keepAliveConnection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE MB_SLOT (SLOT_ID BIGINT NOT NULL, "
+                    + "STORAGE_QUEUE_NAME VARCHAR(512), ASSIGNED_QUEUE_NAME VARCHAR(512), PRIMARY KEY (SLOT_ID))");
+            statement.executeUpdate("CREATE TABLE MB_SLOT_MIGRATION (SLOT_ID BIGINT NOT NULL, "
+                    + "STORAGE_QUEUE_NAME VARCHAR(512), ASSIGNED_QUEUE_NAME VARCHAR(512), PRIMARY KEY (SLOT_ID))");
+            statement.executeUpdate("CREATE TABLE " + ShadowTable.MB_MIGRATION_CHANGELOG + " ("
+                    + ShadowTable.CHANGE_ID + " BIGINT NOT NULL AUTO_INCREMENT, "
+                    + ShadowTable.TABLE_NAME + " VARCHAR(64) NOT NULL, "
+                    + ShadowTable.ROW_KEY + " BIGINT NOT NULL, "
+                    + "PRIMARY KEY (" + ShadowTable.CHANGE_ID + "))");
+        }
+    }
+
+    @AfterMethod
+    public void tearDown() throws SQLException {
+        try (Statement statement = keepAliveConnection.createStatement()) {
+            statement.executeUpdate("DROP ALL OBJECTS");
+        }
+        keepAliveConnection.close();
+    }
+
+    /**
+     * A broker transaction takes change ID 1 and commits only after a later change with ID 2 has been read. The
+     * change with ID 1 must be left in the changelog and applied by the next pass instead of being deleted unread.
+     */
+    @Test
+    public void testUncommittedLowerChangeIsNotDeleted() throws Exception {
+        final Connection brokerConnection = connector.getConnection();
+        brokerConnection.setAutoCommit(false);
+        updateSlot(brokerConnection, 1, "Queue1");
+
+        try (Connection otherBrokerConnection = connector.getConnection()) {
+            updateSlot(otherBrokerConnection, 2, "Queue2");
+        }
+
+        // Commit the first broker transaction while the changelog is applied, as a delete waiting on its lock would
+        final CountDownLatch committed = new CountDownLatch(1);
+        Thread committer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(500);
+                    brokerConnection.commit();
+                    brokerConnection.close();
+                    committed.countDown();
+                } catch (InterruptedException | SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        committer.start();
+
+        OnlineMigration onlineMigration = new OnlineMigration(connector, null, null, CHUNK_SIZE);
+        Assert.assertEquals(onlineMigration.applyChangelog(), 1, "Only the committed change should be applied");
+        Assert.assertTrue(committed.await(10, TimeUnit.SECONDS), "Broker transaction was not committed");
+        committer.join();
+
+        Assert.assertEquals(readChangeIds(), listOf(1L), "Change committed after the read should be kept");
+        Assert.assertEquals(onlineMigration.applyChangelog(), 1, "Remaining change should be applied");
+        Assert.assertEquals(readChangeIds(), new ArrayList<Long>(), "Changelog should be empty");
+        Assert.assertEquals(readShadowSlotIds(), listOf(1L, 2L), "Both slots should be in the shadow table");
+    }
+
+    /**
+     * Changes spanning several chunks and delete batches are all applied and removed.
+     */
+    @Test
+    public void testChangesAppliedInChunks() throws Exception {
+        int slotCount = CHUNK_SIZE * 3 + 1;
+        List<Long> slotIds = new ArrayList<>();
+        try (Connection conn = connector.getConnection()) {
+            for (long slotId = 1; slotId <= slotCount; slotId++) {
+                updateSlot(conn, slotId, "Queue" + slotId);
+                slotIds.add(slotId);
+            }
+        }
+
+        OnlineMigration onlineMigration = new OnlineMigration(connector, null, null, CHUNK_SIZE);
+        Assert.assertEquals(onlineMigration.applyChangelog(), slotCount);
+        Assert.assertEquals(readChangeIds(), new ArrayList<Long>(), "Changelog should be empty");
+        Assert.assertEquals(readShadowSlotIds(), slotIds);
+    }
+
+    /**
+     * Insert a slot and record the change the way the triggers created by {@link ShadowTable} do.
+     */
+    private void updateSlot(Connection conn, long slotId, String queueName) throws SQLException {
+        try (PreparedStatement insertSlot = conn.prepareStatement(
+                "INSERT INTO MB_SLOT (SLOT_ID, STORAGE_QUEUE_NAME, ASSIGNED_QUEUE_NAME) VALUES (?,?,?)");
+             PreparedStatement insertChange = conn.prepareStatement("INSERT INTO "
+                     + ShadowTable.MB_MIGRATION_CHANGELOG + " (" + ShadowTable.TABLE_NAME + ", "
+                     + ShadowTable.ROW_KEY + ") VALUES (?,?)")) {
+            insertSlot.setLong(1, slotId);
+            insertSlot.setString(2, queueName);
+            insertSlot.setString(3, queueName);
+            insertSlot.executeUpdate();
+
+            insertChange.setString(1, "MB_SLOT");
+            insertChange.setLong(2, slotId);
+            insertChange.executeUpdate();
+        }
+    }
+
+    private List<Long> readChangeIds() throws SQLException {
+        return readLongs("SELECT " + ShadowTable.CHANGE_ID + " FROM " + ShadowTable.MB_MIGRATION_CHANGELOG
+                + " ORDER BY " + ShadowTable.CHANGE_ID);
+    }
+
+    private List<Long> readShadowSlotIds() throws SQLException {
+        return readLongs("SELECT SLOT_ID FROM MB_SLOT_MIGRATION ORDER BY SLOT_ID");
+    }
+
+    private List<Long> readLongs(String query) throws SQLException {
+        List<Long> values = new ArrayList<>();
+        try (Connection conn = connector.getConnection();
+             Statement statement = conn.createStatement();
+             ResultSet resultSet = statement.executeQuery(query)) {
+            while (resultSet.next()) {
+                values.add(resultSet.getLong(1));
+            }
+        }
+        return values;
+    }
+
+    private static List<Long> listOf(Long... values) {
+        List<Long> list = new ArrayList<>();
+        for (Long value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}